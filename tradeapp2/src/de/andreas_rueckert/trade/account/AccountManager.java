@@ -12,15 +12,20 @@ import de.andreas_rueckert.NotYetImplementedException;
 import de.andreas_rueckert.trade.app.TradeApp;
 import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.util.ModuleLoader;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
  * Class to handle a number of accounts.
+ *
+ * All account requests to the trade sites should go through this manager,
+ * so the fetched accounts are cached and shared by all bots.
  */
 public class AccountManager {
     
@@ -29,10 +34,15 @@ public class AccountManager {
 
     // Instance variables
 
+    /**
+     * The cache for the fetched trade site accounts.
+     */
+    private final TradeSiteAccountCache _accountCache = new TradeSiteAccountCache();
+
     /**
      * Store the hashmaps as a hash map.
      */
-    private List<Account> _accounts;
+    private final List<Account> _accounts = new CopyOnWriteArrayList<Account>();
 
 
     // Constructors
@@ -52,9 +62,6 @@ public class AccountManager {
      * @return A list of accounts.
      */
     public List<Account> getAccounts() {
-	if( _accounts == null) {  // If the accounts were not fetched already.
-	    _accounts = new ArrayList<Account>();  // Create a new list of accounts.
-	}
 	return _accounts;
     }
 
@@ -87,10 +94,10 @@ public class AccountManager {
 	// If we got no results so far, maybe the account of this trade site were not fetched yet?
 	if( result.isEmpty()) {
 
-	    Collection<TradeSiteAccount> siteAccounts = tradeSite.getAccounts( null);
+	    Collection<TradeSiteAccount> siteAccounts = getAccounts( tradeSite, null);
 	    
 	    if( siteAccounts != null) {
-		_accounts.addAll( siteAccounts);  // Add the collection of fetched accounts, if there are any.
+		storeAccounts( tradeSite, siteAccounts);  // Add the collection of fetched accounts, if there are any.
 
 		result.addAll( siteAccounts);
 
@@ -102,6 +109,21 @@ public class AccountManager {
 	return result;  // 
     }
 
+    /**
+     * Get the accounts of a user on a given trade site.
+     * The accounts are cached for a while and concurrent requests for the same
+     * accounts are coalesced into a single request to the trade site.
+     *
+     * @param tradeSite The trade site to query.
+     * @param userAccount The user account to query or null for the default account of the trade site.
+     *
+     * @return The accounts of the user or null, if they could not be fetched.
+     */
+    public Collection<TradeSiteAccount> getAccounts( TradeSite tradeSite, TradeSiteUserAccount userAccount) {
+
+	return _accountCache.getAccounts( tradeSite, userAccount);
+    }
+
     /**
      * Get the balance for a given trade site and currency.
      *
@@ -121,6 +143,81 @@ public class AccountManager {
 	return null;  // No matching account was found.
     }
 
+    /**
+     * Get the balance of a user for a given trade site and currency.
+     *
+     * @param tradeSite The trade site to query.
+     * @param userAccount The user account to query or null for the default account of the trade site.
+     * @param currency The currency to query.
+     *
+     * @return The balance for the given currency or null, if no matching account was found.
+     */
+    public BigDecimal getBalance( TradeSite tradeSite, TradeSiteUserAccount userAccount, Currency currency) {
+
+	Collection<TradeSiteAccount> siteAccounts = getAccounts( tradeSite, userAccount);
+
+	if( siteAccounts != null) {
+
+	    for( TradeSiteAccount account : siteAccounts) {  // Loop over the accounts.
+		if( currency.equals( account.getCurrency())) {  // If this is an account for the given currency,
+		    return account.getBalance();                // return the balance of this account.
+		}
+	    }
+	}
+	return null;  // No matching account was found.
+    }
+
+    /**
+     * Invalidate the cached accounts of a user on all trade sites, i.e. after an own order was filled.
+     *
+     * @param userAccount The user account or null for the default accounts.
+     */
+    public void invalidateAccounts( TradeSiteUserAccount userAccount) {
+
+	_accountCache.invalidate( userAccount);
+    }
+
+    /**
+     * Invalidate the cached accounts of a user on a given trade site, i.e. after an own order was filled.
+     *
+     * @param tradeSite The trade site.
+     * @param userAccount The user account or null for the default account.
+     */
+    public void invalidateAccounts( TradeSite tradeSite, TradeSiteUserAccount userAccount) {
+
+	_accountCache.invalidate( tradeSite, userAccount);
+    }
+
+    /**
+     * Set the time, the fetched accounts of a trade site are cached.
+     * This should match the request limits of the trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param timeToLive The time to live of the cached accounts in microseconds.
+     */
+    public void setAccountTimeToLive( TradeSite tradeSite, long timeToLive) {
+
+	_accountCache.setTimeToLive( tradeSite, timeToLive);
+    }
+
+    /**
+     * Replace the stored accounts of a trade site with new accounts.
+     *
+     * @param tradeSite The trade site.
+     * @param siteAccounts The new accounts of the trade site.
+     */
+    private synchronized void storeAccounts( TradeSite tradeSite, Collection<TradeSiteAccount> siteAccounts) {
+
+	// Remove the old accounts of this trade site.
+	for( Account account : _accounts) {
+	    if( ( account instanceof TradeSiteAccount) && tradeSite.equals( ( (TradeSiteAccount)account).getTradeSite())) {
+		_accounts.remove( account);
+	    }
+	}
+
+	_accounts.addAll( siteAccounts);  // Add the collection of fetched accounts.
+    }
+
     /**
      * Update the accounts for a given tradesite.
      *
@@ -128,10 +225,10 @@ public class AccountManager {
      */
     public void updateAccounts( TradeSite tradeSite) {
 
-	Collection<TradeSiteAccount> siteAccounts = tradeSite.getAccounts( null);
+	Collection<TradeSiteAccount> siteAccounts = getAccounts( tradeSite, null);
 	
 	if( siteAccounts != null) {
-	    _accounts.addAll( siteAccounts);  // Add the collection of fetched accounts, if there are any.
+	    storeAccounts( tradeSite, siteAccounts);  // Add the collection of fetched accounts, if there are any.
 	}	
     }
 
@@ -140,17 +237,10 @@ public class AccountManager {
      */
     public void updateAllAccounts() {
 
-	// Create an array list for the result.
-	List<Account> _accounts = new ArrayList<Account>();
-
 	// Loop over all the registered trade sites.
 	for( TradeSite tradeSite : ModuleLoader.getInstance().getRegisteredTradeSites().values()) {
 
-	    Collection<TradeSiteAccount> siteAccounts = tradeSite.getAccounts( null);
-	    
-	    if( siteAccounts != null) {
-		_accounts.addAll( siteAccounts);  // Add the collection of fetched accounts, if there are any.
-	    }
+	    updateAccounts( tradeSite);
 	}
     }
 }
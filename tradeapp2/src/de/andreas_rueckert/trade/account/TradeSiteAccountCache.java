@@ -0,0 +1,313 @@
+/**
+ * Java implementation of a cache for trade site accounts.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.account;
+
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
+import de.andreas_rueckert.util.Clock;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * This class caches the fetched accounts (funds) of trade site users.
+ *
+ * Each (trade site, user account) entry expires after a time to live.
+ * Concurrent requests for the same entry are coalesced, so only one
+ * request is sent to the exchange, while the other callers wait for its
+ * result. This should avoid IP bans, if several bots query their funds
+ * in a very short timespan.
+ */
+class TradeSiteAccountCache {
+
+    // Inner classes
+
+    /**
+     * A cached fetch of the accounts.
+     */
+    class CacheEntry {
+
+	// Instance variables
+
+	/**
+	 * The time of the fetch in microseconds.
+	 */
+	private volatile long _fetchTime = -1L;
+
+	/**
+	 * The actual fetch of the accounts.
+	 */
+	private final FutureTask< Collection<TradeSiteAccount>> _fetch;
+
+
+	// Constructors
+
+	/**
+	 * Create a new cache entry.
+	 *
+	 * @param tradeSite The trade site to query.
+	 * @param userAccount The user account to query.
+	 */
+	CacheEntry( final TradeSite tradeSite, final TradeSiteUserAccount userAccount) {
+
+	    _fetch = new FutureTask< Collection<TradeSiteAccount>>( new Callable< Collection<TradeSiteAccount>>() {
+
+		    @Override public Collection<TradeSiteAccount> call() {
+
+			Collection<TradeSiteAccount> result = tradeSite.getAccounts( userAccount);
+
+			_fetchTime = Clock.getInstance().getCurrentTimeMicros();
+
+			return result;
+		    }
+		});
+	}
+
+
+	// Methods
+
+	/**
+	 * Check, if this entry is expired.
+	 *
+	 * @param timeToLive The time to live in microseconds.
+	 *
+	 * @return true, if this entry is expired. False otherwise.
+	 */
+	boolean isExpired( long timeToLive) {
+
+	    if( ! _fetch.isDone()) {
+
+		return false;  // The fetch is still running, so just wait for it.
+	    }
+
+	    return ( Clock.getInstance().getCurrentTimeMicros() - _fetchTime) > timeToLive;
+	}
+    }
+
+    /**
+     * The key for a trade site and user account.
+     */
+    class CacheKey {
+
+	// Instance variables
+
+	/**
+	 * The trade site.
+	 */
+	private final TradeSite _tradeSite;
+
+	/**
+	 * The user account (might be null for the default account of a trade site).
+	 */
+	private final TradeSiteUserAccount _userAccount;
+
+
+	// Constructors
+
+	/**
+	 * Create a new cache key.
+	 *
+	 * @param tradeSite The trade site.
+	 * @param userAccount The user account or null.
+	 */
+	CacheKey( TradeSite tradeSite, TradeSiteUserAccount userAccount) {
+
+	    _tradeSite = tradeSite;
+	    _userAccount = userAccount;
+	}
+
+
+	// Methods
+
+	/**
+	 * Check, if this key equals another object.
+	 *
+	 * @param object The object to compare.
+	 *
+	 * @return true, if the object is an equal key. False otherwise.
+	 */
+	@Override public boolean equals( Object object) {
+
+	    if( ! ( object instanceof CacheKey)) {
+
+		return false;
+	    }
+
+	    CacheKey key = (CacheKey)object;
+
+	    return _tradeSite.equals( key._tradeSite)
+		&& ( _userAccount == null ? key._userAccount == null : _userAccount.equals( key._userAccount));
+	}
+
+	/**
+	 * Get a hash code for this key.
+	 *
+	 * @return The hash code for this key.
+	 */
+	@Override public int hashCode() {
+
+	    return 31 * _tradeSite.hashCode() + ( _userAccount == null ? 0 : _userAccount.hashCode());
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The default time to live of the cached accounts in microseconds.
+     */
+    static final long DEFAULT_TIME_TO_LIVE = 30L * 1000000L;
+
+
+    // Instance variables
+
+    /**
+     * The cached accounts.
+     */
+    private final ConcurrentMap< CacheKey, CacheEntry> _cache = new ConcurrentHashMap< CacheKey, CacheEntry>();
+
+    /**
+     * The time to live for each trade site in microseconds.
+     */
+    private final Map< TradeSite, Long> _timeToLive = new ConcurrentHashMap< TradeSite, Long>();
+
+
+    // Constructors
+
+
+    // Methods
+
+    /**
+     * Get the accounts for a given trade site and user account.
+     * If the cached accounts are still valid, they are returned. Otherwise
+     * they are fetched once from the trade site, even if several threads
+     * request them at the same time.
+     *
+     * @param tradeSite The trade site to query.
+     * @param userAccount The user account to query or null for the default account.
+     *
+     * @return The accounts or null, if they could not be fetched.
+     */
+    Collection<TradeSiteAccount> getAccounts( TradeSite tradeSite, TradeSiteUserAccount userAccount) {
+
+	CacheKey key = new CacheKey( tradeSite, userAccount);
+
+	CacheEntry entry = _cache.get( key);
+
+	if( ( entry == null) || entry.isExpired( getTimeToLive( tradeSite))) {
+
+	    CacheEntry newEntry = new CacheEntry( tradeSite, userAccount);
+
+	    // Install the new entry, unless another thread was faster.
+	    boolean installed = ( entry == null) ? ( _cache.putIfAbsent( key, newEntry) == null) : _cache.replace( key, entry, newEntry);
+
+	    if( installed) {
+
+		newEntry._fetch.run();  // This thread does the actual request.
+
+		entry = newEntry;
+
+	    } else {
+
+		entry = _cache.get( key);
+
+		if( entry == null) {  // The entry was invalidated in the meantime, so just try again.
+
+		    return getAccounts( tradeSite, userAccount);
+		}
+	    }
+	}
+
+	try {
+
+	    Collection<TradeSiteAccount> result = entry._fetch.get();
+
+	    if( result == null) {  // Don't cache failed requests.
+
+		_cache.remove( key, entry);
+	    }
+
+	    return result;
+
+	} catch( InterruptedException ie) {
+
+	    Thread.currentThread().interrupt();
+
+	    return null;
+
+	} catch( ExecutionException ee) {
+
+	    _cache.remove( key, entry);  // Don't cache failed requests.
+
+	    if( ee.getCause() instanceof RuntimeException) {
+
+		throw (RuntimeException)ee.getCause();  // Let the caller handle the original exception.
+	    }
+
+	    throw new IllegalStateException( "Cannot fetch accounts from " + tradeSite.getName(), ee.getCause());
+	}
+    }
+
+    /**
+     * Get the time to live for the accounts of a trade site.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The time to live in microseconds.
+     */
+    long getTimeToLive( TradeSite tradeSite) {
+
+	Long timeToLive = _timeToLive.get( tradeSite);
+
+	return timeToLive == null ? DEFAULT_TIME_TO_LIVE : timeToLive;
+    }
+
+    /**
+     * Invalidate the cached accounts of a user account on all trade sites.
+     *
+     * @param userAccount The user account.
+     */
+    void invalidate( TradeSiteUserAccount userAccount) {
+
+	for( CacheKey key : _cache.keySet()) {
+
+	    if( userAccount == null ? key._userAccount == null : userAccount.equals( key._userAccount)) {
+
+		_cache.remove( key);
+	    }
+	}
+    }
+
+    /**
+     * Invalidate the cached accounts of a trade site and user account.
+     *
+     * @param tradeSite The trade site.
+     * @param userAccount The user account.
+     */
+    void invalidate( TradeSite tradeSite, TradeSiteUserAccount userAccount) {
+
+	_cache.remove( new CacheKey( tradeSite, userAccount));
+    }
+
+    /**
+     * Set the time to live for the accounts of a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param timeToLive The time to live in microseconds.
+     */
+    void setTimeToLive( TradeSite tradeSite, long timeToLive) {
+
+	_timeToLive.put( tradeSite, timeToLive);
+    }
+}
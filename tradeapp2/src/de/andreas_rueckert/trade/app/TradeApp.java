@@ -197,19 +197,35 @@ public class TradeApp {
 
 	ArrayList<RuleSetFile> ruleSetsToExecute = new ArrayList<RuleSetFile>();
 
+	long ruleLoadStart = System.currentTimeMillis();
+
 	for( String filename : _rulefilesToLoad) {
 	     try {  // Try to create a new character set from the given file.
 
 		 RuleSetFile newRuleSetFile = new RuleSetFile( new File( filename));  // Create the file.
 
-		 TradeApp.getApp().addProjectFile( newRuleSetFile);  // Add the rule set to the project.
-
 		 ruleSetsToExecute.add( newRuleSetFile);  // Add it to the list of rule sets to be executed.
             } catch( IOException ioe) {
 		 _logger.error( "Cannot read rule set from file: " + filename + " " + ioe.getMessage());
             }
 	}
 
+	// Compile the changed rule sets in parallel, while the unchanged ones are loaded from the package cache.
+	getTradeBot().precompileRules( ruleSetsToExecute);
+
+	for( RuleSetFile ruleSet : ruleSetsToExecute) {
+
+	    TradeApp.getApp().addProjectFile( ruleSet);  // Add the rule set to the project.
+	}
+
+	if( ! ruleSetsToExecute.isEmpty()) {
+
+	    // Report the startup time, so cold (compiled) and warm (cached) starts can be compared.
+	    _logger.info( "Loaded " + ruleSetsToExecute.size() + " rule sets in " + ( System.currentTimeMillis() - ruleLoadStart) + " ms ("
+			  + getTradeBot().getPackageCache().getCacheHits() + " from the package cache, "
+			  + getTradeBot().getPackageCache().getCompilations() + " compiled)");
+	}
+
 	// Now execute all the the rule sets for the first time.
 	// Is this a hack? Should this be triggered by the chart provider?
 	for( RuleSetFile ruleSet : ruleSetsToExecute) {
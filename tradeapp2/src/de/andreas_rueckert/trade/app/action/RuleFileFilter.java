@@ -54,7 +54,8 @@ public class RuleFileFilter extends FileFilter {
 
         return ( extension != null) && ( extension.equals( "xml") 
 					 || extension.equals( "drl")
-					 || extension.equals( "ctl"));
+					 || extension.equals( "ctl")
+					 || extension.equals( "trl"));
     }
 
     /**
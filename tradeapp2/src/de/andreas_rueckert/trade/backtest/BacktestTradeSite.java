@@ -0,0 +1,711 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.backtest;
+
+import de.andreas_rueckert.persistence.PersistentPropertyList;
+import de.andreas_rueckert.trade.account.TradeSiteAccount;
+import de.andreas_rueckert.trade.account.TradeSiteAccountImpl;
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.order.OrderStatus;
+import de.andreas_rueckert.trade.order.OrderType;
+import de.andreas_rueckert.trade.order.SiteOrder;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
+import de.andreas_rueckert.trade.Ticker;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.util.Clock;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * A simulated trade site for backtests.
+ *
+ * The site is fed with recorded trades and depths and only shows the data, that
+ * was recorded before the current (simulated) time. Orders become active after
+ * a configurable latency and are filled at their limit price, once the recorded
+ * depth or a recorded trade crosses the limit. The fee is deducted from the
+ * received funds.
+ */
+public class BacktestTradeSite implements TradeSite {
+
+    // Inner classes
+
+    /**
+     * An order, that was submitted to the simulated site.
+     */
+    private class SimulatedOrder {
+
+	// Instance variables
+
+	/**
+	 * The time in microseconds, when the order reaches the order book of the site.
+	 */
+	final long _activationTime;
+
+	/**
+	 * The submitted order.
+	 */
+	final SiteOrder _order;
+
+	/**
+	 * The reserved funds (currency for sell orders, payment currency for buy orders).
+	 */
+	final BigDecimal _reserved;
+
+
+	// Constructors
+
+	/**
+	 * Create a new simulated order.
+	 *
+	 * @param order The submitted order.
+	 * @param activationTime The time, when the order becomes active.
+	 * @param reserved The reserved funds.
+	 */
+	SimulatedOrder( SiteOrder order, long activationTime, BigDecimal reserved) {
+
+	    _order = order;
+	    _activationTime = activationTime;
+	    _reserved = reserved;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The default fee in percent.
+     */
+    public static final BigDecimal DEFAULT_FEE = new BigDecimal( "0.2");
+
+    /**
+     * The default latency of the order execution in microseconds.
+     */
+    public static final long DEFAULT_LATENCY = 500L * 1000L;
+
+    /**
+     * The initial capacity of the trade history.
+     */
+    private static final int INITIAL_HISTORY_CAPACITY = 1024;
+
+
+    // Instance variables
+
+    /**
+     * The filled amount of the buy orders.
+     */
+    private BigDecimal _boughtAmount = BigDecimal.ZERO;
+
+    /**
+     * The paid value of the filled buy orders (without fees).
+     */
+    private BigDecimal _boughtValue = BigDecimal.ZERO;
+
+    /**
+     * The available balance of the currency.
+     */
+    private BigDecimal _currencyBalance;
+
+    /**
+     * The simulated currency pair.
+     */
+    private final CurrencyPair _currencyPair;
+
+    /**
+     * The most recent recorded depth.
+     */
+    private Depth _currentDepth = null;
+
+    /**
+     * The number of filled orders.
+     */
+    private int _filledOrderCount = 0;
+
+    /**
+     * The fee in percent.
+     */
+    private BigDecimal _fee = DEFAULT_FEE;
+
+    /**
+     * The latency of the order execution in microseconds.
+     */
+    private long _latency = DEFAULT_LATENCY;
+
+    /**
+     * The open orders of the simulated account.
+     */
+    private final List<SimulatedOrder> _openOrders = new ArrayList<SimulatedOrder>();
+
+    /**
+     * The available balance of the payment currency.
+     */
+    private BigDecimal _paymentCurrencyBalance;
+
+    /**
+     * The filled amount of the sell orders.
+     */
+    private BigDecimal _soldAmount = BigDecimal.ZERO;
+
+    /**
+     * The received value of the filled sell orders (without fees).
+     */
+    private BigDecimal _soldValue = BigDecimal.ZERO;
+
+    /**
+     * The number of submitted orders.
+     */
+    private int _submittedOrderCount = 0;
+
+    /**
+     * The number of recorded trades in the history.
+     */
+    private int _tradeCount = 0;
+
+    /**
+     * The recorded trades, sorted by timestamp.
+     */
+    private Trade [] _trades = new Trade[ INITIAL_HISTORY_CAPACITY];
+
+    /**
+     * The timestamps of the recorded trades, to search them without touching the trade objects.
+     */
+    private long [] _tradeTimestamps = new long[ INITIAL_HISTORY_CAPACITY];
+
+
+    // Constructors
+
+    /**
+     * Create a new simulated trade site.
+     *
+     * @param currencyPair The simulated currency pair.
+     * @param currencyBalance The initial balance of the currency.
+     * @param paymentCurrencyBalance The initial balance of the payment currency.
+     */
+    public BacktestTradeSite( CurrencyPair currencyPair, BigDecimal currencyBalance, BigDecimal paymentCurrencyBalance) {
+
+	_currencyPair = currencyPair;
+	_currencyBalance = currencyBalance;
+	_paymentCurrencyBalance = paymentCurrencyBalance;
+    }
+
+
+    // Methods
+
+    /**
+     * Add a recorded depth and fill the active orders, that it crosses.
+     *
+     * @param depth The recorded depth.
+     */
+    public synchronized void addDepth( Depth depth) {
+
+	_currentDepth = depth;
+
+	Price bestBid = depth.getBuySize() > 0 ? depth.getBuy( 0).getPrice() : null;
+	Price bestAsk = depth.getSellSize() > 0 ? depth.getSell( 0).getPrice() : null;
+
+	fillOrders( bestBid, bestAsk, depth.getTimestamp());
+    }
+
+    /**
+     * Add a recorded trade and fill the active orders, that it crosses.
+     *
+     * @param trade The recorded trade.
+     */
+    public synchronized void addTrade( Trade trade) {
+
+	if( _tradeCount == _trades.length) {  // Grow the history.
+
+	    Trade [] trades = new Trade[ _trades.length * 2];
+	    long [] timestamps = new long[ _trades.length * 2];
+
+	    System.arraycopy( _trades, 0, trades, 0, _tradeCount);
+	    System.arraycopy( _tradeTimestamps, 0, timestamps, 0, _tradeCount);
+
+	    _trades = trades;
+	    _tradeTimestamps = timestamps;
+	}
+
+	_trades[ _tradeCount] = trade;
+	_tradeTimestamps[ _tradeCount++] = trade.getTimestamp();
+
+	// A trade at a price fills buy orders at or above and sell orders at or below this price.
+	fillOrders( trade.getPrice(), trade.getPrice(), trade.getTimestamp());
+    }
+
+    /**
+     * Cancel an open order.
+     *
+     * @param order The order to cancel.
+     *
+     * @return true, if the order was canceled. False, if it was not open (anymore).
+     */
+    public synchronized boolean cancelOrder( SiteOrder order) {
+
+	for( Iterator<SimulatedOrder> orderIterator = _openOrders.iterator(); orderIterator.hasNext(); ) {
+
+	    SimulatedOrder currentOrder = orderIterator.next();
+
+	    if( currentOrder._order == order) {
+
+		orderIterator.remove();
+
+		if( order.getOrderType() == OrderType.BUY) {
+
+		    _paymentCurrencyBalance = _paymentCurrencyBalance.add( currentOrder._reserved);
+
+		} else {
+
+		    _currencyBalance = _currencyBalance.add( currentOrder._reserved);
+		}
+
+		order.setStatus( OrderStatus.CANCELED);
+
+		return true;
+	    }
+	}
+
+	return false;
+    }
+
+    /**
+     * Submit an order to the simulated site.
+     *
+     * @param order The order to submit.
+     *
+     * @return The new status of the order.
+     */
+    public synchronized OrderStatus executeOrder( SiteOrder order) {
+
+	if( ! _currencyPair.isEqual( order.getCurrencyPair())
+	    || ( ( order.getOrderType() != OrderType.BUY) && ( order.getOrderType() != OrderType.SELL))) {
+
+	    order.setStatus( OrderStatus.ERROR);
+
+	    return OrderStatus.ERROR;
+	}
+
+	BigDecimal reserved;
+
+	if( order.getOrderType() == OrderType.BUY) {
+
+	    reserved = order.getAmount().multiply( order.getPrice());
+
+	    if( reserved.compareTo( _paymentCurrencyBalance) > 0) {
+
+		order.setStatus( OrderStatus.ERROR);
+
+		return OrderStatus.ERROR;
+	    }
+
+	    _paymentCurrencyBalance = _paymentCurrencyBalance.subtract( reserved);
+
+	} else {
+
+	    reserved = order.getAmount();
+
+	    if( reserved.compareTo( _currencyBalance) > 0) {
+
+		order.setStatus( OrderStatus.ERROR);
+
+		return OrderStatus.ERROR;
+	    }
+
+	    _currencyBalance = _currencyBalance.subtract( reserved);
+	}
+
+	_openOrders.add( new SimulatedOrder( order, Clock.getInstance().getCurrentTimeMicros() + _latency, reserved));
+
+	++_submittedOrderCount;
+
+	order.setStatus( OrderStatus.SUBMITTED);
+
+	return OrderStatus.SUBMITTED;
+    }
+
+    /**
+     * Fill all the active orders, that are crossed by the given prices.
+     *
+     * @param sellFillPrice Sell orders at or below this price are filled (the best bid), or null.
+     * @param buyFillPrice Buy orders at or above this price are filled (the best ask), or null.
+     * @param timestamp The timestamp of the market data in microseconds.
+     */
+    private void fillOrders( Price sellFillPrice, Price buyFillPrice, long timestamp) {
+
+	BigDecimal feeFactor = BigDecimal.ONE.subtract( _fee.divide( new BigDecimal( "100"), MathContext.DECIMAL64));
+
+	for( Iterator<SimulatedOrder> orderIterator = _openOrders.iterator(); orderIterator.hasNext(); ) {
+
+	    SimulatedOrder currentOrder = orderIterator.next();
+
+	    if( currentOrder._activationTime > timestamp) {  // The order did not reach the site yet.
+
+		continue;
+	    }
+
+	    SiteOrder order = currentOrder._order;
+
+	    if( order.getOrderType() == OrderType.BUY) {
+
+		if( ( buyFillPrice != null) && ( buyFillPrice.compareTo( order.getPrice()) <= 0)) {
+
+		    _currencyBalance = _currencyBalance.add( order.getAmount().multiply( feeFactor));
+
+		    _boughtAmount = _boughtAmount.add( order.getAmount());
+		    _boughtValue = _boughtValue.add( order.getAmount().multiply( order.getPrice()));
+		    ++_filledOrderCount;
+
+		    order.setStatus( OrderStatus.FILLED);
+
+		    orderIterator.remove();
+		}
+
+	    } else if( ( sellFillPrice != null) && ( sellFillPrice.compareTo( order.getPrice()) >= 0)) {
+
+		_paymentCurrencyBalance = _paymentCurrencyBalance.add( order.getAmount().multiply( order.getPrice()).multiply( feeFactor));
+
+		_soldAmount = _soldAmount.add( order.getAmount());
+		_soldValue = _soldValue.add( order.getAmount().multiply( order.getPrice()));
+		++_filledOrderCount;
+
+		order.setStatus( OrderStatus.FILLED);
+
+		orderIterator.remove();
+	    }
+	}
+    }
+
+    /**
+     * Get the available balances of the simulated account.
+     *
+     * @param userAccount The user account (ignored, since there is only one simulated account).
+     *
+     * @return The balances of the currency and the payment currency.
+     */
+    public synchronized Collection<TradeSiteAccount> getAccounts( TradeSiteUserAccount userAccount) {
+
+	List<TradeSiteAccount> result = new ArrayList<TradeSiteAccount>( 2);
+
+	result.add( new TradeSiteAccountImpl( _currencyBalance, _currencyPair.getCurrency(), this));
+	result.add( new TradeSiteAccountImpl( _paymentCurrencyBalance, _currencyPair.getPaymentCurrency(), this));
+
+	return result;
+    }
+
+    /**
+     * Get the current depth.
+     *
+     * @param currencyPair The currency pair to query.
+     *
+     * @return The most recent depth before the current simulated time.
+     */
+    public synchronized Depth getDepth( CurrencyPair currencyPair) {
+
+	if( ( _currentDepth == null) || ! _currencyPair.isEqual( currencyPair)) {
+
+	    throw new TradeDataNotAvailableException( "No recorded depth for " + currencyPair.getName());
+	}
+
+	return _currentDepth;
+    }
+
+    /**
+     * Get the current depths of some currency pairs.
+     *
+     * @param currencyPairs The currency pairs to query.
+     *
+     * @return The most recent depths.
+     */
+    public List<Depth> getDepths( CurrencyPair [] currencyPairs) {
+
+	List<Depth> result = new ArrayList<Depth>( currencyPairs.length);
+
+	for( CurrencyPair currentPair : currencyPairs) {
+
+	    result.add( getDepth( currentPair));
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the fee for an order.
+     *
+     * @param order The order.
+     *
+     * @return The fee for the order in the payment currency.
+     */
+    public synchronized Price getFeeForOrder( SiteOrder order) {
+
+	return new Price( order.getAmount().multiply( order.getPrice()).multiply( _fee).divide( new BigDecimal( "100"), MathContext.DECIMAL64));
+    }
+
+    /**
+     * Get the fee for a trade.
+     *
+     * @return The fee in percent.
+     */
+    public synchronized BigDecimal getFeeForTrade() {
+
+	return _fee;
+    }
+
+    /**
+     * Get the share of the submitted orders, that were filled.
+     *
+     * @return The fill rate between 0 and 1, or 0, if no order was submitted.
+     */
+    public synchronized double getFillRate() {
+
+	return _submittedOrderCount == 0 ? 0.0 : (double)_filledOrderCount / _submittedOrderCount;
+    }
+
+    /**
+     * Get the number of filled orders.
+     *
+     * @return The number of filled orders.
+     */
+    public synchronized int getFilledOrderCount() {
+
+	return _filledOrderCount;
+    }
+
+    /**
+     * Get the name of this site.
+     *
+     * @return The name of this site.
+     */
+    public String getName() {
+
+	return "Backtest";
+    }
+
+    /**
+     * Get the open orders of the simulated account.
+     *
+     * @param userAccount The user account (ignored, since there is only one simulated account).
+     *
+     * @return The open orders, including the orders, that did not reach the site yet.
+     */
+    public synchronized Collection<SiteOrder> getOpenOrders( TradeSiteUserAccount userAccount) {
+
+	List<SiteOrder> result = new ArrayList<SiteOrder>( _openOrders.size());
+
+	for( SimulatedOrder currentOrder : _openOrders) {
+
+	    result.add( currentOrder._order);
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the section name in the global property file.
+     *
+     * @return The name of the property section.
+     */
+    public String getPropertySectionName() {
+
+	return "Backtest";
+    }
+
+    /**
+     * Get the realized spread, i.e. the difference between the average sell price and the
+     * average buy price of the filled orders, relative to the average buy price.
+     *
+     * @return The realized spread in percent or 0, if there were no filled buy and sell orders.
+     */
+    public synchronized double getRealizedSpread() {
+
+	if( ( _boughtAmount.signum() == 0) || ( _soldAmount.signum() == 0)) {
+
+	    return 0.0;
+	}
+
+	double averageBuyPrice = _boughtValue.doubleValue() / _boughtAmount.doubleValue();
+	double averageSellPrice = _soldValue.doubleValue() / _soldAmount.doubleValue();
+
+	return ( averageSellPrice - averageBuyPrice) / averageBuyPrice * 100.0;
+    }
+
+    /**
+     * Get the current settings of this site.
+     *
+     * @return The current settings of this site.
+     */
+    public PersistentPropertyList getSettings() {
+
+	return new PersistentPropertyList();
+    }
+
+    /**
+     * Get the number of submitted orders.
+     *
+     * @return The number of submitted orders.
+     */
+    public synchronized int getSubmittedOrderCount() {
+
+	return _submittedOrderCount;
+    }
+
+    /**
+     * Get the supported currency pairs.
+     *
+     * @return The simulated currency pair.
+     */
+    public CurrencyPair [] getSupportedCurrencyPairs() {
+
+	return new CurrencyPair[] { _currencyPair };
+    }
+
+    /**
+     * Get the current ticker.
+     *
+     * @param currencyPair The currency pair to query.
+     *
+     * @return A ticker built from the current depth and the last trade.
+     */
+    public synchronized Ticker getTicker( CurrencyPair currencyPair) {
+
+	final Depth depth = getDepth( currencyPair);
+	final Price last = _tradeCount > 0 ? _trades[ _tradeCount - 1].getPrice() : null;
+
+	return new Ticker() {
+
+	    public Price getBuy() {
+
+		return depth.getBuySize() > 0 ? depth.getBuy( 0).getPrice() : null;
+	    }
+
+	    public CurrencyPair getCurrencyPair() {
+
+		return _currencyPair;
+	    }
+
+	    public Price getLast() {
+
+		return last;
+	    }
+
+	    public Price getSell() {
+
+		return depth.getSellSize() > 0 ? depth.getSell( 0).getPrice() : null;
+	    }
+
+	    public long getTimestamp() {
+
+		return depth.getTimestamp();
+	    }
+
+	    public Amount getVolume() {
+
+		return null;  // Not recorded.
+	    }
+	};
+    }
+
+    /**
+     * Get the recorded trades since a given time.
+     *
+     * @param since The start time in microseconds.
+     * @param currencyPair The currency pair to query.
+     *
+     * @return The trades since the given time and before the current simulated time.
+     */
+    public synchronized List<Trade> getTrades( long since, CurrencyPair currencyPair) {
+
+	if( ! _currencyPair.isEqual( currencyPair)) {
+
+	    throw new TradeDataNotAvailableException( "No recorded trades for " + currencyPair.getName());
+	}
+
+	// Binary search for the first trade after the start time.
+	int low = 0;
+	int high = _tradeCount;
+
+	while( low < high) {
+
+	    int middle = ( low + high) >>> 1;
+
+	    if( _tradeTimestamps[ middle] <= since) {
+
+		low = middle + 1;
+
+	    } else {
+
+		high = middle;
+	    }
+	}
+
+	List<Trade> result = new ArrayList<Trade>( _tradeCount - low);
+
+	for( int currentIndex = low; currentIndex < _tradeCount; ++currentIndex) {
+
+	    result.add( _trades[ currentIndex]);
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the URL of this site.
+     *
+     * @return null, since the simulated site has no URL.
+     */
+    public String getURL() {
+
+	return null;
+    }
+
+    /**
+     * Get the update interval of this site.
+     *
+     * @return 0, since the simulated site can be queried at any time.
+     */
+    public long getUpdateInterval() {
+
+	return 0L;
+    }
+
+    /**
+     * Set a new fee.
+     *
+     * @param fee The new fee in percent.
+     */
+    public synchronized void setFee( BigDecimal fee) {
+
+	_fee = fee;
+    }
+
+    /**
+     * Set a new latency of the order execution.
+     *
+     * @param latency The new latency in microseconds.
+     */
+    public synchronized void setLatency( long latency) {
+
+	_latency = latency;
+    }
+
+    /**
+     * Set new settings for this site. The simulated site has no settings.
+     *
+     * @param settings The new settings.
+     */
+    public void setSettings( PersistentPropertyList settings) {
+    }
+}
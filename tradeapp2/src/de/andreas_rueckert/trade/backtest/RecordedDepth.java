@@ -0,0 +1,206 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.backtest;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.NotEnoughOrdersException;
+import de.andreas_rueckert.trade.order.DepthOrder;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSite;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+
+
+/**
+ * A depth, that was read from a file with recorded market data.
+ */
+class RecordedDepth implements Depth {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The buy orders, with the best (highest) price first.
+     */
+    private final List<DepthOrder> _buyOrders;
+
+    /**
+     * The currency pair of the depth.
+     */
+    private final CurrencyPair _currencyPair;
+
+    /**
+     * The sell orders, with the best (lowest) price first.
+     */
+    private final List<DepthOrder> _sellOrders;
+
+    /**
+     * The timestamp of the depth in microseconds.
+     */
+    private final long _timestamp;
+
+    /**
+     * The trade site of the depth.
+     */
+    private final TradeSite _tradeSite;
+
+
+    // Constructors
+
+    /**
+     * Create a new recorded depth.
+     *
+     * @param tradeSite The trade site of the depth.
+     * @param currencyPair The currency pair of the depth.
+     * @param timestamp The timestamp of the depth in microseconds.
+     * @param buyOrders The buy orders, with the best price first.
+     * @param sellOrders The sell orders, with the best price first.
+     */
+    RecordedDepth( TradeSite tradeSite, CurrencyPair currencyPair, long timestamp, List<DepthOrder> buyOrders, List<DepthOrder> sellOrders) {
+
+	_tradeSite = tradeSite;
+	_currencyPair = currencyPair;
+	_timestamp = timestamp;
+	_buyOrders = buyOrders;
+	_sellOrders = sellOrders;
+    }
+
+
+    // Methods
+
+    /**
+     * Get a buy order.
+     *
+     * @param index The index of the buy order (0 is the best price).
+     *
+     * @return The buy order.
+     */
+    public DepthOrder getBuy( int index) {
+
+	return _buyOrders.get( index);
+    }
+
+    /**
+     * Get the buy orders.
+     *
+     * @return The buy orders, with the best price first.
+     */
+    public List<DepthOrder> getBuyOrders() {
+
+	return _buyOrders;
+    }
+
+    /**
+     * Get the number of buy orders.
+     *
+     * @return The number of buy orders.
+     */
+    public int getBuySize() {
+
+	return _buyOrders.size();
+    }
+
+    /**
+     * Get the currency pair of this depth.
+     *
+     * @return The currency pair of this depth.
+     */
+    public CurrencyPair getCurrencyPair() {
+
+	return _currencyPair;
+    }
+
+    /**
+     * Get the average price to buy or sell a given amount.
+     *
+     * @param amount The amount to trade.
+     * @param buy true, if the amount should be bought (from the sell orders).
+     *
+     * @return The average price for the amount.
+     *
+     * @throws NotEnoughOrdersException if the depth holds not enough orders for the amount.
+     */
+    public Price getPriceForAmount( Amount amount, boolean buy) throws NotEnoughOrdersException {
+
+	BigDecimal remainingAmount = amount;
+	BigDecimal totalPrice = BigDecimal.ZERO;
+
+	for( DepthOrder currentOrder : ( buy ? _sellOrders : _buyOrders)) {
+
+	    BigDecimal tradedAmount = remainingAmount.min( currentOrder.getAmount());
+
+	    totalPrice = totalPrice.add( tradedAmount.multiply( currentOrder.getPrice()));
+	    remainingAmount = remainingAmount.subtract( tradedAmount);
+
+	    if( remainingAmount.signum() <= 0) {
+
+		return new Price( totalPrice.divide( amount, MathContext.DECIMAL128));
+	    }
+	}
+
+	throw new NotEnoughOrdersException( "Not enough orders in the recorded depth to trade " + amount);
+    }
+
+    /**
+     * Get a sell order.
+     *
+     * @param index The index of the sell order (0 is the best price).
+     *
+     * @return The sell order.
+     */
+    public DepthOrder getSell( int index) {
+
+	return _sellOrders.get( index);
+    }
+
+    /**
+     * Get the sell orders.
+     *
+     * @return The sell orders, with the best price first.
+     */
+    public List<DepthOrder> getSellOrders() {
+
+	return _sellOrders;
+    }
+
+    /**
+     * Get the number of sell orders.
+     *
+     * @return The number of sell orders.
+     */
+    public int getSellSize() {
+
+	return _sellOrders.size();
+    }
+
+    /**
+     * Get the timestamp of this depth.
+     *
+     * @return The timestamp of this depth in microseconds.
+     */
+    public long getTimestamp() {
+
+	return _timestamp;
+    }
+
+    /**
+     * Get the trade site of this depth.
+     *
+     * @return The trade site of this depth.
+     */
+    public TradeSite getTradeSite() {
+
+	return _tradeSite;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.backtest;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.order.DepthOrder;
+import de.andreas_rueckert.trade.order.OrderStatus;
+import de.andreas_rueckert.trade.order.OrderType;
+import de.andreas_rueckert.trade.Price;
+
+
+/**
+ * An order of a recorded depth.
+ */
+class RecordedDepthOrder implements DepthOrder {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The amount of the order.
+     */
+    private final Amount _amount;
+
+    /**
+     * The type of the order.
+     */
+    private final OrderType _orderType;
+
+    /**
+     * The price of the order.
+     */
+    private final Price _price;
+
+    /**
+     * The status of the order.
+     */
+    private OrderStatus _status = OrderStatus.SUBMITTED;
+
+    /**
+     * The timestamp of the depth in microseconds.
+     */
+    private final long _timestamp;
+
+
+    // Constructors
+
+    /**
+     * Create a new order of a recorded depth.
+     *
+     * @param orderType The type of the order.
+     * @param price The price of the order.
+     * @param amount The amount of the order.
+     * @param timestamp The timestamp of the depth in microseconds.
+     */
+    RecordedDepthOrder( OrderType orderType, Price price, Amount amount, long timestamp) {
+
+	_orderType = orderType;
+	_price = price;
+	_amount = amount;
+	_timestamp = timestamp;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the amount of the order.
+     *
+     * @return The amount of the order.
+     */
+    public Amount getAmount() {
+
+	return _amount;
+    }
+
+    /**
+     * Get the id of the order. Depth orders have no id.
+     *
+     * @return null, since depth orders have no id.
+     */
+    public String getId() {
+
+	return null;
+    }
+
+    /**
+     * Get the type of the order.
+     *
+     * @return The type of the order.
+     */
+    public OrderType getOrderType() {
+
+	return _orderType;
+    }
+
+    /**
+     * Get the price of the order.
+     *
+     * @return The price of the order.
+     */
+    public Price getPrice() {
+
+	return _price;
+    }
+
+    /**
+     * Get the status of the order.
+     *
+     * @return The status of the order.
+     */
+    public OrderStatus getStatus() {
+
+	return _status;
+    }
+
+    /**
+     * Get the timestamp of the depth.
+     *
+     * @return The timestamp of the depth in microseconds.
+     */
+    public long getTimestamp() {
+
+	return _timestamp;
+    }
+
+    /**
+     * Set a new status of the order.
+     *
+     * @param status The new status.
+     */
+    public void setStatus( OrderStatus status) {
+
+	_status = status;
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.backtest;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.order.DepthOrder;
+import de.andreas_rueckert.trade.order.OrderType;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeType;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * This class reads recorded trades and depths of a currency pair from a local file.
+ *
+ * The file is read record by record, so even a month of ticks doesn't have to fit
+ * into memory. Each line holds one record, sorted by the timestamp:
+ *
+ * T,&lt;timestamp in microseconds&gt;,&lt;price&gt;,&lt;amount&gt;,&lt;B|S&gt;
+ * D,&lt;timestamp in microseconds&gt;,&lt;price&gt;:&lt;amount&gt;;...,&lt;price&gt;:&lt;amount&gt;;...
+ *
+ * A T record is a trade of a buyer (B) or seller (S). A D record is a depth with the
+ * buy orders and then the sell orders, each with the best price first. Empty lines and
+ * lines starting with # are ignored.
+ */
+public class RecordedMarketData {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The currency pair of the recorded data.
+     */
+    private final CurrencyPair _currencyPair;
+
+    /**
+     * The current depth, if the current record is a depth.
+     */
+    private Depth _currentDepth = null;
+
+    /**
+     * The timestamp of the current record in microseconds.
+     */
+    private long _currentTimestamp = -1L;
+
+    /**
+     * The current trade, if the current record is a trade.
+     */
+    private Trade _currentTrade = null;
+
+    /**
+     * The file with the recorded data.
+     */
+    private final File _file;
+
+    /**
+     * The number of the current line for error messages.
+     */
+    private long _lineNumber = 0L;
+
+    /**
+     * The reader for the file.
+     */
+    private BufferedReader _reader;
+
+    /**
+     * The trade site, that the depths belong to.
+     */
+    private final TradeSite _tradeSite;
+
+
+    // Constructors
+
+    /**
+     * Open a file with recorded market data.
+     *
+     * @param file The file with the recorded data.
+     * @param tradeSite The trade site, that the depths should belong to.
+     * @param currencyPair The currency pair of the recorded data.
+     *
+     * @throws IOException if the file cannot be opened.
+     */
+    public RecordedMarketData( File file, TradeSite tradeSite, CurrencyPair currencyPair) throws IOException {
+
+	_file = file;
+	_tradeSite = tradeSite;
+	_currencyPair = currencyPair;
+
+	_reader = new BufferedReader( new FileReader( file), 1 << 16);
+    }
+
+
+    // Methods
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    public void close() throws IOException {
+
+	if( _reader != null) {
+
+	    _reader.close();
+
+	    _reader = null;
+	}
+    }
+
+    /**
+     * Get the current depth.
+     *
+     * @return The current depth or null, if the current record is no depth.
+     */
+    public Depth getDepth() {
+
+	return _currentDepth;
+    }
+
+    /**
+     * Get the timestamp of the current record.
+     *
+     * @return The timestamp of the current record in microseconds.
+     */
+    public long getTimestamp() {
+
+	return _currentTimestamp;
+    }
+
+    /**
+     * Get the current trade.
+     *
+     * @return The current trade or null, if the current record is no trade.
+     */
+    public Trade getTrade() {
+
+	return _currentTrade;
+    }
+
+    /**
+     * Read the next record from the file.
+     *
+     * @return true, if there was another record. False at the end of the file.
+     *
+     * @throws IOException if the file cannot be read or holds a malformed record.
+     */
+    public boolean next() throws IOException {
+
+	if( _reader == null) {
+
+	    return false;
+	}
+
+	String line;
+
+	while( ( line = _reader.readLine()) != null) {
+
+	    ++_lineNumber;
+
+	    line = line.trim();
+
+	    if( line.isEmpty() || line.startsWith( "#")) {
+
+		continue;
+	    }
+
+	    try {
+
+		String [] fields = line.split( ",");
+
+		_currentTimestamp = Long.parseLong( fields[ 1]);
+
+		if( fields[ 0].equals( "T")) {
+
+		    _currentTrade = new RecordedTrade( _currencyPair
+						       , _currentTimestamp
+						       , new Price( fields[ 2])
+						       , new Amount( fields[ 3])
+						       , fields[ 4].equals( "B") ? TradeType.Buy : TradeType.Sell);
+		    _currentDepth = null;
+
+		    return true;
+
+		} else if( fields[ 0].equals( "D")) {
+
+		    _currentDepth = new RecordedDepth( _tradeSite
+						       , _currencyPair
+						       , _currentTimestamp
+						       , parseDepthOrders( fields.length > 2 ? fields[ 2] : "", OrderType.BUY)
+						       , parseDepthOrders( fields.length > 3 ? fields[ 3] : "", OrderType.SELL));
+		    _currentTrade = null;
+
+		    return true;
+		}
+
+		throw new IOException( "Unknown record type " + fields[ 0]);
+
+	    } catch( RuntimeException re) {  // Catches malformed numbers and missing fields.
+
+		throw new IOException( "Malformed record in " + _file + " at line " + _lineNumber + ": " + re);
+	    }
+	}
+
+	close();
+
+	return false;
+    }
+
+    /**
+     * Parse the orders of one side of a depth.
+     *
+     * @param orders The orders as price:amount pairs, separated by semicolons.
+     * @param orderType The type of the orders.
+     *
+     * @return The parsed orders.
+     */
+    private List<DepthOrder> parseDepthOrders( String orders, OrderType orderType) {
+
+	if( orders.isEmpty()) {
+
+	    return Collections.emptyList();
+	}
+
+	String [] entries = orders.split( ";");
+
+	List<DepthOrder> result = new ArrayList<DepthOrder>( entries.length);
+
+	for( String currentEntry : entries) {
+
+	    int separator = currentEntry.indexOf( ':');
+
+	    result.add( new RecordedDepthOrder( orderType
+						, new Price( currentEntry.substring( 0, separator))
+						, new Amount( currentEntry.substring( separator + 1))
+						, _currentTimestamp));
+	}
+
+	return result;
+    }
+}
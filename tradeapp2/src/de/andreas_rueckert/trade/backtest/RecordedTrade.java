@@ -0,0 +1,136 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.backtest;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeType;
+
+
+/**
+ * A trade, that was read from a file with recorded market data.
+ */
+class RecordedTrade implements Trade {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The traded amount.
+     */
+    private final Amount _amount;
+
+    /**
+     * The traded currency pair.
+     */
+    private final CurrencyPair _currencyPair;
+
+    /**
+     * The price of the trade.
+     */
+    private final Price _price;
+
+    /**
+     * The timestamp of the trade in microseconds.
+     */
+    private final long _timestamp;
+
+    /**
+     * The type of the trade.
+     */
+    private final TradeType _type;
+
+
+    // Constructors
+
+    /**
+     * Create a new recorded trade.
+     *
+     * @param currencyPair The traded currency pair.
+     * @param timestamp The timestamp of the trade in microseconds.
+     * @param price The price of the trade.
+     * @param amount The traded amount.
+     * @param type The type of the trade.
+     */
+    RecordedTrade( CurrencyPair currencyPair, long timestamp, Price price, Amount amount, TradeType type) {
+
+	_currencyPair = currencyPair;
+	_timestamp = timestamp;
+	_price = price;
+	_amount = amount;
+	_type = type;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the traded amount.
+     *
+     * @return The traded amount.
+     */
+    public Amount getAmount() {
+
+	return _amount;
+    }
+
+    /**
+     * Get the traded currency pair.
+     *
+     * @return The traded currency pair.
+     */
+    public CurrencyPair getCurrencyPair() {
+
+	return _currencyPair;
+    }
+
+    /**
+     * Get the id of the trade. Recorded trades are identified by their timestamp.
+     *
+     * @return The id of the trade.
+     */
+    public String getId() {
+
+	return String.valueOf( _timestamp);
+    }
+
+    /**
+     * Get the price of the trade.
+     *
+     * @return The price of the trade.
+     */
+    public Price getPrice() {
+
+	return _price;
+    }
+
+    /**
+     * Get the timestamp of the trade.
+     *
+     * @return The timestamp of the trade in microseconds.
+     */
+    public long getTimestamp() {
+
+	return _timestamp;
+    }
+
+    /**
+     * Get the type of the trade.
+     *
+     * @return The type of the trade.
+     */
+    public TradeType getType() {
+
+	return _type;
+    }
+}
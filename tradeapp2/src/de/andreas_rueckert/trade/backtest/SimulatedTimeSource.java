@@ -0,0 +1,68 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.backtest;
+
+import de.andreas_rueckert.util.TimeSource;
+
+
+/**
+ * A time source, that is set by the backtest instead of following the system clock.
+ */
+public class SimulatedTimeSource implements TimeSource {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The current simulated time in microseconds.
+     */
+    private volatile long _currentTime;
+
+
+    // Constructors
+
+    /**
+     * Create a new simulated time source.
+     *
+     * @param startTime The start time in microseconds.
+     */
+    public SimulatedTimeSource( long startTime) {
+
+	_currentTime = startTime;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the current simulated time.
+     *
+     * @return The current simulated time in microseconds.
+     */
+    public long getCurrentTimeMicros() {
+
+	return _currentTime;
+    }
+
+    /**
+     * Move the simulated time forward.
+     * The time never goes back, so a replay with unsorted records cannot confuse the bots.
+     *
+     * @param currentTime The new simulated time in microseconds.
+     */
+    public void setCurrentTimeMicros( long currentTime) {
+
+	if( currentTime > _currentTime) {
+
+	    _currentTime = currentTime;
+	}
+    }
+}
@@ -13,15 +13,16 @@ import de.andreas_rueckert.persistence.PersistentPropertyList;
 import de.andreas_rueckert.trade.account.TradeSiteAccount;
 import de.andreas_rueckert.trade.Amount;
 import de.andreas_rueckert.trade.app.TradeApp;
+import de.andreas_rueckert.trade.bot.triangle.TriangleEngine;
+import de.andreas_rueckert.trade.bot.triangle.TriangleEvaluation;
+import de.andreas_rueckert.trade.bot.triangle.TriangleListener;
 import de.andreas_rueckert.trade.bot.ui.TradeBotUI;
 import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
 import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
-import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.CryptoCoinOrderBook;
-import de.andreas_rueckert.trade.order.DepthOrder;
 import de.andreas_rueckert.trade.order.OrderBook;
 import de.andreas_rueckert.trade.order.OrderStatus;
 import de.andreas_rueckert.trade.order.OrderType;
@@ -43,9 +44,10 @@ import java.awt.event.ItemListener;
 import java.awt.Insets;
 import java.awt.Toolkit;
 import java.math.BigDecimal;
-import java.math.MathContext;
 import java.text.DecimalFormat;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import javax.swing.JButton;
@@ -60,7 +62,7 @@ import javax.swing.JTextField;
  * This is a (hacked) native bot specifically for the btc-e.com trading site.
  * It creates a JPanel, so it can be used directly in the main trading app.
  */
-public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, TradeBotUI {
+public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, TradeBotUI, TriangleListener {
 
     // Static variables
 
@@ -104,11 +106,6 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
      */
     private JTextField _btcUsdBuyField = null;
 
-    /**
-     * The btc / usd depth.
-     */
-    private Depth _btcUsdDepth = null;
-
     /**
      * The display for the btc/usd sell conversion rate.
      */
@@ -129,6 +126,16 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
      */
     private JTextField _feeField = null;
 
+    /**
+     * The text field for the max skew between the depths of the legs in seconds.
+     */
+    private JTextField _maxSkewField = null;
+
+    /**
+     * The text field to show the measured skew between the depths of the legs.
+     */
+    private JTextField _skewField = null;
+
     /**
      * Array of text fields to display the current funds.
      */
@@ -164,11 +171,6 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
      */
     private JTextField _ltcBtcBuyField = null;
 
-    /**
-     * The ltc / btc depth.
-     */
-    private Depth _ltcBtcDepth = null;
-
     /**
      * The display for the ltc / btc sell conversion rate.
      */
@@ -179,11 +181,6 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
      */
     private JTextField _ltcUsdBuyField = null;
 
-    /**
-     * The ltc usd depth.
-     */
-    private Depth _ltcUsdDepth = null;
-
     /**
      * The display for the ltc / usd sell conversion rate.
      */
@@ -204,11 +201,6 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
      */
     private BigDecimal _minimumTradingAmountLTC = new BigDecimal( "1.0");
 
-    /**
-     * An index for the next ticker to fetch.
-     */
-    private int _nextTickerToFetch = 0;
-
     /**
      * An array with the 6 order amount fields.
      */
@@ -239,6 +231,11 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
      */
     protected TradeLogger _tradeLogger = null;
 
+    /**
+     * The engine, that evaluates the triangles on btc-e.
+     */
+    private TriangleEngine _triangleEngine = null;
+
     /**
      * The max amount you can trade.
      */
@@ -335,6 +332,10 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
 	if( _btcEClient == null) {
 	    throw new TradeSiteNotFoundException( "btc-e.com client not found for btc-e native bot!");
 	}
+
+	// Let the headless engine do the computations and just display the results.
+	_triangleEngine = new TriangleEngine( Collections.singletonList( _btcEClient));
+	_triangleEngine.addListener( this);
     }
 
 
@@ -380,287 +381,6 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
 	}
     }
     
-    /**
-     * Compute the triangle trades from the depth.
-     */
-    public void calculateTrianglesFromDepth() {
-
-        Amount ulbuResult = new Amount( "-1");
-	Amount ubluResult = new Amount( "-1");  // Indicate an error as the default.
-
-	Amount ulbuInput = _uiPanel != null ? new Amount( _ulbuInputField.getText()) : _ulbuInput;
-
-	BigDecimal fee = BigDecimal.ONE.subtract( _uiPanel != null 
-						  ? new BigDecimal( _feeField.getText()).divide( new BigDecimal( "100"), MathContext.DECIMAL128) 
-						  : _defaultFee);
-
-	Price ltcUsdRate = null;
-	Price ltcBtcRate = null;
-	Price btcUsdRate = null;
-	Amount ltcUsdAmount = null;
-	Amount ltcBtcAmount = null;
-	Amount btcUsdAmount = null;
-	
-	BigDecimal current;
-
-	Price ulbuProfit = new Price( "-1");
-	Price ubluProfit = new Price( "-1");
-
-	StringBuffer mailText = new StringBuffer();
-
-	_ulbuAmount = _ubluAmount = null;  // Init amounts to default.
-
-	if( _ltcUsdDepth.getSellSize() > 0) {  // If the are not enough sells, it won't work.
-
-	    DepthOrder ltcUsdOrder = _ltcUsdDepth.getSell( 0);
-	    
-	    ltcUsdRate = ltcUsdOrder.getPrice();
-	    ltcUsdAmount = ltcUsdOrder.getAmount();
-
-	    current = ulbuInput.divide( ltcUsdRate, MathContext.DECIMAL128).multiply( fee);
-
-	    if( _ltcBtcDepth.getBuySize() > 0) {
-
-		DepthOrder ltcBtcOrder = _ltcBtcDepth.getBuy( 0);
-
-		ltcBtcRate = ltcBtcOrder.getPrice();
-		ltcBtcAmount = ltcBtcOrder.getAmount();
- 
-		current = current.multiply( ltcBtcRate).multiply( fee);
-		
-		if( _btcUsdDepth.getBuySize() > 0) {
-		    
-		    DepthOrder btcUsdOrder = _btcUsdDepth.getBuy( 0);
-
-		    btcUsdRate = btcUsdOrder.getPrice();
-		    btcUsdAmount = btcUsdOrder.getAmount();
-	
-		    ulbuResult = new Amount( current.multiply( btcUsdRate).multiply( fee));
-
-		    // Now do the amount calculation backwards.
-		    _ulbuAmount = new Amount( btcUsdAmount.divide( fee, MathContext.DECIMAL128));
-		    _ulbuAmount = new Amount( _ulbuAmount.divide( ltcBtcRate, MathContext.DECIMAL128));
-		    if( _ulbuAmount.compareTo( ltcBtcAmount) > 0) {
-			_ulbuAmount = ltcBtcAmount;
-		    }
-		    _ulbuAmount = new Amount( _ulbuAmount.divide( fee, MathContext.DECIMAL128).multiply( ltcUsdRate));
-		    if( _ulbuAmount.compareTo( ltcUsdAmount.multiply( ltcUsdRate)) > 0) {
-			_ulbuAmount = new Amount( ltcUsdAmount.multiply( ltcUsdRate));
-		    }
-
-		    // There should be check for the actual available amount on the user's account here, once we have it...
-
-		    // Now compute the potential profit or loss from this deal.
-		    ulbuProfit = new Price( _ulbuAmount.divide( ltcUsdRate, MathContext.DECIMAL128).multiply( fee));
-					    ulbuProfit = new Price( ulbuProfit.multiply( ltcBtcRate).multiply( fee).multiply( btcUsdRate).multiply( fee));
-		    ulbuProfit = new Price( ulbuProfit.subtract( _ulbuAmount));
-
-		    if( ( ( _uiPanel == null) || _sendMailCheckBox.isSelected()) && ( _ulbuAmount.compareTo( new BigDecimal( "0.1")) >= 0)) { 
-			    mailText.append( "ulbu trade is profitable. Amount is " + _ulbuAmount + " with profit " + ulbuProfit + "\n");
-		    }
-		}
-	    }
-	}
-
-	if( _uiPanel != null) {
-	    
-	    _ltcUsdBuyField.setText( ltcUsdRate != null ? "" + ltcUsdRate : "not available");
-	    
-	    _ltcBtcSellField.setText( ltcBtcRate != null ? "" + ltcBtcRate : "not available");
-	    
-	    _btcUsdSellField.setText( btcUsdRate != null ? "" + btcUsdRate : "not available");
-
-	    _orderAmountFields[0].setText( "" + ltcUsdAmount);
-	    _orderAmountFields[1].setText( "" + ltcBtcAmount);
-	    _orderAmountFields[2].setText( "" + btcUsdAmount);
-	    
-	    _ulbuOutput.setText( ulbuResult != null ? _defaultDecimalFormat.format( ulbuResult) : "trade not possible");
-	    
-	    _ulbuOutput.setBackground( ulbuResult.compareTo( ulbuInput) > 0 
-				       ? LIGHT_GREEN 
-				       : ( ulbuResult.multiply( new BigDecimal("1.01")).compareTo( ulbuInput) > 0) ? LIGHT_YELLOW : LIGHT_RED);
-
-	    _ulbuAmountField.setText( _defaultDecimalFormat.format( _ulbuAmount));
-
-	    _ulbuProfitField.setText( _ulbuAmount != null ? _defaultDecimalFormat.format( ulbuProfit) : "not possible");
-
-	    _ulbuProfitField.setBackground( ( _ulbuAmount != null) && ( ulbuProfit.compareTo( BigDecimal.ZERO) > 0)  ? LIGHT_GREEN : LIGHT_RED);
-
-	    // Activate the trade buttons as required.
-	    if( ulbuProfit.compareTo( BigDecimal.ZERO) <= 0) { // No profit => disable all buttons for this trade path.
-
-		_tradeButtons[ 4].setEnabled( false);
-		_tradeButtons[ 3].setEnabled( false);
-		_tradeButtons[ 1].setEnabled( false);
-
-	    } else {  // Profit => enable all button with some funds to trade.
-	    
-		// ToDo: set prices and amounts for each dialog...
-		_tradeButtons[ 4].setEnabled( ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "USD")) == null) 
-					      || ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "USD")).compareTo( BigDecimal.ZERO) > 0));
-		_tradeButtons[ 3].setEnabled( ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "LTC")) == null) 
-					      || ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "LTC")).compareTo( BigDecimal.ZERO) > 0));
-		_tradeButtons[ 1].setEnabled( ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "BTC")) == null) 
-					      || ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "BTC")).compareTo( BigDecimal.ZERO) > 0));
-
-		// Play a sound to inform the user.
-		SoundUtils.getInstance().playBeep();
-	    }
-	}
-
-	Amount ubluInput = _uiPanel != null ? new Amount( _ubluInputField.getText()) : _ubluInput;
-
-	// Reset the rates
-	ltcUsdRate = null; 
-	ltcBtcRate = null;
-	btcUsdRate = null;
-
-	// Reset the amounts
-	ltcUsdAmount = null; 
-	ltcBtcAmount = null;
-	btcUsdAmount = null;
-
-	if( _btcUsdDepth.getSellSize() > 0) {
-
-	    DepthOrder btcUsdOrder = _btcUsdDepth.getSell( 0);
-
-	    btcUsdRate = btcUsdOrder.getPrice();
-	    btcUsdAmount = btcUsdOrder.getAmount();
-
-	    current = ubluInput.divide( btcUsdRate, MathContext.DECIMAL128).multiply( fee);
-
-	    if( _ltcBtcDepth.getSellSize() > 0) {
-
-		DepthOrder ltcBtcOrder = _ltcBtcDepth.getSell( 0);
-
-		ltcBtcRate = ltcBtcOrder.getPrice();
-		ltcBtcAmount = ltcBtcOrder.getAmount();
-
-		current = current.divide( ltcBtcRate, MathContext.DECIMAL128).multiply( fee);
-
-		if( _ltcUsdDepth.getBuySize() > 0) {
-
-		    DepthOrder ltcUsdOrder = _ltcUsdDepth.getBuy( 0);
-
-		    ltcUsdRate = ltcUsdOrder.getPrice();
-		    ltcUsdAmount = ltcUsdOrder.getAmount();
-	
-		    ubluResult = new Amount( current.multiply( ltcUsdRate).multiply( fee));
-
-		    // Now do the amount calculation backwards.
-		    _ubluAmount = ltcUsdAmount;
-		    _ubluAmount = new Amount( _ubluAmount.divide( fee, MathContext.DECIMAL128));
-		    if( _ubluAmount.compareTo( ltcBtcAmount) > 0) {
-			_ubluAmount = ltcBtcAmount;
-		    }
-		    _ubluAmount = new Amount( _ubluAmount.multiply( ltcBtcRate).divide( fee, MathContext.DECIMAL128));
-		    if( _ubluAmount.compareTo( btcUsdAmount) > 0) {
-			_ubluAmount = btcUsdAmount;
-		    }
-		    _ubluAmount = new Amount( _ubluAmount.multiply( btcUsdRate));
-
-		    // There should be check for the actual available amount on the user's account here, once we have it...
-
-		    // Now compute the potential profit or loss from this deal.
-		    ubluProfit = new Price( _ubluAmount.divide( btcUsdRate, MathContext.DECIMAL128).multiply( fee));
-		    ubluProfit = new Price( ubluProfit.divide( ltcBtcRate, MathContext.DECIMAL128).multiply( fee).multiply( ltcUsdRate).multiply( fee));
-		    ubluProfit = new Price( ubluProfit.subtract( _ubluAmount));
-
-		    if( ( ( _uiPanel == null) || _sendMailCheckBox.isSelected()) && ( _ubluAmount.compareTo( new BigDecimal( "0.1")) >= 0 )) { 
-			    mailText.append( "ublu trade is profitable. Amount is " + _ubluAmount + " with profit " + ubluProfit + "\n");
-		    }
-		}
-	    }
-	}
-
-	if( _uiPanel != null) {
-
-	    _btcUsdBuyField.setText( btcUsdRate != null ? "" + btcUsdRate : "not available");
-
-	    _ltcBtcBuyField.setText( ltcBtcRate != null ? "" + ltcBtcRate : "not available");
-
-	    _ltcUsdSellField.setText( ltcUsdRate != null ? "" + ltcUsdRate : "not available");
-
-	    _orderAmountFields[3].setText( "" + btcUsdAmount);
-	    _orderAmountFields[4].setText( "" + ltcBtcAmount);
-	    _orderAmountFields[5].setText( "" + ltcUsdAmount);
-
-	    _ubluOutput.setText( ubluResult != null ? _defaultDecimalFormat.format( ubluResult) : "trade not possible");
-
-	    _ubluOutput.setBackground( ubluResult.compareTo( ubluInput) > 0 
-				       ? LIGHT_GREEN 
-				       : ( ubluResult.multiply( new BigDecimal("1.01")).compareTo( ubluInput) > 0) ? LIGHT_YELLOW : LIGHT_RED);
-
-	    _ubluAmountField.setText( _defaultDecimalFormat.format( _ubluAmount));
-
-	    _ubluProfitField.setText( _ubluAmount != null ? _defaultDecimalFormat.format( ubluProfit) : "not possible");
-	    
-	    _ubluProfitField.setBackground( ( _ubluAmount != null) && ( ubluProfit.compareTo( BigDecimal.ZERO) > 0)  ? LIGHT_GREEN : LIGHT_RED);
-
-
-	    // Activate the trade buttons as required.
-	    if( ubluProfit.compareTo( BigDecimal.ZERO) <= 0) { // No profit => disable all buttons for this trade path.
-
-		_tradeButtons[ 0].setEnabled( false);
-		_tradeButtons[ 2].setEnabled( false);
-		_tradeButtons[ 5].setEnabled( false);
-
-	    } else {  // Profit => enable all button with some funds to trade.
-	    
-		// ToDo: set prices and amounts for each dialog...
-		_tradeButtons[ 0].setEnabled( ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "USD")) == null) 
-					      || ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "USD")).compareTo( BigDecimal.ZERO) > 0));
-		_tradeButtons[ 2].setEnabled( ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "BTC")) == null) 
-					      || ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "BTC")).compareTo( BigDecimal.ZERO) > 0));
-		_tradeButtons[ 5].setEnabled( ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "LTC")) == null) 
-					      || ( _balanceMap.get( CurrencyProvider.getInstance().getCurrencyForCode( "LTC")).compareTo( BigDecimal.ZERO) > 0));
-
-		// Play a sound to inform the user.
-		SoundUtils.getInstance().playBeep();
-	    }
-	}
-
-	if( ( ubluResult.compareTo( ubluInput) > 0) || ( ulbuResult.compareTo( ulbuInput) > 0)) {  // If we made a profit
-
-	    if( _autoTradeFlag && ! _inAutoTradeFlag) {  // Do automatic trading and not already in a trade?
-		
-	    }
-
-	    if( _uiPanel != null) {  // If the user has an UI.
-		Toolkit.getDefaultToolkit().beep();  // beep, so he gets the info.
-	    }
-	}
-
-
-	// Send mails only after 4 fetches (once a minute, or so), so we don't send mails
-	// every few seconds...
-	if( _mailNotificationPending && ( mailText.length() > 0)) {
-     
-	    try {
-		TradeApp.getApp().getEmailNotifier().sendMail( "mail@andreas-rueckert.de"
-							       , "ulbu or ublu deal is profitable"
-							       , "Notification: \n\n" + mailText.toString());
-
-		LogUtils.getInstance().getLogger().info( "Sent mail on potential profitable triangle trade");
-
-		_mailNotificationPending = false;
-		mailText = new StringBuffer();  // Delete the mail text.
-
-	    } catch( Exception e) {  // We don't want the app to stop, just because the mail sending failed.
-		System.err.println( "Could not send mail to notify about potential profit on btc-e.com: " + e.toString());
-	    }
-	}
-    }
-
-    /**
-     * Check, if all the depths are available.
-     *
-     * @return true, if all the depths are available. False otherwise.
-     */
-    private boolean depthsAreAvailable() {
-	return ( _ltcUsdDepth != null) && ( _ltcBtcDepth != null) &&	( _btcUsdDepth != null);
-    }
-
     /**
      * Do a single conversion trade.
      *
@@ -869,6 +589,17 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
 	    _feeField.setHorizontalAlignment( JTextField.RIGHT);
 	    settingsPanel.add( new JLabel( "%"));
 
+	    // Max skew between the depths of the legs and the measured average skew.
+	    settingsPanel.add( new JLabel( "Max. skew:"));
+	    settingsPanel.add( _maxSkewField = new JTextField( "" + ( TriangleEngine.DEFAULT_MAX_SKEW / 1000000L)));
+	    _maxSkewField.setHorizontalAlignment( JTextField.RIGHT);
+	    settingsPanel.add( new JLabel( "s"));
+	    settingsPanel.add( new JLabel( "Skew:"));
+	    settingsPanel.add( _skewField = new JTextField( 6));
+	    _skewField.setEditable( false);
+	    _skewField.setHorizontalAlignment( JTextField.RIGHT);
+	    settingsPanel.add( new JLabel( "ms"));
+
 	    // Add a checkbox for the user, whether he wants mail notifications or not.
 	    settingsPanel.add( _sendMailCheckBox = new JCheckBox( "Mail notification", false));
 
@@ -1107,6 +838,75 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
     public void setSettings( PersistentPropertyList propertyList) {
     }
     
+    /**
+     * Show the evaluation of a triangle in the UI.
+     *
+     * @param evaluation The evaluation or null, if the triangle could not be evaluated.
+     * @param input The input of the user for this triangle.
+     * @param result The output of the triangle for the input of the user.
+     * @param rateFields The text fields for the best prices of the 3 legs.
+     * @param firstAmountField The index of the order amount field of the first leg.
+     * @param outputField The text field for the output.
+     * @param amountField The text field for the optimal amount.
+     * @param profitField The text field for the profit.
+     * @param buttonIndexes The indexes of the trade buttons of the 3 legs.
+     */
+    private void showTriangle( TriangleEvaluation evaluation
+			       , Amount input
+			       , Amount result
+			       , JTextField [] rateFields
+			       , int firstAmountField
+			       , JTextField outputField
+			       , JTextField amountField
+			       , JTextField profitField
+			       , int [] buttonIndexes) {
+
+	Amount profit = evaluation != null ? evaluation.getProfit() : new Amount( "-1");
+
+	for( int currentLeg = 0; currentLeg < 3; ++currentLeg) {
+
+	    Price rate = evaluation != null ? evaluation.getBestPrice( currentLeg) : null;
+
+	    rateFields[ currentLeg].setText( rate != null ? "" + rate : "not available");
+
+	    _orderAmountFields[ firstAmountField + currentLeg].setText( "" + ( evaluation != null ? evaluation.getBestAmount( currentLeg) : null));
+	}
+
+	outputField.setText( result.signum() >= 0 ? _defaultDecimalFormat.format( result) : "trade not possible");
+
+	outputField.setBackground( result.compareTo( input) > 0 
+				   ? LIGHT_GREEN 
+				   : ( result.multiply( new BigDecimal("1.01")).compareTo( input) > 0) ? LIGHT_YELLOW : LIGHT_RED);
+
+	amountField.setText( evaluation != null ? _defaultDecimalFormat.format( evaluation.getInput()) : "not possible");
+
+	profitField.setText( evaluation != null ? _defaultDecimalFormat.format( profit) : "not possible");
+
+	profitField.setBackground( profit.compareTo( BigDecimal.ZERO) > 0  ? LIGHT_GREEN : LIGHT_RED);
+
+	// Activate the trade buttons as required.
+	for( int currentLeg = 0; currentLeg < 3; ++currentLeg) {
+
+	    if( profit.compareTo( BigDecimal.ZERO) <= 0) {  // No profit => disable all buttons for this trade path.
+
+		_tradeButtons[ buttonIndexes[ currentLeg]].setEnabled( false);
+
+	    } else {  // Profit => enable all button with some funds to trade.
+
+		// ToDo: set prices and amounts for each dialog...
+		Amount balance = _balanceMap.get( evaluation.getTriangle().getCurrency( currentLeg));
+
+		_tradeButtons[ buttonIndexes[ currentLeg]].setEnabled( ( balance == null) || ( balance.compareTo( BigDecimal.ZERO) > 0));
+	    }
+	}
+
+	if( profit.compareTo( BigDecimal.ZERO) > 0) {
+
+	    // Play a sound to inform the user.
+	    SoundUtils.getInstance().playBeep();
+	}
+    }
+
     /**
      * Start the bot.
      */
@@ -1120,19 +920,11 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
 		@Override public void run(){
 		    while( _updateThread == this) {
 
-			updateDepthsSequentially();  // Query new ticker data.
-			
-			if( depthsAreAvailable()) {  // If fetching the tickers worked.
-			    
-			    calculateTrianglesFromDepth();  // Compute the result of the trades.			    
-			    
-			    // Notify the user here, if there is a good deal?
-			    
-			    if( _uiPanel != null) {     // If there's an UI,
-				_uiPanel.invalidate();  // show the results.
-				_uiPanel.validate();
-			    }
-			}
+			// Use the fee and the skew from the UI, if the user changed them.
+			updateEngineSettings();
+
+			// Fetch all the depths and compute the triangles. The results are shown by trianglesEvaluated().
+			_triangleEngine.evaluate();
 
 			try {
 			    sleep( BASE_UPDATE_INTERVAL * 1000 + _updateIntervalRandomizer.nextInt( 2 * 1000));
@@ -1161,6 +953,140 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
 	}
     }
 
+    /**
+     * The triangles were evaluated on a new depth snapshot.
+     *
+     * @param evaluations The evaluations of all the triangles, ranked by their profit.
+     */
+    public void trianglesEvaluated( List<TriangleEvaluation> evaluations) {
+
+	TriangleEvaluation ulbuEvaluation = null;
+	TriangleEvaluation ubluEvaluation = null;
+
+	for( TriangleEvaluation currentEvaluation : evaluations) {
+
+	    if( currentEvaluation.getTriangle().hasCurrencies( "USD", "LTC", "BTC")) {
+
+		ulbuEvaluation = currentEvaluation;
+
+	    } else if( currentEvaluation.getTriangle().hasCurrencies( "USD", "BTC", "LTC")) {
+
+		ubluEvaluation = currentEvaluation;
+	    }
+	}
+
+	Amount ulbuInput = _uiPanel != null ? new Amount( _ulbuInputField.getText()) : _ulbuInput;
+	Amount ubluInput = _uiPanel != null ? new Amount( _ubluInputField.getText()) : _ubluInput;
+
+	Amount ulbuResult = ulbuEvaluation != null ? ulbuEvaluation.getOutput( ulbuInput) : new Amount( "-1");
+	Amount ubluResult = ubluEvaluation != null ? ubluEvaluation.getOutput( ubluInput) : new Amount( "-1");
+
+	_ulbuAmount = ulbuEvaluation != null ? ulbuEvaluation.getInput() : null;
+	_ubluAmount = ubluEvaluation != null ? ubluEvaluation.getInput() : null;
+
+	StringBuffer mailText = new StringBuffer();
+
+	if( ( ( _uiPanel == null) || _sendMailCheckBox.isSelected()) && ( _ulbuAmount != null) && ( _ulbuAmount.compareTo( new BigDecimal( "0.1")) >= 0)) { 
+	    mailText.append( "ulbu trade is profitable. Amount is " + _ulbuAmount + " with profit " + ulbuEvaluation.getProfit() + "\n");
+	}
+
+	if( ( ( _uiPanel == null) || _sendMailCheckBox.isSelected()) && ( _ubluAmount != null) && ( _ubluAmount.compareTo( new BigDecimal( "0.1")) >= 0)) { 
+	    mailText.append( "ublu trade is profitable. Amount is " + _ubluAmount + " with profit " + ubluEvaluation.getProfit() + "\n");
+	}
+
+	if( _uiPanel != null) {
+
+	    _skewField.setText( "" + ( _triangleEngine.getSkewMetric().getAverageSkew() / 1000L));
+
+	    // usd => ltc => btc => usd
+	    showTriangle( ulbuEvaluation
+			  , ulbuInput
+			  , ulbuResult
+			  , new JTextField [] { _ltcUsdBuyField, _ltcBtcSellField, _btcUsdSellField }
+			  , 0
+			  , _ulbuOutput
+			  , _ulbuAmountField
+			  , _ulbuProfitField
+			  , new int [] { 4, 3, 1 });
+
+	    // usd => btc => ltc => usd
+	    showTriangle( ubluEvaluation
+			  , ubluInput
+			  , ubluResult
+			  , new JTextField [] { _btcUsdBuyField, _ltcBtcBuyField, _ltcUsdSellField }
+			  , 3
+			  , _ubluOutput
+			  , _ubluAmountField
+			  , _ubluProfitField
+			  , new int [] { 0, 2, 5 });
+
+	    _uiPanel.invalidate();  // show the results.
+	    _uiPanel.validate();
+	}
+
+	if( ( ubluResult.compareTo( ubluInput) > 0) || ( ulbuResult.compareTo( ulbuInput) > 0)) {  // If we made a profit
+
+	    if( _autoTradeFlag && ! _inAutoTradeFlag) {  // Do automatic trading and not already in a trade?
+		
+	    }
+
+	    if( _uiPanel != null) {  // If the user has an UI.
+		Toolkit.getDefaultToolkit().beep();  // beep, so he gets the info.
+	    }
+	}
+
+	// Send mails only after 4 fetches (once a minute, or so), so we don't send mails
+	// every few seconds...
+	if( _mailNotificationPending && ( mailText.length() > 0)) {
+     
+	    try {
+		TradeApp.getApp().getEmailNotifier().sendMail( "mail@andreas-rueckert.de"
+							       , "ulbu or ublu deal is profitable"
+							       , "Notification: \n\n" + mailText.toString());
+
+		LogUtils.getInstance().getLogger().info( "Sent mail on potential profitable triangle trade");
+
+		_mailNotificationPending = false;
+
+	    } catch( Exception e) {  // We don't want the app to stop, just because the mail sending failed.
+		System.err.println( "Could not send mail to notify about potential profit on btc-e.com: " + e.toString());
+	    }
+	}
+    }
+
+    /**
+     * Pass the fee and the maximum skew from the UI to the triangle engine.
+     * If the user entered an invalid number, the engine keeps the previous value,
+     * so a typo does not stop the update thread.
+     */
+    private void updateEngineSettings() {
+
+	if( _uiPanel == null) {  // Without a UI, just use the default fee.
+
+	    _triangleEngine.setFee( _btcEClient, _defaultFee);
+
+	    return;
+	}
+
+	try {
+
+	    _triangleEngine.setFee( _btcEClient, new BigDecimal( _feeField.getText().trim()));
+
+	} catch( NumberFormatException nfe) {
+
+	    LogUtils.getInstance().getLogger().warn( "Cannot parse entered fee, keeping the previous fee: " + _feeField.getText());
+	}
+
+	try {
+
+	    _triangleEngine.setMaxSkew( new BigDecimal( _maxSkewField.getText().trim()).multiply( new BigDecimal( "1000000")).longValue());
+
+	} catch( NumberFormatException nfe) {
+
+	    LogUtils.getInstance().getLogger().warn( "Cannot parse entered max skew, keeping the previous skew: " + _maxSkewField.getText());
+	}
+    }
+
     /**
      * Update the funds.
      */
@@ -1170,7 +1096,8 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
 
 	    try {
 
-		for( TradeSiteAccount a : _btcEClient.getAccounts( null)) {
+		// Fetch the accounts via the account manager, so other bots can share them.
+		for( TradeSiteAccount a : TradeApp.getApp().getAccountManager().getAccounts( _btcEClient, null)) {
 		    
 		    CurrencyImpl c = (CurrencyImpl)( a.getCurrency());
 		    
@@ -1191,30 +1118,6 @@ public class BtcENativeBot implements ActionListener, ItemListener, TradeBot, Tr
 	}
     }
     
-    /**
-    * Update depths sequentially.
-    */
-    private void updateDepthsSequentially() {
-	
-	switch( _nextTickerToFetch) {
-
-	    // The btc / usd depth seems to change more often, so fetch it more often.
-	case 0:
-	case 2: 
-	    _btcUsdDepth = _btcEClient.getDepth( CURRENCY_PAIR_BTC_USD);
-	    if( _btcUsdDepth != null) { ++_nextTickerToFetch; }
-	    break;
-	case 1: 
-	    _ltcBtcDepth = _btcEClient.getDepth( CURRENCY_PAIR_LTC_BTC);
-	    if( _ltcBtcDepth != null) { ++_nextTickerToFetch; }
-	    break;
-	case 3: 
-	    _ltcUsdDepth = _btcEClient.getDepth( CURRENCY_PAIR_LTC_USD);
-	    if( _ltcUsdDepth != null) { _nextTickerToFetch = 0; }
-	    break;
-	}
-    } 
-
     /**
      * Update the shown values.
      *
@@ -0,0 +1,251 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot;
+
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.order.DepthOrder;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+
+/**
+ * This class converts one side of a depth into a curve of cumulative volumes, so
+ * an exchange of one currency into another can be evaluated for any amount.
+ *
+ * Element i of the arrays holds the input and output of consuming the first i
+ * orders of the depth side, so the arrays have one element more than there are
+ * orders. The trade fee is already subtracted from the output.
+ *
+ * Since the rates only get worse deeper in a depth, a chain of curves (i.e. the
+ * legs of a trade path or a triangle) is sized optimally by consuming orders as
+ * long as the product of the current rates of all legs is above 1.
+ */
+public class DepthCurve {
+
+    // Static variables
+
+    /**
+     * The relative tolerance to consider an order consumed.
+     */
+    private static final double LEVEL_TOLERANCE = 1e-12;
+
+
+
+    // Instance variables
+
+    /**
+     * The cumulative input amounts.
+     */
+    private final double [] _cumulativeInput;
+
+    /**
+     * The cumulative output amounts after the trade fee.
+     */
+    private final double [] _cumulativeOutput;
+
+
+    // Constructors
+
+    /**
+     * Create a new curve from a depth.
+     *
+     * @param depth The depth of the currency pair.
+     * @param isBuy true, if the payment currency is exchanged into the currency of the pair
+     *              (walk the sell orders), false if the currency is sold (walk the buy orders).
+     * @param feePercent The trade fee of the trade site in percent.
+     */
+    public DepthCurve( Depth depth, boolean isBuy, BigDecimal feePercent) {
+
+	int size = isBuy ? depth.getSellSize() : depth.getBuySize();
+	double feeFactor = 1.0 - ( feePercent == null ? 0.0 : feePercent.doubleValue() / 100.0);
+
+	_cumulativeInput = new double[ size + 1];
+	_cumulativeOutput = new double[ size + 1];
+
+	for( int currentLevel = 0; currentLevel < size; ++currentLevel) {
+
+	    DepthOrder currentOrder = isBuy ? depth.getSell( currentLevel) : depth.getBuy( currentLevel);
+
+	    double price = currentOrder.getPrice().doubleValue();
+	    double amount = currentOrder.getAmount().doubleValue();
+
+	    // Buying spends amount * price of the payment currency for amount of the currency,
+	    // selling spends amount of the currency for amount * price of the payment currency.
+	    _cumulativeInput[ currentLevel + 1] = _cumulativeInput[ currentLevel] + ( isBuy ? amount * price : amount);
+	    _cumulativeOutput[ currentLevel + 1] = _cumulativeOutput[ currentLevel] + ( isBuy ? amount : amount * price) * feeFactor;
+	}
+    }
+
+
+    // Methods
+
+    /**
+     * Get the cumulative input up to a level.
+     *
+     * @param level The number of consumed orders.
+     *
+     * @return The input to consume these orders.
+     */
+    public double getCumulativeInput( int level) {
+
+	return _cumulativeInput[ level];
+    }
+
+    /**
+     * Get the cumulative output up to a level.
+     *
+     * @param level The number of consumed orders.
+     *
+     * @return The output of consuming these orders.
+     */
+    public double getCumulativeOutput( int level) {
+
+	return _cumulativeOutput[ level];
+    }
+
+    /**
+     * Get the input, that is required for a given output.
+     *
+     * @param output The requested output.
+     *
+     * @return The required input, or a negative value, if the depth is too thin for this output.
+     */
+    public double getInput( double output) {
+
+	return interpolate( _cumulativeOutput, _cumulativeInput, output);
+    }
+
+    /**
+     * Get the number of orders in this curve.
+     *
+     * @return The number of orders in this curve.
+     */
+    public int getLevelCount() {
+
+	return _cumulativeInput.length - 1;
+    }
+
+    /**
+     * Get the optimal input for a chain of curves, where the output of each curve
+     * is the input of the next curve.
+     *
+     * @param curves The chain of curves.
+     * @param rateFactor A factor for the combined rate (i.e. 1 minus a risk discount).
+     *
+     * @return The input of the first curve with the maximum profit, or 0 if the chain is not profitable.
+     */
+    public static double getOptimalInput( DepthCurve [] curves, double rateFactor) {
+
+	int [] levels = new int[ curves.length];
+	double [] inputs = new double[ curves.length];  // The consumed input of each curve.
+	double [] scales = new double[ curves.length];  // Units of a curve per unit of the first input.
+
+	double optimalInput = 0.0;
+
+	while( true) {
+
+	    double combinedRate = rateFactor;
+	    double step = Double.MAX_VALUE;
+
+	    for( int currentCurve = 0; currentCurve < curves.length; ++currentCurve) {
+
+		if( levels[ currentCurve] >= curves[ currentCurve].getLevelCount()) {  // Not enough orders.
+
+		    return optimalInput;
+		}
+
+		scales[ currentCurve] = combinedRate / rateFactor;
+
+		// The rest of the current order, converted to units of the first input.
+		double remaining = curves[ currentCurve].getCumulativeInput( levels[ currentCurve] + 1) - inputs[ currentCurve];
+
+		step = Math.min( step, remaining / scales[ currentCurve]);
+
+		combinedRate *= curves[ currentCurve].getRate( levels[ currentCurve]);
+	    }
+
+	    if( combinedRate <= 1.0) {  // No more profit.
+
+		return optimalInput;
+	    }
+
+	    optimalInput += step;
+
+	    // Consume the step in each curve and move to the next order, where it is used up.
+	    for( int currentCurve = 0; currentCurve < curves.length; ++currentCurve) {
+
+		double levelEnd = curves[ currentCurve].getCumulativeInput( levels[ currentCurve] + 1);
+
+		inputs[ currentCurve] += step * scales[ currentCurve];
+
+		if( levelEnd - inputs[ currentCurve] <= LEVEL_TOLERANCE * Math.max( 1.0, levelEnd)) {
+
+		    inputs[ currentCurve] = levelEnd;
+
+		    ++levels[ currentCurve];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Get the output for a given input.
+     *
+     * @param input The input amount.
+     *
+     * @return The output amount, or a negative value, if the depth is too thin for this input.
+     */
+    public double getOutput( double input) {
+
+	return interpolate( _cumulativeInput, _cumulativeOutput, input);
+    }
+
+    /**
+     * Get the exchange rate (output per input) of an order in this curve.
+     *
+     * @param level The index of the order.
+     *
+     * @return The exchange rate of this order after the fee.
+     */
+    public double getRate( int level) {
+
+	double input = _cumulativeInput[ level + 1] - _cumulativeInput[ level];
+
+	return input > 0.0 ? ( _cumulativeOutput[ level + 1] - _cumulativeOutput[ level]) / input : 0.0;
+    }
+
+    /**
+     * Interpolate a value on the curve.
+     *
+     * @param keys The cumulative values to search in.
+     * @param values The cumulative values to interpolate.
+     * @param key The searched key.
+     *
+     * @return The interpolated value or -1, if the key is beyond the end of the curve.
+     */
+    private static double interpolate( double [] keys, double [] values, double key) {
+
+	if( key > keys[ keys.length - 1]) {  // Not enough orders.
+
+	    return -1.0;
+	}
+
+	int index = Arrays.binarySearch( keys, key);
+
+	if( index >= 0) {  // Exact hit on a level.
+
+	    return values[ index];
+	}
+
+	int upper = -index - 1;  // The first level above the key.
+	int lower = upper - 1;
+
+	return values[ lower] + ( values[ upper] - values[ lower]) * ( key - keys[ lower]) / ( keys[ upper] - keys[ lower]);
+    }
+}
@@ -0,0 +1,593 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot;
+
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.TimeUtils;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class executes each task of a bot (i.e. a rule set or a strategy) at its own interval.
+ * A task can also be triggered immediately, i.e. if new market data for it arrived.
+ *
+ * The timer thread only dispatches the executions. The tasks are executed
+ * in parallel on a bounded worker pool, so a slow task or a blocking exchange
+ * call in a task does not delay the other tasks. An execution, that does not
+ * complete within the timeout of its task, is interrupted.
+ *
+ * Blocking http requests ignore the interrupt, though. So if the execution
+ * keeps running, the task is not dispatched again, and the worker pool gets an
+ * extra thread, until the hung execution returns. This way hung executions
+ * never exhaust the pool for the other tasks.
+ *
+ * The bots only implement the execution of a task and its intervals.
+ *
+ * @param <T> The type of the scheduled tasks.
+ */
+public abstract class TaskScheduler<T> {
+
+    // Inner classes
+
+    /**
+     * A task with its scheduling state.
+     */
+    class ScheduledTask implements Runnable {
+
+	// Instance variables
+
+	/**
+	 * Flag to indicate, that an execution of this task is currently running.
+	 */
+	private final AtomicBoolean _executionRunning = new AtomicBoolean( false);
+
+	/**
+	 * The worker pool, that got an extra thread for a hung execution of this task, or null.
+	 */
+	private ThreadPoolExecutor _compensatedPool = null;
+
+	/**
+	 * The future of the periodic execution.
+	 */
+	private ScheduledFuture<?> _future = null;
+
+	/**
+	 * The number of overruns of this task.
+	 */
+	private final AtomicLong _overrunCounter = new AtomicLong( 0L);
+
+	/**
+	 * Flag to indicate, that the periodic execution is suspended until a hung execution returns.
+	 */
+	private boolean _suspended = false;
+
+	/**
+	 * The scheduled task.
+	 */
+	private final T _task;
+
+
+	// Constructors
+
+	/**
+	 * Create a new scheduled task.
+	 *
+	 * @param task The task to schedule.
+	 */
+	ScheduledTask( T task) {
+
+	    _task = task;
+	}
+
+
+	// Methods
+
+	/**
+	 * Cancel the periodic execution of this task.
+	 */
+	void cancel() {
+
+	    if( _future != null) {
+
+		_future.cancel( false);  // Let a running execution complete.
+	    }
+	}
+
+	/**
+	 * Dispatch an execution of the task to the worker pool.
+	 * The execution is interrupted, if it does not complete within the timeout.
+	 *
+	 * @param triggered true, if the execution was triggered by new data instead of the interval.
+	 */
+	void dispatch( boolean triggered) {
+
+	    if( ! _executionRunning.compareAndSet( false, true)) {
+
+		if( ! triggered) {  // If the previous execution is still running, the task overran its interval.
+
+		    _overrunCounter.incrementAndGet();
+
+		    LogUtils.getInstance().getLogger().warn( "Execution of "
+							     + getTaskName( _task)
+							     + " is still running. Skipping this execution.");
+		}
+
+		return;  // A triggered execution is dropped, since the running execution will see most of the new data.
+	    }
+
+	    ScheduledExecutorService executor;
+	    ExecutorService workerPool;
+
+	    synchronized( TaskScheduler.this) {
+
+		executor = _executor;
+		workerPool = _workerPool;
+	    }
+
+	    if( ( executor == null) || ( workerPool == null)) {  // The scheduler was stopped in the meantime.
+
+		_executionRunning.set( false);
+
+		return;
+	    }
+
+	    try {
+
+		// Either the worker starts the execution or the timeout drops it, if it is still queued.
+		final AtomicBoolean executionClaimed = new AtomicBoolean( false);
+
+		final Future<?> execution = workerPool.submit( new Runnable() {
+
+			@Override public void run() {
+
+			    if( executionClaimed.compareAndSet( false, true)) {
+
+				executeOnce();
+			    }
+			}
+		    });
+
+		// Interrupt the execution, if it hangs (i.e. in a stuck exchange request).
+		executor.schedule( new Runnable() {
+
+			@Override public void run() {
+
+			    if( ! execution.isDone()) {
+
+				LogUtils.getInstance().getLogger().error( "Execution of "
+									  + getTaskName( _task)
+									  + " timed out. Interrupting it.");
+
+				if( executionClaimed.compareAndSet( false, true)) {  // The execution never started,
+
+				    _executionRunning.set( false);                  // so nobody else will reset the flag.
+
+				    execution.cancel( false);
+
+				} else {
+
+				    execution.cancel( true);
+
+				    suspend( workerPool);  // In case the execution ignores the interrupt.
+				}
+			    }
+			}
+		    }, getExecutionTimeout( _task), TimeUnit.MICROSECONDS);
+
+	    } catch( RejectedExecutionException ree) {  // The pool is shutting down.
+
+		_executionRunning.set( false);
+	    }
+	}
+
+	/**
+	 * Execute the task once on the calling thread.
+	 */
+	private void executeOnce() {
+
+	    try {
+
+		long startTime = TimeUtils.getInstance().getCurrentGMTTimeMicros();
+
+		execute( _task);
+
+		long duration = TimeUtils.getInstance().getCurrentGMTTimeMicros() - startTime;
+
+		// Check, if the execution took longer than the interval of the task.
+		if( duration > getExecutionInterval( _task)) {
+
+		    _overrunCounter.incrementAndGet();
+
+		    LogUtils.getInstance().getLogger().warn( "Execution of "
+							     + getTaskName( _task)
+							     + " overran its interval: "
+							     + ( duration / 1000L)
+							     + " ms");
+		}
+
+	    } catch( RuntimeException re) {  // Don't let an exception kill the worker.
+
+		LogUtils.getInstance().getLogger().error( "Execution of " + getTaskName( _task) + " failed: " + re);
+
+	    } finally {
+
+		_executionRunning.set( false);
+
+		resume();  // If the execution hung, dispatch the task again.
+	    }
+	}
+
+	/**
+	 * Get the number of overruns of this task.
+	 *
+	 * @return The number of overruns of this task.
+	 */
+	long getOverrunCount() {
+
+	    return _overrunCounter.get();
+	}
+
+	/**
+	 * Resume the periodic execution of this task, if it was suspended for a hung execution.
+	 */
+	private void resume() {
+
+	    synchronized( TaskScheduler.this) {
+
+		if( ! _suspended) {
+
+		    return;
+		}
+
+		_suspended = false;
+
+		if( _compensatedPool != null) {  // Remove the extra worker again.
+
+		    _compensatedPool.setCorePoolSize( _compensatedPool.getCorePoolSize() - 1);
+		    _compensatedPool.setMaximumPoolSize( _compensatedPool.getMaximumPoolSize() - 1);
+
+		    _compensatedPool = null;
+		}
+
+		// Only dispatch the task again, if it is still scheduled.
+		if( ( _executor != null) && ( _scheduledTasks.get( _task) == this)) {
+
+		    LogUtils.getInstance().getLogger().info( "Hung execution of " + getTaskName( _task) + " returned. Resuming it.");
+
+		    schedule( _executor);
+		}
+	    }
+	}
+
+	/**
+	 * Dispatch an execution at the interval of the task.
+	 */
+	@Override public void run() {
+
+	    dispatch( false);
+	}
+
+	/**
+	 * Start the periodic execution of this task.
+	 *
+	 * @param executor The executor to run the execution.
+	 */
+	void schedule( ScheduledExecutorService executor) {
+
+	    cancel();  // Never dispatch the task twice.
+
+	    _future = executor.scheduleAtFixedRate( this, 0L, getExecutionInterval( _task), TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Suspend the periodic execution of this task, while a timed out execution is still running,
+	 * and add an extra thread to the worker pool, that replaces the blocked worker.
+	 *
+	 * @param workerPool The worker pool of the hung execution.
+	 */
+	private void suspend( ExecutorService workerPool) {
+
+	    synchronized( TaskScheduler.this) {
+
+		if( _suspended || ! _executionRunning.get()) {
+
+		    return;  // The execution returned after the interrupt, or it is already suspended.
+		}
+
+		_suspended = true;
+
+		cancel();  // Do not dispatch the task again, until the hung execution returns.
+
+		if( workerPool instanceof ThreadPoolExecutor) {
+
+		    _compensatedPool = (ThreadPoolExecutor)workerPool;
+
+		    // Raise the maximum first, since the core size must not exceed it.
+		    _compensatedPool.setMaximumPoolSize( _compensatedPool.getMaximumPoolSize() + 1);
+		    _compensatedPool.setCorePoolSize( _compensatedPool.getCorePoolSize() + 1);
+		}
+
+		LogUtils.getInstance().getLogger().error( "Execution of "
+							  + getTaskName( _task)
+							  + " ignores the interrupt. Suspending the task until it returns.");
+	    }
+	}
+    }
+
+
+    // Instance variables
+
+    /**
+     * The timer to dispatch the executions.
+     */
+    private ScheduledExecutorService _executor = null;
+
+    /**
+     * The currently scheduled tasks.
+     */
+    private final Map< T, ScheduledTask> _scheduledTasks = new ConcurrentHashMap< T, ScheduledTask>();
+
+    /**
+     * The name of the scheduler threads.
+     */
+    private final String _threadName;
+
+    /**
+     * The pool to execute the tasks.
+     */
+    private ExecutorService _workerPool = null;
+
+    /**
+     * The number of threads in the worker pool.
+     */
+    private final int _workerPoolSize;
+
+
+    // Constructors
+
+    /**
+     * Create a new scheduler.
+     *
+     * @param threadName The name of the scheduler threads (i.e. 'RuleBot rule set').
+     * @param workerPoolSize The number of threads to execute the tasks.
+     */
+    protected TaskScheduler( String threadName, int workerPoolSize) {
+
+	_threadName = threadName;
+	_workerPoolSize = workerPoolSize;
+    }
+
+
+    // Methods
+
+    /**
+     * Create the timer to dispatch the executions.
+     *
+     * @return The new timer.
+     */
+    protected ScheduledExecutorService createExecutor() {
+
+	return Executors.newSingleThreadScheduledExecutor( createThreadFactory( _threadName + " scheduler"));
+    }
+
+    /**
+     * Create a factory for daemon threads with a given name.
+     *
+     * @param name The name of the threads.
+     *
+     * @return The new thread factory.
+     */
+    private ThreadFactory createThreadFactory( final String name) {
+
+	return new ThreadFactory() {
+
+	    /**
+	     * The number of created threads.
+	     */
+	    private final AtomicLong _threadCounter = new AtomicLong( 0L);
+
+	    @Override public Thread newThread( Runnable runnable) {
+
+		Thread thread = new Thread( runnable, name + " " + _threadCounter.incrementAndGet());
+
+		thread.setDaemon( true);
+
+		return thread;
+	    }
+	};
+    }
+
+    /**
+     * Create the pool to execute the tasks.
+     *
+     * @return The new worker pool.
+     */
+    protected ExecutorService createWorkerPool() {
+
+	return Executors.newFixedThreadPool( _workerPoolSize, createThreadFactory( _threadName + " worker"));
+    }
+
+    /**
+     * Execute a task once. This method is called from a worker thread.
+     *
+     * @param task The task to execute.
+     */
+    protected abstract void execute( T task);
+
+    /**
+     * Get the execution interval of a task.
+     *
+     * @param task The task.
+     *
+     * @return The execution interval in microseconds.
+     */
+    protected abstract long getExecutionInterval( T task);
+
+    /**
+     * Get the time after which an execution of a task is interrupted.
+     *
+     * @param task The task.
+     *
+     * @return The execution timeout in microseconds.
+     */
+    protected abstract long getExecutionTimeout( T task);
+
+    /**
+     * Get the number of overruns for a given task.
+     *
+     * @param task The task.
+     *
+     * @return The number of overruns or 0, if the task is not scheduled.
+     */
+    public long getOverrunCount( T task) {
+
+	ScheduledTask scheduledTask = _scheduledTasks.get( task);
+
+	return scheduledTask == null ? 0L : scheduledTask.getOverrunCount();
+    }
+
+    /**
+     * Get the name of a task for the log messages.
+     *
+     * @param task The task.
+     *
+     * @return The name of the task (i.e. "rule set sma_trader").
+     */
+    protected abstract String getTaskName( T task);
+
+    /**
+     * Check, if the scheduler is currently running.
+     *
+     * @return true, if the scheduler is running. False otherwise.
+     */
+    public synchronized boolean isRunning() {
+
+	return _executor != null;
+    }
+
+    /**
+     * Add a task to the scheduler.
+     *
+     * @param task The task to schedule.
+     */
+    public synchronized void schedule( T task) {
+
+	if( _scheduledTasks.containsKey( task)) {
+
+	    return;  // This task is already scheduled.
+	}
+
+	ScheduledTask scheduledTask = new ScheduledTask( task);
+
+	_scheduledTasks.put( task, scheduledTask);
+
+	if( _executor != null) {  // If the scheduler is already running, start this task.
+
+	    scheduledTask.schedule( _executor);
+	}
+    }
+
+    /**
+     * Start the scheduler.
+     */
+    public synchronized void start() {
+
+	if( _executor == null) {
+
+	    _workerPool = createWorkerPool();
+	    _executor = createExecutor();
+
+	    for( ScheduledTask scheduledTask : _scheduledTasks.values()) {
+
+		if( ! scheduledTask._suspended) {  // A suspended task is dispatched again, once its hung execution returns.
+
+		    scheduledTask.schedule( _executor);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Stop the scheduler and wait for the running executions to complete.
+     */
+    public void stop() {
+
+	ScheduledExecutorService executor;
+	ExecutorService workerPool;
+
+	synchronized( this) {
+
+	    executor = _executor;
+	    workerPool = _workerPool;
+
+	    _executor = null;
+	    _workerPool = null;
+	}
+
+	if( executor != null) {
+
+	    executor.shutdownNow();  // Drop the pending timers.
+
+	    workerPool.shutdown();   // But let the running executions complete.
+
+	    try {
+
+		workerPool.awaitTermination( 60L, TimeUnit.SECONDS);
+
+	    } catch( InterruptedException ie) {
+
+		System.err.println( _threadName + " scheduler stop interrupted: " + ie.toString());
+	    }
+	}
+    }
+
+    /**
+     * Execute a scheduled task immediately, i.e. when new data for the task arrived.
+     * The periodic executions continue at the interval of the task. If the task
+     * is already running, the trigger is dropped.
+     *
+     * @param task The task to execute.
+     */
+    public void trigger( T task) {
+
+	ScheduledTask scheduledTask = _scheduledTasks.get( task);
+
+	if( scheduledTask != null) {  // Only scheduled tasks are executed.
+
+	    scheduledTask.dispatch( true);
+	}
+    }
+
+    /**
+     * Remove a task from the scheduler.
+     *
+     * @param task The task to remove.
+     */
+    public synchronized void unschedule( T task) {
+
+	ScheduledTask scheduledTask = _scheduledTasks.remove( task);
+
+	if( scheduledTask != null) {
+
+	    scheduledTask.cancel();
+	}
+    }
+}
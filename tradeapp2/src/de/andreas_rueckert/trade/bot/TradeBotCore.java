@@ -11,71 +11,93 @@ package de.andreas_rueckert.trade.bot;
 import de.andreas_rueckert.notification.EmailNotifier;
 import de.andreas_rueckert.trade.account.Account;
 import de.andreas_rueckert.trade.account.AccountManager;
+import de.andreas_rueckert.trade.bot.rule.RulePackageCache;
+import de.andreas_rueckert.trade.bot.rule.RuleSession;
 import de.andreas_rueckert.trade.bot.rule.RuleSetFile;
 import de.andreas_rueckert.trade.chart.ChartProvider;
+import de.andreas_rueckert.trade.chart.indicator.IndicatorEngine;
+import de.andreas_rueckert.trade.chart.indicator.IndicatorFactProvider;
 import de.andreas_rueckert.trade.fee.FeeCalculator;
+import de.andreas_rueckert.trade.language.CompileException;
+import de.andreas_rueckert.trade.language.Compiler;
+import de.andreas_rueckert.trade.language.TradeRuleContext;
+import de.andreas_rueckert.trade.language.TradeRuleSet;
 import de.andreas_rueckert.trade.order.OrderBook;
 import java.io.File;
-import java.io.FileReader;
-import java.io.InputStreamReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.rmi.RemoteException;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import javax.rules.admin.LocalRuleExecutionSetProvider;
-import javax.rules.admin.RuleAdministrator;
-import javax.rules.admin.RuleExecutionSet;
-import javax.rules.admin.RuleExecutionSetCreateException;
-import javax.rules.admin.RuleExecutionSetDeregistrationException;
-import javax.rules.admin.RuleExecutionSetRegisterException;
-import javax.rules.ConfigurationException;
-import javax.rules.Handle;
-import javax.rules.InvalidHandleException;
-import javax.rules.InvalidRuleSessionException; 
-import javax.rules.RuleExecutionSetNotFoundException; 
-import javax.rules.RuleRuntime;
-import javax.rules.RuleServiceProvider;
-import javax.rules.RuleServiceProviderManager;
-import javax.rules.RuleSessionCreateException; 
-import javax.rules.RuleSessionTypeUnsupportedException;
-import javax.rules.StatefulRuleSession;
+import java.util.concurrent.ConcurrentHashMap;
+import org.drools.definition.KnowledgePackage;
+import org.drools.definition.rule.Global;
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.runtime.StatefulKnowledgeSession;
 
 
 /**
  * This is the main class for the bot engine.
+ *
+ * The rule sets are compiled into a knowledge base once per file, and each rule set
+ * keeps a long-lived stateful session. The compiled packages are also cached on
+ * disk, so unchanged rule sets don't have to be compiled again at the next start.
+ * The accounts are inserted once, and only the changed market facts are updated,
+ * before the rules are fired in each cycle.
+ *
+ * Rule sets in the cctl language (*.trl and *.ctl files) are compiled into java
+ * classes instead, and run without a rule engine on a live rule context.
  */
 public class TradeBotCore {
 
-    // Static variables
+    // Inner classes
 
     /**
-     * The fully qualified classname of a rule service provider.
+     * A compiled rule set with the modification time of its source file.
      */
-    private final static String DROOLS_SERVICE_PROVIDER_IMPLEMENTATION = "org.drools.jsr94.rules.RuleServiceProviderImpl";
+    static class CompiledRuleSet {
 
-    /**
-     * The name under which the rule service provider is registered.
-     */
-    private final static String DROOLS_SERVICE_PROVIDER_REGISTRATION = "http://drools.org/";
+	// Instance variables
 
+	/**
+	 * The compiled knowledge base.
+	 */
+	final KnowledgeBase _knowledgeBase;
 
-    // Instance variables
+	/**
+	 * The modification time of the compiled file.
+	 */
+	final long _lastModified;
 
-    /**
-     * The rule administrator.
-     */
-    RuleAdministrator _ruleAdministrator = null;
+
+	// Constructors
+
+	/**
+	 * Create a new compiled rule set.
+	 *
+	 * @param knowledgeBase The compiled knowledge base.
+	 * @param lastModified The modification time of the compiled file.
+	 */
+	CompiledRuleSet( KnowledgeBase knowledgeBase, long lastModified) {
+
+	    _knowledgeBase = knowledgeBase;
+	    _lastModified = lastModified;
+	}
+    }
+
+
+    // Instance variables
 
     /**
-     * An execution set provider.
+     * The compiled rule sets, mapped by the path of their file.
      */
-    LocalRuleExecutionSetProvider _ruleExecutionSetProvider = null;
+    private final Map<String, CompiledRuleSet> _compiledRuleSets = new ConcurrentHashMap<String, CompiledRuleSet>();
 
     /**
-     * The currently used rule service provider.
+     * The disk cache for the compiled rule packages.
      */
-    RuleServiceProvider _ruleServiceProvider = null;
+    private final RulePackageCache _packageCache = new RulePackageCache( new File( System.getProperty( "user.home") + "/.tradeapp/rulecache"));
 
 
     // Constructors
@@ -84,29 +106,6 @@ public class TradeBotCore {
      * Create a new tradebot.
      */
     public TradeBotCore() {
-
-	try {
-	    
-	    // Load the rule service provider.
-	    // Loading this class will automatically register this provider with the
-	    // provider manager.
-	    Class.forName( DROOLS_SERVICE_PROVIDER_IMPLEMENTATION);
-
-	    // Get the rule service provider from the provider manager.
-	    _ruleServiceProvider = RuleServiceProviderManager.getRuleServiceProvider( DROOLS_SERVICE_PROVIDER_REGISTRATION);
-
-	    // Get the rule administrator.
-	    _ruleAdministrator = _ruleServiceProvider.getRuleAdministrator();
-
-	    // Get an execution set provider from the administrator.
-	    _ruleExecutionSetProvider = _ruleAdministrator.getLocalRuleExecutionSetProvider( null );
-	} catch( ClassNotFoundException cnfe) {  // The service provider implementation was not found.
-	    System.err.println( "Found no service provider implementation: " + cnfe.toString());
-	} catch( ConfigurationException cfe) {  // The rule service provider or the rule administrator couldn't be fetched.
-	    System.err.println( "Error fetching service provider or rule administrator: " + cfe.toString());
-	} catch( RemoteException re) {
-	    System.err.println( "Error fetching the execution set provider: " + re.toString());
-	}
     }
 
 
@@ -119,23 +118,96 @@ public class TradeBotCore {
      */
     public void executeRules( RuleSetFile ruleSetFile) {
 
-	StatefulRuleSession session = ruleSetFile.getSession();
+	TradeRuleSet compiledRuleSet = ruleSetFile.getCompiledRuleSet();
 
-	if( session != null) {
+	if( compiledRuleSet != null) {
 
-	    try {
-		// Execute the rules.
-		session.executeRules();
-	    } catch( RemoteException rme) {
-		System.err.println( "Could not execute rules: " + rme);
-	    } catch( InvalidRuleSessionException ire) {
-		System.err.println( "Could not operate on invalid session: " + ire);
+	    if( ruleSetFile.getRuleContext() != null) {
+
+		compiledRuleSet.execute( ruleSetFile.getRuleContext());
 	    }
+
+	    return;
+	}
+
+	RuleSession session = ruleSetFile.getSession();
+
+	if( session != null) {
+
+	    // Update the changed facts and fire the activated rules.
+	    session.execute();
 	}
     }
 
     /**
-     * Load a set of rules from a URL.
+     * Get the compiled knowledge base of a rule set file, or compile it, if the file is new or was modified.
+     *
+     * @param ruleSetFile The file, which contains the rules.
+     *
+     * @return The compiled knowledge base or null, if the rules could not be compiled.
+     *
+     * @throws IOException if the rule file could not be read.
+     */
+    private KnowledgeBase getKnowledgeBase( RuleSetFile ruleSetFile) throws IOException {
+
+	File file = ruleSetFile.getFile();
+
+	if( ! file.canRead()) {
+	    throw new IOException( "Cannot read rule set file " + file.getPath());
+	}
+
+	String path = file.getAbsolutePath();
+
+	CompiledRuleSet compiledRuleSet = _compiledRuleSets.get( path);
+
+	if( ( compiledRuleSet != null) && ( compiledRuleSet._lastModified == file.lastModified())) {
+
+	    return compiledRuleSet._knowledgeBase;  // The file was not modified since it was compiled.
+	}
+
+	// Load the compiled packages from the disk cache or compile the drl file.
+	Collection<KnowledgePackage> packages = _packageCache.getPackages( file);
+
+	if( packages == null) {
+
+	    return null;  // The rule set has errors.
+	}
+
+	KnowledgeBase knowledgeBase = KnowledgeBaseFactory.newKnowledgeBase();
+
+	knowledgeBase.addKnowledgePackages( packages);
+
+	_compiledRuleSets.put( path, new CompiledRuleSet( knowledgeBase, file.lastModified()));
+
+	return knowledgeBase;
+    }
+
+    /**
+     * Get the disk cache for the compiled rule packages.
+     *
+     * @return The disk cache for the compiled rule packages.
+     */
+    public RulePackageCache getPackageCache() {
+
+	return _packageCache;
+    }
+
+    /**
+     * Check, if a rule set file is written in the cctl language, so it is compiled into a java class.
+     *
+     * @param ruleSetFile The rule set file.
+     *
+     * @return true, if the file has a cctl suffix. False otherwise.
+     */
+    private static boolean isCctlFile( RuleSetFile ruleSetFile) {
+
+	String fileName = ruleSetFile.getFile().getName().toLowerCase();
+
+	return fileName.endsWith( ".trl") || fileName.endsWith( ".ctl");
+    }
+
+    /**
+     * Load a set of rules from a file.
      *
      * @param ruleSetFile The file, which contains the rules.
      *
@@ -147,28 +219,69 @@ public class TradeBotCore {
 
 	String setName = null;  // The name of the rule set.
 
-	// Create a reader for the rules.
-	FileReader fileReader = new FileReader( ruleSetFile.getFile());
+	if( isCctlFile( ruleSetFile)) {
 
-	try {
-	    // Create the RuleExecutionSet for the drl.
-	    RuleExecutionSet ruleExecutionSet = _ruleExecutionSetProvider.createRuleExecutionSet( fileReader, null );
-
-	    setName = ruleExecutionSet.getName();
-	    
-	    // Register the RuleExecutionSet with the RuleAdministrator.
-	    _ruleAdministrator.registerRuleExecutionSet( setName, ruleExecutionSet, null);
-
-	} catch( RuleExecutionSetCreateException rese) {
-	    System.err.println( "Could not create rule execution set: " + rese.toString());
-	} catch( RuleExecutionSetRegisterException rere) {
-	    System.err.println( "Could not register rule execution set: " + rere.toString());
+	    try {
+
+		TradeRuleSet compiledRuleSet = Compiler.getInstance().compile( ruleSetFile.getFile());
+
+		ruleSetFile.setCompiledRuleSet( compiledRuleSet);
+
+		setName = compiledRuleSet.getName();
+
+	    } catch( CompileException ce) {
+		System.err.println( "Could not compile rule set: " + ce.toString());
+	    }
+
+	    ruleSetFile.setRuleSetName( setName);
+
+	    return setName;
 	}
 
-	ruleSetFile.setRuleSetName( setName);  // Store the name of the RuleSet in the associated file,
-	// since the RuleAdministrator seems to lack a method to query all the registered RuleSet objects.
+	KnowledgeBase knowledgeBase = getKnowledgeBase( ruleSetFile);
+
+	if( knowledgeBase != null) {
+
+	    // Use the name of the (first) package as the name of the rule set.
+	    for( KnowledgePackage currentPackage : knowledgeBase.getKnowledgePackages()) {
+
+		if( ! currentPackage.getRules().isEmpty()) {
+
+		    setName = currentPackage.getName();
+
+		    break;
+		}
+	    }
+	}
+
+	ruleSetFile.setRuleSetName( setName);  // Store the name of the RuleSet in the associated file.
+
+	return setName;  // Return the name of the rule set or null in case of an error.
+    }
+
+    /**
+     * Compile the changed rule sets in the background, so they are ready, when they are loaded.
+     * The unchanged rule sets are loaded from the package cache later.
+     *
+     * @param ruleSetFiles The files with the rule sets.
+     */
+    public void precompileRules( List<RuleSetFile> ruleSetFiles) {
+
+	for( RuleSetFile currentFile : ruleSetFiles) {
+
+	    if( isCctlFile( currentFile)) {
+		continue;  // Compiled rule sets are not cached.
+	    }
+
+	    try {
+
+		_packageCache.precompile( currentFile.getFile());
 
-	return setName;  // Return the registered name of the rule set or null in case of an error.
+	    } catch( IOException ioe) {
+
+		System.err.println( "Could not read rule set: " + ioe.toString());
+	    }
+	}
     }
 
     /**
@@ -186,48 +299,68 @@ public class TradeBotCore {
 				, FeeCalculator feeCalculator
 				, OrderBook orderBook
 				, EmailNotifier emailNotifier) {
-	
-	StatefulRuleSession session = null;  // The new stateful rule session.
+
+	if( isCctlFile( ruleSetFile)) {
+
+	    if( ruleSetFile.getCompiledRuleSet() != null) {
+
+		// The compiled rule set gets the markets, indicators and orders from its context.
+		ruleSetFile.setRuleContext( new TradeRuleContext( null));
+	    }
+
+	    return;
+	}
+
+	KnowledgeBase knowledgeBase = null;
 
 	try {
-	    // Get a rule runtime.
-	    RuleRuntime ruleRuntime = _ruleServiceProvider.getRuleRuntime();
-
-	    // Create a map of properties for global variables.
-	    Map properties = new HashMap();
-	    properties.put( "ChartProvider", chartProvider);
-	    properties.put( "FeeCalculator", feeCalculator);
-	    properties.put( "OrderBook", orderBook);
-	    properties.put( "EmailNotifier", emailNotifier);
-	    properties.put( "ExecutionCounter", ruleSetFile.getExecutionCounter());  // Give the drl file the option to check, how
-	                                                                             // often it was called.
-
-	    // Create a stateful session from the runtime.
-	    session = (StatefulRuleSession)ruleRuntime.createRuleSession( ruleSetFile.getRuleSetName()
-									   , properties
-									   , RuleRuntime.STATEFUL_SESSION_TYPE);
-	    
-	    // Add all accounts to the rule set.
-	    for( Account a : accountManager.getAccounts()) {
-		session.addObject( a);
+	    knowledgeBase = getKnowledgeBase( ruleSetFile);
+	} catch( IOException ioe) {
+	    System.err.println( "Could not load rule set: " + ioe.toString());
+	}
+
+	if( knowledgeBase == null) {
+	    return;
+	}
+
+	// Create a map of properties for global variables.
+	Map<String, Object> properties = new HashMap<String, Object>();
+	properties.put( "ChartProvider", chartProvider);
+	properties.put( "FeeCalculator", feeCalculator);
+	properties.put( "OrderBook", orderBook);
+	properties.put( "EmailNotifier", emailNotifier);
+	properties.put( "ExecutionCounter", ruleSetFile.getExecutionCounter());  // Give the drl file the option to check, how
+	                                                                         // often it was called.
+	properties.put( "IndicatorEngine", IndicatorEngine.getInstance());  // Share the incrementally updated *MA's with the rules.
+	properties.put( "IndicatorFacts", IndicatorFactProvider.getInstance());  // Same, but computed only once per cycle for all rules.
+
+	// Create a long-lived stateful session from the knowledge base.
+	StatefulKnowledgeSession session = knowledgeBase.newStatefulKnowledgeSession();
+
+	// Drools rejects values for globals, that are not declared in the rule set.
+	for( KnowledgePackage currentPackage : knowledgeBase.getKnowledgePackages()) {
+
+	    for( Global currentGlobal : currentPackage.getGlobalVariables()) {
+
+		if( properties.containsKey( currentGlobal.getName())) {
+
+		    session.setGlobal( currentGlobal.getName(), properties.get( currentGlobal.getName()));
+		}
 	    }
+	}
 
-	    // Add the created session to the rule set file.
-	    ruleSetFile.setSession( session);
-
-	} catch( ConfigurationException cfe) {
-	    System.err.println( "Could not get rule runtime: " + cfe.toString());
-	} catch( RuleExecutionSetNotFoundException renf) {
-	    System.err.println( "Could not find rule execution set: " + renf.toString());
-	} catch( RuleSessionCreateException rsce) {
-	    System.err.println( "Could not create session: " + rsce);
-	} catch( RuleSessionTypeUnsupportedException rste) {
-	    System.err.println( "Could not create session: " + rste.toString());
-	} catch( RemoteException rme) {
-	    System.err.println( "Could not add object: " + rme);
-	} catch( InvalidRuleSessionException ire) {
-	    System.err.println( "Could not operate on invalid session: " + ire);
+	RuleSession ruleSession = new RuleSession( session);
+
+	// Keep the tickers and depths of the markets, that the rules declare, in the session.
+	ruleSession.addDeclaredFacts( knowledgeBase.getKnowledgePackages());
+
+	// Add all accounts to the rule set.
+	for( Account a : accountManager.getAccounts()) {
+	    ruleSession.updateFact( "account:" + System.identityHashCode( a), a);
 	}
+
+	// Add the created session to the rule set file.
+	ruleSetFile.setSession( ruleSession);
     }
 
     /**
@@ -239,21 +372,16 @@ public class TradeBotCore {
     public void removeSession( RuleSetFile ruleSetFile
 			       , AccountManager accountManager) {
 
-	StatefulRuleSession session = ruleSetFile.getSession();	 // Get the session from the rule set file.
+	ruleSetFile.setRuleContext( null);  // Drop the context of a compiled rule set.
 
-	// Destroy the session properly.
+	RuleSession session = ruleSetFile.getSession();	 // Get the session from the rule set file.
 
-	try {
-	    // Remove all objects from the session.
-	    for( Object h : session.getHandles()) {
-		session.removeObject( (Handle)h);
-	    }
-	} catch( InvalidHandleException ihe) {
-	    System.err.println( "Cannot remove object via handle from session: " + ihe.toString());
-	} catch( InvalidRuleSessionException irse) {
-	    System.err.println( "Cannot fetch handles from session: " + irse.toString());
-	} catch( RemoteException re) {
-	    System.err.println( "Cannot remove objects from session via handle: " + re.toString());
+	if( session != null) {
+
+	    // Destroy the session properly.
+	    session.dispose();
+
+	    ruleSetFile.setSession( null);
 	}
     }
 
@@ -264,13 +392,9 @@ public class TradeBotCore {
      */
     public void unloadRules( RuleSetFile ruleSetFile) {
 
-	try {
-	    // Deregister the RuleExecutionSet from the RuleAdministrator.
-	    _ruleAdministrator.deregisterRuleExecutionSet( ruleSetFile.getRuleSetName(), null);
-	} catch( RemoteException re) {
-	    System.err.println( "Error deregistering rule execution set from the rule administrator: " + re.toString());
-	} catch( RuleExecutionSetDeregistrationException resde) {
-	    System.err.println( "Error deregistering rule execution set from the rule administrator: " + resde.toString());
-	}
+	// Remove the compiled rules from the cache.
+	_compiledRuleSets.remove( ruleSetFile.getFile().getAbsolutePath());
+
+	ruleSetFile.setCompiledRuleSet( null);
     }
-}
\ No newline at end of file
+}
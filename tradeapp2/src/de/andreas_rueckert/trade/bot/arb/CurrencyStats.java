@@ -8,14 +8,28 @@
 
 package de.andreas_rueckert.trade.bot.arb;
 
+import de.andreas_rueckert.trade.Amount;
 import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.site.TradeSite;
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
 
 /**
  * This class holds statistics on the best currency distribution.
+ *
+ * The statistics might be updated from several generator or analyzer
+ * threads at the same time, so each currency is interned to a fixed
+ * index and counted in striped adders. Once a currency has been seen,
+ * an update neither locks nor allocates. Reading the statistics of
+ * an unknown currency does not intern it.
+ *
+ * No bot feeds these statistics yet, so they are not collected at runtime.
  */
 class CurrencyStats {
 
@@ -29,21 +43,47 @@ class CurrencyStats {
 	// Variables
 
 	/**
-	 * The statistics for each currency.
+	 * The summed up profits of the sequences, indexed by the interned starting currency.
 	 */
-	Map< Currency, BigDecimal> _currencyStatistics = new HashMap< Currency, BigDecimal>();
+	private final AtomicReferenceArray< DoubleAdder> _profitStatistics = new AtomicReferenceArray< DoubleAdder>( MAX_CURRENCIES);
 
 	/**
 	 * The trade site, this statistics are for.
 	 */
 	TradeSite _tradeSite;
 
+	/**
+	 * The usage counters for each currency, indexed by the interned currency.
+	 */
+	private final AtomicReferenceArray< LongAdder> _usageStatistics = new AtomicReferenceArray< LongAdder>( MAX_CURRENCIES);
+
 
 	// Constructors
 
+	/**
+	 * Create new statistics for a given trade site.
+	 *
+	 * @param tradeSite The trade site, this statistics are for.
+	 */
+	TradeSiteCurrencyStats( TradeSite tradeSite) {
+
+	    _tradeSite = tradeSite;
+	}
+
 
 	// Methods
 
+	/**
+	 * Add the profit of a sequence to the statistics of its starting currency.
+	 *
+	 * @param currency The starting currency of the sequence.
+	 * @param profit The profit of the sequence.
+	 */
+	void addProfit( Currency currency, double profit) {
+
+	    getProfitAdder( getCurrencyIndex( currency)).add( profit);
+	}
+
 	/**
 	 * Count the appearance of a currency.
 	 *
@@ -52,10 +92,7 @@ class CurrencyStats {
 	void countCurrency( Currency currency) {
 
 	    // Get the counter for the given currency and increment it.
-	    BigDecimal newCount = getCounter( currency).add( BigDecimal.ONE);
-
-	    // Write the new counter value to the map.
-	    _currencyStatistics.put( currency, newCount);
+	    getUsageAdder( getCurrencyIndex( currency)).increment();
 	}
 
 	/**
@@ -67,37 +104,138 @@ class CurrencyStats {
 	 */
 	BigDecimal getCounter( Currency currency) {
 
-	    // If the currency is not yet in the statistics.
-	    if( ! _currencyStatistics.containsKey( currency)) {
-		
-		// Add it with an initial value of 0.
-		_currencyStatistics.put( currency, new BigDecimal( "0"));
+	    // Look up the index without interning the currency, so a read does not use up an index.
+	    int index = findCurrencyIndex( currency);
+
+	    // Get the adder for the given currency, if there is one yet.
+	    LongAdder counter = ( index < 0) ? null : _usageStatistics.get( index);
+
+	    // Return the counter for the given currency (or 0, if it was never counted).
+	    return counter == null ? BigDecimal.ZERO : BigDecimal.valueOf( counter.sum());
+	}
+
+	/**
+	 * Get the summed up profit for a given starting currency.
+	 *
+	 * @param currency The given currency.
+	 *
+	 * @return The summed up profit for the given currency.
+	 */
+	BigDecimal getProfit( Currency currency) {
+
+	    // Look up the index without interning the currency, so a read does not use up an index.
+	    int index = findCurrencyIndex( currency);
+
+	    // Get the adder for the given currency, if there is one yet.
+	    DoubleAdder profit = ( index < 0) ? null : _profitStatistics.get( index);
+
+	    // Return the profit for the given currency (or 0, if there was no profit yet).
+	    return profit == null ? BigDecimal.ZERO : BigDecimal.valueOf( profit.sum());
+	}
+
+	/**
+	 * Get the profit adder for a given currency index and create it, if necessary.
+	 *
+	 * @param index The interned index of the currency.
+	 *
+	 * @return The profit adder for the given index.
+	 */
+	private DoubleAdder getProfitAdder( int index) {
+
+	    DoubleAdder adder = _profitStatistics.get( index);
+
+	    if( adder == null) {  // This currency was not used yet on this site.
+
+		// Only the first thread installs the adder, all the others use it.
+		_profitStatistics.compareAndSet( index, null, new DoubleAdder());
+
+		adder = _profitStatistics.get( index);
+	    }
+
+	    return adder;
+	}
+
+	/**
+	 * Get the usage adder for a given currency index and create it, if necessary.
+	 *
+	 * @param index The interned index of the currency.
+	 *
+	 * @return The usage adder for the given index.
+	 */
+	private LongAdder getUsageAdder( int index) {
+
+	    LongAdder adder = _usageStatistics.get( index);
+
+	    if( adder == null) {  // This currency was not used yet on this site.
+
+		// Only the first thread installs the adder, all the others use it.
+		_usageStatistics.compareAndSet( index, null, new LongAdder());
+
+		adder = _usageStatistics.get( index);
 	    }
 
-	    // Return the counter for the given currency.
-	    return _currencyStatistics.get( currency);
+	    return adder;
+	}
+
+	/**
+	 * Reset the statistics for this trade site.
+	 */
+	void reset() {
+
+	    for( int index = 0; index < MAX_CURRENCIES; ++index) {
+
+		LongAdder usage = _usageStatistics.get( index);
+
+		if( usage != null) {
+
+		    usage.reset();
+		}
+
+		DoubleAdder profit = _profitStatistics.get( index);
+
+		if( profit != null) {
+
+		    profit.reset();
+		}
+	    }
 	}
     }
 
 
     // Static variables
 
+    /**
+     * The maximum number of distinct currencies, that can be counted.
+     */
+    private final static int MAX_CURRENCIES = 512;
+
+    /**
+     * The index of each interned currency.
+     */
+    private final static ConcurrentMap< Currency, Integer> _currencyIndexes = new ConcurrentHashMap< Currency, Integer>();
+
+    /**
+     * The next free currency index.
+     */
+    private final static AtomicInteger _nextCurrencyIndex = new AtomicInteger( 0);
+
 
     // Instance variables
 
     /**
      * Create currency statistics for each trade site.
      */
-    Map< TradeSite, TradeSiteCurrencyStats> _currencyStats = new HashMap< TradeSite, TradeSiteCurrencyStats>();
+    ConcurrentMap< TradeSite, TradeSiteCurrencyStats> _currencyStats = new ConcurrentHashMap< TradeSite, TradeSiteCurrencyStats>();
 
 
     // Constructors
-    
-    
+
+
     // Methods
 
     /**
      * Update the statistics and add the data for a given trade sequence.
+     * This method might be called from several threads concurrently.
      *
      * @param tradeSequence The given trade sequence.
      */
@@ -112,6 +250,65 @@ class CurrencyStats {
 	    // Count this currency for the statistics.
 	    currencyStats.countCurrency( currentCurrency);
 	}
+
+	// If the sequence was already calculated, add its profit to the starting currency.
+	Amount profit = tradeSequence.getTradeProfit();
+
+	if( ( profit != null) && ( profit.signum() > 0) && ( tradeSequence.getStartingCurrency() != null)) {
+
+	    currencyStats.addProfit( tradeSequence.getStartingCurrency(), profit.doubleValue());
+	}
+    }
+
+    /**
+     * Find the interned index of a currency without assigning a new index.
+     *
+     * @param currency The currency to get the index for.
+     *
+     * @return The index of the currency, or -1 if the currency was never interned.
+     */
+    static int findCurrencyIndex( Currency currency) {
+
+	Integer index = _currencyIndexes.get( currency);
+
+	return index == null ? -1 : index;
+    }
+
+    /**
+     * Get the interned index of a currency and assign a new index, if the currency is not known yet.
+     *
+     * @param currency The currency to get the index for.
+     *
+     * @return The index of the currency.
+     *
+     * @throws IllegalStateException if there are already too many currencies.
+     */
+    static int getCurrencyIndex( Currency currency) {
+
+	Integer index = _currencyIndexes.get( currency);
+
+	if( index == null) {  // This currency was not interned yet.
+
+	    // Synchronize only on the rare first appearance of a currency, so no index is wasted.
+	    synchronized( _currencyIndexes) {
+
+		index = _currencyIndexes.get( currency);
+
+		if( index == null) {
+
+		    if( _nextCurrencyIndex.get() >= MAX_CURRENCIES) {
+
+			throw new IllegalStateException( "Too many currencies for the currency statistics: " + currency);
+		    }
+
+		    index = _nextCurrencyIndex.getAndIncrement();
+
+		    _currencyIndexes.put( currency, index);
+		}
+	    }
+	}
+
+	return index;
     }
 
     /**
@@ -123,14 +320,34 @@ class CurrencyStats {
      */
     TradeSiteCurrencyStats getTradeSiteCurrencyStats( TradeSite tradeSite) {
 
+	TradeSiteCurrencyStats stats = _currencyStats.get( tradeSite);
+
 	// If there are no statistics for this trade site.
-	if( ! _currencyStats.containsKey( tradeSite)) {
+	if( stats == null) {
+
+	    // Create them, unless another thread was faster.
+	    TradeSiteCurrencyStats newStats = new TradeSiteCurrencyStats( tradeSite);
 
-	    // Create them.
-	    _currencyStats.put( tradeSite, new TradeSiteCurrencyStats());
+	    stats = _currencyStats.putIfAbsent( tradeSite, newStats);
+
+	    if( stats == null) {
+
+		stats = newStats;
+	    }
 	}
 
 	// Return the statistics for this trade site.
-	return _currencyStats.get( tradeSite);
+	return stats;
+    }
+
+    /**
+     * Reset the statistics for all trade sites.
+     */
+    public void reset() {
+
+	for( TradeSiteCurrencyStats currentStats : _currencyStats.values()) {
+
+	    currentStats.reset();
+	}
     }
-}
\ No newline at end of file
+}
@@ -19,17 +19,11 @@ import de.andreas_rueckert.trade.bot.ui.TradeBotUI;
 import de.andreas_rueckert.trade.chart.ChartProvider;
 import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyImpl;
-import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
-import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
-import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
-import de.andreas_rueckert.trade.order.DepositOrder;
 import de.andreas_rueckert.trade.order.DepthOrder;
 import de.andreas_rueckert.trade.order.OrderFactory;
 import de.andreas_rueckert.trade.order.OrderType;
 import de.andreas_rueckert.trade.order.SiteOrder;
-import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
@@ -39,6 +33,9 @@ import de.andreas_rueckert.util.ModuleLoader;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 
@@ -58,19 +55,44 @@ public class InterSiteBot extends NativeBotCore implements TradeBot {
      */
     private static InterSiteBot _instance = null;
 
+    /**
+     * The reference input for the trade paths, that are not profitable.
+     */
+    private final static Amount REFERENCE_INPUT = new Amount( "10");
+
 
     // Instance variables
 
     /**
-     * The input values for the triangle calculations.
+     * The evaluations of the last update, ranked by their risk adjusted return per hour.
+     */
+    private List<TradePathEvaluation> _evaluations = new ArrayList<TradePathEvaluation>();
+
+    /**
+     * The evaluator for the trade paths.
+     */
+    private TradePathEvaluator _evaluator;
+
+    /**
+     * The input values for the trade path calculations.
      */
     public BigDecimal [] _inputValues = null;
 
     /**
-     * The output values for the triangle calculations.
+     * The output values for the trade path calculations.
      */
     public BigDecimal [] _outputValues = null;
 
+    /**
+     * The index of the currency pairs of the registered trade sites.
+     */
+    private TradePathFinder _pathFinder;
+
+    /**
+     * The controller for the trades and transfers on the trade paths.
+     */
+    private TradeController _tradeController = new TradeController();
+
     /**
      * The trade paths to check.
      */
@@ -99,23 +121,16 @@ public class InterSiteBot extends NativeBotCore implements TradeBot {
 	// Set the version of this bot.
 	this._versionString = "0.1.1 ( Kadlec )";
 
-	// Add some trade paths.
-	//addTradePath( "BTCe", "USD", "BTC", "Bitstamp", true);
-	//addTradePath( "BTCe", "EUR", "BTC", "Bitcurex", true);
-	//addTradePath( "BTCe", "BTC", "LTC", "Coins-E", true);
-	//addTradePath( "BTCe", "USD", "BTC", "LakeBTC", true);
-	//addTradePath( "LakeBTC", "USD", "BTC", "Bitfinex", true);
-	addTradePath( "BTCe", "USD", "BTC", "Bitfinex", true);
-	//addTradePath( "Huobi", "BTC", "LTC", "BTCe", true);
-	//addTradePath( "Huobi", "CNY", "BTC", "ANX", true);
-	//addTradePath( "Huobi", "CNY", "BTC", "BtcChina", true);
-	// addTradePath( "ANX", "USD", "BTC", "BTCe", true);
-	// addTradePath( "BTCe", "EUR", "BTC", "Bitcoin.de", true);
-	addTradePath( "BTCe", "LTC", "BTC", "BtcChina", true);
-	addTradePath( "BTCe", "BTC", "LTC", "BtcChina", true);
-	addTradePath( "BTCe", "USD", "BTC", "OKCoin", true);
-	//addTradePath( "BTCe", "USD", "BTC", "Bter", true);
-	addTradePath( "OKCoin", "USD", "BTC", "Bitfinex", true);
+	// Find all the trade paths between the registered trade sites.
+	_pathFinder = new TradePathFinder( ModuleLoader.getInstance().getRegisteredTradeSites().values());
+
+	for( TradePath currentPath : _pathFinder.findTradePaths()) {
+	    addTradePath( currentPath);
+	}
+
+	LogUtils.getInstance().getLogger().info( "Found " + _tradePaths.size() + " trade paths between " + _pathFinder.getTradeSites().size() + " trade sites.");
+
+	_evaluator = new TradePathEvaluator( _pathFinder);
 	
 	// Create the arrays for the data transfer to the UI.
 	// One input and output value is required for each trade path.
@@ -143,239 +158,18 @@ public class InterSiteBot extends NativeBotCore implements TradeBot {
     }
 
     /**
-     * Add a trade path and eventually also the reversed trade path.
+     * Add a transfer of coins on a trade path, so its withdrawal and deposit times are observed.
+     * The bot does not submit any withdraw or deposit orders yet, so nothing calls this method,
+     * and the transfer cost model does not learn any transfer times. Call it, once the bot
+     * submits the orders of a transfer.
      *
-     * @param tradePath The trade path to add.
-     * @param reverse_too Flag to indicate, that the reversed path should be added, too.
+     * @param tradePath The trade path of the transfer.
+     * @param withdrawOrderId The id of the submitted withdraw order in the order book.
+     * @param depositOrderId The id of the submitted deposit order in the order book.
      */
-    private void addTradePath( TradePath tradePath, boolean reverse_too) {
-
-	// Add this trade path.
-	addTradePath( tradePath);
+    public void addTransfer( TradePath tradePath, String withdrawOrderId, String depositOrderId) {
 
-	// If the user wants to add the reverse trade path, too,
-	if( reverse_too) {
-
-	    // Add the reverse trade path.
-	    addTradePath( tradePath.reverse());
-	}
-    }
-
-    /**
-     * This is just a convenience method for making trade paths easier.
-     *
-     * @param tradeSiteName1 The name of the first trade site.
-     * @param currencyName1 The name of the first currency.
-     * @param currencyName2 The name of the second currency.
-     * @param tradeSiteName2 The name of the second trade site.
-     * @param reverse_too Flag to indicate, that the reversed path should be added, too.
-     */
-    private void addTradePath( String tradeSiteName1, String currencyName1, String currencyName2, String tradeSiteName2, boolean reverse_too) {
-	
-	// Try to get the trade site APIs.
-	TradeSite tradeSite1 = ModuleLoader.getInstance().getRegisteredTradeSite( tradeSiteName1);
-	TradeSite tradeSite2 = ModuleLoader.getInstance().getRegisteredTradeSite( tradeSiteName2);
-
-	// Check, if the module loader found the trade sites.
-	if( tradeSite1 == null) {
-
-	    LogUtils.getInstance().getLogger().error( "Cannot find trade site: "+ tradeSiteName1);
-	    
-	    return;  // Cannot create trade path.
-	}
-
-	if( tradeSite2 == null) {
-		    
-	    LogUtils.getInstance().getLogger().error( "Cannot find trade site: "+ tradeSiteName2);
-	    
-	    return;  // Cannot create trade path.
-	}
-
-	// Now create the currencies.
-	Currency currency1 = CurrencyProvider.getInstance().getCurrencyForCode( currencyName1);
-	Currency currency2 = CurrencyProvider.getInstance().getCurrencyForCode( currencyName2);
-	    
-	// Since the currencies are created, if they don't exist, I don't check them separately.
-	
-	// Create a TradePath object and add it.
-	addTradePath( new TradePath( tradeSite1, currency1, currency2, tradeSite2), reverse_too);
-    }
-
-    /**
-     * Calculate a trade path for a given input value.
-     *
-     * @param tradePath The trade path to calculate.
-     * @param inputAmount The input amount for the calculation.
-     *
-     * @return The output value of the trade sequence.
-     */
-    private Amount calculateTradePath( TradePath tradePath, Amount inputAmount) {
-
-	System.out.println( "DEBUG: calculating trade path: " + tradePath.toString());
-	
-	// Create the 4 orders to do the actual transfer and subtract the fees at each step.
-
-	System.out.println( "DEBUG: Create order 1");
-	
-	// 1. exchange funds to transfer currency
-	SiteOrder exchangeOrder1 = createExchangeOrder( tradePath.getStartSite()
-							, null
-							, tradePath.getStartCurrency()
-							, tradePath.getTransferCurrency()
-							, inputAmount);
-
-	if( exchangeOrder1 == null) {  // Cannot create this order?
-
-	    return new Amount( "-1");
-	}
-	    
-	// Compute the fee for this order.
-	Price fee = tradePath.getStartSite().getFeeForOrder( exchangeOrder1);
-
-	System.out.println( "DEBUG: buy order price is: " + exchangeOrder1.getPrice());
-	
-	Amount currentAmount = new Amount( exchangeOrder1.getOrderType() == OrderType.BUY 
-					   ? inputAmount.divide( exchangeOrder1.getPrice(), MathContext.DECIMAL128) 
-					   : inputAmount.multiply( exchangeOrder1.getPrice()));
-
-	// Subtract the fee from the new amount
-	currentAmount = new Amount( currentAmount.subtract( fee));
-
-	// Step 2: withdraw funds
-
-	// Create the withdraw order. Since we don't want to execute the order, we don't need a target account.
-
-	System.out.println( "DEBUG: Create order 2");
-	
-	WithdrawOrder withDrawOrder = OrderFactory.createCryptoCoinWithdrawOrder( tradePath.getStartSite()
-										  , null
-										  , tradePath.getTransferCurrency()
-										  , currentAmount
-										  , null);
-
-	// Calculate and subtract the fee for the withdrawal.
-	fee = tradePath.getStartSite().getFeeForOrder( exchangeOrder1);
-
-	currentAmount = new Amount( currentAmount.subtract( fee));
-
-	// 3. deposit funds
-
-	System.out.println( "DEBUG: Create order 3");
-	
-	DepositOrder depositOrder = OrderFactory.createCryptoCoinDepositOrder( tradePath.getTargetSite(), null, tradePath.getTransferCurrency(), currentAmount);
-
-	// Calculate and subtract fee for the deposit.
-	fee = tradePath.getTargetSite().getFeeForOrder( depositOrder);
-
-	currentAmount = new Amount( currentAmount.subtract( fee));
-
-	// 4. exchange funds to target currency.
-
-	System.out.println( "DEBUG: Create order 4");
-	
-	SiteOrder exchangeOrder2 = createExchangeOrder( tradePath.getTargetSite()
-							, null
-							, tradePath.getTransferCurrency()
-							, tradePath.getStartCurrency()
-							, currentAmount);
-
-	if( exchangeOrder2 == null) {  // If the order cannot be created.
-
-	    return new Amount( "-1");  // Return a dummy.
-	}
-
-	System.out.println( "DEBUG: sell order price is: " + exchangeOrder1.getPrice());
-		
-	// Compute the fee for this order.
-	fee = tradePath.getStartSite().getFeeForOrder( exchangeOrder2);
-
-	currentAmount = new Amount( exchangeOrder2.getOrderType() == OrderType.BUY 
-				    ? currentAmount.divide( exchangeOrder2.getPrice(), MathContext.DECIMAL128) 
-				    : currentAmount.multiply( exchangeOrder2.getPrice()));
-
-	// Subtract the fee from the new amount
-	currentAmount = new Amount( currentAmount.subtract( fee));
-
-	// Return the resulting amount.
-	return currentAmount;
-    }
-
-    /**
-     * Calculate the volume for a trade path.
-     *
-     * @param tradePath The trade path, that we calculate the volume for.
-     *
-     * @return The volume for the trade path.
-     */
-    private Amount calculateTradePathVolume( TradePath tradePath) {
-	
-	return new Amount( "-1");  // Just a dummy for now.
-    }
-
-    /**
-     * Compute the triangle trades from the depth.
-     */
-    private void calculateTrianglesFromDepth() {
-
-	System.out.println( "ToDo: rewrite calculateTrianglesFromDepth() with BigDecimal");
-
-	// Set a default value for each result, since some calculations may fail...
-	for( int i=0; i < _outputValues.length; ++i) {
-	    _outputValues[i] = new BigDecimal( "-1");
-	}
-
-	// try {
-	    // Calculate a simple intersite trade from btc-e to MtGox.
-	    /*
-	    BigDecimal current = _inputValues[0];
-	    current = current.divide( _tradeSiteDepths[TRADESITE_BTCE].getSell(0).getPrice(), MathContext.DECIMAL128);
-	    current = current.multiply( new BigDecimal( "100").subtract( _tradeSites[ TRADESITE_BTCE].getFeeForTrades()).divide( new BigDecimal( "100"), MathContext.DECIMAL128));
-	    current = current.subtract( new BigDecimal( "0.01"));  // btce withdraw fee.
-	    current = current.multiply(  _tradeSiteDepths[TRADESITE_MTGOX].getBuy(0).getPrice());
-	    _outputValues[0] = current.multiply( new BigDecimal( "100").subtract( _tradeSites[ TRADESITE_MTGOX].getFeeForTrades()).divide( new BigDecimal( "100"), MathContext.DECIMAL128));
-	} catch( TradeDataNotAvailableException tdnae) {
-	    System.out.println( "Some trade data are not available: " + tdnae);
-	    } */
-
-	// try {
-	    // The opposite direction.
-	/*
-	    double current = _inputValues[1].doubleValue();
-	    current /= _tradeSiteDepths[TRADESITE_MTGOX].getSell(0).getPrice().doubleValue();
-	    current *= 0.997;  // MtGox withdraw fee.
-	    current *= _tradeSiteDepths[TRADESITE_BTCE].getBuy(0).getPrice().doubleValue();
-	    current *= 0.998;
-	    _outputValues[1] = new BigDecimal( current);
-	} catch( TradeDataNotAvailableException tdnae) {
-	    System.out.println( "Some trade data are not available: " + tdnae);
-	    } */
- 
-
-	// try {
-	    // Calculate a simple intersite trade from btc-e to Intersango.
-	    /* double current = _inputValues[2].doubleValue();
-	    current /= _tradeSiteDepths[TRADESITE_BTCE].getSell(0).getPrice().doubleValue();
-	    current *= 0.998;
-	    current -= 0.01;  // btce withdraw fee.
-	    current *= 0.9965;  // Intersango deposit fee.
-	    current *= _tradeSiteDepths[TRADESITE_INTERSANGO].getBuy(0).getPrice().doubleValue();
-	    _outputValues[2] = new BigDecimal( current * 0.935);
-	} catch( TradeDataNotAvailableException tdnae) {
-	    System.out.println( "Some trade data are not available: " + tdnae);
-	    } */
-
-	//  {
-	    // The opposite direction.
-	    /* ble current = _inputValues[3].doubleValue();
-	    current /= _tradeSiteDepths[TRADESITE_INTERSANGO].getSell(0).getPrice().doubleValue();
-	    current *= 0.9935;  // Intersango trade fee.
-	    current *= 0.9905;  // Intersango withdraw fee.
-	    current *= _tradeSiteDepths[TRADESITE_BTCE].getBuy(0).getPrice().doubleValue();
-	    current *= 0.998;
-	    _outputValues[3] = new BigDecimal( current);
-	} catch( TradeDataNotAvailableException tdnae) {
-	    System.out.println( "Some trade data are not available: " + tdnae);
-	    } */	
+	_tradeController.addTransfer( tradePath, withdrawOrderId, depositOrderId);
     }
 
     /**
@@ -388,6 +182,8 @@ public class InterSiteBot extends NativeBotCore implements TradeBot {
      * @param inputAmount The amount, that we want to trade.
      *
      * @return The created order, or null, if there are prices available.
+     *
+     * @throws CurrencyNotSupportedException if the trade site has no pair for the 2 currencies.
      */
     private SiteOrder createExchangeOrder( TradeSite tradeSite
 					   , TradeSiteUserAccount userAccount
@@ -395,110 +191,54 @@ public class InterSiteBot extends NativeBotCore implements TradeBot {
 					   , Currency targetCurrency
 					   , Amount inputAmount) {
 
-	boolean isBuy = true;
-	CurrencyPair usedPair = null;  // The used currency pair.
+	// Look up the currency pair in the index of the path finder.
+	TradePathEvaluator.Exchange exchange = _pathFinder.getExchange( tradeSite, startCurrency, targetCurrency);
 
-	if( startCurrency == null) {
-	    System.out.println( "startCurrency is null");
-	}
-	if( targetCurrency == null) {
-	    System.out.println( "targetCurrency is null");
-	}
-	if( tradeSite.getSupportedCurrencyPairs() == null) {
-	    System.out.println( "Supported currency pairs is null");
-	}
-	
-	// Create a currency pair from the 2 passed pairs.
-	CurrencyPair targetPair = new CurrencyPairImpl( startCurrency, targetCurrency);
+	Depth currentDepth = ChartProvider.getInstance().getDepth( tradeSite, exchange._currencyPair);
 
-	// Find a fitting currency pair on this trading site.
-	for( CurrencyPair currentPair : tradeSite.getSupportedCurrencyPairs()) {
-	    
-	    if( currentPair.equals( targetPair)) {
+	if( currentDepth == null) {
+	    return null;
+	}
 
-		usedPair = currentPair;
-		isBuy = false;
-		break;  // Currency pair found.
+	if( ( exchange._isBuy ? currentDepth.getSellSize() : currentDepth.getBuySize()) == 0) {  // If there are no matching orders.
 
-	    } else if( currentPair.invert().equals( targetPair)) {
+	    LogUtils.getInstance().getLogger().error( "Cannot find prices for order at: "
+						      + tradeSite.getName());
 
-		usedPair = currentPair;
-		isBuy = true;
-		break;  // Currency pair found.
-	    }
+	    return null;  // We cannot create this order.
 	}
 
-	// Check, if a currency pair was found.
-	if( usedPair == null) {
-	    
-	    throw new CurrencyNotSupportedException( "createExchangeOrder: can't find a currency pair on trade site " 
-						     + tradeSite.getName()
-						     + " for " 
-						     + startCurrency.getCode() 
-						     + " and "
-						     + targetCurrency.getCode());
-	} else {
-
-	    // Now create the actual order.
-	    
-	    // Get the price.
-	    // System.out.println( "Intersitebot: check for the volume here and compute a price for the complete volume, that we would trade...");
-	    Price orderPrice;
-	    Depth currentDepth = ChartProvider.getInstance().getDepth( tradeSite, usedPair);
-
-	    if( currentDepth == null) {
-		return null;
-	    }
-	    
-	    if( isBuy) {
-		
-		if( currentDepth.getSellSize() == 0) {  // If there are no sell orders.
-
-		    LogUtils.getInstance().getLogger().error( "Cannot find prices for order at: "
-							      + tradeSite.getName());
-		    
-		    return null;  // We cannot create this order.
-		}
-		
-		orderPrice =  currentDepth.getSell(0).getPrice();
+	Price orderPrice = exchange._isBuy ? currentDepth.getSell( 0).getPrice() : currentDepth.getBuy( 0).getPrice();
 
-		if( orderPrice.compareTo( BigDecimal.ZERO) == 0) {
+	if( orderPrice.compareTo( BigDecimal.ZERO) == 0) {
 
-		     LogUtils.getInstance().getLogger().error( "Order price is 0 at: "
-							      + tradeSite.getName());
-		}
-		
-	    } else {
+	    LogUtils.getInstance().getLogger().error( "Order price is 0 at: "
+						      + tradeSite.getName());
 
-		if( currentDepth.getBuySize() == 0) {  // If there are no buy orders.
+	    return null;
+	}
 
-		    LogUtils.getInstance().getLogger().error( "Cannot find prices for order at: "
-							      + tradeSite.getName());
-		    
-		    return null;  // We cannot create this order.
-		}
-		
-		orderPrice = ChartProvider.getInstance().getDepth( tradeSite, usedPair).getBuy(0).getPrice();
+	// Since we have the price now, we can compute, the amount we can buy with our current input.
+	if( exchange._isBuy) {
+	    inputAmount = new Amount( inputAmount.divide( orderPrice, MathContext.DECIMAL128));
+	}
 
-		if( orderPrice.compareTo( BigDecimal.ZERO) == 0) {
+	return OrderFactory.createCryptoCoinTradeOrder( tradeSite
+							, userAccount
+							, exchange._isBuy ? OrderType.BUY : OrderType.SELL
+							, orderPrice
+							, exchange._currencyPair
+							, inputAmount);
+    }
 
-		     LogUtils.getInstance().getLogger().error( "Order price is 0 at: "
-							      + tradeSite.getName());
-		}
-	    }
-
-	    // Since we have the price now, we can compute, the amount we can buy with our current input.
-	    if( isBuy) {
-		inputAmount = new Amount( inputAmount.divide( orderPrice, MathContext.DECIMAL128));
-	    }
-	    
-	    return OrderFactory.createCryptoCoinTradeOrder( tradeSite
-							    , userAccount
-							    , isBuy ? OrderType.BUY : OrderType.SELL
-							    , orderPrice
-							    , usedPair
-							    , inputAmount);
-	}
+    /**
+     * Get the evaluations of the last update.
+     *
+     * @return The evaluations of the trade paths, ranked by their risk adjusted return per hour (best first).
+     */
+    public List<TradePathEvaluation> getEvaluations() {
+
+	return _evaluations;
     }
 
     /**
@@ -585,21 +325,52 @@ public class InterSiteBot extends NativeBotCore implements TradeBot {
 		@Override public void run() {
 		    while( _updateThread == this) {
 
-			// Loop over the trade paths.
+			// Feed the completed transfers into the transfer cost model before the evaluation.
+			_tradeController.checkTransfers();
+
+			// Evaluate all the trade paths on one depth snapshot.
+			List<TradePathEvaluation> evaluations = _evaluator.evaluate( _tradePaths, REFERENCE_INPUT);
+
+			Map<TradePath, TradePathEvaluation> evaluationByPath = new HashMap<TradePath, TradePathEvaluation>();
+
+			for( TradePathEvaluation currentEvaluation : evaluations) {
+			    evaluationByPath.put( currentEvaluation.getTradePath(), currentEvaluation);
+			}
+
+			// Show the optimal input of each profitable path, and the reference input otherwise.
 			int currentIndex = 0;
 			for( TradePath currentPath : _tradePaths) {
-			    
-			    _inputValues[ currentIndex] = new Amount( "10");  // Use 10 dollar/euro as the input.
 
-			    // Compute the current tradePath and store the result in the display array.
-			    _outputValues[ currentIndex * 2] = calculateTradePath( currentPath, new Amount( _inputValues[ currentIndex]));
+			    TradePathEvaluation currentEvaluation = evaluationByPath.get( currentPath);
+
+			    if( currentEvaluation == null) {  // No depths available for this path.
+
+				_inputValues[ currentIndex] = REFERENCE_INPUT;
+				_outputValues[ currentIndex * 2] = new Amount( "-1");
+				_outputValues[ currentIndex * 2 + 1] = new Amount( "-1");
+
+			    } else if( currentEvaluation.getInput().signum() > 0) {
+
+				_inputValues[ currentIndex] = currentEvaluation.getInput();
+				_outputValues[ currentIndex * 2] = currentEvaluation.getOutput();
+				_outputValues[ currentIndex * 2 + 1] = currentEvaluation.getTransferAmount();
+
+			    } else {
+
+				_inputValues[ currentIndex] = currentEvaluation.getReferenceInput();
+				_outputValues[ currentIndex * 2] = currentEvaluation.getReferenceOutput();
+				_outputValues[ currentIndex * 2 + 1] = currentEvaluation.getTransferAmount();
+			    }
 
-			    // Compute the volume for the current trade path and store it also in the output fields.
-			    _outputValues[ currentIndex * 2 + 1] = calculateTradePathVolume( currentPath);
-			    
 			    ++currentIndex; // Result from next trade path.
 			}
 
+			_evaluations = evaluations;
+
+			if( ! evaluations.isEmpty() && ( evaluations.get( 0).getRiskAdjustedProfit().signum() > 0)) {
+
+			    LogUtils.getInstance().getLogger().info( "Best trade path: " + evaluations.get( 0));
+			}
 
 			// Notify the user here, if there is a good deal?
 			
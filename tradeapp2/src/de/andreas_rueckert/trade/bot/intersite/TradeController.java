@@ -9,11 +9,24 @@
 package de.andreas_rueckert.trade.bot.intersite;
 
 import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.fee.TransferCostModel;
+import de.andreas_rueckert.trade.order.CryptoCoinOrderBook;
+import de.andreas_rueckert.trade.order.OrderStatus;
+import de.andreas_rueckert.util.Clock;
+import de.andreas_rueckert.util.LogUtils;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 
 /**
  * This class controls trades on a trade path in both directions.
+ *
+ * The transfers of coins between the trade sites are watched, until their
+ * deposit is confirmed. The observed withdrawal and deposit times are added
+ * to the transfer cost model, so the evaluation of the paths learns the
+ * actual transfer times of the trade sites.
  */
 class TradeController {
 
@@ -48,6 +61,61 @@ class TradeController {
 	// Methods
     }
 
+    /**
+     * This class holds a running transfer of coins on a trade path.
+     */
+    class Transfer {
+
+	// Instance variables
+
+	/**
+	 * The id of the deposit order on the target site.
+	 */
+	final String _depositOrderId;
+
+	/**
+	 * The start time of the transfer in microseconds.
+	 */
+	final long _startTime;
+
+	/**
+	 * The trade path of the transfer.
+	 */
+	final TradePath _tradePath;
+
+	/**
+	 * The id of the withdraw order on the start site.
+	 */
+	final String _withdrawOrderId;
+
+	/**
+	 * The observed withdrawal time in microseconds, or -1, if the withdrawal is not completed yet.
+	 */
+	long _withdrawalTime = -1L;
+
+
+	// Constructors
+
+	/**
+	 * Create a new transfer.
+	 *
+	 * @param tradePath The trade path of the transfer.
+	 * @param withdrawOrderId The id of the withdraw order on the start site.
+	 * @param depositOrderId The id of the deposit order on the target site.
+	 * @param startTime The start time of the transfer in microseconds.
+	 */
+	Transfer( TradePath tradePath, String withdrawOrderId, String depositOrderId, long startTime) {
+
+	    _tradePath = tradePath;
+	    _withdrawOrderId = withdrawOrderId;
+	    _depositOrderId = depositOrderId;
+	    _startTime = startTime;
+	}
+
+
+	// Methods
+    }
+
 
     // Static variables
 
@@ -66,9 +134,91 @@ class TradeController {
      */
     private boolean _mailNotification = false;
 
+    /**
+     * The running transfers.
+     */
+    private final List<Transfer> _transfers = new ArrayList<Transfer>();
+
 
     // Constructors
 
 
     // Methods
+
+    /**
+     * Add a transfer, that was just started by submitting its withdraw and deposit orders.
+     *
+     * @param tradePath The trade path of the transfer.
+     * @param withdrawOrderId The id of the withdraw order in the order book.
+     * @param depositOrderId The id of the deposit order in the order book.
+     */
+    synchronized void addTransfer( TradePath tradePath, String withdrawOrderId, String depositOrderId) {
+
+	_transfers.add( new Transfer( tradePath, withdrawOrderId, depositOrderId, Clock.getInstance().getCurrentTimeMicros()));
+    }
+
+    /**
+     * Check the status of an order in the order book.
+     *
+     * @param orderId The id of the order.
+     *
+     * @return The current status of the order.
+     */
+    OrderStatus checkOrder( String orderId) {
+
+	return CryptoCoinOrderBook.getInstance().checkOrder( orderId);
+    }
+
+    /**
+     * Check the running transfers. The end of a withdrawal is recorded, and a
+     * confirmed deposit adds the observed times of both ends to the transfer cost model.
+     */
+    synchronized void checkTransfers() {
+
+	long currentTime = Clock.getInstance().getCurrentTimeMicros();
+
+	for( Iterator<Transfer> transferIterator = _transfers.iterator(); transferIterator.hasNext(); ) {
+
+	    Transfer currentTransfer = transferIterator.next();
+
+	    if( currentTransfer._withdrawalTime < 0L) {
+
+		OrderStatus withdrawStatus = checkOrder( currentTransfer._withdrawOrderId);
+
+		if( withdrawStatus == OrderStatus.FILLED) {
+
+		    currentTransfer._withdrawalTime = currentTime - currentTransfer._startTime;
+
+		} else if( ( withdrawStatus == OrderStatus.CANCELED) || ( withdrawStatus == OrderStatus.ERROR)) {
+
+		    LogUtils.getInstance().getLogger().info( "Withdrawal on trade path " + currentTransfer._tradePath + " failed with status " + withdrawStatus);
+
+		    transferIterator.remove();
+
+		    continue;
+		}
+	    }
+
+	    OrderStatus depositStatus = checkOrder( currentTransfer._depositOrderId);
+
+	    if( depositStatus == OrderStatus.FILLED) {
+
+		TradePath tradePath = currentTransfer._tradePath;
+
+		TransferCostModel.getInstance().addObservedTransferTime( tradePath.getStartSite()
+									 , tradePath.getTargetSite()
+									 , tradePath.getTransferCurrency()
+									 , currentTransfer._withdrawalTime
+									 , currentTime - currentTransfer._startTime);
+
+		transferIterator.remove();
+
+	    } else if( ( depositStatus == OrderStatus.CANCELED) || ( depositStatus == OrderStatus.ERROR)) {
+
+		LogUtils.getInstance().getLogger().info( "Deposit on trade path " + currentTransfer._tradePath + " failed with status " + depositStatus);
+
+		transferIterator.remove();
+	    }
+	}
+    }
 }
\ No newline at end of file
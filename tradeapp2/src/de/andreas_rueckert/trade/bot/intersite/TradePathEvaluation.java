@@ -0,0 +1,244 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.intersite;
+
+import de.andreas_rueckert.trade.Amount;
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+
+/**
+ * This class holds the result of evaluating a trade path on a depth snapshot.
+ */
+public class TradePathEvaluation {
+
+    // Instance variables
+
+    /**
+     * The optimal input amount in the start currency.
+     */
+    private final Amount _input;
+
+    /**
+     * The output for the optimal input amount in the start currency.
+     */
+    private final Amount _output;
+
+    /**
+     * The reference input amount in the start currency.
+     */
+    private final Amount _referenceInput;
+
+    /**
+     * The output for the reference input amount, or -1, if the depths are too thin for it.
+     */
+    private final Amount _referenceOutput;
+
+    /**
+     * The profit for the optimal input after the risk of a price drift during the transfer.
+     */
+    private final Amount _riskAdjustedProfit;
+
+    /**
+     * The evaluated trade path.
+     */
+    private final TradePath _tradePath;
+
+    /**
+     * The amount of the transfer currency, that is moved between the sites for the optimal input.
+     */
+    private final Amount _transferAmount;
+
+    /**
+     * The time to move the transfer currency between the sites in microseconds.
+     */
+    private final long _transferTime;
+
+
+    // Constructors
+
+    /**
+     * Create a new trade path evaluation.
+     *
+     * @param tradePath The evaluated trade path.
+     * @param input The optimal input amount.
+     * @param transferAmount The transferred amount for the optimal input.
+     * @param output The output for the optimal input.
+     * @param referenceInput The reference input amount.
+     * @param referenceOutput The output for the reference input amount.
+     * @param transferTime The time to move the transfer currency in microseconds.
+     * @param riskAdjustedProfit The profit after the risk of a price drift during the transfer.
+     */
+    TradePathEvaluation( TradePath tradePath
+			 , Amount input
+			 , Amount transferAmount
+			 , Amount output
+			 , Amount referenceInput
+			 , Amount referenceOutput
+			 , long transferTime
+			 , Amount riskAdjustedProfit) {
+
+	_tradePath = tradePath;
+	_input = input;
+	_transferAmount = transferAmount;
+	_output = output;
+	_referenceInput = referenceInput;
+	_referenceOutput = referenceOutput;
+	_transferTime = transferTime;
+	_riskAdjustedProfit = riskAdjustedProfit;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the optimal input amount in the start currency.
+     *
+     * @return The optimal input amount (0, if the path is not profitable).
+     */
+    public Amount getInput() {
+
+	return _input;
+    }
+
+    /**
+     * Get the output for the optimal input amount.
+     *
+     * @return The output in the start currency.
+     */
+    public Amount getOutput() {
+
+	return _output;
+    }
+
+    /**
+     * Get the net profit for the optimal input amount after the trade fees.
+     *
+     * @return The net profit in the start currency.
+     */
+    public Amount getProfit() {
+
+	return new Amount( _output.subtract( _input));
+    }
+
+    /**
+     * Get the net profit for the optimal input amount in percent.
+     *
+     * @return The net profit in percent, or 0 if the path is not profitable.
+     */
+    public BigDecimal getProfitPercent() {
+
+	if( _input.signum() == 0) {
+
+	    return BigDecimal.ZERO;
+	}
+
+	return getProfit().multiply( new BigDecimal( "100")).divide( _input, MathContext.DECIMAL128);
+    }
+
+    /**
+     * Get the reference input amount.
+     *
+     * @return The reference input amount in the start currency.
+     */
+    public Amount getReferenceInput() {
+
+	return _referenceInput;
+    }
+
+    /**
+     * Get the output for the reference input amount.
+     *
+     * @return The output in the start currency, or -1 if the depths are too thin for the reference input.
+     */
+    public Amount getReferenceOutput() {
+
+	return _referenceOutput;
+    }
+
+    /**
+     * Get the profit for the optimal input amount after the risk of a price drift during the transfer.
+     *
+     * @return The risk adjusted profit in the start currency.
+     */
+    public Amount getRiskAdjustedProfit() {
+
+	return _riskAdjustedProfit;
+    }
+
+    /**
+     * Get the risk adjusted profit per hour, that the capital is locked in the transfer.
+     *
+     * @return The risk adjusted return in percent per hour, or 0 if the path is not profitable.
+     */
+    public BigDecimal getRiskAdjustedReturn() {
+
+	if( ( _input.signum() == 0) || ( _transferTime <= 0L)) {
+
+	    return BigDecimal.ZERO;
+	}
+
+	return _riskAdjustedProfit.multiply( new BigDecimal( "100"))
+	    .multiply( new BigDecimal( 3600L * 1000000L))
+	    .divide( _input.multiply( new BigDecimal( _transferTime)), MathContext.DECIMAL128);
+    }
+
+    /**
+     * Get the evaluated trade path.
+     *
+     * @return The evaluated trade path.
+     */
+    public TradePath getTradePath() {
+
+	return _tradePath;
+    }
+
+    /**
+     * Get the amount of the transfer currency, that is moved between the sites.
+     *
+     * @return The transferred amount for the optimal input.
+     */
+    public Amount getTransferAmount() {
+
+	return _transferAmount;
+    }
+
+    /**
+     * Get the time to move the transfer currency between the sites.
+     *
+     * @return The transfer time in microseconds.
+     */
+    public long getTransferTime() {
+
+	return _transferTime;
+    }
+
+    /**
+     * Convert this evaluation to a string representation.
+     *
+     * @return A string representation of this evaluation.
+     */
+    public String toString() {
+
+	return _tradePath.toString()
+	    + ": "
+	    + _input
+	    + " => "
+	    + _transferAmount
+	    + " => "
+	    + _output
+	    + " (profit "
+	    + getProfit()
+	    + ", risk adjusted "
+	    + getRiskAdjustedProfit()
+	    + " in "
+	    + ( _transferTime / 60000000L)
+	    + " min)";
+    }
+}
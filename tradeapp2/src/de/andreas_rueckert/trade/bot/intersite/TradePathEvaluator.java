@@ -0,0 +1,410 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.intersite;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.bot.DepthCurve;
+import de.andreas_rueckert.trade.chart.ChartProvider;
+import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.fee.TransferCostModel;
+import de.andreas_rueckert.trade.order.DepositOrder;
+import de.andreas_rueckert.trade.order.OrderFactory;
+import de.andreas_rueckert.trade.order.WithdrawOrder;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.util.LogUtils;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class evaluates a matrix of trade paths on one shared depth snapshot.
+ *
+ * Each (trade site, currency pair) depth is fetched only once per evaluation, no
+ * matter how many paths use it (in either direction). Each path is sized by walking the depths of both
+ * sites together: the exchange on the start site and the exchange on the target site
+ * are converted to curves of cumulative volumes, and orders are consumed as long as
+ * the combined rate of both orders after the trade fees is above 1. Since the rates
+ * only get worse deeper in the books, this yields the input with the maximum net profit.
+ * The withdrawal and deposit fees are subtracted from the transferred amount afterwards.
+ *
+ * The transfer cost model adds the risk, that the price drifts while the coins are
+ * moved: the output is reduced by the typical drift for the transfer time of the path.
+ * All the paths are evaluated in parallel and ranked by their risk adjusted profit per
+ * hour, that the capital is locked, so slow paths rank below fast ones.
+ */
+public class TradePathEvaluator {
+
+    // Inner classes
+
+    /**
+     * One exchange of a trade path on a trade site.
+     */
+    static class Exchange {
+
+	// Instance variables
+
+	/**
+	 * The used currency pair of the trade site.
+	 */
+	final CurrencyPair _currencyPair;
+
+	/**
+	 * Flag to indicate, that the currency of the pair is bought.
+	 */
+	final boolean _isBuy;
+
+	/**
+	 * The trade site.
+	 */
+	final TradeSite _tradeSite;
+
+
+	// Constructors
+
+	/**
+	 * Create a new exchange.
+	 *
+	 * @param tradeSite The trade site.
+	 * @param currencyPair The used currency pair.
+	 * @param isBuy true, if the currency of the pair is bought.
+	 */
+	Exchange( TradeSite tradeSite, CurrencyPair currencyPair, boolean isBuy) {
+
+	    _tradeSite = tradeSite;
+	    _currencyPair = currencyPair;
+	    _isBuy = isBuy;
+	}
+
+
+	// Methods
+
+	/**
+	 * Get the key of the depth for this exchange.
+	 *
+	 * @return The key of the depth in the snapshot.
+	 */
+	String getDepthKey() {
+
+	    return _tradeSite.getName()
+		+ ":"
+		+ _currencyPair.getCurrency().getCode()
+		+ "<=>"
+		+ _currencyPair.getPaymentCurrency().getCode();
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The number of threads to fetch the depths and evaluate the paths.
+     */
+    private static final int POOL_SIZE = 4;
+
+
+    // Instance variables
+
+    /**
+     * The index of the currency pairs of the trade sites.
+     */
+    private final TradePathFinder _pathFinder;
+
+    /**
+     * The pool to fetch the depths and evaluate the paths in parallel.
+     */
+    private ExecutorService _pool = null;
+
+
+    // Constructors
+
+    /**
+     * Create a new trade path evaluator.
+     *
+     * @param pathFinder The index of the currency pairs of the trade sites.
+     */
+    public TradePathEvaluator( TradePathFinder pathFinder) {
+
+	_pathFinder = pathFinder;
+    }
+
+
+    // Methods
+
+    /**
+     * Evaluate a trade path on the fetched depths.
+     *
+     * @param tradePath The trade path to evaluate.
+     * @param firstExchange The exchange on the start site.
+     * @param firstDepth The depth for the exchange on the start site.
+     * @param secondExchange The exchange on the target site.
+     * @param secondDepth The depth for the exchange on the target site.
+     * @param referenceInput The reference input amount.
+     *
+     * @return The evaluation of the trade path.
+     */
+    private TradePathEvaluation evaluate( TradePath tradePath
+					  , Exchange firstExchange
+					  , Depth firstDepth
+					  , Exchange secondExchange
+					  , Depth secondDepth
+					  , Amount referenceInput) {
+
+	DepthCurve firstCurve = new DepthCurve( firstDepth, firstExchange._isBuy, firstExchange._tradeSite.getFeeForTrade());
+	DepthCurve secondCurve = new DepthCurve( secondDepth, secondExchange._isBuy, secondExchange._tradeSite.getFeeForTrade());
+
+	// The price of the transfer currency might drift, while the coins are withdrawn and deposited.
+	long transferTime = TransferCostModel.getInstance().getTransferTime( tradePath.getStartSite(), tradePath.getTargetSite(), tradePath.getTransferCurrency());
+
+	double riskFactor = TransferCostModel.getInstance().getPriceRisk( tradePath.getStartSite(), tradePath.getTargetSite(), tradePath.getTransferCurrency());
+
+	// Walk both depths together, while the combined rate after the risk is still profitable.
+	double input = DepthCurve.getOptimalInput( new DepthCurve [] { firstCurve, secondCurve }, 1.0 - riskFactor);
+	double transferAmount = 0.0;
+	double output = 0.0;
+
+	if( input > 0.0) {
+
+	    transferAmount = firstCurve.getOutput( input);
+
+	    // The withdrawal and deposit fees are charged on the transferred amount.
+	    double arrivingAmount = transferAmount - getTransferFee( tradePath, transferAmount);
+
+	    output = arrivingAmount > 0.0 ? secondCurve.getOutput( arrivingAmount) : 0.0;
+
+	    if( output * ( 1.0 - riskFactor) <= input) {  // The transfer fees eat the profit.
+
+		input = output = transferAmount = 0.0;
+	    }
+	}
+
+	// Compute the output for the reference input, so paths can also be compared without profit.
+	double referenceTransfer = firstCurve.getOutput( referenceInput.doubleValue());
+	double referenceOutput = -1.0;
+
+	if( referenceTransfer >= 0.0) {
+
+	    double arrivingAmount = referenceTransfer - getTransferFee( tradePath, referenceTransfer);
+
+	    referenceOutput = arrivingAmount > 0.0 ? secondCurve.getOutput( arrivingAmount) : 0.0;
+	}
+
+	return new TradePathEvaluation( tradePath
+					, new Amount( BigDecimal.valueOf( input))
+					, new Amount( BigDecimal.valueOf( transferAmount))
+					, new Amount( BigDecimal.valueOf( output))
+					, referenceInput
+					, new Amount( BigDecimal.valueOf( referenceOutput < 0.0 ? -1.0 : referenceOutput))
+					, transferTime
+					, new Amount( BigDecimal.valueOf( output * ( 1.0 - riskFactor) - input)));
+    }
+
+    /**
+     * Evaluate a list of trade paths on one depth snapshot.
+     *
+     * @param tradePaths The trade paths to evaluate.
+     * @param referenceInput The reference input amount in the start currency of each path.
+     *
+     * @return The evaluations of the paths with available depths, ranked by their risk adjusted return per hour (best first).
+     */
+    public List<TradePathEvaluation> evaluate( Collection<TradePath> tradePaths, final Amount referenceInput) {
+
+	ExecutorService pool = getPool();
+
+	// Fetch each depth of the snapshot only once.
+	Map<String, Future<Depth>> snapshot = new HashMap<String, Future<Depth>>();
+
+	List<Future<TradePathEvaluation>> pendingEvaluations = new ArrayList<Future<TradePathEvaluation>>();
+
+	for( final TradePath currentPath : tradePaths) {
+
+	    final Exchange firstExchange;
+	    final Exchange secondExchange;
+
+	    try {
+
+		firstExchange = _pathFinder.getExchange( currentPath.getStartSite(), currentPath.getStartCurrency(), currentPath.getTransferCurrency());
+		secondExchange = _pathFinder.getExchange( currentPath.getTargetSite(), currentPath.getTransferCurrency(), currentPath.getStartCurrency());
+
+	    } catch( CurrencyNotSupportedException cnse) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot evaluate trade path " + currentPath + ": " + cnse);
+
+		continue;
+	    }
+
+	    final Future<Depth> firstDepth = getDepthFuture( snapshot, pool, firstExchange);
+	    final Future<Depth> secondDepth = getDepthFuture( snapshot, pool, secondExchange);
+
+	    // The depth fetches are queued before the evaluation, so the evaluation never waits on a fetch, that cannot start.
+	    pendingEvaluations.add( pool.submit( new Callable<TradePathEvaluation>() {
+
+		    public TradePathEvaluation call() throws Exception {
+
+			return evaluate( currentPath, firstExchange, firstDepth.get(), secondExchange, secondDepth.get(), referenceInput);
+		    }
+		}));
+	}
+
+	List<TradePathEvaluation> result = new ArrayList<TradePathEvaluation>();
+
+	for( Future<TradePathEvaluation> currentEvaluation : pendingEvaluations) {
+
+	    try {
+
+		result.add( currentEvaluation.get());
+
+	    } catch( InterruptedException ie) {
+
+		Thread.currentThread().interrupt();
+
+		break;
+
+	    } catch( ExecutionException ee) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot evaluate trade path: " + ee.getCause());
+	    }
+	}
+
+	// Rank the paths by their risk adjusted return per hour, that the capital is locked.
+	Collections.sort( result, new Comparator<TradePathEvaluation>() {
+
+		public int compare( TradePathEvaluation evaluation1, TradePathEvaluation evaluation2) {
+
+		    int result = evaluation2.getRiskAdjustedReturn().compareTo( evaluation1.getRiskAdjustedReturn());
+
+		    return result != 0 ? result : evaluation2.getProfit().compareTo( evaluation1.getProfit());
+		}
+	    });
+
+	return result;
+    }
+
+    /**
+     * Get the future of a depth from the snapshot, or start to fetch it.
+     *
+     * @param snapshot The depth snapshot.
+     * @param pool The pool to fetch the depth.
+     * @param exchange The exchange, that needs the depth.
+     *
+     * @return The future of the depth.
+     */
+    private Future<Depth> getDepthFuture( Map<String, Future<Depth>> snapshot, ExecutorService pool, final Exchange exchange) {
+
+	String key = exchange.getDepthKey();
+
+	Future<Depth> depth = snapshot.get( key);
+
+	if( depth == null) {
+
+	    depth = pool.submit( new Callable<Depth>() {
+
+		    public Depth call() {
+
+			Depth depth = ChartProvider.getInstance().getDepth( exchange._tradeSite, exchange._currencyPair);
+
+			if( depth == null) {
+
+			    throw new TradeDataNotAvailableException( "No depth available for " + exchange.getDepthKey());
+			}
+
+			return depth;
+		    }
+		});
+
+	    snapshot.put( key, depth);
+	}
+
+	return depth;
+    }
+
+    /**
+     * Get the fees for withdrawing the transfer currency from the start site
+     * and depositing it on the target site.
+     *
+     * @param tradePath The trade path.
+     * @param transferAmount The transferred amount.
+     *
+     * @return The sum of the withdrawal and deposit fees in the transfer currency.
+     */
+    private double getTransferFee( TradePath tradePath, double transferAmount) {
+
+	Amount amount = new Amount( BigDecimal.valueOf( transferAmount));
+
+	// Since the orders are not executed, no user accounts are needed.
+	WithdrawOrder withdrawOrder = OrderFactory.createCryptoCoinWithdrawOrder( tradePath.getStartSite()
+										  , null
+										  , tradePath.getTransferCurrency()
+										  , amount
+										  , null);
+	DepositOrder depositOrder = OrderFactory.createCryptoCoinDepositOrder( tradePath.getTargetSite()
+									       , null
+									       , tradePath.getTransferCurrency()
+									       , amount);
+
+	// Prefer the configured fees of the transfer cost model.
+	BigDecimal withdrawFee = TransferCostModel.getInstance().getTransferCost( tradePath.getStartSite(), tradePath.getTransferCurrency()).getWithdrawalFee();
+	BigDecimal depositFee = TransferCostModel.getInstance().getTransferCost( tradePath.getTargetSite(), tradePath.getTransferCurrency()).getDepositFee();
+
+	if( withdrawFee == null) {
+	    withdrawFee = tradePath.getStartSite().getFeeForOrder( withdrawOrder);
+	}
+
+	if( depositFee == null) {
+	    depositFee = tradePath.getTargetSite().getFeeForOrder( depositOrder);
+	}
+
+	return ( withdrawFee == null ? 0.0 : withdrawFee.doubleValue()) + ( depositFee == null ? 0.0 : depositFee.doubleValue());
+    }
+
+    /**
+     * Get the pool to fetch the depths and evaluate the paths.
+     *
+     * @return The pool.
+     */
+    private synchronized ExecutorService getPool() {
+
+	if( _pool == null) {
+
+	    _pool = Executors.newFixedThreadPool( POOL_SIZE, new ThreadFactory() {
+
+		    /**
+		     * The number of created threads.
+		     */
+		    private final AtomicLong _threadCounter = new AtomicLong( 0L);
+
+		    @Override public Thread newThread( Runnable runnable) {
+
+			Thread thread = new Thread( runnable, "Trade path evaluator " + _threadCounter.incrementAndGet());
+
+			thread.setDaemon( true);
+
+			return thread;
+		    }
+		});
+	}
+
+	return _pool;
+    }
+}
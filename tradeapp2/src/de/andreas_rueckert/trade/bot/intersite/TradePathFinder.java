@@ -0,0 +1,209 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.intersite;
+
+import de.andreas_rueckert.trade.currency.Currency;
+import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.site.TradeSite;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+
+/**
+ * This class indexes the supported currency pairs of the trade sites and finds
+ * all the feasible trade paths between them.
+ *
+ * A trade path from site A to site B exists for each currency pair, that both sites
+ * support. The currency of a pair is always used as transfer currency, since it is
+ * the coin, that is traded. The payment currency is used as transfer currency, too,
+ * if it is traded as a currency on the start site (i.e. BTC in LTC/BTC, but not USD
+ * in BTC/USD), since only coins can be withdrawn and deposited by the bot.
+ */
+public class TradePathFinder {
+
+    // Instance variables
+
+    /**
+     * The supported currency pairs of each trade site, indexed by their currency codes.
+     */
+    private final Map<TradeSite, Map<String, CurrencyPair>> _pairIndex = new HashMap<TradeSite, Map<String, CurrencyPair>>();
+
+    /**
+     * The traded currencies (not payment currencies) of each trade site.
+     */
+    private final Map<TradeSite, Set<String>> _tradedCurrencies = new HashMap<TradeSite, Set<String>>();
+
+    /**
+     * The indexed trade sites, sorted by their names.
+     */
+    private final List<TradeSite> _tradeSites = new ArrayList<TradeSite>();
+
+
+    // Constructors
+
+    /**
+     * Create a new trade path finder and index the currency pairs of the trade sites.
+     *
+     * @param tradeSites The trade sites to index.
+     */
+    public TradePathFinder( Collection<TradeSite> tradeSites) {
+
+	// Sort the sites by their names, so the paths are always found in the same order.
+	Map<String, TradeSite> sortedSites = new TreeMap<String, TradeSite>();
+
+	for( TradeSite currentSite : tradeSites) {
+
+	    sortedSites.put( currentSite.getName(), currentSite);
+	}
+
+	for( TradeSite currentSite : sortedSites.values()) {
+
+	    CurrencyPair [] supportedPairs = currentSite.getSupportedCurrencyPairs();
+
+	    if( supportedPairs == null) {  // This site does not trade anything.
+
+		continue;
+	    }
+
+	    Map<String, CurrencyPair> sitePairs = new HashMap<String, CurrencyPair>();
+	    Set<String> tradedCurrencies = new HashSet<String>();
+
+	    for( CurrencyPair currentPair : supportedPairs) {
+
+		sitePairs.put( getKey( currentPair.getCurrency().getCode(), currentPair.getPaymentCurrency().getCode()), currentPair);
+
+		tradedCurrencies.add( currentPair.getCurrency().getCode());
+	    }
+
+	    _tradeSites.add( currentSite);
+	    _pairIndex.put( currentSite, sitePairs);
+	    _tradedCurrencies.put( currentSite, tradedCurrencies);
+	}
+    }
+
+
+    // Methods
+
+    /**
+     * Find all the trade paths between the indexed trade sites.
+     *
+     * @return The list of feasible trade paths.
+     */
+    public List<TradePath> findTradePaths() {
+
+	List<TradePath> result = new ArrayList<TradePath>();
+
+	for( TradeSite startSite : _tradeSites) {
+
+	    for( TradeSite targetSite : _tradeSites) {
+
+		if( startSite == targetSite) {
+
+		    continue;
+		}
+
+		Map<String, CurrencyPair> targetPairs = _pairIndex.get( targetSite);
+
+		for( CurrencyPair currentPair : _pairIndex.get( startSite).values()) {
+
+		    Currency currency = currentPair.getCurrency();
+		    Currency paymentCurrency = currentPair.getPaymentCurrency();
+
+		    // Check, if the target site trades the same currencies.
+		    if( ! targetPairs.containsKey( getKey( currency.getCode(), paymentCurrency.getCode()))
+			&& ! targetPairs.containsKey( getKey( paymentCurrency.getCode(), currency.getCode()))) {
+
+			continue;
+		    }
+
+		    // Buy the currency on the start site and sell it on the target site.
+		    result.add( new TradePath( startSite, paymentCurrency, currency, targetSite));
+
+		    // Transfer the payment currency, if it is a coin, too.
+		    if( _tradedCurrencies.get( startSite).contains( paymentCurrency.getCode())) {
+
+			result.add( new TradePath( startSite, currency, paymentCurrency, targetSite));
+		    }
+		}
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Find the currency pair to exchange one currency into another on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param startCurrency The currency, that we have.
+     * @param targetCurrency The currency, that we want.
+     *
+     * @return The exchange on the trade site.
+     *
+     * @throws CurrencyNotSupportedException if the trade site has no pair for the 2 currencies.
+     */
+    TradePathEvaluator.Exchange getExchange( TradeSite tradeSite, Currency startCurrency, Currency targetCurrency) {
+
+	Map<String, CurrencyPair> sitePairs = _pairIndex.get( tradeSite);
+
+	if( sitePairs != null) {
+
+	    CurrencyPair currencyPair = sitePairs.get( getKey( startCurrency.getCode(), targetCurrency.getCode()));
+
+	    if( currencyPair != null) {
+
+		return new TradePathEvaluator.Exchange( tradeSite, currencyPair, false);  // Sell the currency.
+	    }
+
+	    currencyPair = sitePairs.get( getKey( targetCurrency.getCode(), startCurrency.getCode()));
+
+	    if( currencyPair != null) {
+
+		return new TradePathEvaluator.Exchange( tradeSite, currencyPair, true);  // Buy the currency.
+	    }
+	}
+
+	throw new CurrencyNotSupportedException( "Can't find a currency pair on trade site "
+						 + tradeSite.getName()
+						 + " for "
+						 + startCurrency.getCode()
+						 + " and "
+						 + targetCurrency.getCode());
+    }
+
+    /**
+     * Get the index key for a currency pair.
+     *
+     * @param currencyCode The code of the currency.
+     * @param paymentCurrencyCode The code of the payment currency.
+     *
+     * @return The key for the pair index.
+     */
+    private static String getKey( String currencyCode, String paymentCurrencyCode) {
+
+	return currencyCode + "<=>" + paymentCurrencyCode;
+    }
+
+    /**
+     * Get the indexed trade sites.
+     *
+     * @return The indexed trade sites, sorted by their names.
+     */
+    public List<TradeSite> getTradeSites() {
+
+	return _tradeSites;
+    }
+}
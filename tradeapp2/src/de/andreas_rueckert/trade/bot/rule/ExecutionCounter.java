@@ -8,9 +8,12 @@
 
 package de.andreas_rueckert.trade.bot.rule;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 
 /**
- * This class just counts the execution of a rule set.
+ * This class just counts the execution of a rule set. The counter is atomic,
+ * since the rule sets are executed on a worker pool.
  */
 public class ExecutionCounter {
 
@@ -22,7 +25,7 @@ public class ExecutionCounter {
     /**
      * The actual counter.
      */
-    private int _counter = 0;
+    private final AtomicInteger _counter = new AtomicInteger( 0);
 
 
     // Constructors
@@ -36,20 +39,20 @@ public class ExecutionCounter {
      * @return The current counter value.
      */
     public int getCounter() {
-	return _counter;
+	return _counter.get();
     }
 
     /**
      * Increment this counter.
      */
     public void increment() {
-	_counter++;
+	_counter.incrementAndGet();
     }
 
     /**
      * Reset this counter.
      */
     public void reset() {
-	_counter = 0;
+	_counter.set( 0);
     }
 }
\ No newline at end of file
@@ -37,6 +37,11 @@ public class RuleBot extends NativeBotCore implements TradeBot {
 
     // Instance variables
 
+    /**
+     * The scheduler to execute the rule sets in parallel.
+     */
+    private RuleSetScheduler _scheduler = new RuleSetScheduler( this);
+
     /**
      * The rule sets for the trading strategies.
      */
@@ -48,7 +53,7 @@ public class RuleBot extends NativeBotCore implements TradeBot {
     private RuleBotUI _ruleBotUI = null;
 
     /**
-     * The sleeping interval between 2 trade actions.
+     * The default interval between 2 executions of a rule set in milliseconds.
      */
     private int _updateInterval = 15 * 1000;  // Default is 15 seconds for now.
 
@@ -57,11 +62,6 @@ public class RuleBot extends NativeBotCore implements TradeBot {
      */
     private CurrencyPair _tradedPair = null;
 
-    /**
-     * The loop to update the ticker.
-     */
-    private Thread _updateThread = null;
-
 
     // Constructors
 
@@ -100,6 +100,26 @@ public class RuleBot extends NativeBotCore implements TradeBot {
 
 	// Just add the file to the list of trade rule files.
 	_tradeRules.add( tradeRuleFile);
+
+	// And execute it at its own interval.
+	_scheduler.schedule( tradeRuleFile);
+    }
+
+    /**
+     * Execute a rule set once. This method is called from the rule set scheduler.
+     *
+     * @param ruleSetFile The rule set to execute.
+     */
+    void executeRuleSet( RuleSetFile ruleSetFile) {
+
+	try {
+
+	    // Try to execute this rule set file.
+	    TradeApp.getApp().getTradeBot().executeRules( ruleSetFile);
+
+	} catch( TradeDataNotAvailableException tnae) {
+	    LogUtils.getInstance().getLogger().info( "Some trade data, requested by the rule set " + ruleSetFile.getName() + " are not available: " + tnae);
+	}
     }
 
     /**
@@ -114,6 +134,18 @@ public class RuleBot extends NativeBotCore implements TradeBot {
 	return _instance;
     }
 
+    /**
+     * Get the number of executions of a rule set, that overran its interval.
+     *
+     * @param ruleSetFile The rule set.
+     *
+     * @return The number of overruns of the rule set.
+     */
+    public long getOverrunCount( RuleSetFile ruleSetFile) {
+
+	return _scheduler.getOverrunCount( ruleSetFile);
+    }
+
     /**
      * Get the properties of this bot.
      *
@@ -170,12 +202,22 @@ public class RuleBot extends NativeBotCore implements TradeBot {
     /**
      * Get the update interval for the rule bot.
      *
-     * @return The update interval for the rule bot.
+     * @return The update interval for the rule bot in milliseconds.
      */
     public int getUpdateInterval() {
 	return _updateInterval;
     }
 
+    /**
+     * Check, if the bot is currently stopped.
+     *
+     * @return true, if the bot is currently stopped. False otherwise.
+     */
+    public boolean isStopped() {
+
+	return ! _scheduler.isRunning();
+    }
+
     /**
      * Set the properties of this bot.
      *
@@ -190,13 +232,22 @@ public class RuleBot extends NativeBotCore implements TradeBot {
      * @param tradeRules A list of rule set file for the trading.
      */
     public void setTradeRules( ArrayList<RuleSetFile> tradeRules) {
+
+	for( RuleSetFile ruleSetFile : _tradeRules) {
+	    _scheduler.unschedule( ruleSetFile);
+	}
+
 	_tradeRules = tradeRules;
+
+	for( RuleSetFile ruleSetFile : _tradeRules) {
+	    _scheduler.schedule( ruleSetFile);
+	}
     }
 
     /**
      * Set a new update interval for the bot.
      *
-     * @param updateInterval The new update interval for the bot.
+     * @param updateInterval The new update interval for the bot in milliseconds.
      */
     public void setUpdateInterval( int updateInterval) {
 	_updateInterval = updateInterval;
@@ -207,33 +258,15 @@ public class RuleBot extends NativeBotCore implements TradeBot {
      */
     public void start() {
 
-	// Create a ticker thread.
-	_updateThread = new Thread() {
-
-		@Override public void run(){
-
-		    while( _updateThread == this) {
-			
-			// Execute all the available rule sets
-			for( RuleSetFile ruleSetFile : _tradeRules) {
-			    try {
-				
-				// Try to execute this rule set file.
-				TradeApp.getApp().getTradeBot().executeRules( ruleSetFile);
-				
-			    } catch( TradeDataNotAvailableException tnae) {
-				LogUtils.getInstance().getLogger().info( "Some trade data, requested by the rule set " + ruleSetFile.getName() + " are not available: " + tnae);
-			    }
-			}
-
-			try {
-			    sleep( _updateInterval);
-			} catch( InterruptedException ie) {
-			    System.err.println( "Rule bot sleep interrupted: " + ie.toString());
-			}
-		    }
-		}
-	    };
-	_updateThread.start();  // Start the update thread.
+	// Execute all the available rule sets in parallel, each at its own interval.
+	_scheduler.start();
+    }
+
+    /**
+     * Stop the bot.
+     */
+    public void stop() {
+
+	_scheduler.stop();  // Wait for the running rule sets to complete.
     }
 }
@@ -0,0 +1,464 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.rule;
+
+import de.andreas_rueckert.util.LogUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.drools.builder.KnowledgeBuilder;
+import org.drools.builder.KnowledgeBuilderFactory;
+import org.drools.builder.ResourceType;
+import org.drools.core.util.DroolsStreamUtils;
+import org.drools.definition.KnowledgePackage;
+import org.drools.io.ResourceFactory;
+import org.drools.RuleBase;
+
+
+/**
+ * This class caches the compiled knowledge packages of drl files on disk.
+ *
+ * The packages are serialized to a cache directory, keyed by a hash of the
+ * source and the drools version. So an unchanged rule set is just deserialized
+ * at the next start, instead of being parsed and compiled again. Changed rule
+ * sets can be compiled in the background, while the other ones are loaded.
+ */
+public class RulePackageCache {
+
+    // Static variables
+
+    /**
+     * The version of drools, that compiled the packages. Packages of other versions are not compatible.
+     */
+    private static final String DROOLS_VERSION = getDroolsVersion();
+
+    /**
+     * The maximum age of an unused cache file in milliseconds (30 days).
+     */
+    private static final long MAXIMUM_AGE = 30L * 24L * 60L * 60L * 1000L;
+
+    /**
+     * The suffix of the cache files.
+     */
+    private static final String SUFFIX = ".pkg";
+
+
+    // Instance variables
+
+    /**
+     * The directory for the cached packages.
+     */
+    private final File _cacheDirectory;
+
+    /**
+     * The number of rule sets, that were loaded from the cache.
+     */
+    private final AtomicInteger _cacheHits = new AtomicInteger( 0);
+
+    /**
+     * The number of rule sets, that had to be compiled.
+     */
+    private final AtomicInteger _compilations = new AtomicInteger( 0);
+
+    /**
+     * The executor for the background compilations (created on demand).
+     */
+    private ExecutorService _executor = null;
+
+    /**
+     * The running background compilations, indexed by the cache key.
+     */
+    private final ConcurrentMap< String, Future< Collection<KnowledgePackage>>> _pendingCompilations 
+	= new ConcurrentHashMap< String, Future< Collection<KnowledgePackage>>>();
+
+
+    // Constructors
+
+    /**
+     * Create a new cache for compiled rule packages.
+     *
+     * @param cacheDirectory The directory for the cached packages.
+     */
+    public RulePackageCache( File cacheDirectory) {
+
+	_cacheDirectory = cacheDirectory;
+
+	if( ! _cacheDirectory.isDirectory() && ! _cacheDirectory.mkdirs()) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot create the rule package cache directory " + _cacheDirectory.getPath());
+	}
+
+	removeUnusedFiles();
+    }
+
+
+    // Methods
+
+    /**
+     * Compile a drl source into knowledge packages and write them to the cache.
+     *
+     * @param source The drl source.
+     * @param name The name of the source for the log.
+     * @param key The cache key of the source.
+     *
+     * @return The compiled packages or null, if the source has errors.
+     */
+    private Collection<KnowledgePackage> compile( byte [] source, String name, String key) {
+
+	long startTime = System.currentTimeMillis();
+
+	KnowledgeBuilder knowledgeBuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+
+	knowledgeBuilder.add( ResourceFactory.newByteArrayResource( source), ResourceType.DRL);
+
+	if( knowledgeBuilder.hasErrors()) {
+
+	    LogUtils.getInstance().getLogger().error( "Could not compile rule set " + name + ": " + knowledgeBuilder.getErrors());
+
+	    return null;
+	}
+
+	Collection<KnowledgePackage> packages = knowledgeBuilder.getKnowledgePackages();
+
+	_compilations.incrementAndGet();
+
+	LogUtils.getInstance().getLogger().info( "Compiled rule set " + name + " in " + ( System.currentTimeMillis() - startTime) + " ms");
+
+	writePackages( key, packages);
+
+	return packages;
+    }
+
+    /**
+     * Get the number of rule sets, that were loaded from the cache.
+     *
+     * @return The number of rule sets, that were loaded from the cache.
+     */
+    public int getCacheHits() {
+
+	return _cacheHits.get();
+    }
+
+    /**
+     * Get the file of a cache entry.
+     *
+     * @param key The cache key.
+     *
+     * @return The file of the cache entry.
+     */
+    private File getCacheFile( String key) {
+
+	return new File( _cacheDirectory, key + SUFFIX);
+    }
+
+    /**
+     * Get the number of rule sets, that had to be compiled.
+     *
+     * @return The number of rule sets, that had to be compiled.
+     */
+    public int getCompilations() {
+
+	return _compilations.get();
+    }
+
+    /**
+     * Get the version of the drools library.
+     *
+     * @return The version of the drools library or 'unknown', if the jar has no version information.
+     */
+    private static String getDroolsVersion() {
+
+	String version = RuleBase.class.getPackage().getImplementationVersion();
+
+	return version == null ? "unknown" : version;
+    }
+
+    /**
+     * Get the executor for the background compilations and create it, if necessary.
+     *
+     * @return The executor for the background compilations.
+     */
+    private synchronized ExecutorService getExecutor() {
+
+	if( _executor == null) {
+
+	    _executor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+		    /**
+		     * The number of created threads.
+		     */
+		    private final AtomicLong _threadCounter = new AtomicLong( 0L);
+
+		    @Override public Thread newThread( Runnable runnable) {
+
+			Thread thread = new Thread( runnable, "Rule compiler " + _threadCounter.incrementAndGet());
+
+			thread.setDaemon( true);
+
+			return thread;
+		    }
+		});
+	}
+
+	return _executor;
+    }
+
+    /**
+     * Compute the cache key of a drl source.
+     *
+     * @param source The drl source.
+     *
+     * @return The cache key as a hex string.
+     */
+    private String getKey( byte [] source) {
+
+	try {
+
+	    MessageDigest digest = MessageDigest.getInstance( "SHA-256");
+
+	    digest.update( DROOLS_VERSION.getBytes( Charset.forName( "UTF-8")));
+	    digest.update( (byte)0);
+	    digest.update( source);
+
+	    StringBuilder result = new StringBuilder();
+
+	    for( byte currentByte : digest.digest()) {
+
+		result.append( String.format( "%02x", currentByte & 0xff));
+	    }
+
+	    return result.toString();
+
+	} catch( NoSuchAlgorithmException nsae) {  // Every java platform has to support SHA-256.
+
+	    throw new IllegalStateException( "SHA-256 is not available: " + nsae);
+	}
+    }
+
+    /**
+     * Get the compiled packages of a drl file. The packages are loaded from the
+     * cache, taken from a background compilation or compiled now.
+     *
+     * @param file The drl file.
+     *
+     * @return The compiled packages or null, if the rule set has errors.
+     *
+     * @throws IOException if the file cannot be read.
+     */
+    public Collection<KnowledgePackage> getPackages( File file) throws IOException {
+
+	byte [] source = Files.readAllBytes( file.toPath());
+
+	String key = getKey( source);
+
+	Future< Collection<KnowledgePackage>> pendingCompilation = _pendingCompilations.get( key);
+
+	if( pendingCompilation != null) {  // Wait for the background compilation.
+
+	    try {
+
+		return pendingCompilation.get();
+
+	    } catch( InterruptedException ie) {
+
+		Thread.currentThread().interrupt();
+
+		throw new IOException( "Interrupted while compiling rule set " + file.getPath());
+
+	    } catch( ExecutionException ee) {
+
+		LogUtils.getInstance().getLogger().error( "Background compilation of rule set " + file.getPath() + " failed: " + ee.getCause());
+
+	    } finally {
+
+		_pendingCompilations.remove( key, pendingCompilation);
+	    }
+	}
+
+	Collection<KnowledgePackage> packages = readPackages( key, file.getPath());
+
+	return packages != null ? packages : compile( source, file.getPath(), key);
+    }
+
+    /**
+     * Compile a drl file in the background, if there are no cached packages for its current content.
+     *
+     * @param file The drl file.
+     *
+     * @throws IOException if the file cannot be read.
+     */
+    public void precompile( final File file) throws IOException {
+
+	final byte [] source = Files.readAllBytes( file.toPath());
+
+	final String key = getKey( source);
+
+	if( getCacheFile( key).isFile() || _pendingCompilations.containsKey( key)) {
+
+	    return;  // The file is unchanged or already compiling.
+	}
+
+	_pendingCompilations.putIfAbsent( key, getExecutor().submit( new Callable< Collection<KnowledgePackage>>() {
+
+		    @Override public Collection<KnowledgePackage> call() {
+
+			return compile( source, file.getPath(), key);
+		    }
+		}));
+    }
+
+    /**
+     * Read the packages of a cache entry.
+     *
+     * @param key The cache key.
+     * @param name The name of the source for the log.
+     *
+     * @return The packages or null, if there is no valid cache entry.
+     */
+    @SuppressWarnings( "unchecked")
+    private Collection<KnowledgePackage> readPackages( String key, String name) {
+
+	File cacheFile = getCacheFile( key);
+
+	if( ! cacheFile.isFile()) {
+
+	    return null;
+	}
+
+	long startTime = System.currentTimeMillis();
+
+	InputStream input = null;
+
+	try {
+
+	    input = new BufferedInputStream( new FileInputStream( cacheFile));
+
+	    Collection<KnowledgePackage> packages = (Collection<KnowledgePackage>)DroolsStreamUtils.streamIn( input, RulePackageCache.class.getClassLoader());
+
+	    cacheFile.setLastModified( System.currentTimeMillis());  // Mark the entry as used.
+
+	    _cacheHits.incrementAndGet();
+
+	    LogUtils.getInstance().getLogger().info( "Loaded rule set " + name + " from the package cache in " + ( System.currentTimeMillis() - startTime) + " ms");
+
+	    return packages;
+
+	} catch( Exception e) {  // The entry is corrupt or incompatible, so compile the rule set again.
+
+	    LogUtils.getInstance().getLogger().error( "Cannot read cached packages of rule set " + name + ": " + e);
+
+	    if( ! cacheFile.delete()) {
+		LogUtils.getInstance().getLogger().error( "Cannot delete the cache file " + cacheFile.getPath());
+	    }
+
+	    return null;
+
+	} finally {
+
+	    if( input != null) {
+
+		try {
+		    input.close();
+		} catch( IOException ioe) {
+		    LogUtils.getInstance().getLogger().error( "Cannot close the cache file " + cacheFile.getPath() + ": " + ioe);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Remove the cache files, that were not used for a long time (i.e. of old versions of the rule sets).
+     */
+    private void removeUnusedFiles() {
+
+	File [] cacheFiles = _cacheDirectory.listFiles();
+
+	if( cacheFiles != null) {
+
+	    long oldestAllowed = System.currentTimeMillis() - MAXIMUM_AGE;
+
+	    for( File currentFile : cacheFiles) {
+
+		if( currentFile.getName().endsWith( SUFFIX) && ( currentFile.lastModified() < oldestAllowed)) {
+
+		    currentFile.delete();
+		}
+	    }
+	}
+    }
+
+    /**
+     * Write compiled packages to the cache. The packages are written to a temporary
+     * file first, so a crash cannot leave a truncated cache entry.
+     *
+     * @param key The cache key.
+     * @param packages The compiled packages.
+     */
+    private void writePackages( String key, Collection<KnowledgePackage> packages) {
+
+	File cacheFile = getCacheFile( key);
+
+	File temporaryFile = new File( _cacheDirectory, key + ".tmp" + Thread.currentThread().getId());
+
+	OutputStream output = null;
+
+	try {
+
+	    output = new BufferedOutputStream( new FileOutputStream( temporaryFile));
+
+	    DroolsStreamUtils.streamOut( output, packages);
+
+	    output.close();
+
+	    output = null;
+
+	    if( ! temporaryFile.renameTo( cacheFile)) {
+
+		throw new IOException( "Cannot rename " + temporaryFile.getPath() + " to " + cacheFile.getPath());
+	    }
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot write compiled packages to the cache: " + ioe);
+
+	    temporaryFile.delete();
+
+	} finally {
+
+	    if( output != null) {
+
+		try {
+		    output.close();
+		} catch( IOException ioe) {
+		    LogUtils.getInstance().getLogger().error( "Cannot close the cache file " + temporaryFile.getPath() + ": " + ioe);
+		}
+	    }
+	}
+    }
+}
@@ -0,0 +1,484 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.rule;
+
+import de.andreas_rueckert.trade.chart.ChartProvider;
+import de.andreas_rueckert.trade.chart.indicator.IndicatorEngine;
+import de.andreas_rueckert.trade.chart.indicator.IndicatorFactProvider;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.Ticker;
+import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.ModuleLoader;
+import de.andreas_rueckert.util.TimeUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.drools.definition.KnowledgePackage;
+import org.drools.definition.rule.Rule;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.rule.FactHandle;
+
+
+/**
+ * This class holds a long-lived stateful session of a rule set and the handles
+ * of the facts in it, so only changed facts have to be updated in each cycle.
+ *
+ * The rules declare the markets, whose ticker and depth they need as facts, and
+ * the indicators, that they need as facts, in their metadata, i.e.
+ * @markets( "BTCe btc<=>usd") and @indicators( "BTCe btc<=>usd sma 6h").
+ */
+public class RuleSession {
+
+    // Inner classes
+
+    /**
+     * An indicator of a market, whose memoized value is kept as a fact in the session.
+     */
+    static class Indicator {
+
+	// Instance variables
+
+	/**
+	 * The market of the indicator.
+	 */
+	final Market _market;
+
+	/**
+	 * The period of the indicator in microseconds.
+	 */
+	final long _period;
+
+	/**
+	 * The type of the indicator.
+	 */
+	final IndicatorEngine.IndicatorType _type;
+
+
+	// Constructors
+
+	/**
+	 * Create a new indicator.
+	 *
+	 * @param market The market of the indicator.
+	 * @param type The type of the indicator.
+	 * @param period The period of the indicator in microseconds.
+	 */
+	Indicator( Market market, IndicatorEngine.IndicatorType type, long period) {
+
+	    _market = market;
+	    _type = type;
+	    _period = period;
+	}
+
+
+	// Methods
+
+	/**
+	 * Get the key of this indicator for the fact handles.
+	 *
+	 * @return The key of this indicator.
+	 */
+	String getKey() {
+
+	    return _market.getKey() + ":" + _type.name() + _period;
+	}
+    }
+
+    /**
+     * A currency pair on a trade site, whose ticker and depth are kept as facts in the session.
+     */
+    static class Market {
+
+	// Instance variables
+
+	/**
+	 * The currency pair.
+	 */
+	final CurrencyPair _currencyPair;
+
+	/**
+	 * The trade site.
+	 */
+	final TradeSite _tradeSite;
+
+
+	// Constructors
+
+	/**
+	 * Create a new market.
+	 *
+	 * @param tradeSite The trade site.
+	 * @param currencyPair The currency pair.
+	 */
+	Market( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	    _tradeSite = tradeSite;
+	    _currencyPair = currencyPair;
+	}
+
+
+	// Methods
+
+	/**
+	 * Get the key of this market for the fact handles.
+	 *
+	 * @return The key of this market.
+	 */
+	String getKey() {
+
+	    return _tradeSite.getName()
+		+ ":"
+		+ _currencyPair.getCurrency().getCode()
+		+ "<=>"
+		+ _currencyPair.getPaymentCurrency().getCode();
+	}
+    }
+
+
+    // Instance variables
+
+    /**
+     * The handles of the facts in the session, mapped by the key of the fact.
+     */
+    private final Map<String, FactHandle> _factHandles = new HashMap<String, FactHandle>();
+
+    /**
+     * The indicators, whose values are kept as facts in the session.
+     */
+    private final List<Indicator> _indicators = new CopyOnWriteArrayList<Indicator>();
+
+    /**
+     * The markets, whose ticker and depth are kept as facts in the session.
+     */
+    private final List<Market> _markets = new CopyOnWriteArrayList<Market>();
+
+    /**
+     * The stateful Drools session.
+     */
+    private final StatefulKnowledgeSession _session;
+
+
+    // Constructors
+
+    /**
+     * Create a new rule session.
+     *
+     * @param session The stateful Drools session.
+     */
+    public RuleSession( StatefulKnowledgeSession session) {
+
+	_session = session;
+    }
+
+
+    // Methods
+
+    /**
+     * Keep the value of an indicator as a fact in the session. The value is
+     * shared with all the other sessions and bots, that use the same indicator.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param type The type of the indicator.
+     * @param period The period of the indicator in microseconds.
+     */
+    public synchronized void addIndicator( TradeSite tradeSite, CurrencyPair currencyPair, IndicatorEngine.IndicatorType type, long period) {
+
+	Indicator indicator = new Indicator( new Market( tradeSite, currencyPair), type, period);
+
+	for( Indicator currentIndicator : _indicators) {
+
+	    if( currentIndicator.getKey().equals( indicator.getKey())) {
+
+		return;  // This indicator is already kept in the session.
+	    }
+	}
+
+	_indicators.add( indicator);
+    }
+
+    /**
+     * Keep the ticker and the depth of a currency pair on a trade site as facts in the session.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     */
+    public synchronized void addMarket( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	Market market = new Market( tradeSite, currencyPair);
+
+	for( Market currentMarket : _markets) {
+
+	    if( currentMarket.getKey().equals( market.getKey())) {
+
+		return;  // This market is already kept in the session.
+	    }
+	}
+
+	_markets.add( market);
+    }
+
+    /**
+     * Keep the facts, that the rules of some packages declare in their metadata, in the session.
+     *
+     * @param packages The compiled packages of the rule set.
+     */
+    public void addDeclaredFacts( Collection<KnowledgePackage> packages) {
+
+	for( KnowledgePackage currentPackage : packages) {
+
+	    for( Rule currentRule : currentPackage.getRules()) {
+
+		for( String [] currentMarket : parseMetaData( currentRule.getMetaData().get( "markets"))) {
+
+		    TradeSite tradeSite = getDeclaredTradeSite( currentRule, currentMarket, 2);
+
+		    if( tradeSite != null) {
+
+			addMarket( tradeSite, IndicatorFactProvider.getInstance().getCurrencyPair( currentMarket[ 1]));
+		    }
+		}
+
+		for( String [] currentIndicator : parseMetaData( currentRule.getMetaData().get( "indicators"))) {
+
+		    TradeSite tradeSite = getDeclaredTradeSite( currentRule, currentIndicator, 4);
+
+		    if( tradeSite != null) {
+
+			try {
+			    addIndicator( tradeSite
+					  , IndicatorFactProvider.getInstance().getCurrencyPair( currentIndicator[ 1])
+					  , IndicatorEngine.IndicatorType.valueOf( currentIndicator[ 2].toUpperCase())
+					  , TimeUtils.microsFromString( currentIndicator[ 3]));
+
+			} catch( IllegalArgumentException iae) {
+
+			    LogUtils.getInstance().getLogger().error( "Rule " + currentRule.getName() + " declares an invalid indicator: " + iae);
+			}
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Dispose the session and release all its facts.
+     */
+    public synchronized void dispose() {
+
+	_factHandles.clear();
+
+	_session.dispose();
+    }
+
+    /**
+     * Update the market and indicator facts and fire the rules, that are activated by the changes.
+     *
+     * @return The number of fired rules.
+     */
+    public synchronized int execute() {
+
+	updateMarketFacts();
+
+	updateIndicatorFacts();
+
+	return _session.fireAllRules();
+    }
+
+    /**
+     * Get the trade site of a market or indicator, that a rule declares in its metadata.
+     *
+     * @param rule The rule.
+     * @param declaration The words of the declaration, starting with the name of the trade site.
+     * @param length The expected number of words.
+     *
+     * @return The registered trade site, or null if the declaration is invalid.
+     */
+    private TradeSite getDeclaredTradeSite( Rule rule, String [] declaration, int length) {
+
+	if( declaration.length != length) {
+
+	    LogUtils.getInstance().getLogger().error( "Rule " + rule.getName() + " has an invalid declaration: " + Arrays.toString( declaration));
+
+	    return null;
+	}
+
+	TradeSite tradeSite = ModuleLoader.getInstance().getRegisteredTradeSite( declaration[ 0]);
+
+	if( tradeSite == null) {
+
+	    LogUtils.getInstance().getLogger().error( "Rule " + rule.getName() + " declares an unknown trade site: " + Arrays.toString( declaration));
+	}
+
+	return tradeSite;
+    }
+
+    /**
+     * Get the current depth of a market.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The current depth or null.
+     */
+    Depth getDepth( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	return ChartProvider.getInstance().getDepth( tradeSite, currencyPair);
+    }
+
+    /**
+     * Get the number of markets, that are kept in the session.
+     *
+     * @return The number of markets.
+     */
+    int getMarketCount() {
+
+	return _markets.size();
+    }
+
+    /**
+     * Get the stateful Drools session.
+     *
+     * @return The stateful Drools session.
+     */
+    public StatefulKnowledgeSession getSession() {
+
+	return _session;
+    }
+
+    /**
+     * Get the current ticker of a market.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The current ticker or null.
+     */
+    Ticker getTicker( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	return ChartProvider.getInstance().getTicker( tradeSite, currencyPair);
+    }
+
+    /**
+     * Split the value of a metadata attribute like @markets( "BTCe btc<=>usd", "BTCe ltc<=>usd")
+     * into its entries and the entries into their words.
+     *
+     * @param value The value of the metadata attribute or null.
+     *
+     * @return The words of each entry.
+     */
+    static List<String []> parseMetaData( Object value) {
+
+	List<String []> result = new ArrayList<String []>();
+
+	if( value != null) {
+
+	    for( String currentEntry : value.toString().split( ",")) {
+
+		String entry = currentEntry.replace( "\"", "").trim();
+
+		if( entry.length() > 0) {
+
+		    result.add( entry.split( "\\s+"));
+		}
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Insert a fact into the session or update it, if it has changed.
+     *
+     * @param key The key of the fact.
+     * @param fact The current value of the fact.
+     *
+     * @return true, if the fact was inserted or updated. False, if it has not changed.
+     */
+    public synchronized boolean updateFact( String key, Object fact) {
+
+	FactHandle handle = _factHandles.get( key);
+
+	if( handle == null) {  // This is a new fact.
+
+	    _factHandles.put( key, _session.insert( fact));
+
+	    return true;
+	}
+
+	// The chart provider returns the cached object, if the data did not change.
+	if( _session.getObject( handle) == fact) {
+
+	    return false;
+	}
+
+	_session.update( handle, fact);
+
+	return true;
+    }
+
+    /**
+     * Get the memoized indicator values and update the changed ones in the session.
+     */
+    private void updateIndicatorFacts() {
+
+	for( Indicator currentIndicator : _indicators) {
+
+	    try {
+
+		updateFact( "indicator:" + currentIndicator.getKey()
+			    , IndicatorFactProvider.getInstance().getFact( currentIndicator._market._tradeSite
+									   , currentIndicator._market._currencyPair
+									   , currentIndicator._type
+									   , currentIndicator._period));
+
+	    } catch( TradeDataNotAvailableException tdnae) {
+
+		LogUtils.getInstance().getLogger().info( "Cannot update the indicator fact for " + currentIndicator.getKey() + ": " + tdnae);
+	    }
+	}
+    }
+
+    /**
+     * Fetch the tickers and depths of the markets and update the changed ones in the session.
+     */
+    private void updateMarketFacts() {
+
+	for( Market currentMarket : _markets) {
+
+	    try {
+
+		Ticker ticker = getTicker( currentMarket._tradeSite, currentMarket._currencyPair);
+
+		if( ticker != null) {
+
+		    updateFact( "ticker:" + currentMarket.getKey(), ticker);
+		}
+
+		Depth depth = getDepth( currentMarket._tradeSite, currentMarket._currencyPair);
+
+		if( depth != null) {
+
+		    updateFact( "depth:" + currentMarket.getKey(), depth);
+		}
+
+	    } catch( TradeDataNotAvailableException tdnae) {
+
+		LogUtils.getInstance().getLogger().info( "Cannot update the market facts for " + currentMarket.getKey() + ": " + tdnae);
+	    }
+	}
+    }
+}
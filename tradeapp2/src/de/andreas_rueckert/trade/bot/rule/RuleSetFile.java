@@ -9,9 +9,10 @@
 package de.andreas_rueckert.trade.bot.rule;
 
 import de.andreas_rueckert.trade.app.ProjectFile;
+import de.andreas_rueckert.trade.language.RuleContext;
+import de.andreas_rueckert.trade.language.TradeRuleSet;
 import java.io.File;
 import java.io.IOException;
-import javax.rules.StatefulRuleSession;
 
 
 /**
@@ -24,20 +25,40 @@ public class RuleSetFile extends ProjectFile {
 
     // Instance variables
 
+    /**
+     * The rule set, that was compiled into a java class, or null for a drools rule set.
+     */
+    private volatile TradeRuleSet _compiledRuleSet = null;
+
     /**
      * An execution counter (to be used in rule sets).
      */
     private ExecutionCounter _executionCounter;
 
+    /**
+     * The interval between 2 executions of this rule set in microseconds (0 to use the interval of the bot).
+     */
+    private volatile long _executionInterval = 0L;
+
+    /**
+     * The time after which an execution of this rule set is interrupted in microseconds (0 for the default).
+     */
+    private volatile long _executionTimeout = 0L;
+
+    /**
+     * The context of the compiled rule set to access the markets and accounts.
+     */
+    private volatile RuleContext _ruleContext = null;
+
     /**
      * The name of the associated rule set.
      */
     private String _ruleSetName = null;
 
     /**
-     * The stateful session for the executed rule set.
+     * The long-lived session for the executed rule set.
      */
-    private StatefulRuleSession _session = null;
+    private RuleSession _session = null;
 
 
     // Constructors
@@ -58,6 +79,15 @@ public class RuleSetFile extends ProjectFile {
 
     // Methods
 
+    /**
+     * Get the rule set, that was compiled into a java class.
+     *
+     * @return The compiled rule set, or null if this is a drools rule set.
+     */
+    public TradeRuleSet getCompiledRuleSet() {
+	return _compiledRuleSet;
+    }
+
     /**
      * Get the execution counter of this rule set.
      *
@@ -67,6 +97,33 @@ public class RuleSetFile extends ProjectFile {
 	return _executionCounter;
     }
 
+    /**
+     * Get the interval between 2 executions of this rule set.
+     *
+     * @return The execution interval in microseconds, or 0 to use the interval of the bot.
+     */
+    public long getExecutionInterval() {
+	return _executionInterval;
+    }
+
+    /**
+     * Get the time after which an execution of this rule set is interrupted.
+     *
+     * @return The execution timeout in microseconds, or 0 for the default timeout.
+     */
+    public long getExecutionTimeout() {
+	return _executionTimeout;
+    }
+
+    /**
+     * Get the context of the compiled rule set.
+     *
+     * @return The context of the compiled rule set, or null if the rule set is not prepared.
+     */
+    public RuleContext getRuleContext() {
+	return _ruleContext;
+    }
+
     /**
      * Get the associated RuleSet name of this rule set.
      *
@@ -81,10 +138,47 @@ public class RuleSetFile extends ProjectFile {
      *
      * @return The session with the state of the executed rule set.
      */
-    public StatefulRuleSession getSession() {
+    public RuleSession getSession() {
 	return _session;
     }
 
+    /**
+     * Set the rule set, that was compiled into a java class.
+     *
+     * @param compiledRuleSet The compiled rule set, or null to remove it.
+     */
+    public void setCompiledRuleSet( TradeRuleSet compiledRuleSet) {
+	_compiledRuleSet = compiledRuleSet;
+    }
+
+    /**
+     * Set the interval between 2 executions of this rule set.
+     * The new interval is used, when the rule bot is started the next time.
+     *
+     * @param executionInterval The execution interval in microseconds, or 0 to use the interval of the bot.
+     */
+    public void setExecutionInterval( long executionInterval) {
+	_executionInterval = executionInterval;
+    }
+
+    /**
+     * Set the time after which an execution of this rule set is interrupted.
+     *
+     * @param executionTimeout The execution timeout in microseconds, or 0 for the default timeout.
+     */
+    public void setExecutionTimeout( long executionTimeout) {
+	_executionTimeout = executionTimeout;
+    }
+
+    /**
+     * Set the context of the compiled rule set.
+     *
+     * @param ruleContext The context of the compiled rule set, or null to remove it.
+     */
+    public void setRuleContext( RuleContext ruleContext) {
+	_ruleContext = ruleContext;
+    }
+
     /**
      * Set the associated RuleSet name for this file.
      *
@@ -99,7 +193,7 @@ public class RuleSetFile extends ProjectFile {
      *
      * @param session The new session for the executed rule set.
      */
-    public void setSession( StatefulRuleSession session) {
+    public void setSession( RuleSession session) {
 	_session = session;
     }
 }
\ No newline at end of file
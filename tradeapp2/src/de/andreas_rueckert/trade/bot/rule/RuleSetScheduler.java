@@ -0,0 +1,116 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.rule;
+
+import de.andreas_rueckert.trade.bot.TaskScheduler;
+
+
+/**
+ * This class executes each rule set at its own interval.
+ *
+ * The rule sets are executed in parallel on the worker pool of the task
+ * scheduler, so a slow rule set or a blocking exchange call in a rule does
+ * not delay the other rule sets.
+ */
+class RuleSetScheduler extends TaskScheduler<RuleSetFile> {
+
+    // Static variables
+
+    /**
+     * The maximum time, a rule set execution might take before it is interrupted, in microseconds.
+     */
+    static final long MAX_EXECUTION_TIMEOUT = 5L * 60L * 1000000L;
+
+
+    // Instance variables
+
+    /**
+     * The hosting bot.
+     */
+    private final RuleBot _bot;
+
+
+    // Constructors
+
+    /**
+     * Create a new scheduler for a given bot.
+     *
+     * @param bot The hosting bot.
+     */
+    RuleSetScheduler( RuleBot bot) {
+
+	this( bot, Math.max( 2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Create a new scheduler for a given bot with a given number of worker threads.
+     *
+     * @param bot The hosting bot.
+     * @param workerPoolSize The number of threads to execute the rule sets.
+     */
+    RuleSetScheduler( RuleBot bot, int workerPoolSize) {
+
+	super( "RuleBot rule set", workerPoolSize);
+
+	_bot = bot;
+    }
+
+
+    // Methods
+
+    /**
+     * Execute a rule set once.
+     *
+     * @param ruleSetFile The rule set to execute.
+     */
+    protected void execute( RuleSetFile ruleSetFile) {
+
+	_bot.executeRuleSet( ruleSetFile);
+    }
+
+    /**
+     * Get the execution interval of a rule set.
+     *
+     * @param ruleSetFile The rule set.
+     *
+     * @return The execution interval in microseconds.
+     */
+    protected long getExecutionInterval( RuleSetFile ruleSetFile) {
+
+	long interval = ruleSetFile.getExecutionInterval();
+
+	return interval > 0L ? interval : _bot.getUpdateInterval() * 1000L;  // The update interval of the bot is in milliseconds.
+    }
+
+    /**
+     * Get the time after which an execution of a rule set is interrupted.
+     *
+     * @param ruleSetFile The rule set.
+     *
+     * @return The execution timeout in microseconds.
+     */
+    protected long getExecutionTimeout( RuleSetFile ruleSetFile) {
+
+	long timeout = ruleSetFile.getExecutionTimeout();
+
+	return timeout > 0L ? timeout : Math.min( getExecutionInterval( ruleSetFile), MAX_EXECUTION_TIMEOUT);
+    }
+
+    /**
+     * Get the name of a rule set for the log messages.
+     *
+     * @param ruleSetFile The rule set.
+     *
+     * @return The name of the rule set.
+     */
+    protected String getTaskName( RuleSetFile ruleSetFile) {
+
+	return "rule set " + ruleSetFile.getName();
+    }
+}
@@ -10,7 +10,6 @@ package de.andreas_rueckert.trade.bot.spread;
 
 import de.andreas_rueckert.trade.Amount;
 import de.andreas_rueckert.trade.bot.LogLevel;
-import de.andreas_rueckert.trade.chart.ChartProvider;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.CryptoCoinOrderBook;
@@ -65,22 +64,24 @@ class BalanceBuyRule extends MarginTradeRule {
     /**
      * Check if the buy rule is filled.
      *
+     * @param snapshot The market data of the current evaluation.
+     *
      * @return true, if the buy condition is filled.
      */
-    public boolean isConditionFilled() {
+    public boolean isConditionFilled( MarketSnapshot snapshot) {
 
 	setLastEvaluationTime();  // Store the execution time of this check.
 
 	// If the value of the currency balance drops x % under the fiat value, buy <currency>.
 
 	// Get the amount of the currency.
-	Amount currencyAmount = getBot().getFunds( _tradeSite, _userAccount, _currencyPair.getCurrency());
+	Amount currencyAmount = snapshot.getFunds( _tradeSite, _userAccount, _currencyPair.getCurrency());
 
 	// Get the amount of the payment currency.
-	Amount paymentCurrencyAmount = getBot().getFunds( _tradeSite, _userAccount, _currencyPair.getPaymentCurrency());
+	Amount paymentCurrencyAmount = snapshot.getFunds( _tradeSite, _userAccount, _currencyPair.getPaymentCurrency());
 
 	// Get the best sell price, that is currently available.
-	Depth currentDepth = ChartProvider.getInstance().getDepth( _tradeSite, _currencyPair);
+	Depth currentDepth = snapshot.getDepth( _tradeSite, _currencyPair);
 
 	// The first sell order has the best price.
 	// ToDo: consider volume here and use the first n orders.
@@ -94,7 +95,7 @@ class BalanceBuyRule extends MarginTradeRule {
 	//Amount virtualTotalCurrencyValue = new Amount( totalCurrencyValue.multiply( new BigDecimal( getStrategy().getLeverage())));
 
 	// If the value is <margin> % less than the payment currency value, start buying.
-	if( totalCurrencyValue.compareTo( paymentCurrencyAmount.percent( 100 - _margin)) < 0) {
+	if( totalCurrencyValue.compareTo( paymentCurrencyAmount.percent( 100 - getMargin( OrderType.BUY))) < 0) {
 	    //if( virtualTotalCurrencyValue.compareTo( virtualPaymentCurrencyAmount.percent( 100 - _margin)) < 0) {
 
 	    // Compute the amount of <currency> to buy.
@@ -142,8 +143,10 @@ class BalanceBuyRule extends MarginTradeRule {
 
     /**
      * The rule body.
+     *
+     * @param snapshot The market data of the current evaluation.
      */
-    public void executeBody() {
+    public void executeBody( MarketSnapshot snapshot) {
 
 	// Just check, if we are in simulation mode and push an order, if not...
 	if( ! isSimulation()) {
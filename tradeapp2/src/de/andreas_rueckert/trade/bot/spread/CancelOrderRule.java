@@ -10,10 +10,8 @@ package de.andreas_rueckert.trade.bot.spread;
 
 import de.andreas_rueckert.trade.bot.LogLevel;
 import de.andreas_rueckert.trade.order.CryptoCoinOrderBook;
-import de.andreas_rueckert.trade.order.OrderStatus;
 import de.andreas_rueckert.trade.order.SiteOrder;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
-import de.andreas_rueckert.util.TimeUtils;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,7 +21,15 @@ import java.util.List;
  */
 public class CancelOrderRule extends RuleImpl {
 
-    // Variables
+    // Static variables
+
+    /**
+     * The maximum age of an unfilled order in microseconds.
+     */
+    static final long MAXIMUM_ORDER_AGE = 5L * 60L * 1000000L;
+
+
+    // Instance variables
 
     /**
      * A list of orders to cancel.
@@ -51,40 +57,32 @@ public class CancelOrderRule extends RuleImpl {
     /**
      * Check if the buy rule is filled.
      *
+     * @param snapshot The market data of the current evaluation.
+     *
      * @return true, if the buy condition is filled.
      */
-    public boolean isConditionFilled() {
+    public boolean isConditionFilled( MarketSnapshot snapshot) {
 
 	setLastEvaluationTime();  // Store the execution time of this check.
 
 	// Remove the results from the previous checks.
 	_ordersToCancel.clear();
 
-	// Loop over the orders and check their status, if they are older than x minutes.
-	for( SiteOrder currentOrder : getBot().getCurrentOrders()) {
+	// Check the status of all the orders with one request per trade site and account.
+	for( SiteOrder filledOrder : getBot().removeFilledOrders( _userAccount)) {
 
-	    // If this order has the current user account, if any was given...
-	    if( ( _userAccount == null) 
-		|| ( ( currentOrder.getTradeSiteUserAccount() != null) 
-		     && _userAccount.equals( currentOrder.getTradeSiteUserAccount()))) {
+	    getBot().refetchFunds( filledOrder.getTradeSiteUserAccount());  // Our funds changed with this fill.
 
-		// Get the current status of the order.
-		OrderStatus currentOrderStatus = CryptoCoinOrderBook.getInstance().checkOrder( currentOrder.getId());
+	    if( filledOrder.getTradeSiteUserAccount() != null) {
 
-		if( currentOrderStatus == OrderStatus.FILLED) {  // If the order is filled,
-		    
-		    getBot().removeOrder( currentOrder.getId());  // remove this order from the list of active orders.
-		    
-		} else {  // If the order is not filled, but too old, tag it for cancelation.
-			
+		snapshot.invalidateFunds( filledOrder.getTradeSiteUserAccount());  // Also for the following rules.
+	    }
+	}
 
-		    // If this order is older than 5 mins
-		    if( ( TimeUtils.getInstance().getCurrentGMTTimeMicros() - currentOrder.getTimestamp()) > ( 5L * 60L * 1000000L)) {
+	// Tag the remaining orders, that are older than 5 mins, for cancelation.
+	for( SiteOrder expiredOrder : getBot().getExpiredOrders( MAXIMUM_ORDER_AGE, _userAccount)) {
 
-			_ordersToCancel.add( currentOrder.getId());  // Add this order to the list of orders to cancel.
-		    }
-		}
-	    }
+	    _ordersToCancel.add( expiredOrder.getId());  // Add this order to the list of orders to cancel.
 	}
 
 	// If there are orders to cancel, return true,
@@ -93,8 +91,10 @@ public class CancelOrderRule extends RuleImpl {
 
     /**
      * The rule body.
+     *
+     * @param snapshot The market data of the current evaluation.
      */
-    public void executeBody() {
+    public void executeBody( MarketSnapshot snapshot) {
 
 	// Remove all the filled orders from the list of current orders.
 	for( String orderId : _ordersToCancel) {
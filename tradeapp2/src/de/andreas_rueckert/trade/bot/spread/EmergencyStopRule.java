@@ -9,7 +9,6 @@
 package de.andreas_rueckert.trade.bot.spread;
 
 import de.andreas_rueckert.trade.bot.LogLevel;
-import de.andreas_rueckert.trade.chart.ChartProvider;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.DepthOrder;
@@ -72,12 +71,14 @@ public class EmergencyStopRule extends RuleImpl {
     /**
      * Check if the buy rule is filled.
      *
+     * @param snapshot The market data of the current evaluation.
+     *
      * @return true, if the buy condition is filled.
      */
-    public boolean isConditionFilled() {
+    public boolean isConditionFilled( MarketSnapshot snapshot) {
 
 	// Get the best buy price, that is currently available.
-	Depth currentDepth = ChartProvider.getInstance().getDepth( _tradeSite, _currencyPair);
+	Depth currentDepth = snapshot.getDepth( _tradeSite, _currencyPair);
 
 	// The first buy order has the best price.
 	// ToDo: consider volume here and use the first n orders.
@@ -89,8 +90,10 @@ public class EmergencyStopRule extends RuleImpl {
 
     /**
      * The rule body.
+     *
+     * @param snapshot The market data of the current evaluation.
      */
-    public void executeBody() {
+    public void executeBody( MarketSnapshot snapshot) {
 
 	// Just deactivate this strategy (and keep the others running. Lets hope, the other markets don't crash as well).
 	getStrategy().setActivated( false);
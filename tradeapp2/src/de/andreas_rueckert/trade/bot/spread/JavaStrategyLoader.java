@@ -10,51 +10,257 @@ package de.andreas_rueckert.trade.bot.spread;
 
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.util.LogUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
 
 
 /**
  * This class implements a strategy loader for java source code.
+ *
+ * The strategy sources are compiled in memory. The bytecode is cached by a
+ * hash over the content of all the sources in the plugin directory, so a change
+ * in any source (i.e. a constant in a class, that a strategy depends on) compiles
+ * the whole set again in a single compiler task. No class files are written to disk.
  */
 class JavaStrategyLoader implements StrategyLoader {
 
-    // Static variables
+    // Inner classes
+
+    /**
+     * A class loader for the compiled strategy classes of one load.
+     */
+    static class MemoryClassLoader extends ClassLoader {
 
+	// Instance variables
 
-    // Instance variables
+	/**
+	 * The bytecode of the classes, indexed by their binary name.
+	 */
+	private final Map< String, byte []> _bytecode;
+
+
+	// Constructors
+
+	/**
+	 * Create a new class loader for a set of compiled classes.
+	 *
+	 * @param bytecode The bytecode of the classes, indexed by their binary name.
+	 */
+	MemoryClassLoader( Map< String, byte []> bytecode) {
+
+	    super( JavaStrategyLoader.class.getClassLoader());
+
+	    _bytecode = bytecode;
+	}
+
+
+	// Methods
+
+	/**
+	 * Find a compiled class.
+	 *
+	 * @param className The binary name of the class.
+	 *
+	 * @return The class.
+	 *
+	 * @throws ClassNotFoundException if there is no bytecode for this class.
+	 */
+	@Override protected Class<?> findClass( String className) throws ClassNotFoundException {
+
+	    byte [] bytecode = _bytecode.get( className);
+
+	    if( bytecode == null) {
+
+		throw new ClassNotFoundException( className);
+	    }
+
+	    return defineClass( className, bytecode, 0, bytecode.length);
+	}
+    }
 
     /**
-     * The hosting bot.
+     * A file manager, that writes the compiled classes to memory.
      */
-    private SpreadBot _bot = null;
+    static class MemoryFileManager extends ForwardingJavaFileManager< StandardJavaFileManager> {
+
+	// Instance variables
+
+	/**
+	 * The compiled classes, indexed by their binary name.
+	 */
+	private final Map< String, ByteArrayOutputStream> _compiledClasses = new HashMap< String, ByteArrayOutputStream>();
+
+
+	// Constructors
+
+	/**
+	 * Create a new memory file manager.
+	 *
+	 * @param fileManager The standard file manager to read the sources and libraries.
+	 */
+	MemoryFileManager( StandardJavaFileManager fileManager) {
+
+	    super( fileManager);
+	}
+
+
+	// Methods
+
+	/**
+	 * Get an output file for a compiled class.
+	 *
+	 * @param location The output location.
+	 * @param className The binary name of the class.
+	 * @param kind The kind of the output file.
+	 * @param sibling The source file of the class.
+	 *
+	 * @return The output file in memory.
+	 */
+	@Override public JavaFileObject getJavaFileForOutput( Location location
+							      , String className
+							      , JavaFileObject.Kind kind
+							      , FileObject sibling) {
+
+	    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+	    _compiledClasses.put( className, buffer);
+
+	    return new SimpleJavaFileObject( URI.create( "mem:///" + className.replace( '.', '/') + kind.extension), kind) {
+
+		@Override public OutputStream openOutputStream() {
+
+		    return buffer;
+		}
+	    };
+	}
+
+	/**
+	 * Get the compiled classes.
+	 *
+	 * @return The bytecode of the compiled classes, indexed by their binary name.
+	 */
+	Map< String, byte []> getCompiledClasses() {
+
+	    Map< String, byte []> result = new HashMap< String, byte []>();
+
+	    for( Map.Entry< String, ByteArrayOutputStream> currentClass : _compiledClasses.entrySet()) {
+
+		result.put( currentClass.getKey(), currentClass.getValue().toByteArray());
+	    }
+
+	    return result;
+	}
+    }
 
     /**
-     * A class loader to load classes under the plugin root directory.
+     * The state of a source file, when it was compiled the last time.
      */
-    private URLClassLoader _classLoader = null;
+    static class SourceState {
+
+	// Instance variables
+
+	/**
+	 * The hash of the source content.
+	 */
+	final String _hash;
+
+	/**
+	 * The modification time of the source file.
+	 */
+	final long _lastModified;
+
+	/**
+	 * The length of the source file.
+	 */
+	final long _length;
+
+
+	// Constructors
+
+	/**
+	 * Create a new source state.
+	 *
+	 * @param hash The hash of the source content.
+	 * @param lastModified The modification time of the source file.
+	 * @param length The length of the source file.
+	 */
+	SourceState( String hash, long lastModified, long length) {
+
+	    _hash = hash;
+	    _lastModified = lastModified;
+	    _length = length;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The compiled bytecode of the strategy sources, indexed by the hash over all the sources
+     * of a plugin directory. The cache is shared by all the loaders, so the same set of sources
+     * is never compiled twice.
+     */
+    private static final ConcurrentMap< String, Map< String, byte []>> _bytecodeCache = new ConcurrentHashMap< String, Map< String, byte []>>();
 
     /**
-     * The file with the java class for the strategy.
+     * The hash of the last compiled sources of each plugin directory, so the outdated bytecode can be removed.
      */
-    private File _javaFile = null;
+    private static final ConcurrentMap< File, String> _directoryHashes = new ConcurrentHashMap< File, String>();
+
+    /**
+     * The state of the already hashed source files, so unchanged files are not read again.
+     */
+    private static final ConcurrentMap< File, SourceState> _sourceStates = new ConcurrentHashMap< File, SourceState>();
+
+
+    // Instance variables
+
+    /**
+     * The hosting bot.
+     */
+    private SpreadBot _bot = null;
 
     /**
      * The root directory of the plugins.
      */
     private File _pluginDirectory = null;
 
+    /**
+     * The bytecode, that the current strategy instance was loaded from.
+     */
+    private volatile Map< String, byte []> _loadedBytecode = null;
+
     /**
      * An instance of the loaded strategy.
      */
-    private Strategy _strategy = null;
+    private volatile Strategy _strategy = null;
 
     /**
      * The name of the strategy class.
@@ -77,7 +283,7 @@ class JavaStrategyLoader implements StrategyLoader {
      * @param bot The hosting bot.
      * @param userAccount The user account for trading.
      * @param pluginDirectory The root directory for the plugins.
-     * @param javaFile The file with the java class for the strategy.
+     * @param strategyClass The fully qualified name of the strategy class.
      */
     public JavaStrategyLoader( SpreadBot bot
 			       , TradeSiteUserAccount userAccount
@@ -88,91 +294,202 @@ class JavaStrategyLoader implements StrategyLoader {
 	_userAccount = userAccount;
 	_pluginDirectory = pluginDirectory;  // Store the root directory for the plugins.
 	_strategyClass = strategyClass;  // Store the name of the strategy class.
-
-	try {
-	    // Create a class loader to load classes relative to the plugin root directory.
-	    URLClassLoader _classLoader = URLClassLoader.newInstance( new URL[] { _pluginDirectory.toURI().toURL() });
-
-	} catch( MalformedURLException mue) {
-	    
-	    LogUtils.getInstance().getLogger().error( "Plugindirectory " 
-						      + _pluginDirectory  
-						      + "cannot be converted to an URL: "
-						      + mue);
-	}
     }
-    
+
 
     // Methods
 
     /**
-     * Make sure, that all java sources are compiled and uptodate.
+     * Compile all the java files in the plugin directory with a single compiler task,
+     * if any of them changed since the last compilation.
      *
-     * @return true, if there are current class files for all the java files. False otherwise.
+     * @return The bytecode of all the classes in the plugin directory, indexed by their binary name,
+     *         or null, if the sources could not be compiled.
      */
-    private final boolean allSourcesAreCompiled() {
+    private Map< String, byte []> compileChangedJavaFiles() {
 
+	// Get all java source files.
 	File [] javaFiles = getAllJavaFiles( _pluginDirectory, true);
-	File [] classFiles = getAllClassFiles( _pluginDirectory, true);
 
-	// Check, if there's a class file for each java file and it's timestamp is newer than the 
-	// one of the java file.
-	javafileLoop: for( File currentJavaFile : javaFiles) {
+	if( javaFiles == null) {
 
-	    // Compute the name of the class file.
-	    String javafileName = currentJavaFile.getName();
-	    String currentClassfileName = javafileName.substring( 0, javafileName.length() - 4) + "class";
+	    LogUtils.getInstance().getLogger().error( "Cannot read plugin directory " + _pluginDirectory);
 
-	    // Now check, if one of the class files matches this name.
-	    for( File currentClassfile : classFiles) {
+	    return null;
+	}
 
-		if( currentClassfile.getName().equals( javafileName)) {  // If this is the class for the current source file,
-		    
-		    continue javafileLoop;  // check the next source file.
-		}
+	// Hash the names and content hashes of all the sources in a fixed order, so the
+	// bytecode is compiled again, if any of the sources changed.
+	Arrays.sort( javaFiles);
+
+	MessageDigest setDigest;
+
+	try {
+
+	    setDigest = MessageDigest.getInstance( "SHA-256");
+
+	} catch( NoSuchAlgorithmException nsae) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot hash strategy sources: " + nsae);
+
+	    return null;
+	}
+
+	for( File currentFile : javaFiles) {
+
+	    String hash = getSourceHash( currentFile);
+
+	    if( hash == null) {
+
+		return null;  // The error was already logged.
 	    }
 
-	    // There's no class for this source file it seems...
-	    return false;
+	    setDigest.update( ( currentFile.getAbsolutePath() + "=" + hash + "\n").getBytes( Charset.forName( "UTF-8")));
 	}
 
-	return true; // All java files are compiled and the classes are uptodate
+	String setHash = toHexString( setDigest.digest());
+
+	Map< String, byte []> bytecode = _bytecodeCache.get( setHash);
+
+	if( bytecode == null) {
+
+	    bytecode = compileJavaFiles( Arrays.asList( javaFiles));
+
+	    if( bytecode == null) {
+
+		return null;  // The error was already logged.
+	    }
+
+	    _bytecodeCache.put( setHash, bytecode);
+
+	    String oldSetHash = _directoryHashes.put( _pluginDirectory.getAbsoluteFile(), setHash);
+
+	    if( ( oldSetHash != null) && ! oldSetHash.equals( setHash)) {
+
+		_bytecodeCache.remove( oldSetHash);  // The old bytecode of this directory is no longer needed.
+	    }
+	}
+
+	return bytecode;
     }
 
     /**
-     * Compile all the java files in the plugin directory.
+     * Compile a list of java source files in memory with a single compiler task.
+     *
+     * @param javaFiles The files with the java sources.
+     *
+     * @return The bytecode of the compiled classes, indexed by their binary name, or null,
+     *         if the sources could not be compiled.
      */
-    private void compileAllJavaFiles() {
+    private Map< String, byte []> compileJavaFiles( List<File> javaFiles) {
 
-	// Get all java source files.
-	File [] javaFiles = getAllJavaFiles( _pluginDirectory, true);
+	// Get the compiler.
+	// This should only work from java version 1.6 on!
+	JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
 
-	// If there were java files found, compile them.
-	if( javaFiles != null) {
+	if( compiler == null) {
 
-	    System.out.println( "ToDo: JavaStrategyLoader.compileAllJavaFiles: set classpath and other compiler arguments.");
+	    LogUtils.getInstance().getLogger().error( "No java compiler available to compile the strategies. Please run the bot with a JDK.");
 
-	    for( File currentFile : javaFiles) {
+	    return null;
+	}
+
+	DiagnosticCollector< JavaFileObject> diagnostics = new DiagnosticCollector< JavaFileObject>();
+
+	StandardJavaFileManager standardFileManager = compiler.getStandardFileManager( diagnostics, null, Charset.forName( "UTF-8"));
+
+	MemoryFileManager fileManager = new MemoryFileManager( standardFileManager);
+
+	try {
+
+	    List<String> options = Arrays.asList( "-classpath", System.getProperty( "java.class.path")
+						  , "-sourcepath", _pluginDirectory.getPath());
+
+	    boolean compiled = compiler.getTask( null
+						 , fileManager
+						 , diagnostics
+						 , options
+						 , null
+						 , standardFileManager.getJavaFileObjectsFromFiles( javaFiles)).call();
+
+	    if( ! compiled) {
+
+		for( Diagnostic< ? extends JavaFileObject> currentDiagnostic : diagnostics.getDiagnostics()) {
+
+		    LogUtils.getInstance().getLogger().error( "Cannot compile strategy: " + currentDiagnostic);
+		}
+
+		return null;
+	    }
+
+	    return Collections.unmodifiableMap( fileManager.getCompiledClasses());
 
-		compileJavaFile( currentFile);
+	} finally {
+
+	    try {
+
+		fileManager.close();
+
+	    } catch( IOException ioe) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot close file manager of the strategy compiler: " + ioe);
 	    }
 	}
     }
 
     /**
-     * Compile a java source code file.
+     * Create a loader for the strategy class in a java source file.
+     * The class name is the file name, qualified by the package declaration of the source.
+     * If the file is stored in the directories of its package, the root of the package
+     * directories is the plugin directory. Otherwise the directory of the file is used.
+     *
+     * @param bot The hosting bot.
+     * @param userAccount The user account for trading.
+     * @param sourceFile The java source file of the strategy class.
+     *
+     * @return The loader for the strategy class.
      *
-     * @param javaFile The file with the java sources.
+     * @throws IOException if the source file cannot be read.
      */
-    private void compileJavaFile( File javaFile) {
+    static JavaStrategyLoader forSourceFile( SpreadBot bot, TradeSiteUserAccount userAccount, File sourceFile) throws IOException {
 
-	// Get the compiler.
-	// This should only work from java version 1.6 on!
-	JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();  
+	File file = sourceFile.getAbsoluteFile();
+
+	String className = file.getName().substring( 0, file.getName().length() - ".java".length());
+
+	File pluginDirectory = file.getParentFile();
+
+	// Find the package declaration of the source.
+	for( String currentLine : Files.readAllLines( file.toPath(), Charset.forName( "UTF-8"))) {
+
+	    String line = currentLine.trim();
+
+	    if( line.startsWith( "package ") && line.endsWith( ";")) {
 
-	// Compile the source code.
-	// @see: http://docs.oracle.com/javase/6/docs/api/javax/tools/Tool.html#run%28java.io.InputStream,%20java.io.OutputStream,%20java.io.OutputStream,%20java.lang.String...%29
-	compiler.run( null, null, null, javaFile.getPath());	
+		String packageName = line.substring( "package ".length(), line.length() - 1).trim();
+
+		className = packageName + "." + className;
+
+		// Go up the package directories, if the file is stored in them.
+		File packageRoot = pluginDirectory;
+
+		String [] packageDirectories = packageName.split( "\\.");
+
+		for( int index = packageDirectories.length - 1; ( index >= 0) && ( packageRoot != null); --index) {
+
+		    packageRoot = packageRoot.getName().equals( packageDirectories[ index]) ? packageRoot.getParentFile() : null;
+		}
+
+		if( packageRoot != null) {
+
+		    pluginDirectory = packageRoot;
+		}
+
+		break;
+	    }
+	}
+
+	return new JavaStrategyLoader( bot, userAccount, pluginDirectory, className);
     }
 
     /**
@@ -228,29 +545,58 @@ class JavaStrategyLoader implements StrategyLoader {
     }
 
     /**
-     * Get all the class files in a directory.
+     * Get all the java files in a directory.
      *
      * @param directory The directory to search for the java files.
      * @param includeSubdirectores true, if also the sub directories should be searched.
      *
      * @return The java files as an array of File objects.
      */
-    private File [] getAllClassFiles( File directory, boolean includeSubdirectories) {
-	
-	return getAllFilesForSuffix( directory, "class", includeSubdirectories);
+    private File [] getAllJavaFiles( File directory, boolean includeSubdirectories) {
+
+	return getAllFilesForSuffix( directory, "java", includeSubdirectories);
     }
 
     /**
-     * Get all the java files in a directory.
+     * Get the content hash of a source file.
+     * The file is only read again, if its modification time or length changed.
      *
-     * @param directory The directory to search for the java files.
-     * @param includeSubdirectores true, if also the sub directories should be searched.
+     * @param javaFile The source file.
      *
-     * @return The java files as an array of File objects.
+     * @return The SHA-256 hash of the source content as a hex string or null, if the file could not be read.
      */
-    private File [] getAllJavaFiles( File directory, boolean includeSubdirectories) {
-	
-	return getAllFilesForSuffix( directory, "java", includeSubdirectories);
+    private String getSourceHash( File javaFile) {
+
+	File file = javaFile.getAbsoluteFile();
+
+	long lastModified = file.lastModified();
+	long length = file.length();
+
+	SourceState state = _sourceStates.get( file);
+
+	if( ( state != null) && ( state._lastModified == lastModified) && ( state._length == length)) {
+
+	    return state._hash;  // The file was not touched since the last hashing.
+	}
+
+	try {
+
+	    String hash = toHexString( MessageDigest.getInstance( "SHA-256").digest( Files.readAllBytes( file.toPath())));
+
+	    _sourceStates.put( file, new SourceState( hash, lastModified, length));
+
+	    return hash;
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot read strategy source " + file + ": " + ioe);
+
+	} catch( NoSuchAlgorithmException nsae) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot hash strategy source " + file + ": " + nsae);
+	}
+
+	return null;
     }
 
     /**
@@ -263,6 +609,19 @@ class JavaStrategyLoader implements StrategyLoader {
 	return _strategy;
     }
 
+    /**
+     * Check, if any of the sources in the plugin directory changed since the strategy was loaded.
+     * Changed sources are compiled, so a following reload uses the cached bytecode.
+     *
+     * @return true, if the sources changed and could be compiled. False otherwise.
+     */
+    public boolean isChanged() {
+
+	Map< String, byte []> bytecode = compileChangedJavaFiles();
+
+	return ( bytecode != null) && ( bytecode != _loadedBytecode);  // The cache returns the same bytecode for the same sources.
+    }
+
     /**
      * Try to load the strategy.
      *
@@ -270,14 +629,28 @@ class JavaStrategyLoader implements StrategyLoader {
      */
     public boolean load() {
 
-	// Instantiate the actual strategy class and store the instance in the class var.
-	_strategy = load( _strategyClass, _bot, _userAccount);
+	// Make sure, that the bytecode is compiled from the current sources.
+	Map< String, byte []> bytecode = compileChangedJavaFiles();
+
+	if( bytecode == null) {
+
+	    return false;  // The error was already logged. Keep the previous instance.
+	}
+
+	// Instantiate the actual strategy class.
+	Strategy strategy = load( _strategyClass, _bot, _userAccount, bytecode);
 
-	return ( _strategy != null);  // Return true, if there's an actual instance of the class.
+	if( strategy != null) {  // Keep the previous instance, if the new one could not be loaded.
+
+	    _strategy = strategy;
+	    _loadedBytecode = bytecode;
+	}
+
+	return ( strategy != null);  // Return true, if there's an actual instance of the class.
     }
 
     /**
-     * Load a strategy from a classfile.
+     * Load a strategy from the compiled sources.
      *
      * @see http://stackoverflow.com/questions/2946338/how-do-i-programmatically-compile-and-instantiate-a-java-class
      * @see http://stackoverflow.com/questions/5658182/intializing-a-class-with-class-forname-and-which-have-a-constructor-which-take
@@ -285,26 +658,25 @@ class JavaStrategyLoader implements StrategyLoader {
      * @param className The fully qualified class name (i.e. com.domainname.NewCoolStrategy ).
      * @param bot The hosting bot.
      * @param userAccount The user account to trade this strategy.
+     * @param bytecode The compiled classes of the plugin directory, indexed by their binary name.
      *
      * @return The strategy or null if the loading failed.
      */
-    private Strategy load( String className, SpreadBot bot, TradeSiteUserAccount userAccount) {
-
-	if( ! allSourcesAreCompiled()) {  // Make sure, that the classes are newer than the sources.
-
-	    compileAllJavaFiles();
-	}
+    private Strategy load( String className, SpreadBot bot, TradeSiteUserAccount userAccount, Map< String, byte []> bytecode) {
 
 	try {
 
+	    // Use a new class loader for each load, so changed classes are actually reloaded.
+	    Class<?> strategyClass = Class.forName( className, true, new MemoryClassLoader( bytecode));
+
 	    // Get a constructor with bot and user account as the parameters.
-	    Constructor constructor = Class.forName( className).getConstructor( SpreadBot.class, TradeSiteUserAccount.class);
-	    
+	    Constructor<?> constructor = strategyClass.getConstructor( SpreadBot.class, TradeSiteUserAccount.class);
+
 	    // Now create the new strategy and return it.
-	    return (Strategy)constructor.newInstance( bot, userAccount);	
+	    return (Strategy)constructor.newInstance( bot, userAccount);
 
 	} catch( ClassNotFoundException cnfe) {
-	    
+
 	    LogUtils.getInstance().getLogger().error( "Strategy class " + className + " not found: " + cnfe);
 
 	} catch( NoSuchMethodException nsme) {
@@ -312,7 +684,7 @@ class JavaStrategyLoader implements StrategyLoader {
 	    LogUtils.getInstance().getLogger().error( "No matchin constructor in strategy class found: " + nsme);
 
 	} catch( InstantiationException ie) {
-	    
+
 	    LogUtils.getInstance().getLogger().error( "Cannot instantiate strategy class: " + ie);
 
 	} catch( IllegalAccessException iae) {
@@ -322,9 +694,54 @@ class JavaStrategyLoader implements StrategyLoader {
 	} catch( InvocationTargetException ite) {
 
 	    LogUtils.getInstance().getLogger().error( "The strategy constructors has thrown an exception: " + ite.getCause());
-	
+
 	}
 
 	return null;  // Could not create strategy instance.
     }
-}
\ No newline at end of file
+
+    /**
+     * Load the strategy again and swap it into the running bot.
+     * If the sources did not change, the cached bytecode is used.
+     *
+     * @return true, if the strategy was reloaded. False otherwise.
+     */
+    public boolean reload() {
+
+	Strategy oldStrategy = _strategy;
+
+	if( ! load()) {
+
+	    return false;  // Keep the old strategy running.
+	}
+
+	// If the new version was renamed, the old version cannot be swapped by its name.
+	if( ( oldStrategy != null) && ( oldStrategy.getName() != null) && ! oldStrategy.getName().equals( _strategy.getName())) {
+
+	    _bot.removeStrategyWithName( oldStrategy.getName());
+	}
+
+	_bot.replaceStrategy( _strategy);
+
+	return true;
+    }
+
+    /**
+     * Convert a hash to a hex string.
+     *
+     * @param digest The bytes of the hash.
+     *
+     * @return The hash as a hex string.
+     */
+    private static String toHexString( byte [] digest) {
+
+	StringBuilder hashBuffer = new StringBuilder();
+
+	for( byte currentByte : digest) {
+
+	    hashBuffer.append( String.format( "%02x", currentByte));
+	}
+
+	return hashBuffer.toString();
+    }
+}
@@ -8,7 +8,9 @@
 
 package de.andreas_rueckert.trade.bot.spread;
 
+import de.andreas_rueckert.trade.chart.indicator.IndicatorFactProvider;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.util.TimeFormatException;
@@ -85,10 +87,34 @@ class MACrossingRule extends RuleImpl {
 
 	super( bot, strategy, userAccount);
 
+	_tradeSite = tradeSite;
+	_currencyPair = currencyPair;
 	_shortTimePeriod = shortTimePeriod;
 	_longTimePeriod = longTimePeriod;
     }
 
 
     // Methods
+
+    /**
+     * Get the current time weighted EMA of the long time period.
+     * The average is shared with the other bots and rules, that use it in the same cycle.
+     *
+     * @return The current EMA of the long time period.
+     */
+    protected Price getLongMA() {
+
+	return IndicatorFactProvider.getInstance().getTWEMA( _tradeSite, _currencyPair, _longTimePeriod);
+    }
+
+    /**
+     * Get the current time weighted EMA of the short time period.
+     * The average is shared with the other bots and rules, that use it in the same cycle.
+     *
+     * @return The current EMA of the short time period.
+     */
+    protected Price getShortMA() {
+
+	return IndicatorFactProvider.getInstance().getTWEMA( _tradeSite, _currencyPair, _shortTimePeriod);
+    }
 }
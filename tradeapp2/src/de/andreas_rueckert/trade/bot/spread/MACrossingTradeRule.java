@@ -10,8 +10,6 @@ package de.andreas_rueckert.trade.bot.spread;
 
 import de.andreas_rueckert.trade.Amount;
 import de.andreas_rueckert.trade.bot.LogLevel;
-import de.andreas_rueckert.trade.chart.ChartAnalyzer;
-import de.andreas_rueckert.trade.chart.ChartProvider;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.CryptoCoinOrderBook;
@@ -75,9 +73,11 @@ public class MACrossingTradeRule extends MACrossingRule {
       /**
      * Check if the buy rule is filled.
      *
+     * @param snapshot The market data of the current evaluation.
+     *
      * @return true, if the buy condition is filled.
      */
-    public boolean isConditionFilled() {
+    public boolean isConditionFilled( MarketSnapshot snapshot) {
 
 	setLastEvaluationTime();  // Store the execution time of this check.
 
@@ -86,9 +86,9 @@ public class MACrossingTradeRule extends MACrossingRule {
 
 	// Calculate the 2 MA time periods.
 	
-	Price shortPrice = ChartAnalyzer.getInstance().getEMA( _tradeSite, _currencyPair, _shortTimePeriod);  // Calculate the ema.
+	Price shortPrice = getShortMA();  // Get the short ema.
 	
-	Price longPrice = ChartAnalyzer.getInstance().getEMA( _tradeSite, _currencyPair, _longTimePeriod);  // Calculate the long ema.
+	Price longPrice = getLongMA();  // Get the long ema.
 	 
 	if( shortPrice.compareTo( longPrice) != 0) {  // Ignore the situation, when the 2 prices are equal and just focus on a crossing.
 	
@@ -110,7 +110,7 @@ public class MACrossingTradeRule extends MACrossingRule {
 		
 		// To do so, get the best sell price and use the payment currency funds to 
 		// calculate the amount of <currency>, that we could buy.
-		Depth currentDepth = ChartProvider.getInstance().getDepth( _tradeSite, _currencyPair);
+		Depth currentDepth = snapshot.getDepth( _tradeSite, _currencyPair);
 
 		// The first sell order has the best price.
 		// ToDo: consider volume here and use the first n orders.
@@ -120,7 +120,7 @@ public class MACrossingTradeRule extends MACrossingRule {
 		Price bestPrice = sellOrder.getPrice();  // Get the best price from this order.
 
 		// Get the amount of the payment currency.
-		Amount paymentCurrencyAmount = getBot().getFunds( _tradeSite, _userAccount, _currencyPair.getPaymentCurrency());
+		Amount paymentCurrencyAmount = snapshot.getFunds( _tradeSite, _userAccount, _currencyPair.getPaymentCurrency());
 
 		// Calculate the amount, that we can buy with our current funds.
 		Amount buyAmount = new Amount( paymentCurrencyAmount.divide( bestPrice, MathContext.DECIMAL128));
@@ -138,7 +138,7 @@ public class MACrossingTradeRule extends MACrossingRule {
 		// Now check if we have any funds to trade.
 
 		// Get the amount of the currency.
-		Amount currencyAmount = getBot().getFunds( _tradeSite, _userAccount, _currencyPair.getCurrency());
+		Amount currencyAmount = snapshot.getFunds( _tradeSite, _userAccount, _currencyPair.getCurrency());
 
 		// Check, if the amount is higher than the minimum amount.
 		if( currencyAmount.compareTo( getBot().getMinimumTradeAmount( _currencyPair.getCurrency())) > 0) {
@@ -161,8 +161,10 @@ public class MACrossingTradeRule extends MACrossingRule {
 
     /**
      * The rule body.
+     *
+     * @param snapshot The market data of the current evaluation.
      */
-    public void executeBody() {
+    public void executeBody( MarketSnapshot snapshot) {
 
 	if( _buyTriggered) {  // If a buy order was triggered.
 	
@@ -173,7 +175,7 @@ public class MACrossingTradeRule extends MACrossingRule {
 	    // But I want to make sure, that the sell orders goes through, since I already
 	    // ignore the volume for now.
 	    // To make things perfect, the orders should be added up, until the traded volume is reached.
-	    Depth currentDepth = ChartProvider.getInstance().getDepth( _tradeSite, _currencyPair);
+	    Depth currentDepth = snapshot.getDepth( _tradeSite, _currencyPair);
 
 	    // The first sell order has the best price.
 	    // ToDo: consider volume here and use the first n orders.
@@ -183,7 +185,7 @@ public class MACrossingTradeRule extends MACrossingRule {
 	    // This is still rough, so I just trade all my funds for now...
 
 	    // Get the amount of the payment currency.
-	    Amount paymentCurrencyAmount = getBot().getFunds( _tradeSite, _userAccount, _currencyPair.getPaymentCurrency());
+	    Amount paymentCurrencyAmount = snapshot.getFunds( _tradeSite, _userAccount, _currencyPair.getPaymentCurrency());
 
 	    // Calculate the amount, that we can buy with our current funds.
 	    Amount buyAmount = new Amount( paymentCurrencyAmount.divide( buyPrice, MathContext.DECIMAL128));
@@ -228,13 +230,13 @@ public class MACrossingTradeRule extends MACrossingRule {
 	    // But I want to make sure, that the sell orders goes through, since I already
 	    // ignore the volume for now.
 	    // To make things perfect, the orders should be added up, until the traded volume is reached.
-	    Depth currentDepth = ChartProvider.getInstance().getDepth( _tradeSite, _currencyPair);
+	    Depth currentDepth = snapshot.getDepth( _tradeSite, _currencyPair);
 
 	    // Get the price of the first buy order.
 	    Price sellPrice = currentDepth.getBuy( 0).getPrice();
 
 	    // Get the amount of the currency.
-	    Amount sellAmount = getBot().getFunds( _tradeSite, _userAccount, _currencyPair.getCurrency());
+	    Amount sellAmount = snapshot.getFunds( _tradeSite, _userAccount, _currencyPair.getCurrency());
 
 	    // Just check, if we are in simulation mode and push an order, if not...
 	    if( ! isSimulation()) {
@@ -9,6 +9,7 @@
 package de.andreas_rueckert.trade.bot.spread;
 
 import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.order.OrderType;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 
@@ -26,7 +27,7 @@ class MarginTradeRule extends RuleImpl {
     protected CurrencyPair _currencyPair = null;
 	
     /**
-     * The profit margin for this rule.
+     * The configured profit margin for this rule.
      */
     protected float _margin;
 
@@ -62,4 +63,17 @@ class MarginTradeRule extends RuleImpl {
 
 
     // Methods
+
+    /**
+     * Get the current profit margin for this rule.
+     * The configured margin is scaled by the current market estimates of the book.
+     *
+     * @param orderType The type of the order (buy or sell).
+     *
+     * @return The current profit margin in percent.
+     */
+    protected float getMargin( OrderType orderType) {
+
+	return _margin * getBot().getBook( _tradeSite, _currencyPair).getMarginScale( orderType);
+    }
 }
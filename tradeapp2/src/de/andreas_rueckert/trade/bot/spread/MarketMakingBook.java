@@ -0,0 +1,504 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.spread;
+
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.order.OrderType;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * This class holds the state of the spread bot for one currency pair on one trade site.
+ *
+ * Each book has its own orders, spread history and margins, while all the
+ * books of the bot share the market data and the worker threads. So a book is just
+ * data and costs no thread of its own.
+ *
+ * The margins adapt to the market: each new depth updates a fast and a slow exponentially
+ * weighted variance of the mid price returns and the imbalance of the order book, each
+ * new trade updates the imbalance of the trade flow. The configured margins are scaled
+ * by the ratio of the fast to the slow volatility, so they widen in turbulent markets and
+ * narrow in calm ones. The imbalance shifts the margins towards the side, that the market
+ * is pushing to. The scales are computed on update, so reading a margin is O(1).
+ *
+ * The bot feeds the depth and the recent trades of each evaluation into the book.
+ * Depths and trades, that the book already knows, are skipped, so several strategies
+ * on the same pair don't count the same market data twice.
+ */
+public class MarketMakingBook {
+
+    // Static variables
+
+    /**
+     * The default margin in percent for buy orders.
+     */
+    static final float DEFAULT_BUY_MARGIN = 0.2f;
+
+    /**
+     * The default margin in percent for sell orders.
+     */
+    static final float DEFAULT_SELL_MARGIN = 0.4f;
+
+    /**
+     * The decay of the fast volatility estimate per depth update.
+     */
+    static final double FAST_VOLATILITY_DECAY = 0.94;
+
+    /**
+     * The decay of the imbalance estimates per update.
+     */
+    static final double IMBALANCE_DECAY = 0.9;
+
+    /**
+     * The number of price levels of each depth side, that are used for the imbalance.
+     */
+    static final int IMBALANCE_DEPTH = 5;
+
+    /**
+     * The weight of the imbalance in the margin scale.
+     */
+    static final double IMBALANCE_WEIGHT = 0.5;
+
+    /**
+     * The maximum scale of the configured margins.
+     */
+    static final double MAXIMUM_MARGIN_SCALE = 3.0;
+
+    /**
+     * The minimum scale of the configured margins.
+     */
+    static final double MINIMUM_MARGIN_SCALE = 0.5;
+
+    /**
+     * The number of mid price returns, that are needed before the margins adapt.
+     */
+    static final int MINIMUM_VOLATILITY_SAMPLES = 30;
+
+    /**
+     * The decay of the slow volatility estimate per depth update.
+     */
+    static final double SLOW_VOLATILITY_DECAY = 0.995;
+
+
+    // Instance variables
+
+    /**
+     * Flag to adapt the margins to the volatility and imbalance of the market.
+     */
+    private volatile boolean _adaptiveMargins = true;
+
+    /**
+     * The imbalance of the order book between -1 (only asks) and 1 (only bids).
+     */
+    private double _bookImbalance = 0.0;
+
+    /**
+     * The margin in percent for buy orders.
+     */
+    private volatile float _buyMargin = DEFAULT_BUY_MARGIN;
+
+    /**
+     * The current scale of the buy margin.
+     */
+    private volatile double _buyMarginScale = 1.0;
+
+    /**
+     * The traded currency pair.
+     */
+    private final CurrencyPair _currencyPair;
+
+    /**
+     * The fast estimate of the variance of the mid price returns.
+     */
+    private double _fastVariance = 0.0;
+
+    /**
+     * The imbalance of the trade flow between -1 (only sells) and 1 (only buys).
+     */
+    private double _flowImbalance = 0.0;
+
+    /**
+     * The timestamp of the last added depth.
+     */
+    private long _lastDepthTimestamp = -1L;
+
+    /**
+     * The last mid price or 0, if there was no depth yet.
+     */
+    private double _lastMidPrice = 0.0;
+
+    /**
+     * The ids of the added trades with the timestamp of the newest added trade.
+     */
+    private final Set<String> _lastTradeIds = new HashSet<String>();
+
+    /**
+     * The timestamp of the newest added trade.
+     */
+    private long _lastTradeTimestamp = -1L;
+
+    /**
+     * The currently active orders of this book.
+     */
+    private final OrderRegistry _orderRegistry;
+
+    /**
+     * The number of mid price returns in the volatility estimates.
+     */
+    private int _returnCount = 0;
+
+    /**
+     * The margin in percent for sell orders.
+     */
+    private volatile float _sellMargin = DEFAULT_SELL_MARGIN;
+
+    /**
+     * The current scale of the sell margin.
+     */
+    private volatile double _sellMarginScale = 1.0;
+
+    /**
+     * The slow estimate of the variance of the mid price returns.
+     */
+    private double _slowVariance = 0.0;
+
+    /**
+     * The history of the spreads of this book.
+     */
+    private final SpreadHistory _spreadHistory = new SpreadHistory( SpreadBot.MAX_SPREAD_HISTORY_LENGTH);
+
+    /**
+     * The trade site of this book.
+     */
+    private final TradeSite _tradeSite;
+
+
+    // Constructors
+
+    /**
+     * Create a new book.
+     *
+     * @param tradeSite The trade site of this book.
+     * @param currencyPair The traded currency pair.
+     * @param openOrderCache The cache of the open orders, that is shared by the books of the bot.
+     */
+    MarketMakingBook( TradeSite tradeSite, CurrencyPair currencyPair, OpenOrderCache openOrderCache) {
+
+	_tradeSite = tradeSite;
+	_currencyPair = currencyPair;
+	_orderRegistry = new OrderRegistry( openOrderCache);
+    }
+
+
+    // Methods
+
+    /**
+     * Add a new depth to the spread history and the volatility and imbalance estimates.
+     *
+     * @param depth The new depth.
+     */
+    synchronized void addDepth( Depth depth) {
+
+	if( depth.getTimestamp() <= _lastDepthTimestamp) {
+
+	    return;  // This depth was already added.
+	}
+
+	_lastDepthTimestamp = depth.getTimestamp();
+
+	if( ( depth.getBuySize() == 0) || ( depth.getSellSize() == 0)) {
+
+	    return;  // No spread and mid price without both sides.
+	}
+
+	double bestBid = depth.getBuy( 0).getPrice().doubleValue();
+	double bestAsk = depth.getSell( 0).getPrice().doubleValue();
+
+	_spreadHistory.add( bestAsk - bestBid);
+
+	double midPrice = ( bestBid + bestAsk) / 2.0;
+
+	if( ( _lastMidPrice > 0.0) && ( midPrice > 0.0)) {
+
+	    double logReturn = Math.log( midPrice / _lastMidPrice);
+	    double squaredReturn = logReturn * logReturn;
+
+	    if( _returnCount == 0) {  // Start both estimates with the first return.
+
+		_fastVariance = _slowVariance = squaredReturn;
+
+	    } else {
+
+		_fastVariance = FAST_VOLATILITY_DECAY * _fastVariance + ( 1.0 - FAST_VOLATILITY_DECAY) * squaredReturn;
+		_slowVariance = SLOW_VOLATILITY_DECAY * _slowVariance + ( 1.0 - SLOW_VOLATILITY_DECAY) * squaredReturn;
+	    }
+
+	    ++_returnCount;
+	}
+
+	_lastMidPrice = midPrice;
+
+	// Sum up the volume near the top of the book.
+	double bidVolume = 0.0;
+	double askVolume = 0.0;
+
+	for( int currentLevel = 0; currentLevel < IMBALANCE_DEPTH; ++currentLevel) {
+
+	    if( currentLevel < depth.getBuySize()) {
+
+		bidVolume += depth.getBuy( currentLevel).getAmount().doubleValue();
+	    }
+
+	    if( currentLevel < depth.getSellSize()) {
+
+		askVolume += depth.getSell( currentLevel).getAmount().doubleValue();
+	    }
+	}
+
+	if( ( bidVolume + askVolume) > 0.0) {
+
+	    _bookImbalance = IMBALANCE_DECAY * _bookImbalance
+		+ ( 1.0 - IMBALANCE_DECAY) * ( bidVolume - askVolume) / ( bidVolume + askVolume);
+	}
+
+	updateMarginScales();
+    }
+
+    /**
+     * Add a new trade to the imbalance estimate of the trade flow.
+     *
+     * @param trade The new trade.
+     */
+    synchronized void addTrade( Trade trade) {
+
+	if( trade.getTimestamp() < _lastTradeTimestamp) {
+
+	    return;  // This trade is older than the added trades.
+	}
+
+	if( trade.getTimestamp() > _lastTradeTimestamp) {
+
+	    _lastTradeTimestamp = trade.getTimestamp();
+
+	    _lastTradeIds.clear();
+	}
+
+	if( ( trade.getId() != null) && ! _lastTradeIds.add( trade.getId())) {
+
+	    return;  // This trade was already added.
+	}
+
+	double direction;
+
+	if( trade.getType() == TradeType.Buy) {
+
+	    direction = 1.0;
+
+	} else if( trade.getType() == TradeType.Sell) {
+
+	    direction = -1.0;
+
+	} else {
+
+	    return;  // Unknown trades tell nothing about the flow.
+	}
+
+	_flowImbalance = IMBALANCE_DECAY * _flowImbalance + ( 1.0 - IMBALANCE_DECAY) * direction;
+
+	updateMarginScales();
+    }
+
+    /**
+     * Add a list of trades to the imbalance estimate of the trade flow, with the oldest trade first.
+     *
+     * @param trades The trades.
+     */
+    synchronized void addTrades( List<Trade> trades) {
+
+	List<Trade> sortedTrades = new ArrayList<Trade>( trades);
+
+	Collections.sort( sortedTrades, new Comparator<Trade>() {
+
+		public int compare( Trade trade1, Trade trade2) {
+
+		    return Long.compare( trade1.getTimestamp(), trade2.getTimestamp());
+		}
+	    });
+
+	for( Trade currentTrade : sortedTrades) {
+
+	    addTrade( currentTrade);
+	}
+    }
+
+    /**
+     * Limit a margin scale to the allowed range.
+     *
+     * @param scale The margin scale.
+     *
+     * @return The limited margin scale.
+     */
+    private static double clampMarginScale( double scale) {
+
+	return Math.max( MINIMUM_MARGIN_SCALE, Math.min( MAXIMUM_MARGIN_SCALE, scale));
+    }
+
+    /**
+     * Get the traded currency pair.
+     *
+     * @return The traded currency pair.
+     */
+    public CurrencyPair getCurrencyPair() {
+
+	return _currencyPair;
+    }
+
+    /**
+     * Get the key of a book in the map of the books.
+     *
+     * @param tradeSite The trade site of the book.
+     * @param currencyPair The traded currency pair.
+     *
+     * @return The key of the book.
+     */
+    static String getKey( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	return tradeSite.getName()
+	    + ":"
+	    + currencyPair.getCurrency().getCode()
+	    + "<=>"
+	    + currencyPair.getPaymentCurrency().getCode();
+    }
+
+    /**
+     * Get the current margin in percent for an order type.
+     *
+     * @param orderType The type of the order (buy or sell).
+     *
+     * @return The current margin in percent.
+     */
+    public float getMargin( OrderType orderType) {
+
+	return ( orderType == OrderType.BUY ? _buyMargin : _sellMargin) * getMarginScale( orderType);
+    }
+
+    /**
+     * Get the current scale of the configured margin for an order type.
+     *
+     * @param orderType The type of the order (buy or sell).
+     *
+     * @return The current scale of the margin or 1, if the margins are not adaptive.
+     */
+    public float getMarginScale( OrderType orderType) {
+
+	if( ! _adaptiveMargins) {
+
+	    return 1.0f;
+	}
+
+	return (float)( orderType == OrderType.BUY ? _buyMarginScale : _sellMarginScale);
+    }
+
+    /**
+     * Get the currently active orders of this book.
+     *
+     * @return The registry of the currently active orders.
+     */
+    OrderRegistry getOrderRegistry() {
+
+	return _orderRegistry;
+    }
+
+    /**
+     * Get the spread history of this book.
+     *
+     * @return The spread history of this book.
+     */
+    SpreadHistory getSpreadHistory() {
+
+	return _spreadHistory;
+    }
+
+    /**
+     * Get the trade site of this book.
+     *
+     * @return The trade site of this book.
+     */
+    public TradeSite getTradeSite() {
+
+	return _tradeSite;
+    }
+
+    /**
+     * Check, if the margins adapt to the volatility and imbalance of the market.
+     *
+     * @return true, if the margins are adaptive.
+     */
+    public boolean isAdaptiveMargins() {
+
+	return _adaptiveMargins;
+    }
+
+    /**
+     * Adapt the margins to the market or use the configured margins.
+     *
+     * @param adaptiveMargins true, if the margins should adapt to the market.
+     */
+    public void setAdaptiveMargins( boolean adaptiveMargins) {
+
+	_adaptiveMargins = adaptiveMargins;
+    }
+
+    /**
+     * Set a new margin for an order type.
+     *
+     * @param orderType The type of the order (buy or sell).
+     * @param margin The new margin in percent.
+     */
+    public void setMargin( OrderType orderType, float margin) {
+
+	if( orderType == OrderType.BUY) {
+
+	    _buyMargin = margin;
+
+	} else {
+
+	    _sellMargin = margin;
+	}
+    }
+
+    /**
+     * Compute the scales of the margins from the current estimates.
+     */
+    private void updateMarginScales() {
+
+	double volatilityScale = 1.0;
+
+	if( ( _returnCount >= MINIMUM_VOLATILITY_SAMPLES) && ( _slowVariance > 0.0)) {
+
+	    volatilityScale = Math.sqrt( _fastVariance / _slowVariance);
+	}
+
+	// Positive, if the market pushes the price up.
+	double imbalance = ( _bookImbalance + _flowImbalance) / 2.0;
+
+	// Buy cheaper, if the price is dropping, and sell more expensive, if it is rising.
+	_buyMarginScale = clampMarginScale( volatilityScale * ( 1.0 - IMBALANCE_WEIGHT * imbalance));
+	_sellMarginScale = clampMarginScale( volatilityScale * ( 1.0 + IMBALANCE_WEIGHT * imbalance));
+    }
+}
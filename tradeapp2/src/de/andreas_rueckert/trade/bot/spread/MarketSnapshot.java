@@ -0,0 +1,446 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.spread;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.chart.ChartProvider;
+import de.andreas_rueckert.trade.currency.Currency;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
+import de.andreas_rueckert.trade.Ticker;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.util.Clock;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class holds the market data for one evaluation of a strategy.
+ *
+ * The depths and funds of the used trade sites and currency pairs are fetched
+ * in parallel, before the first rule is evaluated. Everything else is fetched on
+ * the first request. Each value is fetched only once per snapshot, so the number
+ * of requests to the exchanges does not depend on the number of rules.
+ */
+class MarketSnapshot {
+
+    // Static variables
+
+    /**
+     * The pool to fetch the market data in parallel.
+     */
+    private static ExecutorService _fetchPool = null;
+
+    /**
+     * The number of threads to fetch the market data.
+     */
+    private static final int FETCH_POOL_SIZE = 4;
+
+    /**
+     * The time interval of the recent trades in microseconds.
+     */
+    static final long RECENT_TRADES_INTERVAL = 10L * 60L * 1000000L;
+
+
+    // Instance variables
+
+    /**
+     * The hosting bot.
+     */
+    private final SpreadBot _bot;
+
+    /**
+     * The fetched depths.
+     */
+    private final ConcurrentMap<String, FutureTask<Depth>> _depths = new ConcurrentHashMap<String, FutureTask<Depth>>();
+
+    /**
+     * The fetched funds.
+     */
+    private final ConcurrentMap<String, FutureTask<Amount>> _funds = new ConcurrentHashMap<String, FutureTask<Amount>>();
+
+    /**
+     * The fetched tickers.
+     */
+    private final ConcurrentMap<String, FutureTask<Ticker>> _tickers = new ConcurrentHashMap<String, FutureTask<Ticker>>();
+
+    /**
+     * The time of this snapshot in microseconds.
+     */
+    private final long _timestamp;
+
+    /**
+     * The fetched recent trades.
+     */
+    private final ConcurrentMap<String, FutureTask<List<Trade>>> _trades = new ConcurrentHashMap<String, FutureTask<List<Trade>>>();
+
+
+    // Constructors
+
+    /**
+     * Create a new, empty market snapshot.
+     *
+     * @param bot The hosting bot.
+     */
+    MarketSnapshot( SpreadBot bot) {
+
+	_bot = bot;
+	_timestamp = Clock.getInstance().getCurrentTimeMicros();
+    }
+
+
+    // Methods
+
+    /**
+     * Create a task to fetch a depth.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The new task.
+     */
+    private FutureTask<Depth> createDepthTask( final TradeSite tradeSite, final CurrencyPair currencyPair) {
+
+	return new FutureTask<Depth>( new Callable<Depth>() {
+
+		public Depth call() {
+
+		    return ChartProvider.getInstance().getDepth( tradeSite, currencyPair);
+		}
+	    });
+    }
+
+    /**
+     * Create a snapshot for a strategy and start to fetch the depths and funds,
+     * that the rules of the strategy will need.
+     *
+     * @param bot The hosting bot.
+     * @param strategy The evaluated strategy.
+     *
+     * @return The new snapshot.
+     */
+    static MarketSnapshot createForStrategy( SpreadBot bot, Strategy strategy) {
+
+	MarketSnapshot snapshot = new MarketSnapshot( bot);
+
+	for( TradeSite currentSite : strategy.getUsedTradeSites()) {
+
+	    for( CurrencyPair currentPair : strategy.getUsedCurrencyPairs()) {
+
+		snapshot.prefetchDepth( currentSite, currentPair);
+
+		for( Rule currentRule : strategy.getRules()) {
+
+		    TradeSiteUserAccount userAccount = currentRule.getTradeSiteUserAccount();
+
+		    // Only fetch the funds of the accounts on this site.
+		    if( ( userAccount != null)
+			&& ( ( userAccount.getTradeSite() == null) || ( userAccount.getTradeSite() == currentSite))) {
+
+			snapshot.prefetchFunds( currentSite, userAccount, currentPair.getCurrency());
+			snapshot.prefetchFunds( currentSite, userAccount, currentPair.getPaymentCurrency());
+		    }
+		}
+	    }
+	}
+
+	return snapshot;
+    }
+
+    /**
+     * Create a task to fetch the funds of a user account.
+     *
+     * @param tradeSite The trade site.
+     * @param userAccount The user account.
+     * @param currency The currency.
+     *
+     * @return The new task.
+     */
+    private FutureTask<Amount> createFundsTask( final TradeSite tradeSite, final TradeSiteUserAccount userAccount, final Currency currency) {
+
+	return new FutureTask<Amount>( new Callable<Amount>() {
+
+		public Amount call() {
+
+		    return _bot.getFunds( tradeSite, userAccount, currency);
+		}
+	    });
+    }
+
+    /**
+     * Get the depth of a currency pair on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The depth.
+     *
+     * @throws TradeDataNotAvailableException if the depth could not be fetched.
+     */
+    Depth getDepth( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	return getValue( _depths, getKey( tradeSite, currencyPair), createDepthTask( tradeSite, currencyPair), false);
+    }
+
+    /**
+     * Get the pool to fetch the market data.
+     *
+     * @return The pool to fetch the market data.
+     */
+    private static synchronized ExecutorService getFetchPool() {
+
+	if( _fetchPool == null) {
+
+	    _fetchPool = Executors.newFixedThreadPool( FETCH_POOL_SIZE, new ThreadFactory() {
+
+		    /**
+		     * The number of created threads.
+		     */
+		    private final AtomicLong _threadCounter = new AtomicLong( 0L);
+
+		    @Override public Thread newThread( Runnable runnable) {
+
+			Thread thread = new Thread( runnable, "SpreadBot market data fetcher " + _threadCounter.incrementAndGet());
+
+			thread.setDaemon( true);
+
+			return thread;
+		    }
+		});
+	}
+
+	return _fetchPool;
+    }
+
+    /**
+     * Get the funds of a user account for a currency.
+     *
+     * @param tradeSite The trade site.
+     * @param userAccount The user account.
+     * @param currency The currency.
+     *
+     * @return The funds for this currency.
+     *
+     * @throws TradeDataNotAvailableException if the funds could not be fetched.
+     */
+    Amount getFunds( TradeSite tradeSite, TradeSiteUserAccount userAccount, Currency currency) {
+
+	return getValue( _funds
+			 , getKey( tradeSite, userAccount, currency)
+			 , createFundsTask( tradeSite, userAccount, currency)
+			 , false);
+    }
+
+    /**
+     * Get the key of a currency pair on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The key for the maps of this snapshot.
+     */
+    private static String getKey( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	return tradeSite.getName() + ":" + currencyPair.getCurrency().getCode() + "<=>" + currencyPair.getPaymentCurrency().getCode();
+    }
+
+    /**
+     * Get the key of the funds of a user account.
+     *
+     * @param tradeSite The trade site.
+     * @param userAccount The user account.
+     * @param currency The currency.
+     *
+     * @return The key for the funds map of this snapshot.
+     */
+    private static String getKey( TradeSite tradeSite, TradeSiteUserAccount userAccount, Currency currency) {
+
+	return userAccount.getAccountName() + "@" + tradeSite.getName() + ":" + currency.getCode();
+    }
+
+    /**
+     * Get the ticker of a currency pair on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The ticker.
+     *
+     * @throws TradeDataNotAvailableException if the ticker could not be fetched.
+     */
+    Ticker getTicker( final TradeSite tradeSite, final CurrencyPair currencyPair) {
+
+	return getValue( _tickers
+			 , getKey( tradeSite, currencyPair)
+			 , new FutureTask<Ticker>( new Callable<Ticker>() {
+
+				 public Ticker call() {
+
+				     return ChartProvider.getInstance().getTicker( tradeSite, currencyPair);
+				 }
+			     })
+			 , false);
+    }
+
+    /**
+     * Get the time of this snapshot.
+     *
+     * @return The time of this snapshot in microseconds.
+     */
+    long getTimestamp() {
+
+	return _timestamp;
+    }
+
+    /**
+     * Get the recent trades of a currency pair on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The trades of the last RECENT_TRADES_INTERVAL microseconds.
+     *
+     * @throws TradeDataNotAvailableException if the trades could not be fetched.
+     */
+    List<Trade> getTrades( final TradeSite tradeSite, final CurrencyPair currencyPair) {
+
+	return getValue( _trades
+			 , getKey( tradeSite, currencyPair)
+			 , new FutureTask<List<Trade>>( new Callable<List<Trade>>() {
+
+				 public List<Trade> call() {
+
+				     return ChartProvider.getInstance().getTrades( tradeSite, currencyPair, _timestamp - RECENT_TRADES_INTERVAL);
+				 }
+			     })
+			 , false);
+    }
+
+    /**
+     * Get a value from one of the maps, or fetch it, if it is not in the map yet.
+     *
+     * @param values The map with the fetched values.
+     * @param key The key of the value.
+     * @param task The task to fetch the value, if it is not in the map yet.
+     * @param prefetch true, if the task should run in the fetch pool and this method should not wait for it.
+     *
+     * @return The value or null, if the value is prefetched.
+     *
+     * @throws TradeDataNotAvailableException if the value could not be fetched.
+     */
+    private <T> T getValue( ConcurrentMap<String, FutureTask<T>> values, String key, FutureTask<T> task, boolean prefetch) {
+
+	FutureTask<T> existingTask = values.putIfAbsent( key, task);
+
+	if( existingTask == null) {  // This is a new fetch.
+
+	    if( prefetch) {
+
+		try {
+
+		    getFetchPool().execute( task);
+
+		} catch( RejectedExecutionException ree) {
+
+		    task.run();  // Just fetch it here then.
+		}
+
+		return null;
+	    }
+
+	    task.run();
+
+	} else if( prefetch) {
+
+	    return null;
+
+	} else {
+
+	    task = existingTask;
+	}
+
+	try {
+
+	    return task.get();
+
+	} catch( InterruptedException ie) {
+
+	    Thread.currentThread().interrupt();
+
+	    throw new TradeDataNotAvailableException( "Interrupted while fetching market data for " + key);
+
+	} catch( ExecutionException ee) {
+
+	    if( ee.getCause() instanceof RuntimeException) {
+
+		throw (RuntimeException)ee.getCause();  // Keep TradeDataNotAvailableException and the like for the bot.
+	    }
+
+	    throw new TradeDataNotAvailableException( "Could not fetch market data for " + key + ": " + ee.getCause());
+	}
+    }
+
+    /**
+     * Forget the funds of a user account, i.e. after a rule traded with it.
+     * The next request fetches the funds again.
+     *
+     * @param userAccount The user account.
+     */
+    void invalidateFunds( TradeSiteUserAccount userAccount) {
+
+	String prefix = userAccount.getAccountName() + "@";
+
+	for( Iterator<String> keyIterator = _funds.keySet().iterator(); keyIterator.hasNext(); ) {
+
+	    if( keyIterator.next().startsWith( prefix)) {
+
+		keyIterator.remove();
+	    }
+	}
+    }
+
+    /**
+     * Start to fetch a depth in the fetch pool.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     */
+    void prefetchDepth( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	getValue( _depths, getKey( tradeSite, currencyPair), createDepthTask( tradeSite, currencyPair), true);
+    }
+
+    /**
+     * Start to fetch the funds of a user account in the fetch pool.
+     *
+     * @param tradeSite The trade site.
+     * @param userAccount The user account.
+     * @param currency The currency.
+     */
+    void prefetchFunds( TradeSite tradeSite, TradeSiteUserAccount userAccount, Currency currency) {
+
+	getValue( _funds
+		  , getKey( tradeSite, userAccount, currency)
+		  , createFundsTask( tradeSite, userAccount, currency)
+		  , true);
+    }
+}
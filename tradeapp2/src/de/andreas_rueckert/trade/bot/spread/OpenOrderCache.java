@@ -0,0 +1,196 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.spread;
+
+import de.andreas_rueckert.trade.order.SiteOrder;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
+import de.andreas_rueckert.util.Clock;
+import de.andreas_rueckert.util.LogUtils;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * This class caches the open orders of the trade site accounts for a short time.
+ *
+ * The order registries of all the books share one cache, so books on the same
+ * trade site and user account need only a single open orders request per poll
+ * interval.
+ */
+class OpenOrderCache {
+
+    // Inner classes
+
+    /**
+     * The key for a trade site and user account.
+     */
+    static class AccountKey {
+
+	// Instance variables
+
+	/**
+	 * The trade site.
+	 */
+	final TradeSite _tradeSite;
+
+	/**
+	 * The user account (might be null for the default account of a trade site).
+	 */
+	final TradeSiteUserAccount _userAccount;
+
+
+	// Constructors
+
+	/**
+	 * Create a new account key.
+	 *
+	 * @param tradeSite The trade site.
+	 * @param userAccount The user account or null.
+	 */
+	AccountKey( TradeSite tradeSite, TradeSiteUserAccount userAccount) {
+
+	    _tradeSite = tradeSite;
+	    _userAccount = userAccount;
+	}
+
+
+	// Methods
+
+	/**
+	 * Check, if this key equals another object.
+	 *
+	 * @param object The object to compare.
+	 *
+	 * @return true, if the object is an equal key. False otherwise.
+	 */
+	@Override public boolean equals( Object object) {
+
+	    if( ! ( object instanceof AccountKey)) {
+
+		return false;
+	    }
+
+	    AccountKey key = (AccountKey)object;
+
+	    return _tradeSite.equals( key._tradeSite)
+		&& ( _userAccount == null ? key._userAccount == null : _userAccount.equals( key._userAccount));
+	}
+
+	/**
+	 * Get a hash code for this key.
+	 *
+	 * @return The hash code for this key.
+	 */
+	@Override public int hashCode() {
+
+	    return 31 * _tradeSite.hashCode() + ( _userAccount == null ? 0 : _userAccount.hashCode());
+	}
+    }
+
+    /**
+     * The result of an open orders request.
+     */
+    static class PollResult {
+
+	// Instance variables
+
+	/**
+	 * The site ids of the open orders.
+	 */
+	final Set<String> _openSiteIds;
+
+	/**
+	 * The time of the request in microseconds.
+	 */
+	final long _pollTime;
+
+
+	// Constructors
+
+	/**
+	 * Create a new poll result.
+	 *
+	 * @param pollTime The time of the request in microseconds.
+	 * @param openSiteIds The site ids of the open orders.
+	 */
+	PollResult( long pollTime, Set<String> openSiteIds) {
+
+	    _pollTime = pollTime;
+	    _openSiteIds = openSiteIds;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The minimum interval between 2 open order requests for the same trade site and user account in microseconds.
+     */
+    static final long MINIMUM_POLL_INTERVAL = 10L * 1000000L;
+
+
+    // Instance variables
+
+    /**
+     * The last poll result for each trade site and user account.
+     */
+    private final ConcurrentMap< AccountKey, PollResult> _pollResults = new ConcurrentHashMap< AccountKey, PollResult>();
+
+
+    // Constructors
+
+
+    // Methods
+
+    /**
+     * Get the open orders of a trade site account. The trade site is only queried,
+     * if the last request is older than the poll interval.
+     *
+     * @param key The trade site and user account.
+     *
+     * @return The result of the last open orders request or null, if the open orders could not be fetched.
+     */
+    PollResult getOpenOrders( AccountKey key) {
+
+	long currentTime = Clock.getInstance().getCurrentTimeMicros();
+
+	PollResult lastResult = _pollResults.get( key);
+
+	if( ( lastResult != null) && ( ( currentTime - lastResult._pollTime) < MINIMUM_POLL_INTERVAL)) {
+
+	    return lastResult;
+	}
+
+	Collection<SiteOrder> openOrders = key._tradeSite.getOpenOrders( key._userAccount);
+
+	if( openOrders == null) {  // Without the open orders, we cannot tell anything about the status.
+
+	    LogUtils.getInstance().getLogger().error( "Cannot fetch open orders from " + key._tradeSite.getName());
+
+	    return null;
+	}
+
+	Set<String> openSiteIds = new HashSet<String>();
+
+	for( SiteOrder currentOpenOrder : openOrders) {
+
+	    openSiteIds.add( currentOpenOrder.getSiteId());
+	}
+
+	PollResult result = new PollResult( currentTime, openSiteIds);
+
+	_pollResults.put( key, result);
+
+	return result;
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.spread;
+
+import de.andreas_rueckert.trade.order.CryptoCoinOrderBook;
+import de.andreas_rueckert.trade.order.OrderStatus;
+import de.andreas_rueckert.trade.order.SiteOrder;
+import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
+import de.andreas_rueckert.util.Clock;
+import de.andreas_rueckert.util.LogUtils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+
+/**
+ * This class holds the currently active orders of a book of the spread bot.
+ *
+ * The orders are indexed by their id and by their creation time, so
+ * finding the expired orders is O(log n + k). The status of the orders
+ * is checked with a single request for the open orders per trade site and
+ * user account, instead of checking each order on its own. Only the orders,
+ * that are no longer open, are checked on their own, since they might have
+ * been filled, cancelled or rejected.
+ */
+class OrderRegistry {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The cache of the open orders, that might be shared with other registries.
+     */
+    private final OpenOrderCache _openOrderCache;
+
+    /**
+     * The orders, indexed by their creation time.
+     */
+    private final ConcurrentSkipListSet< SiteOrder> _ordersByCreationTime = new ConcurrentSkipListSet< SiteOrder>( new Comparator< SiteOrder>() {
+
+	    @Override public int compare( SiteOrder order1, SiteOrder order2) {
+
+		if( order1.getTimestamp() != order2.getTimestamp()) {
+
+		    return order1.getTimestamp() < order2.getTimestamp() ? -1 : 1;
+		}
+
+		return order1.getId().compareTo( order2.getId());  // Orders with the same timestamp are still distinct.
+	    }
+	});
+
+    /**
+     * The orders, indexed by their id.
+     */
+    private final ConcurrentMap< String, SiteOrder> _ordersById = new ConcurrentHashMap< String, SiteOrder>();
+
+
+    // Constructors
+
+    /**
+     * Create a new order registry with its own cache of open orders.
+     */
+    OrderRegistry() {
+
+	this( new OpenOrderCache());
+    }
+
+    /**
+     * Create a new order registry.
+     *
+     * @param openOrderCache The cache of the open orders, that might be shared with other registries.
+     */
+    OrderRegistry( OpenOrderCache openOrderCache) {
+
+	_openOrderCache = openOrderCache;
+    }
+
+
+    // Methods
+
+    /**
+     * Add an order to the registry.
+     *
+     * @param order The order to add.
+     */
+    void add( SiteOrder order) {
+
+	if( _ordersById.putIfAbsent( order.getId(), order) == null) {
+
+	    _ordersByCreationTime.add( order);
+	}
+    }
+
+    /**
+     * Get the status of an order, that is no longer open on its trade site.
+     *
+     * @param order The order to check.
+     *
+     * @return The status of the order.
+     */
+    OrderStatus checkClosedOrder( SiteOrder order) {
+
+	return CryptoCoinOrderBook.getInstance().checkOrder( order.getId());
+    }
+
+    /**
+     * Get the orders, that are older than a given age.
+     *
+     * @param maximumAge The maximum age of an order in microseconds.
+     * @param userAccount The user account of the orders or null for the orders of all accounts.
+     *
+     * @return The expired orders, with the oldest order first.
+     */
+    List<SiteOrder> getExpiredOrders( long maximumAge, TradeSiteUserAccount userAccount) {
+
+	List<SiteOrder> result = new ArrayList<SiteOrder>();
+
+	long creationLimit = Clock.getInstance().getCurrentTimeMicros() - maximumAge;
+
+	for( SiteOrder currentOrder : _ordersByCreationTime) {
+
+	    if( currentOrder.getTimestamp() >= creationLimit) {
+
+		break;  // All the following orders are younger.
+	    }
+
+	    if( hasUserAccount( currentOrder, userAccount)) {
+
+		result.add( currentOrder);
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Get an order with a given id.
+     *
+     * @param orderId The id of the order.
+     *
+     * @return The order with the given id or null, if there is no such order.
+     */
+    SiteOrder getOrder( String orderId) {
+
+	return _ordersById.get( orderId);
+    }
+
+    /**
+     * Get all the orders of the registry.
+     *
+     * @return All the orders of the registry.
+     */
+    Collection<SiteOrder> getOrders() {
+
+	return _ordersById.values();
+    }
+
+    /**
+     * Check, if an order belongs to a user account.
+     *
+     * @param order The order to check.
+     * @param userAccount The user account or null, if all accounts match.
+     *
+     * @return true, if the order belongs to the user account.
+     */
+    private static boolean hasUserAccount( SiteOrder order, TradeSiteUserAccount userAccount) {
+
+	return ( userAccount == null)
+	    || ( ( order.getTradeSiteUserAccount() != null) && userAccount.equals( order.getTradeSiteUserAccount()));
+    }
+
+    /**
+     * Remove an order from the registry.
+     *
+     * @param orderId The id of the order to remove.
+     *
+     * @return The removed order or null, if there was no order with this id.
+     */
+    SiteOrder remove( String orderId) {
+
+	SiteOrder order = _ordersById.remove( orderId);
+
+	if( order != null) {
+
+	    _ordersByCreationTime.remove( order);
+	}
+
+	return order;
+    }
+
+    /**
+     * Get the number of orders in the registry.
+     *
+     * @return The number of orders in the registry.
+     */
+    int size() {
+
+	return _ordersById.size();
+    }
+
+    /**
+     * Check the status of the orders with a single open orders request per trade site and
+     * user account. The status of the orders, that are no longer open on their trade site,
+     * is checked on its own. Filled, cancelled and rejected orders are removed from the
+     * registry, but only the filled orders are returned. Orders with another status are
+     * checked again later.
+     *
+     * @param userAccount The user account of the orders or null for the orders of all accounts.
+     *
+     * @return The orders, that were filled since the last check.
+     */
+    List<SiteOrder> removeFilledOrders( TradeSiteUserAccount userAccount) {
+
+	List<SiteOrder> result = new ArrayList<SiteOrder>();
+
+	// Group the orders by trade site and user account.
+	Map< OpenOrderCache.AccountKey, List<SiteOrder>> ordersByAccount = new HashMap< OpenOrderCache.AccountKey, List<SiteOrder>>();
+
+	for( SiteOrder currentOrder : _ordersById.values()) {
+
+	    // Orders without a site id were not submitted yet, so the site cannot know them.
+	    if( ( currentOrder.getSiteId() != null) && hasUserAccount( currentOrder, userAccount)) {
+
+		OpenOrderCache.AccountKey key = new OpenOrderCache.AccountKey( currentOrder.getTradeSite(), currentOrder.getTradeSiteUserAccount());
+
+		List<SiteOrder> accountOrders = ordersByAccount.get( key);
+
+		if( accountOrders == null) {
+
+		    accountOrders = new ArrayList<SiteOrder>();
+
+		    ordersByAccount.put( key, accountOrders);
+		}
+
+		accountOrders.add( currentOrder);
+	    }
+	}
+
+	for( Map.Entry< OpenOrderCache.AccountKey, List<SiteOrder>> currentEntry : ordersByAccount.entrySet()) {
+
+	    // Other books might have fetched the open orders of this account a moment ago.
+	    OpenOrderCache.PollResult openOrders = _openOrderCache.getOpenOrders( currentEntry.getKey());
+
+	    if( openOrders == null) {
+
+		continue;
+	    }
+
+	    for( SiteOrder currentOrder : currentEntry.getValue()) {
+
+		// An order, that was created after the request, cannot be in the result yet.
+		if( currentOrder.getTimestamp() >= openOrders._pollTime) {
+
+		    continue;
+		}
+
+		if( openOrders._openSiteIds.contains( currentOrder.getSiteId())) {
+
+		    continue;  // The order is still open.
+		}
+
+		// The order might have been filled, but also cancelled or rejected by the trade site.
+		OrderStatus status = checkClosedOrder( currentOrder);
+
+		if( status == OrderStatus.FILLED) {
+
+		    // Unless another thread removed it in the meantime.
+		    if( remove( currentOrder.getId()) != null) {
+
+			result.add( currentOrder);
+		    }
+
+		} else if( ( status == OrderStatus.CANCELED) || ( status == OrderStatus.ERROR)) {
+
+		    if( remove( currentOrder.getId()) != null) {
+
+			LogUtils.getInstance().getLogger().info( "Order " + currentOrder.getId() + " was closed with status " + status);
+		    }
+		}
+	    }
+	}
+
+	return result;
+    }
+}
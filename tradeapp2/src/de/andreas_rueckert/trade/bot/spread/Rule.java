@@ -24,8 +24,10 @@ interface Rule {
 
     /**
      * The rule body.
+     *
+     * @param snapshot The market data of the current evaluation.
      */
-    public void executeBody();
+    public void executeBody( MarketSnapshot snapshot);
 
     /**
      * Get the hosting bot.
@@ -59,9 +61,11 @@ interface Rule {
      * The condition for the rule.
      * If it is true, the rule fires.
      *
+     * @param snapshot The market data of the current evaluation.
+     *
      * @return true, if the condition is filled. False otherwise.
      */
-    public boolean isConditionFilled();
+    public boolean isConditionFilled( MarketSnapshot snapshot);
 
     /**
      * Check, if the execution of the rule body is complete,
@@ -13,7 +13,7 @@ import de.andreas_rueckert.trade.bot.LogLevel;
 import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
-import de.andreas_rueckert.util.TimeUtils;
+import de.andreas_rueckert.util.Clock;
 import java.util.Calendar;
 
 
@@ -36,7 +36,7 @@ class RuleImpl implements Rule {
      * The time, when this rule was evaluated for the last time.
      * This could be used to check, if a bot is still running correctly.
      */
-    protected long _lastEvaluationTime = -1;
+    protected volatile long _lastEvaluationTime = -1;
 
     /**
      * The status of the rule.
@@ -91,8 +91,10 @@ class RuleImpl implements Rule {
 
     /**
      * The rule body.
+     *
+     * @param snapshot The market data of the current evaluation.
      */
-    public void executeBody() {
+    public void executeBody( MarketSnapshot snapshot) {
 
 	// The base class has no body...
     }
@@ -141,9 +143,11 @@ class RuleImpl implements Rule {
      * The condition for the rule.
      * If it is true, the rule fires.
      *
+     * @param snapshot The market data of the current evaluation.
+     *
      * @return true, if the condition is filled. False otherwise.
      */
-    public boolean isConditionFilled() {
+    public boolean isConditionFilled( MarketSnapshot snapshot) {
 	
 	return false;  // Just a dummy default implementation.
     }
@@ -212,7 +216,7 @@ class RuleImpl implements Rule {
      */
     protected void setLastEvaluationTime() {
 
-	_lastEvaluationTime = TimeUtils.getInstance().getCurrentGMTTimeMicros();
+	_lastEvaluationTime = Clock.getInstance().getCurrentTimeMicros();
     }
 
     /**
@@ -8,9 +8,9 @@
 
 package de.andreas_rueckert.trade.bot.spread;
 
-import de.andreas_rueckert.NotYetImplementedException;
 import de.andreas_rueckert.persistence.PersistentProperty;
 import de.andreas_rueckert.persistence.PersistentPropertyList;
+import de.andreas_rueckert.trade.account.AccountManager;
 import de.andreas_rueckert.trade.account.TradeSiteAccount;
 import de.andreas_rueckert.trade.Amount;
 import de.andreas_rueckert.trade.app.TradeApp;
@@ -21,21 +21,15 @@ import de.andreas_rueckert.trade.bot.TradeBotProperties;
 import de.andreas_rueckert.trade.bot.TradeLogger;
 import de.andreas_rueckert.trade.bot.ui.SpreadBotUI;
 import de.andreas_rueckert.trade.bot.ui.TradeBotUI;
-import de.andreas_rueckert.trade.chart.ChartAnalyzer;
-import de.andreas_rueckert.trade.chart.ChartProvider;
+import de.andreas_rueckert.trade.chart.indicator.IndicatorEngine;
+import de.andreas_rueckert.trade.chart.indicator.MarketDataListener;
 import de.andreas_rueckert.trade.currency.Currency;
-import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
 import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
-import de.andreas_rueckert.trade.order.CryptoCoinOrderBook;
-import de.andreas_rueckert.trade.order.DepthOrder;
 import de.andreas_rueckert.trade.order.SiteOrder;
-import de.andreas_rueckert.trade.order.Order;
-import de.andreas_rueckert.trade.order.OrderFactory;
-import de.andreas_rueckert.trade.order.OrderStatus;
 import de.andreas_rueckert.trade.order.OrderType;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
@@ -44,24 +38,24 @@ import de.andreas_rueckert.trade.Trade;
 import de.andreas_rueckert.trade.TradeDataNotAvailableException;
 import de.andreas_rueckert.util.LogUtils;
 import de.andreas_rueckert.util.ModuleLoader;
-import de.andreas_rueckert.util.TimeUtils;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.math.MathContext;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.logging.Level;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
  * This bot trades on spreads by using rules.
  */
-public class SpreadBot extends NativeBotCore implements TradeBot {
+public class SpreadBot extends NativeBotCore implements MarketDataListener, TradeBot {
 
     // Inner classes
 
@@ -74,9 +68,14 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
     static SpreadBot _instance = null;
 
     /**
-     * The max numer of entries in the spread history.
+     * The max numer of entries in the spread history of each pair.
      */
-    static final long MAX_SPREAD_HISTORY_LENGTH = 60L * 12L; // 12 hours for now.
+    static final int MAX_SPREAD_HISTORY_LENGTH = 60 * 60 * 12; // 12 hours of 1 spread per second for now.
+
+    /**
+     * The interval to check the sources of the java strategies for changes in milliseconds.
+     */
+    static final long STRATEGY_RELOAD_INTERVAL = 10L * 1000L;
 
 
     // Instance variables
@@ -87,16 +86,28 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
     private final long _analyzedTimeInterval = 60L * 1000000L;  // 1 minute for now...
 
     /**
-     * The id's of the currently active orders.
+     * The settings of the strategies, that balance the funds of a currency pair on a trade site.
+     * Each setting has the format '<trade site> <currency pair> <user account> <buy margin> <sell margin> <minimum price>',
+     * i.e. 'BTCe ppc<=>usd new_btce_trading1 0.05 0.1 0.2'.
      */
-    private List<SiteOrder> _currentOrders = new ArrayList<SiteOrder>();
-    
+    private final List<String> _balanceStrategySettings = new ArrayList<String>();
+
+    /**
+     * The loaders of the strategies, that were loaded from java source files.
+     */
+    private final List<JavaStrategyLoader> _javaStrategyLoaders = new CopyOnWriteArrayList<JavaStrategyLoader>();
+
+    /**
+     * The settings of the strategies, that are loaded from java source files.
+     * Each setting has the format '<strategy file> <user account>',
+     * i.e. 'strategies/java/EmaXStrategy.java new_btce_trading1'.
+     */
+    private final List<String> _javaStrategySettings = new ArrayList<String>();
+
     /**
-     * The current funds for each user account and currency.
-     * Since the accounts from different exchanges should be different, this should work across exchanges.
-     * So I don't have to use the exchange as an additional key here..
+     * The books of the bot, indexed by trade site and currency pair.
      */
-    private Map<TradeSiteUserAccount, Collection<TradeSiteAccount>> _currentFunds = new HashMap<TradeSiteUserAccount, Collection<TradeSiteAccount>>();
+    private final ConcurrentMap< String, MarketMakingBook> _books = new ConcurrentHashMap< String, MarketMakingBook>();
 
     /**
      * The current log level.
@@ -118,15 +129,20 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      */
     private Amount _minTradeAmount = new Amount( "0.05");
 
+    /**
+     * The open orders of the trade site accounts, shared by the order registries of all books.
+     */
+    private final OpenOrderCache _openOrderCache = new OpenOrderCache();
+
     /**
      * The properties of this trade bot.
      */
     private TradeBotProperties _properties;
 
     /**
-     * The history of the spread.
+     * The scheduler for the strategy evaluations.
      */
-    private LinkedList<Price> _spreadHistory = new LinkedList<Price>();
+    private StrategyScheduler _scheduler = new StrategyScheduler( this);
 
     /**
      * A list of strategies.
@@ -134,19 +150,14 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
     private List<Strategy> _strategies = null;
 
     /**
-     * The UI for this bot.
+     * The strategies, that were created from the balance and java strategy settings.
      */
-    private TradeBotUI _spreadBotUI = null;
+    private final List<Strategy> _strategiesFromSettings = new ArrayList<Strategy>();
 
     /**
-     * The traded currency pair.
-     */
-    private CurrencyPair _tradedPair = null;
-
-    /**
-     * The trade site to use for trading.
+     * The UI for this bot.
      */
-    private TradeSite _tradeSite = null;
+    private TradeBotUI _spreadBotUI = null;
 
     /**
      * A list of user accounts.
@@ -171,8 +182,11 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 	// The update interval for the ticker loop.
 	_updateInterval = 10 * 60;
 
-	// Get the trade site for trading. Use btc-e for now...
-	_tradeSite = ModuleLoader.getInstance().getRegisteredTradeSite( "BTCe");
+	// Balance some pairs at btc-e, until the settings define other strategies.
+	_balanceStrategySettings.add( "BTCe ppc<=>usd new_btce_trading1 0.05 0.1 0.2");
+	_balanceStrategySettings.add( "BTCe ltc<=>btc new_btce_trading1 0.5 1.0 0.004");
+	_balanceStrategySettings.add( "BTCe ltc<=>btc new_btce_trading2 0.5 1.0 0.004");
+	_balanceStrategySettings.add( "BTCe ppc<=>usd new_btce_trading2 0.5 1.0 0.2");
 
 	// Create a logger for this bot.
 	_tradeLogger = new TradeLogger( "Spread_Bot.log");
@@ -183,6 +197,155 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 
     // Methods
 
+    /**
+     * Add a strategy, that balances the funds of a currency pair on a trade site.
+     * This creates the book for the currency pair, if necessary. The margins are kept
+     * in the rules of the strategy, since several accounts might trade the same book.
+     *
+     * @param tradeSite The trade site to trade on.
+     * @param currencyPair The traded currency pair.
+     * @param userAccount The account of the trading user.
+     * @param buyMargin The margin in percent to buy.
+     * @param sellMargin The margin in percent to sell.
+     * @param minimumPrice The price, that stops the strategy, if the market drops below it.
+     *
+     * @return The new strategy.
+     */
+    public synchronized Strategy addBalanceStrategy( TradeSite tradeSite
+						     , CurrencyPair currencyPair
+						     , TradeSiteUserAccount userAccount
+						     , float buyMargin
+						     , float sellMargin
+						     , Price minimumPrice) {
+
+	getBook( tradeSite, currencyPair);  // The rules scale their margins with the market estimates of the book.
+
+	StrategyImpl strategy = new StrategyImpl( "Balance "
+						  + currencyPair.getCurrency().getCode()
+						  + "<=>"
+						  + currencyPair.getPaymentCurrency().getCode()
+						  + " at "
+						  + tradeSite.getName()
+						  + " for "
+						  + userAccount.getAccountName()
+						  , "10m");
+
+	strategy.addRule( new EmergencyStopRule( this, strategy, tradeSite, currencyPair, userAccount, minimumPrice));
+	strategy.addRule( new CancelOrderRule( this, strategy, userAccount));
+	strategy.addRule( new BalanceBuyRule( this, strategy, tradeSite, currencyPair, userAccount, buyMargin));
+	strategy.addRule( new BalanceSellRule( this, strategy, tradeSite, currencyPair, userAccount, sellMargin));
+
+	strategy.addUsedCurrencyPair( currencyPair);
+	strategy.addUsedTradeSite( tradeSite);
+
+	addStrategy( strategy, true);
+
+	return strategy;
+    }
+
+    /**
+     * Add a strategy, that balances the funds of a currency pair on a trade site, from its setting.
+     *
+     * @param setting The setting of the strategy (see _balanceStrategySettings).
+     *
+     * @return The new strategy or null, if the setting is invalid.
+     */
+    private Strategy addBalanceStrategyFromSetting( String setting) {
+
+	String [] values = setting.trim().split( "\\s+");
+
+	if( values.length != 6) {
+
+	    LogUtils.getInstance().getLogger().error( "Invalid balance strategy setting for the spread bot: " + setting);
+
+	    return null;
+	}
+
+	TradeSiteUserAccount userAccount = getTradeSiteUserAccountForName( values[ 2]);
+
+	if( ( userAccount == null) || ! userAccount.isActivated()) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot find user account for spread bot strategy: " + setting);
+
+	    return null;
+	}
+
+	TradeSite tradeSite = ModuleLoader.getInstance().getRegisteredTradeSite( values[ 0]);
+
+	if( tradeSite == null) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot find trade site " + values[ 0] + " for spread bot strategy: " + setting);
+
+	    return null;
+	}
+
+	String [] currencies = values[ 1].split( "<=>");
+
+	if( currencies.length != 2) {
+
+	    LogUtils.getInstance().getLogger().error( "Invalid currency pair in spread bot strategy: " + setting);
+
+	    return null;
+	}
+
+	try {
+
+	    CurrencyPair currencyPair = new CurrencyPairImpl( currencies[ 0].toUpperCase(), currencies[ 1].toUpperCase());
+
+	    return addBalanceStrategy( tradeSite
+				       , currencyPair
+				       , userAccount
+				       , Float.parseFloat( values[ 3])
+				       , Float.parseFloat( values[ 4])
+				       , new Price( values[ 5], CurrencyProvider.getInstance().getCurrencyForCode( currencies[ 1].toUpperCase())));
+
+	} catch( NumberFormatException nfe) {
+
+	    LogUtils.getInstance().getLogger().error( "Invalid margin or price in spread bot strategy: " + setting);
+
+	    return null;
+	}
+    }
+
+    /**
+     * Add a strategy, that is loaded from a java source file, from its setting.
+     *
+     * @param setting The setting of the strategy (see _javaStrategySettings).
+     *
+     * @return The new strategy or null, if the strategy could not be loaded.
+     */
+    private Strategy addJavaStrategyFromSetting( String setting) {
+
+	String [] values = setting.trim().split( "\\s+");
+
+	if( values.length != 2) {
+
+	    LogUtils.getInstance().getLogger().error( "Invalid java strategy setting for the spread bot: " + setting);
+
+	    return null;
+	}
+
+	TradeSiteUserAccount userAccount = getTradeSiteUserAccountForName( values[ 1]);
+
+	if( ( userAccount == null) || ! userAccount.isActivated()) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot find user account for spread bot strategy: " + setting);
+
+	    return null;
+	}
+
+	try {
+
+	    return addStrategyFromFile( values[ 0], userAccount);
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot read java strategy for the spread bot: " + ioe);
+
+	    return null;
+	}
+    }
+
     /**
      * Add an order to the list of currently executed orders.
      *
@@ -190,7 +353,8 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      */
     void addOrder( SiteOrder order) {
 
-	_currentOrders.add( order);  // Add the id to the list of order id's.
+	// Add the order to the registry of active orders of its book.
+	getBook( order.getTradeSite(), order.getCurrencyPair()).getOrderRegistry().add( order);
     }
 
     /**
@@ -231,20 +395,49 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 	    }
 	}
 	 
-	_strategies.add( strategy);
+	getStrategies().add( strategy);
+
+	if( _scheduler.isRunning()) {  // If the bot is already running, evaluate the new strategy, too.
+
+	    _scheduler.schedule( strategy);
+	}
     }
 
     /**
-     * Load a new strategy from a file.
+     * Load a new strategy from a java source file.
+     * The sources of the strategy are checked for changes while the bot is running,
+     * and a changed strategy is swapped into the bot.
+     *
+     * @param strategyFilename The name of the file holding the new strategy.
+     * @param userAccount The user account to trade the strategy.
      *
-     * @param StrategyFilename The name of the file holding the new strategy.
+     * @return The new strategy or null, if the strategy could not be compiled or instantiated.
      *
      * @throws FileNotFoundException If the file was not found.
      * @throws IOException If an I/O error occured during file reading.
      */
-    private void addStrategyFromFile( String strategyFilename) throws FileNotFoundException, IOException {
+    synchronized Strategy addStrategyFromFile( String strategyFilename, TradeSiteUserAccount userAccount) throws FileNotFoundException, IOException {
+
+	File strategyFile = new File( strategyFilename);
+
+	if( ! strategyFile.isFile()) {
+
+	    throw new FileNotFoundException( "Cannot find strategy file " + strategyFilename);
+	}
+
+	JavaStrategyLoader loader = JavaStrategyLoader.forSourceFile( this, userAccount, strategyFile);
 
-	throw new NotYetImplementedException( "Loading a strategy from a java file is not yet implemented");
+	if( ! loader.load()) {
+
+	    return null;  // The error was already logged.
+	}
+
+	addStrategy( loader.getStrategyInstance(), true);
+
+	// Register the loader after the strategy was added, since the first access to the strategies creates the strategies from the settings.
+	_javaStrategyLoaders.add( loader);
+
+	return loader.getStrategyInstance();
     }
 
     /**
@@ -271,14 +464,119 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 	return false;  // Default return value.
     }
     
+    /**
+     * Evaluate all the rules of a strategy once.
+     * This method is called from the strategy scheduler.
+     *
+     * @param strategy The strategy to evaluate.
+     */
+    void evaluateStrategy( Strategy strategy) {
+
+	// Check, if this strategy is currently activated.
+	if( ! strategy.isActivated()) {
+
+	    return;
+	}
+
+	// Fetch the market data once for all the rules of this strategy.
+	MarketSnapshot snapshot = MarketSnapshot.createForStrategy( this, strategy);
+
+	// Update the margin estimates of the books, before the rules use them.
+	updateBooks( strategy, snapshot);
+
+	// Loop over the list of rules and check them all for execution.
+	for( Rule currentRule : strategy.getRules()) {
+
+	    try {
+
+		if( currentRule.isConditionFilled( snapshot)) {  // If the condition of this rule is filled
+
+		    currentRule.executeBody( snapshot);          // , execute it's body.
+
+		    // If this rule fired, refetch it's funds on the next run.
+		    refetchFunds( currentRule.getTradeSiteUserAccount());
+
+		    if( currentRule.getTradeSiteUserAccount() != null) {
+
+			snapshot.invalidateFunds( currentRule.getTradeSiteUserAccount());  // And for the following rules.
+		    }
+		}
+
+	    } catch( TradeDataNotAvailableException tdnae) {  // If the bot couldn't any trade data,
+		// log that, but continue..
+
+		LogUtils.getInstance().getLogger().error( "Spread bot could not get any data for a rule: " + tdnae);
+	    }
+
+	    if( ! strategy.isActivated()) {  // A rule might have stopped this strategy.
+
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Create the strategies from the balance and java strategy settings.
+     * The strategies of the previous settings are removed.
+     */
+    private synchronized void createStrategiesFromSettings() {
+
+	for( Strategy currentStrategy : _strategiesFromSettings) {
+
+	    _strategies.remove( currentStrategy);
+	    _scheduler.unschedule( currentStrategy);
+	}
+
+	_strategiesFromSettings.clear();
+
+	for( JavaStrategyLoader currentLoader : _javaStrategyLoaders) {
+
+	    Strategy loadedStrategy = currentLoader.getStrategyInstance();  // A reload might have replaced the created strategy.
+
+	    _strategies.remove( loadedStrategy);
+	    _scheduler.unschedule( loadedStrategy);
+	}
+
+	_javaStrategyLoaders.clear();
+
+	// Create the books and balance strategies from the settings.
+	for( String currentSetting : _balanceStrategySettings) {
+
+	    Strategy strategy = addBalanceStrategyFromSetting( currentSetting);
+
+	    if( strategy != null) {
+
+		_strategiesFromSettings.add( strategy);
+	    }
+	}
+
+	// Load the java strategies from the settings.
+	for( String currentSetting : _javaStrategySettings) {
+
+	    Strategy strategy = addJavaStrategyFromSetting( currentSetting);
+
+	    if( strategy != null) {
+
+		_strategiesFromSettings.add( strategy);
+	    }
+	}
+    }
+
     /**
      * Get the list of current orders.
      *
      * @return The list of current orders.
      */
-    List<SiteOrder> getCurrentOrders() {
-	
-	return _currentOrders;
+    Collection<SiteOrder> getCurrentOrders() {
+
+	List<SiteOrder> result = new ArrayList<SiteOrder>();
+
+	for( MarketMakingBook currentBook : _books.values()) {
+
+	    result.addAll( currentBook.getOrderRegistry().getOrders());
+	}
+
+	return result;
     }
 
     /**
@@ -295,14 +593,13 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      */
     public Amount getFunds( TradeSite tradeSite, TradeSiteUserAccount userAccount, Currency currency) {
 
-	if( _currentFunds.get( userAccount) == null) {                                 // If there are no accounts yet,
-	    _currentFunds.put( userAccount, tradeSite.getAccounts( userAccount));      // fetch them from the trade site.
-	} 
+	// Fetch the accounts via the account manager, so they are cached and shared with the other bots.
+	Collection<TradeSiteAccount> accounts = getAccountManager().getAccounts( tradeSite, userAccount);
 
-	if( _currentFunds.get( userAccount) == null) {
+	if( accounts == null) {
 	    LogUtils.getInstance().getLogger().error( "Spreadbot cannot fetch accounts from trade site.");
 	} else {
-	    for( TradeSiteAccount account : _currentFunds.get( userAccount)) {  // Loop over the accounts.
+	    for( TradeSiteAccount account : accounts) {  // Loop over the accounts.
 		if( currency.equals( account.getCurrency())) {                  // If this accounts has the requested currency.
 		    return new Amount( account.getBalance());                   // Return it's balance.
 		}
@@ -324,6 +621,16 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 	return _instance;
     }
 
+    /**
+     * Get the account manager to fetch the funds.
+     *
+     * @return The account manager of the app.
+     */
+    private AccountManager getAccountManager() {
+
+	return TradeApp.getApp().getAccountManager();
+    }
+
     /**
      * Get the current log level of this bot.
      *
@@ -335,7 +642,7 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
     }
 
     /**
-     * Get the margin in percent to balance the funds.
+     * Get the default margin in percent to balance the funds.
      *
      * @param orderType The type of the order (buy or sell).
      *
@@ -343,7 +650,22 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      */
     public float getMargin( OrderType orderType) {
 
-	return orderType == OrderType.BUY ? 0.2f : 0.4f; 
+	return orderType == OrderType.BUY ? MarketMakingBook.DEFAULT_BUY_MARGIN : MarketMakingBook.DEFAULT_SELL_MARGIN;
+    }
+
+    /**
+     * Get the current margin in percent for a trade site and currency pair.
+     * The margin adapts to the volatility and imbalance of the market.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param orderType The type of the order (buy or sell).
+     *
+     * @return The current margin in percent.
+     */
+    public float getMargin( TradeSite tradeSite, CurrencyPair currencyPair, OrderType orderType) {
+
+	return getBook( tradeSite, currencyPair).getMargin( orderType);
     }
 
     /**
@@ -415,7 +737,7 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      *
      * @return The properties of this bot as a list.
      */
-    public PersistentPropertyList getSettings() {
+    public synchronized PersistentPropertyList getSettings() {
 
 	// Get the settings from this bot.
 	PersistentPropertyList result = new PersistentPropertyList();
@@ -429,6 +751,21 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 	    result.add( new PersistentProperty( "useraccount" + i, null, _tradeSiteUserAccounts.get( i).encodeAsPropertyValue(), i + 1));    
 	}
 
+	// Add every balance strategy as a property.
+	for( int i = 0; i < _balanceStrategySettings.size(); ++i) {
+
+	    result.add( new PersistentProperty( "balancestrategy" + i, null, _balanceStrategySettings.get( i), _tradeSiteUserAccounts.size() + i + 1));
+	}
+
+	// Add every java strategy as a property.
+	for( int i = 0; i < _javaStrategySettings.size(); ++i) {
+
+	    result.add( new PersistentProperty( "javastrategy" + i
+						, null
+						, _javaStrategySettings.get( i)
+						, _tradeSiteUserAccounts.size() + _balanceStrategySettings.size() + i + 1));
+	}
+
 	return result;
     }
 
@@ -438,339 +775,13 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      *
      * @return The list of strategies.
      */
-    public List<Strategy> getStrategies() {
+    public synchronized List<Strategy> getStrategies() {
 
 	if( _strategies == null) {  // If there are no strategies defined yet.
 	    
-	    _strategies = new ArrayList<Strategy>();
-
-	    // Get a reference to the btc-e API implementation.
-	    TradeSite btceSite = ModuleLoader.getInstance().getRegisteredTradeSite( "BTCe");
-
-	    /*
-	    
-	    // Create a strategy to balance ltc<=>usd on btc-e
-
-	    // Get an account for this strategy.
-	    TradeSiteUserAccount btceLtcUsdAccount = getTradeSiteUserAccountForName( "balance_btce_ltc_usd");
-
-	    if( ( btceLtcUsdAccount != null) && btceLtcUsdAccount.isActivated()) {
-
-		StrategyImpl ltcUsdStrategy = new StrategyImpl( "Balance LTC<=>USD at btc-e", "10m", 10);
-
-		// Create a currency pair to trade
-		CurrencyPair ltcUsdPair = new CurrencyPairImpl( "LTC", "USD");
-
-		// Add a list of rules.
-		ltcUsdStrategy.addRule( new EmergencyStopRule( this
-							       , ltcUsdStrategy
-							       , btceSite
-							       , ltcUsdPair
-							       , btceLtcUsdAccount
-							       , new Price( "1.5", CurrencyProvider.getInstance().getCurrencyForCode( "USD"))));
-		ltcUsdStrategy.addRule( new CancelOrderRule( this, ltcUsdStrategy, btceLtcUsdAccount));
-		ltcUsdStrategy.addRule( new BalanceBuyRule( this, ltcUsdStrategy, btceSite, ltcUsdPair, btceLtcUsdAccount, 1.5f));
-		ltcUsdStrategy.addRule( new BalanceSellRule( this, ltcUsdStrategy, btceSite, ltcUsdPair, btceLtcUsdAccount, 3.0f));
-
-		// Add some info about this strategy.
-		ltcUsdStrategy.addUsedCurrencyPair( ltcUsdPair);
-		ltcUsdStrategy.addUsedTradeSite( btceSite);
-
-		// Add this strategy to the list of processed strategies.
-	        addStrategy( ltcUsdStrategy, true); 
-
-		// Do some side trading with XPM on the ltc/usd account.
-		StrategyImpl btceXpmBtcStrategy = new StrategyImpl( "Balance XPM<=>BTC at btc-e", "10m", 10);
-
-		// Create a currency pair to trade
-		CurrencyPair xpmBtcPair = new CurrencyPairImpl( "XPM", "BTC");
-
-		// Add a list of rules.
-		btceXpmBtcStrategy.addRule( new EmergencyStopRule( this
-								   , btceXpmBtcStrategy
-								   , btceSite
-								   , xpmBtcPair
-								   , btceLtcUsdAccount
-								   , new Price( "0.0015", CurrencyProvider.getInstance().getCurrencyForCode( "BTC"))));
-		btceXpmBtcStrategy.addRule( new CancelOrderRule( this, btceXpmBtcStrategy, btceLtcUsdAccount));
-		btceXpmBtcStrategy.addRule( new BalanceBuyRule( this, btceXpmBtcStrategy, btceSite, xpmBtcPair, btceLtcUsdAccount, 2.0f));
-		btceXpmBtcStrategy.addRule( new BalanceSellRule( this, btceXpmBtcStrategy, btceSite, xpmBtcPair, btceLtcUsdAccount, 4.0f));
-
-		// Add some info about this strategy.
-		btceXpmBtcStrategy.addUsedCurrencyPair( xpmBtcPair);
-		btceXpmBtcStrategy.addUsedTradeSite( btceSite);
-
-		// Add this strategy to the list of processed strategies.
-	        addStrategy( btceXpmBtcStrategy, true);
-		
-	    } else {
-
-		LogUtils.getInstance().getLogger().error( "Cannot find user account for Btc-e ltc<=>usd strategy");
-	    }
-
-	    */
-
-	    /*
-	    // Add a strategy to trade btc<=>usd on btc-e
-	    
-	    // Get an account for this strategy.
-	    TradeSiteUserAccount btceBtcUsdAccount = getTradeSiteUserAccountForName( "balance_btce_btc_usd");
-
-	    if( ( btceBtcUsdAccount != null) && btceBtcUsdAccount.isActivated()) {
-
-		StrategyImpl btcUsdStrategy = new StrategyImpl( "Balance BTC<=>USD at btc-e", "10m");
-
-		// Create a currency pair to trade
-		CurrencyPair btcUsdPair = new CurrencyPairImpl( CurrencyImpl.BTC, CurrencyImpl.USD);
-
-		// Add a list of rules to this strategy
-		btcUsdStrategy.addRule( new EmergencyStopRule( this, btcUsdStrategy, btceSite, btcUsdPair, btceBtcUsdAccount, new Price( "60.0", CurrencyImpl.USD)));
-		btcUsdStrategy.addRule( new CancelOrderRule( this, btcUsdStrategy, btceBtcUsdAccount));
-		btcUsdStrategy.addRule( new BalanceBuyRule( this, btcUsdStrategy, btceSite, btcUsdPair, btceBtcUsdAccount, 1.0f));
-		btcUsdStrategy.addRule( new BalanceSellRule( this, btcUsdStrategy, btceSite, btcUsdPair, btceBtcUsdAccount, 2.0f));
-
-		// Add some info about this strategy.
-		btcUsdStrategy.addUsedCurrencyPair( btcUsdPair);
-		btcUsdStrategy.addUsedTradeSite( btceSite);
-
-		// Add this strategy to the list of processed strategies.
-		addStrategy( btcUsdStrategy, true);
-
-	    } else {
-
-		LogUtils.getInstance().getLogger().error( "Cannot find user account for Btc-e btc<=>usd strategy");
-	    }
-	    */
-
-	    // Add a strategy to trade ppc<=>usd on btc-e
-	    TradeSiteUserAccount btcePpcUsdAccount = getTradeSiteUserAccountForName( "new_btce_trading1");
-
-	    if( ( btcePpcUsdAccount != null) && btcePpcUsdAccount.isActivated()) {
+	    _strategies = new CopyOnWriteArrayList<Strategy>();
 
-		StrategyImpl ppcUsdStrategy = new StrategyImpl( "Balance PPC<=>USD at btc-e", "10m", 10);
-
-		// Create a currency pair to trade
-		CurrencyPair ppcUsdPair = new CurrencyPairImpl( "PPC", "USD");
-
-		// Add a list of rules to this strategy
-		ppcUsdStrategy.addRule( new EmergencyStopRule( this
-							       , ppcUsdStrategy
-							       , btceSite
-							       , ppcUsdPair
-							       , btcePpcUsdAccount
-							       , new Price( "0.2", CurrencyProvider.getInstance().getCurrencyForCode( "USD"))));
-		ppcUsdStrategy.addRule( new CancelOrderRule( this, ppcUsdStrategy, btcePpcUsdAccount));
-		ppcUsdStrategy.addRule( new BalanceBuyRule( this, ppcUsdStrategy, btceSite, ppcUsdPair, btcePpcUsdAccount, 0.05f));
-		ppcUsdStrategy.addRule( new BalanceSellRule( this, ppcUsdStrategy, btceSite, ppcUsdPair, btcePpcUsdAccount, 0.1f));
-
-		// Add some info about this strategy.
-		ppcUsdStrategy.addUsedCurrencyPair( ppcUsdPair);
-		ppcUsdStrategy.addUsedTradeSite( btceSite);
-
-		// Add this strategy to the list of processed strategies.
-		addStrategy( ppcUsdStrategy, true);
-
-	    } else {
-
-		LogUtils.getInstance().getLogger().error( "Cannot find user account for Btc-e ppc<=>usd strategy");
-	    }
-
-	    // Add a strategy to trade LTC <=> BTC on btc-e
-	    TradeSiteUserAccount btceLtcBtcAccount = getTradeSiteUserAccountForName( "new_btce_trading1");
-
-	    if( ( btceLtcBtcAccount != null) && btceLtcBtcAccount.isActivated()) {
-
-		StrategyImpl ltcBtcStrategy = new StrategyImpl( "Balance LTC<=>BTC at btc-e", "10m", 10);
-
-		// Create a currency pair to trade
-		CurrencyPair ltcBtcPair = new CurrencyPairImpl( "LTC", "BTC");
-
-		// Add a list of rules to this strategy
-		ltcBtcStrategy.addRule( new EmergencyStopRule( this
-							       , ltcBtcStrategy
-							       , btceSite
-							       , ltcBtcPair
-							       , btcePpcUsdAccount
-							       , new Price( "0.004", CurrencyProvider.getInstance().getCurrencyForCode( "LTC"))));
-		ltcBtcStrategy.addRule( new CancelOrderRule( this, ltcBtcStrategy, btcePpcUsdAccount));
-		ltcBtcStrategy.addRule( new BalanceBuyRule( this, ltcBtcStrategy, btceSite, ltcBtcPair, btcePpcUsdAccount, 0.5f));
-		ltcBtcStrategy.addRule( new BalanceSellRule( this, ltcBtcStrategy, btceSite, ltcBtcPair, btcePpcUsdAccount, 1.0f));
-
-		// Add some info about this strategy.
-		ltcBtcStrategy.addUsedCurrencyPair( ltcBtcPair);
-		ltcBtcStrategy.addUsedTradeSite( btceSite);
-
-		// Add this strategy to the list of processed strategies.
-		addStrategy( ltcBtcStrategy, true);
-
-	    } else {
-
-		LogUtils.getInstance().getLogger().error( "Cannot find user account for Btc-e ltc<=>btc strategy");
-	    }
-	    
-	    // Add another strategy to trade LTC <=> BTC on btc-e
-	    TradeSiteUserAccount btceLtcBtcAccount2 = getTradeSiteUserAccountForName( "new_btce_trading2");
-
-	    if( ( btceLtcBtcAccount2 != null) && btceLtcBtcAccount2.isActivated()) {
-
-		StrategyImpl ltcBtcStrategy = new StrategyImpl( "Balance LTC<=>BTC at btc-e", "10m", 10);
-
-		// Create a currency pair to trade
-		CurrencyPair ltcBtcPair = new CurrencyPairImpl( "LTC", "BTC");
-
-		// Add a list of rules to this strategy
-		ltcBtcStrategy.addRule( new EmergencyStopRule( this
-							       , ltcBtcStrategy
-							       , btceSite
-							       , ltcBtcPair
-							       , btceLtcBtcAccount2
-							       , new Price( "0.004", CurrencyProvider.getInstance().getCurrencyForCode( "LTC"))));
-		ltcBtcStrategy.addRule( new CancelOrderRule( this, ltcBtcStrategy, btceLtcBtcAccount2));
-		ltcBtcStrategy.addRule( new BalanceBuyRule( this, ltcBtcStrategy, btceSite, ltcBtcPair, btceLtcBtcAccount2, 0.5f));
-		ltcBtcStrategy.addRule( new BalanceSellRule( this, ltcBtcStrategy, btceSite, ltcBtcPair, btceLtcBtcAccount2, 1.0f));
-
-		// Add some info about this strategy.
-		ltcBtcStrategy.addUsedCurrencyPair( ltcBtcPair);
-		ltcBtcStrategy.addUsedTradeSite( btceSite);
-
-		// Add this strategy to the list of processed strategies.
-		addStrategy( ltcBtcStrategy, true);
-
-	    } else {
-
-		LogUtils.getInstance().getLogger().error( "Cannot find user account for Btc-e ltc<=>btc strategy");
-	    }
-
-	    if( ( btceLtcBtcAccount2 != null) && btceLtcBtcAccount2.isActivated()) {
-
-		StrategyImpl ppcUsdStrategy = new StrategyImpl( "Balance PPC<=>USD at btc-e", "10m", 10);
-
-		// Create a currency pair to trade
-		CurrencyPair ppcUsdPair = new CurrencyPairImpl( "PPC", "USD");
-
-		// Add a list of rules to this strategy
-		ppcUsdStrategy.addRule( new EmergencyStopRule( this
-							       , ppcUsdStrategy
-							       , btceSite
-							       , ppcUsdPair
-							       , btceLtcBtcAccount2
-							       , new Price( "0.2", CurrencyProvider.getInstance().getCurrencyForCode( "USD"))));
-		ppcUsdStrategy.addRule( new CancelOrderRule( this, ppcUsdStrategy, btceLtcBtcAccount2));
-		ppcUsdStrategy.addRule( new BalanceBuyRule( this, ppcUsdStrategy, btceSite, ppcUsdPair, btceLtcBtcAccount2, 0.5f));
-		ppcUsdStrategy.addRule( new BalanceSellRule( this, ppcUsdStrategy, btceSite, ppcUsdPair, btceLtcBtcAccount2, 1.0f));
-
-		// Add some info about this strategy.
-		ppcUsdStrategy.addUsedCurrencyPair( ppcUsdPair);
-		ppcUsdStrategy.addUsedTradeSite( btceSite);
-
-		// Add this strategy to the list of processed strategies.
-		addStrategy( ppcUsdStrategy, true);
-
-	    } else {
-
-		LogUtils.getInstance().getLogger().error( "Cannot find user account for Btc-e ppc<=>usd strategy");
-	    }
-	    
-	    /*
-
-	    // Add a strategy to trade nmc<=>btc on btc-e
-	    if( ( btceBtcUsdAccount != null) && btceBtcUsdAccount.isActivated()) {
-
-		StrategyImpl nmcBtcStrategy = new StrategyImpl( "Balance NMC<=>BTC at btc-e", "10m", 10);
-
-		// Create a currency pair to trade
-		CurrencyPair nmcBtcPair = new CurrencyPairImpl( "NMC", "BTC");
-
-		// Add a list of rules to this strategy
-		nmcBtcStrategy.addRule( new EmergencyStopRule( this
-							       , nmcBtcStrategy
-							       , btceSite
-							       , nmcBtcPair
-							       , btceBtcUsdAccount
-							       , new Price( "0.002", CurrencyProvider.getInstance().getCurrencyForCode( "BTC"))));
-		nmcBtcStrategy.addRule( new CancelOrderRule( this, nmcBtcStrategy, btceBtcUsdAccount));
-		nmcBtcStrategy.addRule( new BalanceBuyRule( this, nmcBtcStrategy, btceSite, nmcBtcPair, btceBtcUsdAccount, 0.5f));
-		nmcBtcStrategy.addRule( new BalanceSellRule( this, nmcBtcStrategy, btceSite, nmcBtcPair, btceBtcUsdAccount, 1.0f));
-
-		// Add some info about this strategy.
-		nmcBtcStrategy.addUsedCurrencyPair( nmcBtcPair);
-		nmcBtcStrategy.addUsedTradeSite( btceSite);
-
-		// Add this strategy to the list of processed strategies.
-		addStrategy( nmcBtcStrategy, true);
-
-	    } else {
-
-		LogUtils.getInstance().getLogger().error( "Cannot find user account for Btc-e nmc<=>btc strategy");
-	    }
-
-	    */
-
-	    /*
-	    // Create a strategy for EMA crossing trading.
-	    // Get an account for this strategy.
-	    TradeSiteUserAccount emaXbtceBtcUsdAccount = getTradeSiteUserAccountForName( "emax_btce_btc_usd");
-
-	    if( ( emaXbtceBtcUsdAccount != null) && emaXbtceBtcUsdAccount.isActivated()) {
-
-		StrategyImpl btcUsdStrategy = new StrategyImpl( "EMA crossing BTC<=>USD at btc-e", "30m");
-		btcUsdStrategy.setSimulation( true);
-
-		// Create a currency pair to trade
-		CurrencyPair btcUsdPair = new CurrencyPairImpl( CurrencyImpl.BTC, CurrencyImpl.USD);
-
-		// Add a list of rules to this strategy
-		btcUsdStrategy.addRule( new EmergencyStopRule( this, btcUsdStrategy, btceSite, btcUsdPair, emaXbtceBtcUsdAccount, new Price( "400.0", CurrencyImpl.USD)));
-		btcUsdStrategy.addRule( new CancelOrderRule( this, btcUsdStrategy, emaXbtceBtcUsdAccount));
-		btcUsdStrategy.addRule( new MACrossingTradeRule( this, btcUsdStrategy, btceSite, btcUsdPair, emaXbtceBtcUsdAccount, "10d", "25d"));
-
-		// Add some info about this strategy.
-		btcUsdStrategy.addUsedCurrencyPair( btcUsdPair);
-		btcUsdStrategy.addUsedTradeSite( btceSite);
-
-		// Add this strategy to the list of processed strategies.
-		addStrategy( btcUsdStrategy, true);
-
-	    } else {
-
-		LogUtils.getInstance().getLogger().error( "Cannot find user account for ema crossing Btc-e btc<=>usd strategy");
-	    }	    
-	    */
-	    
-	    /*
-	    // Get a reference to the MtGox API implementation.
-	    TradeSite mtgoxSite = ModuleLoader.getInstance().getRegisteredTradeSite( "MtGox");
-
-	    // Add a strategy to trade btc<=>usd on MtGox.
-	    
-	    // Get an account for this strategy.
-	    TradeSiteUserAccount mtgoxBtcUsdAccount = getTradeSiteUserAccountForName( "balance_mtgox_btc_usd");
-
-	    if( ( mtgoxBtcUsdAccount != null) && mtgoxBtcUsdAccount.isActivated()) {
-
-		StrategyImpl mtgoxBtcUsdStrategy = new StrategyImpl( "Balance BTC<=>USD at MtGox", "10m");
-
-		// Create a currency pair to trade
-		CurrencyPair btcUsdPair = new CurrencyPairImpl( CurrencyImpl.BTC, CurrencyImpl.USD);
-
-		// Add a list of rules to this strategy
-		mtgoxBtcUsdStrategy.addRule( new EmergencyStopRule( this, mtgoxBtcUsdStrategy, mtgoxSite, btcUsdPair, mtgoxBtcUsdAccount, new Price( "300.0", CurrencyImpl.USD)));
-		mtgoxBtcUsdStrategy.addRule( new CancelOrderRule( this, mtgoxBtcUsdStrategy, mtgoxBtcUsdAccount));
-		mtgoxBtcUsdStrategy.addRule( new BalanceBuyRule( this, mtgoxBtcUsdStrategy, mtgoxSite, btcUsdPair, mtgoxBtcUsdAccount, 1.5f));
-		mtgoxBtcUsdStrategy.addRule( new BalanceSellRule( this, mtgoxBtcUsdStrategy, mtgoxSite, btcUsdPair, mtgoxBtcUsdAccount, 3.0f));
-
-		// Add some info about this strategy.
-		mtgoxBtcUsdStrategy.addUsedCurrencyPair( btcUsdPair);
-		mtgoxBtcUsdStrategy.addUsedTradeSite( mtgoxSite);
-
-		// Add this strategy to the list of processed strategies.
-		addStrategy( mtgoxBtcUsdStrategy, true);
-
-	    } else {
-
-		LogUtils.getInstance().getLogger().error( "Cannot find user account for MtGox btc<=>usd strategy");
-	    }
-	    */
+	    createStrategiesFromSettings();
 	}
  
 	return _strategies;
@@ -785,7 +796,7 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      */
     public Strategy getStrategyForName( String strategyName) {
 
-	for( Strategy currentStrategy : _strategies) {
+	for( Strategy currentStrategy : getStrategies()) {
 
 	    if( ( currentStrategy.getName() != null) && currentStrategy.getName().equals( strategyName)) {
 
@@ -796,32 +807,6 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 	return null;  // No matching strategy found.
     }
  
-    /**
-     * Get the traded currency pair.
-     *
-     * @return The traded currency pair.
-     */
-    public CurrencyPair getTradedCurrencyPair() {
-
-	if( _tradedPair == null) {  // If there is no traded currency pair set for now.
-
-	    // Trade ltc for usd for now.
-	    _tradedPair = new CurrencyPairImpl( "LTC", "USD");
-	}
-
-	return _tradedPair;  // Return the traded currency pair.
-    }
-
-    /**
-     * Get the trade site, that we trade on.
-     *
-     * @return The used trade site.
-     */
-    public TradeSite getTradeSite() {
-
-	return _tradeSite;  // Return the trade site instance.
-    }
-
     /**
      * Get a trade site user account from the bot.
      *
@@ -906,6 +891,79 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 	return result;  // Return the list of triggered orders.
 	} */
 
+    /**
+     * Get the book for a trade site and currency pair and create it, if necessary.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The book for the trade site and currency pair.
+     */
+    public MarketMakingBook getBook( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	String key = MarketMakingBook.getKey( tradeSite, currencyPair);
+
+	MarketMakingBook book = _books.get( key);
+
+	if( book == null) {
+
+	    // Create a new book, unless another thread was faster.
+	    MarketMakingBook newBook = new MarketMakingBook( tradeSite, currencyPair, _openOrderCache);
+
+	    book = _books.putIfAbsent( key, newBook);
+
+	    if( book == null) {
+
+		book = newBook;
+	    }
+	}
+
+	return book;
+    }
+
+    /**
+     * Get all the books of this bot.
+     *
+     * @return All the books of this bot.
+     */
+    public Collection<MarketMakingBook> getBooks() {
+
+	return _books.values();
+    }
+
+    /**
+     * Get the active orders of all books, that are older than a given age.
+     *
+     * @param maximumAge The maximum age of an order in microseconds.
+     * @param userAccount The user account of the orders or null for the orders of all accounts.
+     *
+     * @return The expired orders.
+     */
+    List<SiteOrder> getExpiredOrders( long maximumAge, TradeSiteUserAccount userAccount) {
+
+	List<SiteOrder> result = new ArrayList<SiteOrder>();
+
+	for( MarketMakingBook currentBook : _books.values()) {
+
+	    result.addAll( currentBook.getOrderRegistry().getExpiredOrders( maximumAge, userAccount));
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the spread history for a trade site and currency pair and create it, if necessary.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The spread history for the trade site and currency pair.
+     */
+    SpreadHistory getSpreadHistory( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	return getBook( tradeSite, currencyPair).getSpreadHistory();
+    }
+
     /**
      * Get the UI for this bot.
      *
@@ -918,13 +976,28 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 	return _spreadBotUI;
     }
 
+    /**
+     * Notify the bot, that new market data for a trade site and currency pair arrived.
+     * All strategies trading this pair are evaluated immediately.
+     *
+     * @param tradeSite The trade site with the new data.
+     * @param currencyPair The currency pair with the new data.
+     */
+    public void marketDataUpdated( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	_scheduler.triggerEvaluation( tradeSite, currencyPair);
+    }
+
     /**
      * Get new funds at the next request for a given user account.
      *
      * @param userAccount The tradesite account of the user.
      */
-    private void refetchFunds( TradeSiteUserAccount userAccount) {
-	_currentFunds.put( userAccount, null);  // Just delete the currently stored funds for this user account.
+    void refetchFunds( TradeSiteUserAccount userAccount) {
+
+	if( userAccount != null) {
+	    getAccountManager().invalidateAccounts( userAccount);  // Just delete the currently cached funds for this user account.
+	}
     }
 
     /**
@@ -934,7 +1007,55 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      */
     void removeOrder( String orderId) {
 
-	_currentOrders.remove( orderId);  // Remove the id from the list of order id's.
+	for( MarketMakingBook currentBook : _books.values()) {
+
+	    if( currentBook.getOrderRegistry().remove( orderId) != null) {
+
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Check the status of the active orders of all books and remove the filled orders.
+     * The books share the open order requests for each trade site and user account.
+     *
+     * @param userAccount The user account of the orders or null for the orders of all accounts.
+     *
+     * @return The orders, that were filled since the last check.
+     */
+    List<SiteOrder> removeFilledOrders( TradeSiteUserAccount userAccount) {
+
+	List<SiteOrder> result = new ArrayList<SiteOrder>();
+
+	for( MarketMakingBook currentBook : _books.values()) {
+
+	    result.addAll( currentBook.getOrderRegistry().removeFilledOrders( userAccount));
+	}
+
+	return result;
+    }
+
+    /**
+     * Swap the java strategies, whose sources changed, into the bot.
+     */
+    void reloadChangedStrategies() {
+
+	for( JavaStrategyLoader currentLoader : _javaStrategyLoaders) {
+
+	    // Compile the changed sources outside the lock, so the strategies can be evaluated meanwhile.
+	    if( currentLoader.isChanged()) {
+
+		synchronized( this) {
+
+		    // The settings might have removed this strategy during the compilation.
+		    if( _javaStrategyLoaders.contains( currentLoader) && currentLoader.reload()) {
+
+			LogUtils.getInstance().getLogger().info( "Reloaded changed strategy " + currentLoader.getStrategyInstance().getName());
+		    }
+		}
+	    }
+	}
     }
 
     /**
@@ -944,13 +1065,15 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      */
     public synchronized void removeStrategyWithName( String strategyName) {
 
-	for( int index = 0; index < _strategies.size(); ) {
+	List<Strategy> strategies = getStrategies();
+
+	for( int index = 0; index < strategies.size(); ) {
 	    
-	    Strategy currentStrategy = _strategies.get( index);
+	    Strategy currentStrategy = strategies.get( index);
 	    
 	    if( ( currentStrategy.getName() != null) && currentStrategy.getName().equals( strategyName)) {
 		
-		_strategies.remove( index);  // Remove this strategy.
+		_scheduler.unschedule( strategies.remove( index));  // Remove this strategy and stop evaluating it.
 		
 	    } else {  // Check the next index.
 		
@@ -959,6 +1082,40 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 	}
     }
 
+    /**
+     * Replace a loaded strategy with a new version of it, without stopping the bot.
+     * The strategy with the same name is swapped in the list of strategies in a single
+     * step, so the strategy list never lacks the strategy. If there is no strategy
+     * with this name yet, the new strategy is just added.
+     *
+     * @param strategy The new version of the strategy.
+     */
+    synchronized void replaceStrategy( Strategy strategy) {
+
+	List<Strategy> strategies = getStrategies();
+
+	for( int index = 0; index < strategies.size(); ++index) {
+
+	    Strategy currentStrategy = strategies.get( index);
+
+	    if( ( currentStrategy.getName() != null) && currentStrategy.getName().equals( strategy.getName())) {
+
+		strategies.set( index, strategy);  // Swap the strategies atomically.
+
+		_scheduler.unschedule( currentStrategy);  // Stop evaluating the old version.
+
+		if( _scheduler.isRunning()) {  // And evaluate the new version instead.
+
+		    _scheduler.schedule( strategy);
+		}
+
+		return;
+	    }
+	}
+
+	addStrategy( strategy, false);  // This strategy was not loaded yet.
+    }
+
     /**
      * Sell some amount of a currency at a given trade site.
      *
@@ -980,6 +1137,10 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      */
     public void setSettings( PersistentPropertyList settings) {
 
+	// The balance and java strategies of the settings, indexed by their number.
+	Map< Integer, String> balanceStrategySettings = new TreeMap< Integer, String>();
+	Map< Integer, String> javaStrategySettings = new TreeMap< Integer, String>();
+
 	// Just loop over the settings.
 	for( PersistentProperty currentProperty : settings) {
 
@@ -999,6 +1160,34 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 		}
 	    }
 
+	    // Parse a balance strategy.
+	    if( propertyName.startsWith( "balancestrategy")) {
+
+		try {
+
+		    balanceStrategySettings.put( Integer.parseInt( propertyName.substring( "balancestrategy".length()).trim())
+						 , (String)currentProperty.getValue());
+
+		} catch( NumberFormatException nfe) {
+
+		    LogUtils.getInstance().getLogger().error( "Invalid balance strategy property for the spread bot: " + propertyName);
+		}
+	    }
+
+	    // Parse a java strategy.
+	    if( propertyName.startsWith( "javastrategy")) {
+
+		try {
+
+		    javaStrategySettings.put( Integer.parseInt( propertyName.substring( "javastrategy".length()).trim())
+					      , (String)currentProperty.getValue());
+
+		} catch( NumberFormatException nfe) {
+
+		    LogUtils.getInstance().getLogger().error( "Invalid java strategy property for the spread bot: " + propertyName);
+		}
+	    }
+
 	    // Parse a user account.
 	    if( propertyName.startsWith( "useraccount")) {
 
@@ -1019,6 +1208,10 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
 		}
 	    }
 	}
+
+	// Rebuild the strategies with the new settings and user accounts.
+	updateStrategySettings( balanceStrategySettings.isEmpty() ? null : balanceStrategySettings.values()
+				, javaStrategySettings.values());
     }
 	
     /**
@@ -1026,80 +1219,48 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
      */
     public void start() {
 
-	// Create a ticker thread.
+	// Schedule all the strategies at their own intervals.
+	for( Strategy currentStrategy : getStrategies()) {
+
+	    _scheduler.schedule( currentStrategy);
+	}
+
+	_scheduler.start();
+
+	// Evaluate the strategies of a pair, as soon as the indicator engine gets new data for it.
+	IndicatorEngine.getInstance().addListener( this);
+
+	// Create a thread to update the UI.
 	_updateThread = new Thread() {
 
 		@Override public void run(){
 
+		    long lastReloadCheck = System.currentTimeMillis();
+
 		    while( _updateThread == this) {
-			
-			// Loop over all the strategies.
-			for( Strategy currentStrategy : getStrategies()) {
-			    
-			    // Check, if this strategy is currently activated.
-			    if( currentStrategy.isActivated() 
-				&& ( ( currentStrategy.getLastEvaluationTime() == -1)
-				     || ( ( TimeUtils.getInstance().getCurrentGMTTimeMicros() - currentStrategy.getLastEvaluationTime()) > currentStrategy.getEvaluationInterval()))) {
-			    
-				// Loop over the list of rules and check them all for execution.
-				for( Rule currentRule : currentStrategy.getRules()) {
-
-				    System.out.println( "Evaluating strategie: " + currentStrategy.getName());
-				    
-				    try {
-					    
-					if( currentRule.isConditionFilled()) {  // If the condition of this rule is filled
-					    
-					    currentRule.executeBody();          // , execute it's body.
-					    
-					    // If this rule fired, refetch it's funds on the next run.
-					    refetchFunds( currentRule.getTradeSiteUserAccount());
-					}
-
-				    } catch( TradeDataNotAvailableException tdnae) {  // If the bot couldn't any trade data,
-					// log that, but continue..
-					    
-					LogUtils.getInstance().getLogger().error( "Spread bot could not get any data for a rule: " + tdnae);
-				    }
-				    
-				    // Wait a bit after each rule to complete trades and avoid ban for fund fetching?
-				    try {
-					sleep( 1000);  // Sleep 1 seconds, so the requests from the last rule should be completed.
-				    } catch( InterruptedException ie) {
-					System.err.println( "Strategy delay sleep interrupted: " + ie.toString());
-				    }
-				}
-
-				// Wait a couple of seconds between 2 strategies, since not all our exchange requests are properly
-				// coordinated yet (getAccounts() seems to cause problems, if 2 strategies use different accounts
-				// and the requests are coming from the same IP).
-				try {
-				    sleep( 5000);  // Sleep 5 seconds, so the requests from the last strategies should be completed.
-				} catch( InterruptedException ie) {
-				    System.err.println( "Strategy delay sleep interrupted: " + ie.toString());
-				}
-			    }
+
+			// Swap the changed java strategies into the bot.
+			if( ( System.currentTimeMillis() - lastReloadCheck) >= STRATEGY_RELOAD_INTERVAL) {
+
+			    reloadChangedStrategies();
+
+			    lastReloadCheck = System.currentTimeMillis();
 			}
 
-			// Get the current funds to check, if we can create new orders.
-			// refetchFunds();
-			//BigDecimal currencyFunds = getFunds( _tradedPair.getCurrency());
-			//BigDecimal paymentFunds = getFunds( _tradedPair.getPaymentCurrency());
-			
 			if( _spreadBotUI != null) {     // If there's an UI, update it.
 
 			    BigDecimal [] outputValues = new BigDecimal[ 2];
 			    //outputValues[ 0] =  getFunds( _tradedPair.getCurrency());
 			    //outputValues[ 1] =  getFunds( _tradedPair.getPaymentCurrency());
-			    
+
 			    _spreadBotUI.updateValues( null, outputValues);
 			}
-		    }
-			 
-		    try {
-			sleep( 1000);  // Sleep just 1 second.
-		    } catch( InterruptedException ie) {
-			System.err.println( "Spread bot loop sleep interrupted: " + ie.toString());
+
+			try {
+			    sleep( 1000);  // Sleep just 1 second.
+			} catch( InterruptedException ie) {
+			    System.err.println( "Spread bot loop sleep interrupted: " + ie.toString());
+			}
 		    }
 		}
 	    };
@@ -1107,19 +1268,80 @@ public class SpreadBot extends NativeBotCore implements TradeBot {
     }
 
     /**
-     * Update the spread history.
+     * Stop the bot.
+     */
+    public void stop() {
+
+	IndicatorEngine.getInstance().removeListener( this);  // Ignore new market data.
+
+	_scheduler.stop();  // Stop the strategy evaluations.
+
+	super.stop();  // Stop the UI update thread.
+    }
+
+    /**
+     * Replace the strategy settings and rebuild the strategies of the settings, if they were already created.
      *
-     * @param spread The current spread to add.
+     * @param balanceStrategySettings The new balance strategy settings or null to keep the current settings.
+     * @param javaStrategySettings The new java strategy settings.
      */
-    private void updateSpreadHistory( Price currentSpread) {
+    private synchronized void updateStrategySettings( Collection<String> balanceStrategySettings, Collection<String> javaStrategySettings) {
 
-	// Add the spread to the spread history.
-	_spreadHistory.add( currentSpread);
+	if( balanceStrategySettings != null) {  // The settings replace the default strategies.
 
-	// Remove the first spreads until the max length is reached.
-	while( _spreadHistory.size() > MAX_SPREAD_HISTORY_LENGTH) {
-	    
-	    _spreadHistory.removeFirst();  // Remove the oldest spread.
+	    _balanceStrategySettings.clear();
+	    _balanceStrategySettings.addAll( balanceStrategySettings);
+	}
+
+	_javaStrategySettings.clear();
+	_javaStrategySettings.addAll( javaStrategySettings);
+
+	if( _strategies != null) {  // If the strategies were created from the previous settings, replace them.
+
+	    createStrategiesFromSettings();
+	}
+    }
+
+    /**
+     * Feed the depths and the recent trades of a snapshot into the books of the traded pairs of a strategy.
+     *
+     * @param strategy The evaluated strategy.
+     * @param snapshot The market data of the evaluation.
+     */
+    private void updateBooks( Strategy strategy, MarketSnapshot snapshot) {
+
+	for( TradeSite currentSite : strategy.getUsedTradeSites()) {
+
+	    for( CurrencyPair currentPair : strategy.getUsedCurrencyPairs()) {
+
+		MarketMakingBook book = _books.get( MarketMakingBook.getKey( currentSite, currentPair));
+
+		if( book == null) {
+
+		    continue;  // Only the pairs with a book adapt their margins.
+		}
+
+		try {
+
+		    Depth depth = snapshot.getDepth( currentSite, currentPair);
+
+		    if( depth != null) {
+
+			book.addDepth( depth);
+		    }
+
+		    List<Trade> trades = snapshot.getTrades( currentSite, currentPair);
+
+		    if( trades != null) {
+
+			book.addTrades( trades);
+		    }
+
+		} catch( TradeDataNotAvailableException tdnae) {
+
+		    LogUtils.getInstance().getLogger().error( "Spread bot could not update the book " + MarketMakingBook.getKey( currentSite, currentPair) + ": " + tdnae);
+		}
+	    }
 	}
     }
 }
@@ -0,0 +1,315 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.spread;
+
+
+/**
+ * This class holds the spread history of a currency pair on a trade site.
+ *
+ * The spreads are stored in a fixed capacity ring of primitive doubles. The
+ * mean and variance of the ring are updated with Welford's algorithm (and its
+ * inverse, when the oldest spread is dropped), while the min and max are kept
+ * in 2 monotonic queues. So adding a spread and querying the statistics is
+ * O(1) (amortized) and does not allocate any objects.
+ */
+class SpreadHistory {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The number of added spreads since the last exact recalculation of the statistics.
+     */
+    private int _addedSinceRecalculation = 0;
+
+    /**
+     * The index of the oldest spread in the ring.
+     */
+    private int _head = 0;
+
+    /**
+     * The ring of sequence numbers of the max candidates, decreasing by spread.
+     */
+    private final long [] _maxQueue;
+
+    /**
+     * The index of the first element in the max queue.
+     */
+    private int _maxQueueHead = 0;
+
+    /**
+     * The number of elements in the max queue.
+     */
+    private int _maxQueueSize = 0;
+
+    /**
+     * The current mean of the spreads.
+     */
+    private double _mean = 0.0;
+
+    /**
+     * The ring of sequence numbers of the min candidates, increasing by spread.
+     */
+    private final long [] _minQueue;
+
+    /**
+     * The index of the first element in the min queue.
+     */
+    private int _minQueueHead = 0;
+
+    /**
+     * The number of elements in the min queue.
+     */
+    private int _minQueueSize = 0;
+
+    /**
+     * The sum of the squared differences from the mean (Welford's M2).
+     */
+    private double _squaredDifferences = 0.0;
+
+    /**
+     * The sequence number of the next added spread.
+     */
+    private long _sequence = 0L;
+
+    /**
+     * The number of spreads in the ring.
+     */
+    private int _size = 0;
+
+    /**
+     * The spreads.
+     */
+    private final double [] _spreads;
+
+
+    // Constructors
+
+    /**
+     * Create a new spread history.
+     *
+     * @param capacity The max number of spreads in the history.
+     */
+    SpreadHistory( int capacity) {
+
+	if( capacity <= 0) {
+
+	    throw new IllegalArgumentException( "The capacity of a spread history must be positive: " + capacity);
+	}
+
+	_spreads = new double[ capacity];
+	_minQueue = new long[ capacity];
+	_maxQueue = new long[ capacity];
+    }
+
+
+    // Methods
+
+    /**
+     * Add a new spread to the history and drop the oldest one, if the history is full.
+     *
+     * @param spread The new spread.
+     */
+    synchronized void add( double spread) {
+
+	if( _size == _spreads.length) {  // The ring is full, so drop the oldest spread first.
+
+	    removeOldest();
+	}
+
+	// Store the new spread.
+	_spreads[ (int)( _sequence % _spreads.length)] = spread;
+	++_size;
+
+	// Welford update of mean and variance.
+	double delta = spread - _mean;
+	_mean += delta / _size;
+	_squaredDifferences += delta * ( spread - _mean);
+
+	// Drop all the min candidates, that are not smaller than the new spread.
+	while( ( _minQueueSize > 0) && ( getSpread( _minQueue[ ( _minQueueHead + _minQueueSize - 1) % _minQueue.length]) >= spread)) {
+
+	    --_minQueueSize;
+	}
+	_minQueue[ ( _minQueueHead + _minQueueSize) % _minQueue.length] = _sequence;
+	++_minQueueSize;
+
+	// Drop all the max candidates, that are not bigger than the new spread.
+	while( ( _maxQueueSize > 0) && ( getSpread( _maxQueue[ ( _maxQueueHead + _maxQueueSize - 1) % _maxQueue.length]) <= spread)) {
+
+	    --_maxQueueSize;
+	}
+	_maxQueue[ ( _maxQueueHead + _maxQueueSize) % _maxQueue.length] = _sequence;
+	++_maxQueueSize;
+
+	++_sequence;
+
+	// The inverse Welford update accumulates rounding errors, so recalculate once per capacity.
+	if( ++_addedSinceRecalculation >= _spreads.length) {
+
+	    recalculate();
+	}
+    }
+
+    /**
+     * Get the max number of spreads in this history.
+     *
+     * @return The max number of spreads in this history.
+     */
+    int getCapacity() {
+
+	return _spreads.length;
+    }
+
+    /**
+     * Get the latest spread.
+     *
+     * @return The latest spread or NaN, if the history is empty.
+     */
+    synchronized double getLast() {
+
+	return _size == 0 ? Double.NaN : getSpread( _sequence - 1);
+    }
+
+    /**
+     * Get the biggest spread in the history.
+     *
+     * @return The biggest spread or NaN, if the history is empty.
+     */
+    synchronized double getMax() {
+
+	return _size == 0 ? Double.NaN : getSpread( _maxQueue[ _maxQueueHead]);
+    }
+
+    /**
+     * Get the mean of the spreads in the history.
+     *
+     * @return The mean of the spreads or NaN, if the history is empty.
+     */
+    synchronized double getMean() {
+
+	return _size == 0 ? Double.NaN : _mean;
+    }
+
+    /**
+     * Get the smallest spread in the history.
+     *
+     * @return The smallest spread or NaN, if the history is empty.
+     */
+    synchronized double getMin() {
+
+	return _size == 0 ? Double.NaN : getSpread( _minQueue[ _minQueueHead]);
+    }
+
+    /**
+     * Get the spread with a given sequence number.
+     *
+     * @param sequence The sequence number of the spread.
+     *
+     * @return The spread.
+     */
+    private double getSpread( long sequence) {
+
+	return _spreads[ (int)( sequence % _spreads.length)];
+    }
+
+    /**
+     * Get the standard deviation of the spreads in the history.
+     *
+     * @return The standard deviation of the spreads or NaN, if the history is empty.
+     */
+    synchronized double getStandardDeviation() {
+
+	return Math.sqrt( getVariance());
+    }
+
+    /**
+     * Get the (population) variance of the spreads in the history.
+     *
+     * @return The variance of the spreads or NaN, if the history is empty.
+     */
+    synchronized double getVariance() {
+
+	// Rounding errors might push M2 slightly below 0.
+	return _size == 0 ? Double.NaN : Math.max( 0.0, _squaredDifferences / _size);
+    }
+
+    /**
+     * Recalculate the mean and variance from the spreads in the ring.
+     */
+    private void recalculate() {
+
+	double mean = 0.0;
+	double squaredDifferences = 0.0;
+
+	for( int i = 0; i < _size; ++i) {
+
+	    double spread = _spreads[ ( _head + i) % _spreads.length];
+	    double delta = spread - mean;
+
+	    mean += delta / ( i + 1);
+	    squaredDifferences += delta * ( spread - mean);
+	}
+
+	_mean = mean;
+	_squaredDifferences = squaredDifferences;
+	_addedSinceRecalculation = 0;
+    }
+
+    /**
+     * Remove the oldest spread from the history.
+     */
+    private void removeOldest() {
+
+	long oldestSequence = _sequence - _size;
+	double spread = _spreads[ _head];
+
+	// Inverse Welford update of mean and variance.
+	if( _size == 1) {
+
+	    _mean = 0.0;
+	    _squaredDifferences = 0.0;
+
+	} else {
+
+	    double oldMean = _mean;
+
+	    _mean = ( _size * oldMean - spread) / ( _size - 1);
+	    _squaredDifferences -= ( spread - oldMean) * ( spread - _mean);
+	}
+
+	// Drop the oldest spread from the min and max queues, if it's still a candidate.
+	if( ( _minQueueSize > 0) && ( _minQueue[ _minQueueHead] == oldestSequence)) {
+
+	    _minQueueHead = ( _minQueueHead + 1) % _minQueue.length;
+	    --_minQueueSize;
+	}
+
+	if( ( _maxQueueSize > 0) && ( _maxQueue[ _maxQueueHead] == oldestSequence)) {
+
+	    _maxQueueHead = ( _maxQueueHead + 1) % _maxQueue.length;
+	    --_maxQueueSize;
+	}
+
+	_head = ( _head + 1) % _spreads.length;
+	--_size;
+    }
+
+    /**
+     * Get the number of spreads in the history.
+     *
+     * @return The number of spreads in the history.
+     */
+    synchronized int size() {
+
+	return _size;
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.spread;
+
+import de.andreas_rueckert.trade.account.TradeSiteAccount;
+import de.andreas_rueckert.trade.backtest.BacktestTradeSite;
+import de.andreas_rueckert.trade.backtest.RecordedMarketData;
+import de.andreas_rueckert.trade.backtest.SimulatedTimeSource;
+import de.andreas_rueckert.trade.chart.indicator.IndicatorEngine;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.util.Clock;
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.TimeSource;
+import java.io.IOException;
+import java.util.Collections;
+
+
+/**
+ * This class replays recorded market data against a strategy of the spread bot.
+ *
+ * The recorded trades and depths are fed into a simulated trade site, while the
+ * clock of the bot follows the timestamps of the records. The strategy is evaluated
+ * at its own evaluation interval of simulated time, so a month of data runs in
+ * minutes. The rules of the strategy must trade on the simulated site and must
+ * not be in simulation mode, since the simulated site executes the orders.
+ *
+ * To compare the adaptive margins with the configured ones, run the same data
+ * twice, with the adaptive margins of the book switched on and off, and compare
+ * the logged fill rate and realized spread.
+ */
+public class StrategyBacktest {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The spread bot, that evaluates the strategy.
+     */
+    private final SpreadBot _bot;
+
+    /**
+     * The number of evaluations of the strategy in the last run.
+     */
+    private long _evaluationCount = 0L;
+
+    /**
+     * The number of replayed records in the last run.
+     */
+    private long _recordCount = 0L;
+
+    /**
+     * The recorded market data to replay.
+     */
+    private final RecordedMarketData _recordedData;
+
+    /**
+     * The simulated trade site.
+     */
+    private final BacktestTradeSite _tradeSite;
+
+
+    // Constructors
+
+    /**
+     * Create a new backtest.
+     *
+     * @param bot The spread bot, that evaluates the strategy.
+     * @param tradeSite The simulated trade site, that the rules trade on.
+     * @param recordedData The recorded market data to replay.
+     */
+    public StrategyBacktest( SpreadBot bot, BacktestTradeSite tradeSite, RecordedMarketData recordedData) {
+
+	_bot = bot;
+	_tradeSite = tradeSite;
+	_recordedData = recordedData;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the number of evaluations of the strategy in the last run.
+     *
+     * @return The number of evaluations of the strategy.
+     */
+    public long getEvaluationCount() {
+
+	return _evaluationCount;
+    }
+
+    /**
+     * Get the number of replayed records in the last run.
+     *
+     * @return The number of replayed records.
+     */
+    public long getRecordCount() {
+
+	return _recordCount;
+    }
+
+    /**
+     * Replay the recorded data against a strategy.
+     *
+     * @param strategy The strategy to test.
+     *
+     * @throws IOException if the recorded data cannot be read.
+     */
+    public void run( Strategy strategy) throws IOException {
+
+	CurrencyPair currencyPair = _tradeSite.getSupportedCurrencyPairs()[ 0];
+	MarketMakingBook book = _bot.getBook( _tradeSite, currencyPair);
+	long evaluationInterval = StrategyScheduler.getEvaluationInterval( strategy);
+
+	_evaluationCount = 0L;
+	_recordCount = 0L;
+
+	if( ! _recordedData.next()) {  // No data to replay.
+
+	    return;
+	}
+
+	SimulatedTimeSource timeSource = new SimulatedTimeSource( _recordedData.getTimestamp());
+	TimeSource previousTimeSource = Clock.getInstance().getTimeSource();
+
+	Clock.getInstance().setTimeSource( timeSource);
+
+	long startTime = System.currentTimeMillis();
+
+	try {
+
+	    long nextEvaluation = _recordedData.getTimestamp() + evaluationInterval;
+
+	    do {
+
+		long recordTime = _recordedData.getTimestamp();
+
+		// Evaluate the strategy for each interval, that passed before this record.
+		while( nextEvaluation <= recordTime) {
+
+		    timeSource.setCurrentTimeMicros( nextEvaluation);
+
+		    _bot.evaluateStrategy( strategy);
+
+		    ++_evaluationCount;
+
+		    nextEvaluation += evaluationInterval;
+		}
+
+		timeSource.setCurrentTimeMicros( recordTime);
+
+		if( _recordedData.getTrade() != null) {
+
+		    Trade trade = _recordedData.getTrade();
+
+		    _tradeSite.addTrade( trade);
+
+		    book.addTrade( trade);
+
+		    IndicatorEngine.getInstance().addTrades( _tradeSite, currencyPair, Collections.singletonList( trade));
+
+		} else {
+
+		    Depth depth = _recordedData.getDepth();
+
+		    _tradeSite.addDepth( depth);
+
+		    IndicatorEngine.getInstance().addDepth( _tradeSite, currencyPair, depth);
+
+		    book.addDepth( depth);
+		}
+
+		++_recordCount;
+
+	    } while( _recordedData.next());
+
+	} finally {
+
+	    Clock.getInstance().setTimeSource( previousTimeSource);
+
+	    _recordedData.close();
+	}
+
+	StringBuilder summary = new StringBuilder( "Backtest of strategy " + strategy.getName()
+						   + " replayed " + _recordCount + " records with " + _evaluationCount
+						   + " evaluations in " + ( System.currentTimeMillis() - startTime) + " ms"
+						   + ( book.isAdaptiveMargins() ? " with adaptive margins." : " with fixed margins.")
+						   + " Filled " + _tradeSite.getFilledOrderCount() + " of " + _tradeSite.getSubmittedOrderCount()
+						   + " orders (" + String.format( "%.1f", _tradeSite.getFillRate() * 100.0) + "%)"
+						   + ", realized spread " + String.format( "%.3f", _tradeSite.getRealizedSpread()) + "%."
+						   + " Final funds:");
+
+	for( TradeSiteAccount currentAccount : _tradeSite.getAccounts( null)) {
+
+	    summary.append( " " + currentAccount.getBalance() + " " + currentAccount.getCurrency().getCode());
+	}
+
+	LogUtils.getInstance().getLogger().info( summary.toString());
+    }
+}
@@ -29,7 +29,7 @@ public class StrategyImpl implements Strategy {
     /**
      * Flag to indicate, if this strategy is currently activated.
      */
-    private boolean _activated = true;
+    private volatile boolean _activated = true;
 
     /**
      * The minimum interval between 2 evaluations of this strategy.
@@ -39,7 +39,7 @@ public class StrategyImpl implements Strategy {
     /**
      * The current leverage.
      */
-    private double _leverage = 1;
+    private volatile double _leverage = 1;
 
     /**
      * The name of the strategy.
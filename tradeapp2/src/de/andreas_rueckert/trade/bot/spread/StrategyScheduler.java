@@ -0,0 +1,165 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.spread;
+
+import de.andreas_rueckert.trade.bot.TaskScheduler;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.site.TradeSite;
+
+
+/**
+ * This class fires the evaluation of each strategy at its own interval.
+ * Strategies can also be triggered immediately, if new market data for
+ * one of their traded pairs arrive.
+ *
+ * The strategies are evaluated in parallel on the worker pool of the task
+ * scheduler, so a slow or stuck strategy does not delay the others.
+ */
+class StrategyScheduler extends TaskScheduler<Strategy> {
+
+    // Static variables
+
+    /**
+     * The default evaluation interval for strategies without an interval in microseconds.
+     */
+    static final long DEFAULT_EVALUATION_INTERVAL = 60L * 1000000L;
+
+    /**
+     * The maximum time, a strategy evaluation might take before it is interrupted, in microseconds.
+     */
+    static final long MAX_EVALUATION_TIMEOUT = 5L * 60L * 1000000L;
+
+
+    // Instance variables
+
+    /**
+     * The hosting bot.
+     */
+    private final SpreadBot _bot;
+
+
+    // Constructors
+
+    /**
+     * Create a new scheduler for a given bot.
+     *
+     * @param bot The hosting bot.
+     */
+    StrategyScheduler( SpreadBot bot) {
+
+	this( bot, Math.max( 2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Create a new scheduler for a given bot with a given number of worker threads.
+     *
+     * @param bot The hosting bot.
+     * @param workerPoolSize The number of threads to evaluate the strategies.
+     */
+    StrategyScheduler( SpreadBot bot, int workerPoolSize) {
+
+	super( "SpreadBot strategy", workerPoolSize);
+
+	_bot = bot;
+    }
+
+
+    // Methods
+
+    /**
+     * Evaluate a strategy once.
+     *
+     * @param strategy The strategy to evaluate.
+     */
+    protected void execute( Strategy strategy) {
+
+	_bot.evaluateStrategy( strategy);
+    }
+
+    /**
+     * Get the evaluation interval of a strategy.
+     *
+     * @param strategy The strategy.
+     *
+     * @return The evaluation interval in microseconds.
+     */
+    static long getEvaluationInterval( Strategy strategy) {
+
+	long interval = strategy.getEvaluationInterval();
+
+	return interval > 0L ? interval : DEFAULT_EVALUATION_INTERVAL;
+    }
+
+    /**
+     * Get the evaluation interval of a strategy.
+     *
+     * @param strategy The strategy.
+     *
+     * @return The evaluation interval in microseconds.
+     */
+    protected long getExecutionInterval( Strategy strategy) {
+
+	return getEvaluationInterval( strategy);
+    }
+
+    /**
+     * Get the time after which an evaluation of a strategy is interrupted.
+     *
+     * @param strategy The strategy.
+     *
+     * @return The evaluation timeout in microseconds.
+     */
+    protected long getExecutionTimeout( Strategy strategy) {
+
+	return Math.min( getEvaluationInterval( strategy), MAX_EVALUATION_TIMEOUT);
+    }
+
+    /**
+     * Get the name of a strategy for the log messages.
+     *
+     * @param strategy The strategy.
+     *
+     * @return The name of the strategy.
+     */
+    protected String getTaskName( Strategy strategy) {
+
+	return "strategy '" + strategy.getName() + "'";
+    }
+
+    /**
+     * Trigger an immediate evaluation of all strategies, that use a given trade site and currency pair.
+     * This should be called, when new market data arrive.
+     *
+     * @param tradeSite The trade site with new data.
+     * @param currencyPair The currency pair with new data.
+     */
+    void triggerEvaluation( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	if( ! isRunning()) {
+
+	    return;  // The scheduler is not running.
+	}
+
+	for( Strategy currentStrategy : _bot.getStrategies()) {
+
+	    if( currentStrategy.getUsedTradeSites().contains( tradeSite)) {
+
+		for( CurrencyPair currentPair : currentStrategy.getUsedCurrencyPairs()) {
+
+		    if( currentPair.isEqual( currencyPair)) {
+
+			trigger( currentStrategy);
+
+			break;
+		    }
+		}
+	    }
+	}
+    }
+}
@@ -60,6 +60,9 @@ public class EmaXStrategy extends StrategyImpl implements Strategy {
 	// Set a name and an interval for the strategy in the base class.
 	super( "EMA crossing BTC<=>USD at btc-e", "30m");
 
+	_bot = bot;
+	_userAccount = userAccount;
+
 	// Get a reference to the btc-e API implementation.
 	TradeSite btceSite = ModuleLoader.getInstance().getRegisteredTradeSite( "BTCe");
 	
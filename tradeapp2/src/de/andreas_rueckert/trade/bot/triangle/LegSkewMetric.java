@@ -0,0 +1,158 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.triangle;
+
+
+/**
+ * This class measures the skew between the depth timestamps of the legs of
+ * the evaluated triangles, so the fetch cadence of a bot can be tuned.
+ */
+public class LegSkewMetric {
+
+    // Static variables
+
+    /**
+     * The weight of a new observation in the average skew.
+     */
+    private static final double OBSERVATION_WEIGHT = 0.2;
+
+
+    // Instance variables
+
+    /**
+     * The moving average of the skew in microseconds.
+     */
+    private double _averageSkew = 0.0;
+
+    /**
+     * The skew of the last evaluated triangle in microseconds.
+     */
+    private long _lastSkew = 0L;
+
+    /**
+     * The highest observed skew in microseconds.
+     */
+    private long _maxSkew = 0L;
+
+    /**
+     * The number of triangles, that were rejected because of their skew.
+     */
+    private long _rejectedCount = 0L;
+
+    /**
+     * The number of observed triangles.
+     */
+    private long _sampleCount = 0L;
+
+
+    // Constructors
+
+    /**
+     * Create a new, empty skew metric.
+     */
+    LegSkewMetric() {
+    }
+
+
+    // Methods
+
+    /**
+     * Add the skew of an evaluated triangle.
+     *
+     * @param skew The difference between the oldest and the newest depth of the legs in microseconds.
+     * @param rejected true, if the triangle was rejected because of the skew.
+     */
+    synchronized void addObservedSkew( long skew, boolean rejected) {
+
+	_averageSkew = ( _sampleCount == 0L) ? skew : ( 1.0 - OBSERVATION_WEIGHT) * _averageSkew + OBSERVATION_WEIGHT * skew;
+
+	_lastSkew = skew;
+
+	if( skew > _maxSkew) {
+
+	    _maxSkew = skew;
+	}
+
+	if( rejected) {
+
+	    ++_rejectedCount;
+	}
+
+	++_sampleCount;
+    }
+
+    /**
+     * Get the moving average of the skew.
+     *
+     * @return The average skew in microseconds.
+     */
+    public synchronized long getAverageSkew() {
+
+	return (long)_averageSkew;
+    }
+
+    /**
+     * Get the skew of the last evaluated triangle.
+     *
+     * @return The last skew in microseconds.
+     */
+    public synchronized long getLastSkew() {
+
+	return _lastSkew;
+    }
+
+    /**
+     * Get the highest observed skew.
+     *
+     * @return The highest skew in microseconds.
+     */
+    public synchronized long getMaxSkew() {
+
+	return _maxSkew;
+    }
+
+    /**
+     * Get the number of triangles, that were rejected because of their skew.
+     *
+     * @return The number of rejected triangles.
+     */
+    public synchronized long getRejectedCount() {
+
+	return _rejectedCount;
+    }
+
+    /**
+     * Get the number of observed triangles.
+     *
+     * @return The number of observed triangles.
+     */
+    public synchronized long getSampleCount() {
+
+	return _sampleCount;
+    }
+
+    /**
+     * Convert this metric to a string representation.
+     *
+     * @return A string representation of this metric.
+     */
+    public synchronized String toString() {
+
+	return "leg skew last "
+	    + ( _lastSkew / 1000L)
+	    + " ms, average "
+	    + ( (long)_averageSkew / 1000L)
+	    + " ms, max "
+	    + ( _maxSkew / 1000L)
+	    + " ms, rejected "
+	    + _rejectedCount
+	    + " of "
+	    + _sampleCount;
+    }
+}
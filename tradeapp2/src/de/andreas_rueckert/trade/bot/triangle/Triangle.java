@@ -0,0 +1,173 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.triangle;
+
+import de.andreas_rueckert.trade.currency.Currency;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.site.TradeSite;
+
+
+/**
+ * This class holds a triangle of 3 exchanges on one trade site, that ends
+ * in the currency, that it started with (i.e. USD => LTC => BTC => USD).
+ */
+public class Triangle {
+
+    // Instance variables
+
+    /**
+     * The 3 currencies of the triangle in trade order, starting with the start currency.
+     */
+    private final Currency [] _currencies;
+
+    /**
+     * The currency pair of each leg.
+     */
+    private final CurrencyPair [] _currencyPairs;
+
+    /**
+     * Flag for each leg to indicate, that the currency of the pair is bought.
+     */
+    private final boolean [] _isBuy;
+
+    /**
+     * The trade site of the triangle.
+     */
+    private final TradeSite _tradeSite;
+
+
+    // Constructors
+
+    /**
+     * Create a new triangle.
+     *
+     * @param tradeSite The trade site.
+     * @param currencies The 3 currencies in trade order, starting with the start currency.
+     * @param currencyPairs The currency pair of each leg.
+     * @param isBuy Flag for each leg, if the currency of the pair is bought.
+     */
+    public Triangle( TradeSite tradeSite, Currency [] currencies, CurrencyPair [] currencyPairs, boolean [] isBuy) {
+
+	_tradeSite = tradeSite;
+	_currencies = currencies;
+	_currencyPairs = currencyPairs;
+	_isBuy = isBuy;
+    }
+
+
+    // Methods
+
+    /**
+     * Get a currency of the triangle.
+     *
+     * @param index The index of the currency (0 is the start currency).
+     *
+     * @return The currency.
+     */
+    public Currency getCurrency( int index) {
+
+	return _currencies[ index];
+    }
+
+    /**
+     * Get the currency pair of a leg.
+     *
+     * @param leg The index of the leg.
+     *
+     * @return The currency pair of the leg.
+     */
+    public CurrencyPair getCurrencyPair( int leg) {
+
+	return _currencyPairs[ leg];
+    }
+
+    /**
+     * Get the start currency of the triangle.
+     *
+     * @return The currency, that the triangle starts and ends with.
+     */
+    public Currency getStartCurrency() {
+
+	return _currencies[ 0];
+    }
+
+    /**
+     * Get the trade site of the triangle.
+     *
+     * @return The trade site.
+     */
+    public TradeSite getTradeSite() {
+
+	return _tradeSite;
+    }
+
+    /**
+     * Check, if the triangle goes through the given currencies in this order.
+     *
+     * @param currencyCodes The codes of the 3 currencies, starting with the start currency.
+     *
+     * @return true, if the triangle trades these currencies in this order.
+     */
+    public boolean hasCurrencies( String ... currencyCodes) {
+
+	for( int currentIndex = 0; currentIndex < _currencies.length; ++currentIndex) {
+
+	    if( ! _currencies[ currentIndex].getCode().equals( currencyCodes[ currentIndex])) {
+
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * Check, if a leg buys the currency of its pair.
+     *
+     * @param leg The index of the leg.
+     *
+     * @return true, if the currency of the pair is bought. False, if it is sold.
+     */
+    public boolean isBuy( int leg) {
+
+	return _isBuy[ leg];
+    }
+
+    /**
+     * Create the triangle in the opposite direction.
+     *
+     * @return A new triangle, that trades the same currencies in reverse order.
+     */
+    public Triangle reverse() {
+
+	// The reverse of 0 => 1 => 2 => 0 is 0 => 2 => 1 => 0, with each leg trading the other side.
+	return new Triangle( _tradeSite
+			     , new Currency [] { _currencies[ 0], _currencies[ 2], _currencies[ 1] }
+			     , new CurrencyPair [] { _currencyPairs[ 2], _currencyPairs[ 1], _currencyPairs[ 0] }
+			     , new boolean [] { ! _isBuy[ 2], ! _isBuy[ 1], ! _isBuy[ 0] });
+    }
+
+    /**
+     * Convert this triangle to a string representation.
+     *
+     * @return A string representation of this triangle.
+     */
+    public String toString() {
+
+	return _tradeSite.getName()
+	    + " "
+	    + _currencies[ 0].getCode()
+	    + " => "
+	    + _currencies[ 1].getCode()
+	    + " => "
+	    + _currencies[ 2].getCode()
+	    + " => "
+	    + _currencies[ 0].getCode();
+    }
+}
@@ -0,0 +1,626 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.triangle;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.bot.DepthCurve;
+import de.andreas_rueckert.trade.chart.ChartProvider;
+import de.andreas_rueckert.trade.currency.Currency;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.order.DepthOrder;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.util.LogUtils;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class finds and evaluates all the currency triangles on a set of trade sites.
+ *
+ * The engine has no UI. Each evaluation fetches the depths of all the traded pairs
+ * concurrently first, and then evaluates every triangle in both directions on this
+ * snapshot, so the legs of a triangle are never priced from depths of different cycles.
+ * A triangle, whose leg depths are further apart in time than the max skew, is not
+ * evaluated in this cycle. Each direction is sized optimally by walking the depths of
+ * its 3 legs together. The results are published to the registered listeners (i.e.
+ * the UI of a bot).
+ */
+public class TriangleEngine {
+
+    // Inner classes
+
+    /**
+     * A currency pair on a trade site, that is traded by at least one triangle.
+     */
+    static class TradedPair {
+
+	// Instance variables
+
+	/**
+	 * The currency pair.
+	 */
+	final CurrencyPair _currencyPair;
+
+	/**
+	 * The trade site.
+	 */
+	final TradeSite _tradeSite;
+
+
+	// Constructors
+
+	/**
+	 * Create a new traded pair.
+	 *
+	 * @param tradeSite The trade site.
+	 * @param currencyPair The currency pair.
+	 */
+	TradedPair( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	    _tradeSite = tradeSite;
+	    _currencyPair = currencyPair;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The default max skew between the depths of the legs in microseconds.
+     */
+    public static final long DEFAULT_MAX_SKEW = 5L * 1000000L;
+
+    /**
+     * The number of threads to fetch the depths.
+     */
+    private static final int POOL_SIZE = 4;
+
+
+    // Instance variables
+
+    /**
+     * Fees, that override the trade fee of a trade site (in percent).
+     */
+    private final Map<TradeSite, BigDecimal> _feeOverrides = new ConcurrentHashMap<TradeSite, BigDecimal>();
+
+    /**
+     * The listeners for new evaluations.
+     */
+    private final List<TriangleListener> _listeners = new CopyOnWriteArrayList<TriangleListener>();
+
+    /**
+     * The max skew between the depths of the legs of a triangle in microseconds.
+     */
+    private volatile long _maxSkew = DEFAULT_MAX_SKEW;
+
+    /**
+     * The pool to fetch the depths in parallel.
+     */
+    private ExecutorService _pool = null;
+
+    /**
+     * The measured skew between the depths of the legs.
+     */
+    private final LegSkewMetric _skewMetric = new LegSkewMetric();
+
+    /**
+     * The currency pairs, that are traded by the triangles, mapped by their trade site and pair.
+     */
+    private final Map<String, TradedPair> _tradedPairs = new LinkedHashMap<String, TradedPair>();
+
+    /**
+     * The triangles in both directions.
+     */
+    private final List<Triangle> _triangles = new ArrayList<Triangle>();
+
+
+    // Constructors
+
+    /**
+     * Create a new triangle engine and find the triangles on the given trade sites.
+     *
+     * @param tradeSites The trade sites to trade on.
+     */
+    public TriangleEngine( Collection<TradeSite> tradeSites) {
+
+	for( TradeSite currentSite : tradeSites) {
+
+	    findTriangles( currentSite);
+	}
+
+	LogUtils.getInstance().getLogger().info( "Found " + _triangles.size() + " triangles on " + tradeSites.size() + " trade sites.");
+    }
+
+
+    // Methods
+
+    /**
+     * Add a listener for new evaluations.
+     *
+     * @param listener The new listener.
+     */
+    public void addListener( TriangleListener listener) {
+
+	_listeners.add( listener);
+    }
+
+    /**
+     * Evaluate a triangle on a depth snapshot.
+     *
+     * @param triangle The triangle to evaluate.
+     * @param snapshot The fetched depths.
+     *
+     * @return The evaluation, or null if a depth is missing or the depths are too far apart in time.
+     */
+    private TriangleEvaluation evaluate( Triangle triangle, Map<String, Depth> snapshot) {
+
+	Depth [] depths = new Depth[ 3];
+
+	long oldestTimestamp = Long.MAX_VALUE;
+	long newestTimestamp = Long.MIN_VALUE;
+
+	for( int currentLeg = 0; currentLeg < 3; ++currentLeg) {
+
+	    depths[ currentLeg] = snapshot.get( getKey( triangle.getTradeSite(), triangle.getCurrencyPair( currentLeg)));
+
+	    if( depths[ currentLeg] == null) {  // This depth could not be fetched.
+
+		return null;
+	    }
+
+	    oldestTimestamp = Math.min( oldestTimestamp, depths[ currentLeg].getTimestamp());
+	    newestTimestamp = Math.max( newestTimestamp, depths[ currentLeg].getTimestamp());
+	}
+
+	long skew = newestTimestamp - oldestTimestamp;
+
+	boolean rejected = skew > _maxSkew;
+
+	_skewMetric.addObservedSkew( skew, rejected);
+
+	if( rejected) {  // Defer the triangle to the next cycle, since the prices of the legs might not have been available at the same time.
+
+	    LogUtils.getInstance().getLogger().debug( "Skipping triangle " + triangle + " with a leg skew of " + ( skew / 1000L) + " ms");
+
+	    return null;
+	}
+
+	BigDecimal fee = getFee( triangle.getTradeSite());
+
+	DepthCurve [] curves = new DepthCurve[ 3];
+	Price [] bestPrices = new Price[ 3];
+	Amount [] bestAmounts = new Amount[ 3];
+
+	for( int currentLeg = 0; currentLeg < 3; ++currentLeg) {
+
+	    Depth depth = depths[ currentLeg];
+
+	    boolean isBuy = triangle.isBuy( currentLeg);
+
+	    curves[ currentLeg] = new DepthCurve( depth, isBuy, fee);
+
+	    if( ( isBuy ? depth.getSellSize() : depth.getBuySize()) > 0) {
+
+		DepthOrder bestOrder = isBuy ? depth.getSell( 0) : depth.getBuy( 0);
+
+		bestPrices[ currentLeg] = bestOrder.getPrice();
+		bestAmounts[ currentLeg] = bestOrder.getAmount();
+	    }
+	}
+
+	return new TriangleEvaluation( triangle, curves, bestPrices, bestAmounts);
+    }
+
+    /**
+     * Fetch the depths of all the traded pairs and evaluate all the triangles.
+     * The results are published to the listeners.
+     *
+     * @return The evaluations of the triangles with available depths, ranked by their relative profit (best first),
+     *         since the absolute profits are in different start currencies.
+     */
+    public List<TriangleEvaluation> evaluate() {
+
+	Map<String, Depth> snapshot = fetchDepths();
+
+	List<TriangleEvaluation> result = new ArrayList<TriangleEvaluation>();
+
+	for( Triangle currentTriangle : _triangles) {
+
+	    TriangleEvaluation evaluation = evaluate( currentTriangle, snapshot);
+
+	    if( evaluation != null) {
+
+		result.add( evaluation);
+	    }
+	}
+
+	LogUtils.getInstance().getLogger().debug( "Evaluated " + result.size() + " of " + _triangles.size() + " triangles, " + _skewMetric);
+
+	Collections.sort( result, new Comparator<TriangleEvaluation>() {
+
+		public int compare( TriangleEvaluation evaluation1, TriangleEvaluation evaluation2) {
+
+		    return Double.compare( evaluation2.getRelativeProfit(), evaluation1.getRelativeProfit());
+		}
+	    });
+
+	for( TriangleListener currentListener : _listeners) {
+
+	    currentListener.trianglesEvaluated( result);
+	}
+
+	return result;
+    }
+
+    /**
+     * Fetch the depths of all the traded pairs concurrently.
+     *
+     * @return The fetched depths, mapped by their trade site and currency pair.
+     */
+    private Map<String, Depth> fetchDepths() {
+
+	ExecutorService pool = getPool();
+
+	// Start all the fetches at once, so the depths are as close in time as possible.
+	Map<String, Future<Depth>> pendingDepths = new LinkedHashMap<String, Future<Depth>>();
+
+	for( Map.Entry<String, TradedPair> currentEntry : _tradedPairs.entrySet()) {
+
+	    final TradedPair tradedPair = currentEntry.getValue();
+
+	    pendingDepths.put( currentEntry.getKey(), pool.submit( new Callable<Depth>() {
+
+		    public Depth call() {
+
+			return ChartProvider.getInstance().getDepth( tradedPair._tradeSite, tradedPair._currencyPair);
+		    }
+		}));
+	}
+
+	Map<String, Depth> snapshot = new HashMap<String, Depth>();
+
+	for( Map.Entry<String, Future<Depth>> currentEntry : pendingDepths.entrySet()) {
+
+	    try {
+
+		Depth depth = currentEntry.getValue().get();
+
+		if( depth != null) {
+
+		    snapshot.put( currentEntry.getKey(), depth);
+		}
+
+	    } catch( InterruptedException ie) {
+
+		Thread.currentThread().interrupt();
+
+		break;
+
+	    } catch( ExecutionException ee) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot fetch depth for " + currentEntry.getKey() + ": " + ee.getCause());
+	    }
+	}
+
+	return snapshot;
+    }
+
+    /**
+     * Find the triangles on a trade site and add them in both directions.
+     *
+     * @param tradeSite The trade site.
+     */
+    private void findTriangles( TradeSite tradeSite) {
+
+	CurrencyPair [] supportedPairs = tradeSite.getSupportedCurrencyPairs();
+
+	if( supportedPairs == null) {
+
+	    return;
+	}
+
+	// Index the pairs by both of their currency codes.
+	Map<String, Map<String, CurrencyPair>> neighbours = new TreeMap<String, Map<String, CurrencyPair>>();
+	Map<String, Currency> currencies = new HashMap<String, Currency>();
+
+	for( CurrencyPair currentPair : supportedPairs) {
+
+	    String currencyCode = currentPair.getCurrency().getCode();
+	    String paymentCurrencyCode = currentPair.getPaymentCurrency().getCode();
+
+	    currencies.put( currencyCode, currentPair.getCurrency());
+	    currencies.put( paymentCurrencyCode, currentPair.getPaymentCurrency());
+
+	    getNeighbours( neighbours, currencyCode).put( paymentCurrencyCode, currentPair);
+	    getNeighbours( neighbours, paymentCurrencyCode).put( currencyCode, currentPair);
+	}
+
+	// Each triangle is found once with its currency codes in alphabetical order.
+	for( String first : neighbours.keySet()) {
+
+	    for( String second : neighbours.get( first).keySet()) {
+
+		if( second.compareTo( first) <= 0) {
+
+		    continue;
+		}
+
+		for( String third : neighbours.get( second).keySet()) {
+
+		    if( ( third.compareTo( second) <= 0) || ! neighbours.get( third).containsKey( first)) {
+
+			continue;
+		    }
+
+		    Triangle triangle = createTriangle( tradeSite, currencies, neighbours, getStartCurrency( neighbours, first, second, third), first, second, third);
+
+		    _triangles.add( triangle);
+		    _triangles.add( triangle.reverse());
+
+		    for( int currentLeg = 0; currentLeg < 3; ++currentLeg) {
+
+			String key = getKey( tradeSite, triangle.getCurrencyPair( currentLeg));
+
+			if( ! _tradedPairs.containsKey( key)) {
+
+			    _tradedPairs.put( key, new TradedPair( tradeSite, triangle.getCurrencyPair( currentLeg)));
+			}
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Create a triangle from 3 currencies.
+     *
+     * @param tradeSite The trade site.
+     * @param currencies The currencies of the trade site by their codes.
+     * @param neighbours The currency pairs of the trade site by both currency codes.
+     * @param start The code of the start currency.
+     * @param first The code of the first currency in alphabetical order.
+     * @param second The code of the second currency in alphabetical order.
+     * @param third The code of the third currency in alphabetical order.
+     *
+     * @return The triangle, that starts with the start currency.
+     */
+    private Triangle createTriangle( TradeSite tradeSite
+				     , Map<String, Currency> currencies
+				     , Map<String, Map<String, CurrencyPair>> neighbours
+				     , String start
+				     , String first
+				     , String second
+				     , String third) {
+
+	// Order the currencies, so the start currency comes first.
+	String [] codes = start.equals( first) ? new String [] { first, second, third }
+	    : start.equals( second) ? new String [] { second, first, third }
+	    : new String [] { third, first, second };
+
+	Currency [] triangleCurrencies = new Currency[ 3];
+	CurrencyPair [] pairs = new CurrencyPair[ 3];
+	boolean [] isBuy = new boolean[ 3];
+
+	for( int currentLeg = 0; currentLeg < 3; ++currentLeg) {
+
+	    String from = codes[ currentLeg];
+	    String to = codes[ ( currentLeg + 1) % 3];
+
+	    triangleCurrencies[ currentLeg] = currencies.get( from);
+	    pairs[ currentLeg] = neighbours.get( from).get( to);
+
+	    // Buy the currency of the pair, if we want to end up with it.
+	    isBuy[ currentLeg] = pairs[ currentLeg].getCurrency().getCode().equals( to);
+	}
+
+	return new Triangle( tradeSite, triangleCurrencies, pairs, isBuy);
+    }
+
+    /**
+     * Get the trade fee for a trade site.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The trade fee in percent.
+     */
+    private BigDecimal getFee( TradeSite tradeSite) {
+
+	BigDecimal fee = _feeOverrides.get( tradeSite);
+
+	return fee != null ? fee : tradeSite.getFeeForTrade();
+    }
+
+    /**
+     * Get the key of a currency pair on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The key for the depth snapshot.
+     */
+    private static String getKey( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	return tradeSite.getName() + ":" + currencyPair.getCurrency().getCode() + "<=>" + currencyPair.getPaymentCurrency().getCode();
+    }
+
+    /**
+     * Get the max skew between the depths of the legs of a triangle.
+     *
+     * @return The max skew in microseconds.
+     */
+    public long getMaxSkew() {
+
+	return _maxSkew;
+    }
+
+    /**
+     * Get the neighbours of a currency, or create an empty map for them.
+     *
+     * @param neighbours The map of all neighbours.
+     * @param currencyCode The currency code.
+     *
+     * @return The neighbours of the currency.
+     */
+    private static Map<String, CurrencyPair> getNeighbours( Map<String, Map<String, CurrencyPair>> neighbours, String currencyCode) {
+
+	Map<String, CurrencyPair> result = neighbours.get( currencyCode);
+
+	if( result == null) {
+
+	    result = new TreeMap<String, CurrencyPair>();
+
+	    neighbours.put( currencyCode, result);
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the pool to fetch the depths.
+     *
+     * @return The pool.
+     */
+    private synchronized ExecutorService getPool() {
+
+	if( _pool == null) {
+
+	    _pool = Executors.newFixedThreadPool( POOL_SIZE, new ThreadFactory() {
+
+		    /**
+		     * The number of created threads.
+		     */
+		    private final AtomicLong _threadCounter = new AtomicLong( 0L);
+
+		    @Override public Thread newThread( Runnable runnable) {
+
+			Thread thread = new Thread( runnable, "Triangle depth fetcher " + _threadCounter.incrementAndGet());
+
+			thread.setDaemon( true);
+
+			return thread;
+		    }
+		});
+	}
+
+	return _pool;
+    }
+
+    /**
+     * Get the measured skew between the depths of the legs.
+     *
+     * @return The skew metric.
+     */
+    public LegSkewMetric getSkewMetric() {
+
+	return _skewMetric;
+    }
+
+    /**
+     * Get the start currency of a triangle. This is the currency, that is only used
+     * as payment currency in the 3 pairs (i.e. USD), so the profit is computed in it.
+     *
+     * @param neighbours The currency pairs of the trade site by both currency codes.
+     * @param first The code of the first currency.
+     * @param second The code of the second currency.
+     * @param third The code of the third currency.
+     *
+     * @return The code of the start currency.
+     */
+    private static String getStartCurrency( Map<String, Map<String, CurrencyPair>> neighbours, String first, String second, String third) {
+
+	for( String candidate : new String [] { first, second, third }) {
+
+	    boolean onlyPayment = true;
+
+	    for( CurrencyPair currentPair : neighbours.get( candidate).values()) {
+
+		if( currentPair.getCurrency().getCode().equals( candidate)) {
+
+		    onlyPayment = false;
+
+		    break;
+		}
+	    }
+
+	    if( onlyPayment) {
+
+		return candidate;
+	    }
+	}
+
+	return first;  // No payment only currency, so just start with the first one.
+    }
+
+    /**
+     * Get the triangles of this engine.
+     *
+     * @return The triangles in both directions.
+     */
+    public List<Triangle> getTriangles() {
+
+	return _triangles;
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener( TriangleListener listener) {
+
+	_listeners.remove( listener);
+    }
+
+    /**
+     * Override the trade fee of a trade site (i.e. for a user specific fee).
+     *
+     * @param tradeSite The trade site.
+     * @param feePercent The trade fee in percent, or null to use the fee of the trade site.
+     */
+    public void setFee( TradeSite tradeSite, BigDecimal feePercent) {
+
+	if( feePercent == null) {
+
+	    _feeOverrides.remove( tradeSite);
+
+	} else {
+
+	    _feeOverrides.put( tradeSite, feePercent);
+	}
+    }
+
+    /**
+     * Set the max skew between the depths of the legs of a triangle.
+     *
+     * @param maxSkew The max skew in microseconds.
+     */
+    public void setMaxSkew( long maxSkew) {
+
+	_maxSkew = maxSkew;
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.triangle;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.bot.DepthCurve;
+import de.andreas_rueckert.trade.Price;
+import java.math.BigDecimal;
+
+
+/**
+ * This class holds the result of evaluating a triangle on a depth snapshot.
+ */
+public class TriangleEvaluation {
+
+    // Instance variables
+
+    /**
+     * The amount of the best order of each leg, or null if the leg has no orders.
+     */
+    private final Amount [] _bestAmounts;
+
+    /**
+     * The price of the best order of each leg, or null if the leg has no orders.
+     */
+    private final Price [] _bestPrices;
+
+    /**
+     * The depth curves of the 3 legs.
+     */
+    private final DepthCurve [] _curves;
+
+    /**
+     * The optimal input in the start currency.
+     */
+    private final Amount _input;
+
+    /**
+     * The output for the optimal input in the start currency.
+     */
+    private final Amount _output;
+
+    /**
+     * The profit relative to the optimal input (output / input - 1), or 0 if the triangle is not profitable.
+     */
+    private final double _relativeProfit;
+
+    /**
+     * The evaluated triangle.
+     */
+    private final Triangle _triangle;
+
+
+    // Constructors
+
+    /**
+     * Create a new triangle evaluation.
+     *
+     * @param triangle The evaluated triangle.
+     * @param curves The depth curves of the 3 legs.
+     * @param bestPrices The price of the best order of each leg.
+     * @param bestAmounts The amount of the best order of each leg.
+     */
+    TriangleEvaluation( Triangle triangle, DepthCurve [] curves, Price [] bestPrices, Amount [] bestAmounts) {
+
+	_triangle = triangle;
+	_curves = curves;
+	_bestPrices = bestPrices;
+	_bestAmounts = bestAmounts;
+
+	double input = DepthCurve.getOptimalInput( curves, 1.0);
+	double output = input > 0.0 ? getOutput( input) : 0.0;
+
+	_input = new Amount( BigDecimal.valueOf( input));
+	_output = new Amount( BigDecimal.valueOf( output < 0.0 ? 0.0 : output));
+
+	_relativeProfit = ( ( input > 0.0) && ( output > 0.0)) ? output / input - 1.0 : 0.0;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the amount of the best order of a leg.
+     *
+     * @param leg The index of the leg.
+     *
+     * @return The amount of the best order, or null if the leg has no orders.
+     */
+    public Amount getBestAmount( int leg) {
+
+	return _bestAmounts[ leg];
+    }
+
+    /**
+     * Get the price of the best order of a leg.
+     *
+     * @param leg The index of the leg.
+     *
+     * @return The price of the best order, or null if the leg has no orders.
+     */
+    public Price getBestPrice( int leg) {
+
+	return _bestPrices[ leg];
+    }
+
+    /**
+     * Get the optimal input in the start currency.
+     *
+     * @return The input with the maximum profit, or 0 if the triangle is not profitable.
+     */
+    public Amount getInput() {
+
+	return _input;
+    }
+
+    /**
+     * Get the output for the optimal input.
+     *
+     * @return The output in the start currency.
+     */
+    public Amount getOutput() {
+
+	return _output;
+    }
+
+    /**
+     * Get the output of the triangle for a given input.
+     *
+     * @param input The input in the start currency.
+     *
+     * @return The output in the start currency, or -1 if the depths are too thin for the input.
+     */
+    public Amount getOutput( BigDecimal input) {
+
+	double output = getOutput( input.doubleValue());
+
+	return new Amount( BigDecimal.valueOf( output < 0.0 ? -1.0 : output));
+    }
+
+    /**
+     * Get the output of the triangle for a given input.
+     *
+     * @param input The input in the start currency.
+     *
+     * @return The output in the start currency, or a negative value if the depths are too thin for the input.
+     */
+    private double getOutput( double input) {
+
+	double current = input;
+
+	for( int currentLeg = 0; ( currentLeg < _curves.length) && ( current >= 0.0); ++currentLeg) {
+
+	    current = _curves[ currentLeg].getOutput( current);
+	}
+
+	return current;
+    }
+
+    /**
+     * Get the profit for the optimal input.
+     *
+     * @return The profit in the start currency.
+     */
+    public Amount getProfit() {
+
+	return new Amount( _output.subtract( _input));
+    }
+
+    /**
+     * Get the profit relative to the optimal input.
+     * Unlike the absolute profit, it does not depend on the start currency,
+     * so it compares triangles with different start currencies.
+     *
+     * @return The relative profit (output / input - 1), or 0 if the triangle is not profitable.
+     */
+    public double getRelativeProfit() {
+
+	return _relativeProfit;
+    }
+
+    /**
+     * Get the evaluated triangle.
+     *
+     * @return The evaluated triangle.
+     */
+    public Triangle getTriangle() {
+
+	return _triangle;
+    }
+
+    /**
+     * Convert this evaluation to a string representation.
+     *
+     * @return A string representation of this evaluation.
+     */
+    public String toString() {
+
+	return _triangle.toString()
+	    + ": "
+	    + _input
+	    + " => "
+	    + _output
+	    + " (profit "
+	    + getProfit()
+	    + ")";
+    }
+}
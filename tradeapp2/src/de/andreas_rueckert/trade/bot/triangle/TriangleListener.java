@@ -0,0 +1,27 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.triangle;
+
+import java.util.List;
+
+
+/**
+ * An interface to notify listeners (i.e. a bot UI) on new triangle evaluations.
+ */
+public interface TriangleListener {
+
+    // Methods
+
+    /**
+     * The triangles were evaluated on a new depth snapshot.
+     *
+     * @param evaluations The evaluations of all the triangles, ranked by their relative profit.
+     */
+    public void trianglesEvaluated( List<TriangleEvaluation> evaluations);
+}
@@ -11,6 +11,7 @@ package de.andreas_rueckert.trade.bot.ui;
 import de.andreas_rueckert.trade.bot.spread.SpreadBot;
 import de.andreas_rueckert.trade.bot.spread.Strategy;
 import de.andreas_rueckert.trade.bot.TradeBot;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
 import de.andreas_rueckert.trade.order.OrderType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import java.awt.BorderLayout;
@@ -310,13 +311,15 @@ public class SpreadBotUI implements ActionListener, TradeBotUI {
 	c.weighty = 0.2;
 	c.gridx = 0;
 	c.gridy = 0;
-	spreadPanel.add( new JLabel( "" + getBot().getTradedCurrencyPair().getPaymentCurrency().getCode() + " funds. "), c);
+	// Label the funds with the first traded currency pair of this strategy.
+	CurrencyPair tradedPair = strategy.getUsedCurrencyPairs().isEmpty() ? null : strategy.getUsedCurrencyPairs().get( 0);
+	spreadPanel.add( new JLabel( ( tradedPair == null ? "Payment currency" : tradedPair.getPaymentCurrency().getCode()) + " funds: "), c);
 	c.gridx = 1;
 	spreadPanel.add( _paymentCurrencyFundsField = new JTextField( 20), c);
 	_paymentCurrencyFundsField.setEditable( false);
 	c.gridx = 0;
 	c.gridy = 1;
-	spreadPanel.add( new JLabel( "" + getBot().getTradedCurrencyPair().getCurrency().getCode() + " funds: "), c);
+	spreadPanel.add( new JLabel( ( tradedPair == null ? "Currency" : tradedPair.getCurrency().getCode()) + " funds: "), c);
 	c.gridx = 1;
 	spreadPanel.add( _currencyFundsField = new JTextField( 20), c);
 	_currencyFundsField.setEditable( false);
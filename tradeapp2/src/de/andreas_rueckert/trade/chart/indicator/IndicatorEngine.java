@@ -0,0 +1,673 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.indicator;
+
+import de.andreas_rueckert.trade.chart.ChartProvider;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.util.Clock;
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.TimeUtils;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * This class maintains streaming indicators (time weighted EMA, SMA, spread) for each
+ * trade site, currency pair and time period.
+ *
+ * Instead of recomputing an average from the whole trade history on every
+ * evaluation (like the ChartAnalyzer does), each indicator keeps its state
+ * and is updated with the new trades only. So the cost of an evaluation does
+ * not grow with the length of the period. The indicators are shared by all
+ * the bots, rules and rule sessions of the app.
+ *
+ * New trades are either pulled from the ChartProvider, when an indicator is
+ * requested, or pushed via addTrades() by a component, that already fetched them.
+ * The listeners are notified on each new depth and on new trades, so a bot can
+ * evaluate its strategies for the pair immediately.
+ */
+public class IndicatorEngine {
+
+    // Inner classes
+
+    /**
+     * The types of the trade indicators.
+     */
+    public enum IndicatorType { TWEMA, SMA }
+
+    /**
+     * The indicators for a trade site and currency pair.
+     */
+    class IndicatorFeed {
+
+	// Instance variables
+
+	/**
+	 * The traded currency pair.
+	 */
+	private final CurrencyPair _currencyPair;
+
+	/**
+	 * The time of the last depth fetch in microseconds.
+	 */
+	private long _lastDepthFetch = -1L;
+
+	/**
+	 * The time of the last trade fetch in microseconds.
+	 */
+	private long _lastTradeFetch = -1L;
+
+	/**
+	 * The ids of the processed trades with the timestamp of the newest processed trade.
+	 */
+	private final Set<String> _lastTradeIds = new HashSet<String>();
+
+	/**
+	 * The timestamp of the newest processed trade in microseconds.
+	 */
+	private long _lastTradeTimestamp = -1L;
+
+	/**
+	 * The spread averages, indexed by their period.
+	 */
+	private final Map< Long, TimeWeightedMovingAverage> _spreadIndicators = new HashMap< Long, TimeWeightedMovingAverage>();
+
+	/**
+	 * The trade site.
+	 */
+	private final TradeSite _tradeSite;
+
+	/**
+	 * The price averages, indexed by their type and period.
+	 */
+	private final Map< String, MovingAverage> _tradeIndicators = new HashMap< String, MovingAverage>();
+
+
+	// Constructors
+
+	/**
+	 * Create a new feed for a trade site and currency pair.
+	 *
+	 * @param tradeSite The trade site.
+	 * @param currencyPair The currency pair.
+	 */
+	IndicatorFeed( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	    _tradeSite = tradeSite;
+	    _currencyPair = currencyPair;
+	}
+
+
+	// Methods
+
+	/**
+	 * Add the spread of a depth to all the spread averages.
+	 *
+	 * @param depth The current depth.
+	 * @param currentTime The current time in microseconds.
+	 *
+	 * @return true, if the depth had a spread. False otherwise.
+	 */
+	synchronized boolean addDepth( Depth depth, long currentTime) {
+
+	    _lastDepthFetch = currentTime;
+
+	    if( ( depth == null) || ( depth.getBuySize() == 0) || ( depth.getSellSize() == 0)) {
+
+		return false;  // Without orders on both sides, there is no spread.
+	    }
+
+	    double spread = depth.getSell( 0).getPrice().doubleValue() - depth.getBuy( 0).getPrice().doubleValue();
+
+	    for( TimeWeightedMovingAverage currentIndicator : _spreadIndicators.values()) {
+
+		currentIndicator.add( currentTime, spread);
+	    }
+
+	    return true;
+	}
+
+	/**
+	 * Add new trades to all the price averages.
+	 * Trades, that are older than the last processed trade, are ignored. Trades
+	 * with the same timestamp as the last processed trade are only added, if their
+	 * id was not processed yet, since several trades might share a timestamp.
+	 *
+	 * @param trades The new trades.
+	 *
+	 * @return true, if any of the trades was not processed yet. False otherwise.
+	 */
+	synchronized boolean addTrades( List<Trade> trades) {
+
+	    boolean added = false;
+
+	    for( Trade currentTrade : sortByTimestamp( trades)) {
+
+		long timestamp = currentTrade.getTimestamp();
+
+		if( timestamp < _lastTradeTimestamp) {
+
+		    continue;  // This trade is already in the averages.
+		}
+
+		if( timestamp == _lastTradeTimestamp) {
+
+		    // Without an id, a trade with the same timestamp cannot be told apart from a processed one.
+		    if( ( currentTrade.getId() == null) || ! _lastTradeIds.add( currentTrade.getId())) {
+
+			continue;
+		    }
+
+		} else {  // This trade is newer than all the processed trades.
+
+		    _lastTradeIds.clear();
+
+		    if( currentTrade.getId() != null) {
+
+			_lastTradeIds.add( currentTrade.getId());
+		    }
+
+		    _lastTradeTimestamp = timestamp;
+		}
+
+		double price = currentTrade.getPrice().doubleValue();
+
+		for( MovingAverage currentIndicator : _tradeIndicators.values()) {
+
+		    currentIndicator.add( timestamp, price);
+		}
+
+		added = true;
+	    }
+
+	    return added;
+	}
+
+	/**
+	 * Get the current value of a spread average.
+	 *
+	 * @param period The period of the average in microseconds.
+	 *
+	 * @return The current value of the average.
+	 *
+	 * @throws TradeDataNotAvailableException if there is no spread yet.
+	 */
+	double getSpreadValue( long period) {
+
+	    long currentTime = Clock.getInstance().getCurrentTimeMicros();
+
+	    TimeWeightedMovingAverage indicator;
+	    boolean fetchDepth;
+
+	    synchronized( this) {
+
+		indicator = _spreadIndicators.get( period);
+
+		// There is no depth history, so a new spread average starts cold with the current depth.
+		fetchDepth = ( indicator == null) || ( ( currentTime - _lastDepthFetch) >= MINIMUM_UPDATE_INTERVAL);
+
+		if( indicator == null) {
+
+		    indicator = new TimeWeightedMovingAverage( period);
+
+		    _spreadIndicators.put( period, indicator);
+		}
+
+		if( fetchDepth) {
+
+		    _lastDepthFetch = currentTime;  // Claim the fetch, so other threads don't request the depth, too.
+		}
+	    }
+
+	    if( fetchDepth) {  // Don't block the other users of this feed during the request.
+
+		if( addDepth( ChartProvider.getInstance().getDepth( _tradeSite, _currencyPair), currentTime)) {
+
+		    notifyListeners( _tradeSite, _currencyPair);
+		}
+	    }
+
+	    return getValue( indicator, currentTime);
+	}
+
+	/**
+	 * Get the current value of a price average.
+	 *
+	 * @param type The type of the average.
+	 * @param period The period of the average in microseconds.
+	 *
+	 * @return The current value of the average.
+	 *
+	 * @throws TradeDataNotAvailableException if there are no trades yet.
+	 */
+	double getTradeValue( IndicatorType type, long period) {
+
+	    long currentTime = Clock.getInstance().getCurrentTimeMicros();
+
+	    String key = type.name() + period;
+
+	    MovingAverage indicator;
+
+	    synchronized( this) {
+
+		indicator = _tradeIndicators.get( key);
+	    }
+
+	    if( indicator == null) {  // This average was not requested yet.
+
+		// Fetch the history without blocking the other users of this feed.
+		List<Trade> history = ChartProvider.getInstance().getTrades( _tradeSite, _currencyPair, currentTime - period);
+
+		synchronized( this) {
+
+		    indicator = _tradeIndicators.get( key);
+
+		    if( indicator == null) {  // Unless another thread was faster.
+
+			indicator = ( type == IndicatorType.TWEMA) ? new TimeWeightedMovingAverage( period) : new SimpleMovingAverage( period);
+
+			warmUp( indicator, history, currentTime);
+
+			_tradeIndicators.put( key, indicator);
+		    }
+		}
+	    }
+
+	    boolean fetchTrades;
+	    long since;
+
+	    synchronized( this) {
+
+		fetchTrades = ( currentTime - _lastTradeFetch) >= MINIMUM_UPDATE_INTERVAL;
+
+		if( fetchTrades) {
+
+		    _lastTradeFetch = currentTime;  // Claim the fetch, so other threads don't request the trades, too.
+		}
+
+		since = _lastTradeTimestamp;
+	    }
+
+	    if( fetchTrades) {  // Don't block the other users of this feed during the request.
+
+		List<Trade> trades = ChartProvider.getInstance().getTrades( _tradeSite, _currencyPair, since);
+
+		if( ( trades != null) && addTrades( trades)) {
+
+		    notifyListeners( _tradeSite, _currencyPair);
+		}
+	    }
+
+	    return getValue( indicator, currentTime);
+	}
+
+	/**
+	 * Get the value of an indicator and check, if it's actually available.
+	 *
+	 * @param indicator The indicator.
+	 * @param currentTime The current time in microseconds.
+	 *
+	 * @return The value of the indicator.
+	 *
+	 * @throws TradeDataNotAvailableException if the indicator has no data yet.
+	 */
+	private synchronized double getValue( MovingAverage indicator, long currentTime) {
+
+	    double value = indicator.getValue( currentTime);
+
+	    if( Double.isNaN( value)) {
+
+		throw new TradeDataNotAvailableException( "No data to calculate indicator for "
+							  + _currencyPair.getCurrency().getCode()
+							  + "<=>"
+							  + _currencyPair.getPaymentCurrency().getCode()
+							  + " on "
+							  + _tradeSite.getName());
+	    }
+
+	    return value;
+	}
+
+	/**
+	 * Initialize a new average with the trade history of its period.
+	 * The history is only added up to the last processed trade of this feed,
+	 * so the new average is in sync with the existing ones.
+	 * The caller must hold the lock of this feed.
+	 *
+	 * @param indicator The new average.
+	 * @param history The trades of the period of the average or null, if they are not available.
+	 * @param currentTime The current time in microseconds.
+	 */
+	private void warmUp( MovingAverage indicator, List<Trade> history, long currentTime) {
+
+	    boolean firstIndicator = _lastTradeFetch < 0L;
+
+	    List<Trade> sortedHistory = ( history != null) ? sortByTimestamp( history) : new ArrayList<Trade>();
+
+	    for( Trade currentTrade : sortedHistory) {
+
+		if( firstIndicator || ( currentTrade.getTimestamp() <= _lastTradeTimestamp)) {
+
+		    indicator.add( currentTrade.getTimestamp(), currentTrade.getPrice().doubleValue());
+		}
+	    }
+
+	    if( firstIndicator) {  // This is the first average of this feed, so the feed starts here.
+
+		_lastTradeTimestamp = Math.max( currentTime - indicator.getPeriod(), indicator.getLastTimestamp());
+		_lastTradeFetch = currentTime;
+
+		// Remember the trades at the start of the feed, so they are not added again.
+		_lastTradeIds.clear();
+
+		for( Trade currentTrade : sortedHistory) {
+
+		    if( ( currentTrade.getTimestamp() == _lastTradeTimestamp) && ( currentTrade.getId() != null)) {
+
+			_lastTradeIds.add( currentTrade.getId());
+		    }
+		}
+	    }
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static IndicatorEngine _instance = null;
+
+    /**
+     * The minimum interval between 2 fetches from the chart provider in microseconds.
+     */
+    final static long MINIMUM_UPDATE_INTERVAL = 10L * 1000000L;
+
+
+    // Instance variables
+
+    /**
+     * The indicator feeds, indexed by trade site and currency pair.
+     */
+    private final ConcurrentMap< String, IndicatorFeed> _feeds = new ConcurrentHashMap< String, IndicatorFeed>();
+
+    /**
+     * The listeners for new market data.
+     */
+    private final List<MarketDataListener> _listeners = new CopyOnWriteArrayList<MarketDataListener>();
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private IndicatorEngine() {
+    }
+
+
+    // Methods
+
+    /**
+     * Push the current depth of a trade site to the spread indicators.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param depth The current depth.
+     */
+    public void addDepth( TradeSite tradeSite, CurrencyPair currencyPair, Depth depth) {
+
+	if( getFeed( tradeSite, currencyPair).addDepth( depth, Clock.getInstance().getCurrentTimeMicros())) {
+
+	    notifyListeners( tradeSite, currencyPair);
+	}
+    }
+
+    /**
+     * Add a listener for new market data.
+     *
+     * @param listener The new listener.
+     */
+    public void addListener( MarketDataListener listener) {
+
+	_listeners.add( listener);
+    }
+
+    /**
+     * Push new trades of a trade site to the price indicators.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param trades The new trades.
+     */
+    public void addTrades( TradeSite tradeSite, CurrencyPair currencyPair, List<Trade> trades) {
+
+	if( getFeed( tradeSite, currencyPair).addTrades( trades)) {
+
+	    notifyListeners( tradeSite, currencyPair);
+	}
+    }
+
+    /**
+     * Get the time weighted exponential moving average of a price.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param period The period as a string (10d, or so).
+     *
+     * @return The current time weighted EMA.
+     *
+     * @throws TradeDataNotAvailableException if there are no trades yet.
+     */
+    public Price getTWEMA( TradeSite tradeSite, CurrencyPair currencyPair, String period) {
+
+	return getTWEMA( tradeSite, currencyPair, TimeUtils.microsFromString( period));
+    }
+
+    /**
+     * Get the time weighted exponential moving average of a price.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param period The period in microseconds.
+     *
+     * @return The current time weighted EMA.
+     *
+     * @throws TradeDataNotAvailableException if there are no trades yet.
+     */
+    public Price getTWEMA( TradeSite tradeSite, CurrencyPair currencyPair, long period) {
+
+	return new Price( BigDecimal.valueOf( getFeed( tradeSite, currencyPair).getTradeValue( IndicatorType.TWEMA, period)));
+    }
+
+    /**
+     * Get the feed for a trade site and currency pair and create it, if necessary.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The feed for the trade site and currency pair.
+     */
+    private IndicatorFeed getFeed( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	String key = tradeSite.getName()
+	    + ":"
+	    + currencyPair.getCurrency().getCode()
+	    + "<=>"
+	    + currencyPair.getPaymentCurrency().getCode();
+
+	IndicatorFeed feed = _feeds.get( key);
+
+	if( feed == null) {
+
+	    // Create a new feed, unless another thread was faster.
+	    IndicatorFeed newFeed = new IndicatorFeed( tradeSite, currencyPair);
+
+	    feed = _feeds.putIfAbsent( key, newFeed);
+
+	    if( feed == null) {
+
+		feed = newFeed;
+	    }
+	}
+
+	return feed;
+    }
+
+    /**
+     * Get the timestamp of the newest trade, that was added to the indicators of a currency pair.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The timestamp of the newest processed trade in microseconds or -1, if there is none yet.
+     */
+    long getLastTradeTimestamp( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	IndicatorFeed feed = getFeed( tradeSite, currencyPair);
+
+	synchronized( feed) {
+
+	    return feed._lastTradeTimestamp;
+	}
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized IndicatorEngine getInstance() {
+
+	if( _instance == null) {  // If there is no instance yet...
+
+	    _instance = new IndicatorEngine();  // ...create one.
+	}
+
+	return _instance;  // Return the only instance of this class.
+    }
+
+    /**
+     * Get the simple moving average of a price.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param period The period as a string (10d, or so).
+     *
+     * @return The current SMA.
+     *
+     * @throws TradeDataNotAvailableException if there are no trades yet.
+     */
+    public Price getSMA( TradeSite tradeSite, CurrencyPair currencyPair, String period) {
+
+	return getSMA( tradeSite, currencyPair, TimeUtils.microsFromString( period));
+    }
+
+    /**
+     * Get the simple moving average of a price.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param period The period in microseconds.
+     *
+     * @return The current SMA.
+     *
+     * @throws TradeDataNotAvailableException if there are no trades yet.
+     */
+    public Price getSMA( TradeSite tradeSite, CurrencyPair currencyPair, long period) {
+
+	return new Price( BigDecimal.valueOf( getFeed( tradeSite, currencyPair).getTradeValue( IndicatorType.SMA, period)));
+    }
+
+    /**
+     * Get the time weighted exponential moving average of the spread between the best sell and buy order.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param period The period as a string (1h, or so).
+     *
+     * @return The current time weighted spread EMA.
+     *
+     * @throws TradeDataNotAvailableException if there is no spread yet.
+     */
+    public Price getSpreadTWEMA( TradeSite tradeSite, CurrencyPair currencyPair, String period) {
+
+	return new Price( BigDecimal.valueOf( getFeed( tradeSite, currencyPair).getSpreadValue( TimeUtils.microsFromString( period))));
+    }
+
+    /**
+     * Notify the listeners on new market data.
+     * The callers must not hold the lock of a feed, since the listeners might read the indicators.
+     *
+     * @param tradeSite The trade site with the new data.
+     * @param currencyPair The currency pair with the new data.
+     */
+    private void notifyListeners( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	for( MarketDataListener currentListener : _listeners) {
+
+	    try {
+
+		currentListener.marketDataUpdated( tradeSite, currencyPair);
+
+	    } catch( RuntimeException re) {  // A failing listener must not break the indicator requests.
+
+		LogUtils.getInstance().getLogger().error( "Market data listener failed: " + re);
+	    }
+	}
+    }
+
+    /**
+     * Remove a listener for new market data.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener( MarketDataListener listener) {
+
+	_listeners.remove( listener);
+    }
+
+    /**
+     * Sort a list of trades by their timestamp, since the trade sites deliver them in different orders.
+     *
+     * @param trades The trades to sort.
+     *
+     * @return A new list with the sorted trades.
+     */
+    private static List<Trade> sortByTimestamp( List<Trade> trades) {
+
+	List<Trade> result = new ArrayList<Trade>( trades);
+
+	Collections.sort( result, new Comparator<Trade>() {
+
+		@Override public int compare( Trade trade1, Trade trade2) {
+
+		    return trade1.getTimestamp() < trade2.getTimestamp() ? -1 : ( trade1.getTimestamp() == trade2.getTimestamp() ? 0 : 1);
+		}
+	    });
+
+	return result;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.indicator;
+
+import de.andreas_rueckert.trade.Price;
+
+
+/**
+ * This class holds the value of an indicator in a cycle. The objects are
+ * immutable, so they can be inserted into rule sessions as facts. As long
+ * as the value of an indicator does not change, the provider returns the
+ * same object, so the sessions do not have to update it.
+ */
+public class IndicatorFact {
+
+    // Instance variables
+
+    /**
+     * The currency pair as a string (i.e. 'btc<=>usd').
+     */
+    private final String _currencyPair;
+
+    /**
+     * The period of the indicator in microseconds.
+     */
+    private final long _period;
+
+    /**
+     * The time, when the value was computed, in microseconds.
+     */
+    private final long _timestamp;
+
+    /**
+     * The name of the trade site.
+     */
+    private final String _tradeSite;
+
+    /**
+     * The type of the indicator.
+     */
+    private final IndicatorEngine.IndicatorType _type;
+
+    /**
+     * The value of the indicator.
+     */
+    private final Price _value;
+
+
+    // Constructors
+
+    /**
+     * Create a new indicator fact.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair as a string (i.e. 'btc<=>usd').
+     * @param type The type of the indicator.
+     * @param period The period of the indicator in microseconds.
+     * @param value The value of the indicator.
+     * @param timestamp The time, when the value was computed, in microseconds.
+     */
+    public IndicatorFact( String tradeSite
+			  , String currencyPair
+			  , IndicatorEngine.IndicatorType type
+			  , long period
+			  , Price value
+			  , long timestamp) {
+
+	_tradeSite = tradeSite;
+	_currencyPair = currencyPair;
+	_type = type;
+	_period = period;
+	_value = value;
+	_timestamp = timestamp;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the currency pair of this indicator.
+     *
+     * @return The currency pair as a string (i.e. 'btc<=>usd').
+     */
+    public String getCurrencyPair() {
+
+	return _currencyPair;
+    }
+
+    /**
+     * Get the period of this indicator.
+     *
+     * @return The period of this indicator in microseconds.
+     */
+    public long getPeriod() {
+
+	return _period;
+    }
+
+    /**
+     * Get the time, when the value was computed.
+     *
+     * @return The time, when the value was computed, in microseconds.
+     */
+    public long getTimestamp() {
+
+	return _timestamp;
+    }
+
+    /**
+     * Get the name of the trade site of this indicator.
+     *
+     * @return The name of the trade site.
+     */
+    public String getTradeSite() {
+
+	return _tradeSite;
+    }
+
+    /**
+     * Get the type of this indicator.
+     *
+     * @return The type of this indicator.
+     */
+    public IndicatorEngine.IndicatorType getType() {
+
+	return _type;
+    }
+
+    /**
+     * Get the value of this indicator.
+     *
+     * @return The value of this indicator.
+     */
+    public Price getValue() {
+
+	return _value;
+    }
+
+    /**
+     * Convert this fact to a string representation.
+     *
+     * @return A string representation of this fact.
+     */
+    public String toString() {
+
+	return _type + "(" + _tradeSite + ", " + _currencyPair + ", " + _period + ") = " + _value;
+    }
+}
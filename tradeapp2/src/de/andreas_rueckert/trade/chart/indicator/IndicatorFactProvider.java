@@ -0,0 +1,355 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.indicator;
+
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.util.Clock;
+import de.andreas_rueckert.util.ModuleLoader;
+import de.andreas_rueckert.util.TimeUtils;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * This class provides the values of the indicators as facts for the rule
+ * sessions and the bots.
+ *
+ * Each combination of trade site, currency pair, indicator type and period
+ * is computed at most once per cycle via the incrementally updated indicators
+ * of the IndicatorEngine (or earlier, if new trades were pushed to the
+ * engine). All the rules, rule sets and bots, that reference the same
+ * indicator in a cycle, share the memoized value. So the cost of a rule set
+ * does not grow with the number of rules, that use an indicator.
+ */
+public class IndicatorFactProvider {
+
+    // Inner classes
+
+    /**
+     * The memoized fact of an indicator.
+     */
+    class CachedIndicator {
+
+	// Instance variables
+
+	/**
+	 * The time of the last computation in microseconds.
+	 */
+	private long _computed = -1L;
+
+	/**
+	 * The current fact of the indicator.
+	 */
+	private IndicatorFact _fact = null;
+
+	/**
+	 * The timestamp of the newest trade in the indicator engine at the last computation.
+	 */
+	private long _lastTradeTimestamp = -1L;
+
+
+	// Methods
+
+	/**
+	 * Get the fact of the current cycle and compute it, if necessary.
+	 *
+	 * @param tradeSite The trade site.
+	 * @param currencyPair The currency pair.
+	 * @param type The type of the indicator.
+	 * @param period The period of the indicator in microseconds.
+	 *
+	 * @return The fact of the current cycle.
+	 *
+	 * @throws TradeDataNotAvailableException if there is no data for the indicator yet.
+	 */
+	synchronized IndicatorFact getFact( TradeSite tradeSite, CurrencyPair currencyPair, IndicatorEngine.IndicatorType type, long period) {
+
+	    long currentTime = Clock.getInstance().getCurrentTimeMicros();
+
+	    long lastTradeTimestamp = IndicatorEngine.getInstance().getLastTradeTimestamp( tradeSite, currencyPair);
+
+	    // Reuse the value of this cycle, unless new trades were pushed to the indicator engine.
+	    if( ( _fact != null) && ( ( currentTime - _computed) < _cycleLength) && ( lastTradeTimestamp == _lastTradeTimestamp)) {
+
+		return _fact;
+	    }
+
+	    Price value = ( type == IndicatorEngine.IndicatorType.TWEMA)
+		? IndicatorEngine.getInstance().getTWEMA( tradeSite, currencyPair, period)
+		: IndicatorEngine.getInstance().getSMA( tradeSite, currencyPair, period);
+
+	    _computed = currentTime;
+	    _lastTradeTimestamp = IndicatorEngine.getInstance().getLastTradeTimestamp( tradeSite, currencyPair);
+
+	    // Keep the old fact, if the value did not change, so the rule sessions don't have to update it.
+	    if( ( _fact == null) || ( _fact.getValue().compareTo( value) != 0)) {
+
+		_fact = new IndicatorFact( tradeSite.getName()
+					   , currencyPair.getCurrency().getCode().toLowerCase()
+					   + "<=>"
+					   + currencyPair.getPaymentCurrency().getCode().toLowerCase()
+					   , type
+					   , period
+					   , value
+					   , currentTime);
+	    }
+
+	    return _fact;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static IndicatorFactProvider _instance = null;
+
+
+    // Instance variables
+
+    /**
+     * The length of a cycle in microseconds. Within a cycle, the memoized value
+     * of an indicator is used. The default is the minimum interval between 2
+     * fetches of the indicator engine, since the values cannot change faster.
+     */
+    private volatile long _cycleLength = IndicatorEngine.MINIMUM_UPDATE_INTERVAL;
+
+    /**
+     * The parsed currency pairs, indexed by their strings (i.e. 'btc<=>usd').
+     */
+    private final ConcurrentMap< String, CurrencyPair> _currencyPairs = new ConcurrentHashMap< String, CurrencyPair>();
+
+    /**
+     * The memoized indicators, indexed by trade site, currency pair, type and period.
+     */
+    private final ConcurrentMap< String, CachedIndicator> _indicators = new ConcurrentHashMap< String, CachedIndicator>();
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private IndicatorFactProvider() {
+    }
+
+
+    // Methods
+
+    /**
+     * Get the exponential moving average of a price.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param period The period in microseconds.
+     *
+     * @return The current time weighted EMA.
+     *
+     * @throws TradeDataNotAvailableException if there are no trades yet.
+     */
+    public Price getTWEMA( TradeSite tradeSite, CurrencyPair currencyPair, long period) {
+
+	return getFact( tradeSite, currencyPair, IndicatorEngine.IndicatorType.TWEMA, period).getValue();
+    }
+
+    /**
+     * Get the exponential moving average of a price.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param period The period as a string (10d, or so).
+     *
+     * @return The current time weighted EMA.
+     *
+     * @throws TradeDataNotAvailableException if there are no trades yet.
+     */
+    public Price getTWEMA( TradeSite tradeSite, CurrencyPair currencyPair, String period) {
+
+	return getTWEMA( tradeSite, currencyPair, TimeUtils.microsFromString( period));
+    }
+
+    /**
+     * Get the exponential moving average of a price.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param period The period in microseconds.
+     *
+     * @return The current time weighted EMA.
+     *
+     * @throws TradeDataNotAvailableException if there are no trades yet.
+     */
+    public Price getTWEMA( String tradeSite, String currencyPair, long period) {
+
+	return getTWEMA( getTradeSite( tradeSite), getCurrencyPair( currencyPair), period);
+    }
+
+    /**
+     * Get a currency pair for its string.
+     *
+     * @param currencyPair The currency pair as a string (i.e. 'btc<=>usd').
+     *
+     * @return The currency pair object.
+     */
+    public CurrencyPair getCurrencyPair( String currencyPair) {
+
+	CurrencyPair result = _currencyPairs.get( currencyPair);
+
+	if( result == null) {
+
+	    String [] currencies = currencyPair.split( "<=>");
+
+	    result = new CurrencyPairImpl( currencies[ 0].toUpperCase(), currencies[ 1].toUpperCase());
+
+	    _currencyPairs.put( currencyPair, result);
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the fact of an indicator for the current cycle.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param type The type of the indicator.
+     * @param period The period of the indicator in microseconds.
+     *
+     * @return The fact of the indicator.
+     *
+     * @throws TradeDataNotAvailableException if there is no data for the indicator yet.
+     */
+    public IndicatorFact getFact( TradeSite tradeSite, CurrencyPair currencyPair, IndicatorEngine.IndicatorType type, long period) {
+
+	String key = tradeSite.getName()
+	    + ":"
+	    + currencyPair.getCurrency().getCode()
+	    + "<=>"
+	    + currencyPair.getPaymentCurrency().getCode()
+	    + ":"
+	    + type.name()
+	    + period;
+
+	CachedIndicator indicator = _indicators.get( key);
+
+	if( indicator == null) {
+
+	    // Create a new indicator, unless another thread was faster.
+	    CachedIndicator newIndicator = new CachedIndicator();
+
+	    indicator = _indicators.putIfAbsent( key, newIndicator);
+
+	    if( indicator == null) {
+
+		indicator = newIndicator;
+	    }
+	}
+
+	return indicator.getFact( tradeSite, currencyPair, type, period);
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized IndicatorFactProvider getInstance() {
+
+	if( _instance == null) {  // If there is no instance yet...
+
+	    _instance = new IndicatorFactProvider();  // ...create one.
+	}
+
+	return _instance;  // Return the only instance of this class.
+    }
+
+    /**
+     * Get the simple moving average of a price.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param period The period in microseconds.
+     *
+     * @return The current SMA.
+     *
+     * @throws TradeDataNotAvailableException if there are no trades yet.
+     */
+    public Price getSMA( TradeSite tradeSite, CurrencyPair currencyPair, long period) {
+
+	return getFact( tradeSite, currencyPair, IndicatorEngine.IndicatorType.SMA, period).getValue();
+    }
+
+    /**
+     * Get the simple moving average of a price.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param period The period as a string (10d, or so).
+     *
+     * @return The current SMA.
+     *
+     * @throws TradeDataNotAvailableException if there are no trades yet.
+     */
+    public Price getSMA( TradeSite tradeSite, CurrencyPair currencyPair, String period) {
+
+	return getSMA( tradeSite, currencyPair, TimeUtils.microsFromString( period));
+    }
+
+    /**
+     * Get the simple moving average of a price.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param period The period in microseconds.
+     *
+     * @return The current SMA.
+     *
+     * @throws TradeDataNotAvailableException if there are no trades yet.
+     */
+    public Price getSMA( String tradeSite, String currencyPair, long period) {
+
+	return getSMA( getTradeSite( tradeSite), getCurrencyPair( currencyPair), period);
+    }
+
+    /**
+     * Get a registered trade site for its name.
+     *
+     * @param name The name of the trade site.
+     *
+     * @return The trade site.
+     *
+     * @throws IllegalArgumentException if the trade site is not registered.
+     */
+    public TradeSite getTradeSite( String name) {
+
+	TradeSite result = ModuleLoader.getInstance().getRegisteredTradeSite( name);
+
+	if( result == null) {
+	    throw new IllegalArgumentException( "Trade site " + name + " is not registered");
+	}
+
+	return result;
+    }
+
+    /**
+     * Set the length of a cycle, in which the memoized values are used.
+     *
+     * @param cycleLength The length of a cycle in microseconds.
+     */
+    public void setCycleLength( long cycleLength) {
+
+	_cycleLength = cycleLength;
+    }
+}
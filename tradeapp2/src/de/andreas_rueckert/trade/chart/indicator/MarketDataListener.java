@@ -0,0 +1,29 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.indicator;
+
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.site.TradeSite;
+
+
+/**
+ * An interface to notify listeners (i.e. a bot) on new market data in the indicator engine.
+ */
+public interface MarketDataListener {
+
+    // Methods
+
+    /**
+     * New depths or trades for a trade site and currency pair arrived.
+     *
+     * @param tradeSite The trade site with the new data.
+     * @param currencyPair The currency pair with the new data.
+     */
+    public void marketDataUpdated( TradeSite tradeSite, CurrencyPair currencyPair);
+}
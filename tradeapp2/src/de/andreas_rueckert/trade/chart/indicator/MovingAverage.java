@@ -0,0 +1,122 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.indicator;
+
+
+/**
+ * Base class for moving averages, that are updated incrementally with
+ * each new sample, instead of being recomputed from the whole history.
+ *
+ * This class is not thread safe. The indicator engine synchronizes
+ * the access via the feed, that holds the average.
+ */
+abstract class MovingAverage {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The timestamp of the last added sample in microseconds.
+     */
+    protected long _lastTimestamp = -1L;
+
+    /**
+     * The averaged time period in microseconds.
+     */
+    protected final long _period;
+
+
+    // Constructors
+
+    /**
+     * Create a new moving average.
+     *
+     * @param period The averaged time period in microseconds.
+     */
+    MovingAverage( long period) {
+
+	if( period <= 0L) {
+
+	    throw new IllegalArgumentException( "The period of a moving average must be positive: " + period);
+	}
+
+	_period = period;
+    }
+
+
+    // Methods
+
+    /**
+     * Add a new sample to this average.
+     * Samples, that are older than the last added sample, are ignored.
+     *
+     * @param timestamp The timestamp of the sample in microseconds.
+     * @param value The value of the sample.
+     */
+    final void add( long timestamp, double value) {
+
+	if( timestamp < _lastTimestamp) {  // An average cannot go back in time.
+
+	    return;
+	}
+
+	addSample( timestamp, value);
+
+	_lastTimestamp = timestamp;
+    }
+
+    /**
+     * Add a new sample to the state of this average.
+     *
+     * @param timestamp The timestamp of the sample in microseconds.
+     * @param value The value of the sample.
+     */
+    protected abstract void addSample( long timestamp, double value);
+
+    /**
+     * Get the timestamp of the last added sample.
+     *
+     * @return The timestamp of the last added sample in microseconds or -1, if there is no sample yet.
+     */
+    final long getLastTimestamp() {
+
+	return _lastTimestamp;
+    }
+
+    /**
+     * Get the averaged time period.
+     *
+     * @return The averaged time period in microseconds.
+     */
+    final long getPeriod() {
+
+	return _period;
+    }
+
+    /**
+     * Get the current value of this average.
+     *
+     * @param currentTime The current time in microseconds.
+     *
+     * @return The current value of this average or NaN, if there is no sample yet.
+     */
+    abstract double getValue( long currentTime);
+
+    /**
+     * Check, if this average has any samples yet.
+     *
+     * @return true, if there was no sample added yet.
+     */
+    final boolean isEmpty() {
+
+	return _lastTimestamp < 0L;
+    }
+}
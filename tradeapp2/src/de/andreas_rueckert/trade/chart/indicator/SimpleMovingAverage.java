@@ -0,0 +1,159 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.indicator;
+
+
+/**
+ * A simple moving average over a time window.
+ *
+ * The samples of the window are held in a ring of primitive arrays
+ * with a running sum, so adding a sample and expiring the old ones
+ * is amortized O(1).
+ */
+class SimpleMovingAverage extends MovingAverage {
+
+    // Static variables
+
+    /**
+     * The initial capacity of the sample ring.
+     */
+    private final static int INITIAL_CAPACITY = 256;
+
+
+    // Instance variables
+
+    /**
+     * The index of the oldest sample in the ring.
+     */
+    private int _head = 0;
+
+    /**
+     * The value of the last added sample, if the window is empty.
+     */
+    private double _lastValue = Double.NaN;
+
+    /**
+     * The number of samples in the ring.
+     */
+    private int _size = 0;
+
+    /**
+     * The sum of all the samples in the ring.
+     */
+    private double _sum = 0.0;
+
+    /**
+     * The timestamps of the samples.
+     */
+    private long [] _timestamps = new long[ INITIAL_CAPACITY];
+
+    /**
+     * The values of the samples.
+     */
+    private double [] _values = new double[ INITIAL_CAPACITY];
+
+
+    // Constructors
+
+    /**
+     * Create a new simple moving average.
+     *
+     * @param period The averaged time period in microseconds.
+     */
+    SimpleMovingAverage( long period) {
+
+	super( period);
+    }
+
+
+    // Methods
+
+    /**
+     * Add a new sample to the state of this average.
+     *
+     * @param timestamp The timestamp of the sample in microseconds.
+     * @param value The value of the sample.
+     */
+    protected void addSample( long timestamp, double value) {
+
+	if( _size == _values.length) {  // The ring is full, so double its capacity.
+
+	    grow();
+	}
+
+	int index = ( _head + _size) % _values.length;
+
+	_timestamps[ index] = timestamp;
+	_values[ index] = value;
+	++_size;
+
+	_sum += value;
+	_lastValue = value;
+
+	expire( timestamp);
+    }
+
+    /**
+     * Remove all the samples, that are no longer in the window.
+     *
+     * @param currentTime The current time in microseconds.
+     */
+    private void expire( long currentTime) {
+
+	long windowStart = currentTime - _period;
+
+	while( ( _size > 0) && ( _timestamps[ _head] < windowStart)) {
+
+	    _sum -= _values[ _head];
+	    _head = ( _head + 1) % _values.length;
+	    --_size;
+	}
+
+	if( _size == 0) {
+
+	    _sum = 0.0;  // Don't carry rounding errors into the next window.
+	}
+    }
+
+    /**
+     * Get the current value of this average.
+     * If there are no samples in the current window, the last known value is returned.
+     *
+     * @param currentTime The current time in microseconds.
+     *
+     * @return The current value of this average or NaN, if there is no sample yet.
+     */
+    double getValue( long currentTime) {
+
+	expire( currentTime);
+
+	return _size == 0 ? _lastValue : _sum / _size;
+    }
+
+    /**
+     * Double the capacity of the sample ring.
+     */
+    private void grow() {
+
+	long [] timestamps = new long[ _timestamps.length * 2];
+	double [] values = new double[ _values.length * 2];
+
+	for( int i = 0; i < _size; ++i) {
+
+	    int index = ( _head + i) % _values.length;
+
+	    timestamps[ i] = _timestamps[ index];
+	    values[ i] = _values[ index];
+	}
+
+	_timestamps = timestamps;
+	_values = values;
+	_head = 0;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.indicator;
+
+
+/**
+ * A time weighted exponential moving average.
+ *
+ * Since trades do not arrive at fixed intervals, the weight of a new sample
+ * depends on the time since the previous sample: 1 - e^(-dt / period).
+ * So each update is O(1), no matter how long the period is.
+ *
+ * This is not the EMA of the ChartAnalyzer, which weights the trades by their
+ * count, so the values of both averages differ for irregular trades.
+ */
+class TimeWeightedMovingAverage extends MovingAverage {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The current value of the average.
+     */
+    private double _value = Double.NaN;
+
+
+    // Constructors
+
+    /**
+     * Create a new time weighted exponential moving average.
+     *
+     * @param period The averaged time period in microseconds.
+     */
+    TimeWeightedMovingAverage( long period) {
+
+	super( period);
+    }
+
+
+    // Methods
+
+    /**
+     * Add a new sample to the state of this average.
+     *
+     * @param timestamp The timestamp of the sample in microseconds.
+     * @param value The value of the sample.
+     */
+    protected void addSample( long timestamp, double value) {
+
+	if( isEmpty()) {  // The first sample just initializes the average.
+
+	    _value = value;
+
+	} else {
+
+	    double weight = 1.0 - Math.exp( - (double)( timestamp - _lastTimestamp) / (double)_period);
+
+	    _value += weight * ( value - _value);
+	}
+    }
+
+    /**
+     * Get the current value of this average.
+     *
+     * @param currentTime The current time in microseconds.
+     *
+     * @return The current value of this average or NaN, if there is no sample yet.
+     */
+    double getValue( long currentTime) {
+
+	return _value;
+    }
+}
@@ -8,13 +8,21 @@
 
 package de.andreas_rueckert.trade.chart.logger;
 
+import de.andreas_rueckert.trade.chart.persistence.CachePersistence;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
 import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeDataNotAvailableException;
 import de.andreas_rueckert.util.ImplementationChecker;
+import de.andreas_rueckert.util.LogUtils;
 import de.andreas_rueckert.util.ModuleLoader;
+import de.andreas_rueckert.util.TimeUtils;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 
 /**
@@ -63,7 +71,7 @@ class DataLogger {
 	    _taskQueue.add( currentPos, task);
 
 	    // Notify any waiting threads, that there might be new work.
-	    _taskQueue.notify();
+	    notifyAll();
 	}
 
 	/**
@@ -116,7 +124,36 @@ class DataLogger {
 	    _taskQueue.push( task);
 	    
 	    // Notify waiting threads, that there is new work.
-	    _taskQueue.notify();
+	    notifyAll();
+	}
+
+	/**
+	 * Wait until the first task of the pipeline is due and remove it from the pipeline.
+	 *
+	 * @return The first task of the pipeline.
+	 *
+	 * @throws InterruptedException if the waiting thread is interrupted.
+	 */
+	public final synchronized FetchTask waitForTask() throws InterruptedException {
+
+	    while( true) {
+
+		if( _taskQueue.isEmpty()) {
+
+		    wait();  // Wait for a new task.
+
+		} else {
+
+		    // Wait until the first task is due (or a new task is added).
+		    long delay = getTask( 0).getScheduledTime() - TimeUtils.getInstance().getCurrentGMTTimeMicros();
+
+		    if( delay <= 0L) {
+			return popTask();
+		    }
+
+		    wait( Math.max( 1L, delay / 1000L));
+		}
+	    }
 	}
     }
 
@@ -125,13 +162,17 @@ class DataLogger {
      */
     class WorkerThread extends Thread {
 	
-	// Instance variables
-
-
 	// Constructors
 
+	/**
+	 * Create a new thread to fetch data.
+	 */
+	WorkerThread() {
+
+	    super( "DataLogger");
 
-	// ... Create thread to fetch data.
+	    setDaemon( true);  // Do not keep the app running.
+	}
 
 	
 	// Methods
@@ -143,25 +184,32 @@ class DataLogger {
 
 	    while( ! isInterrupted()) {
 
-		while( _tasks.isEmpty()) {  // While there are no tasks to perform,
+		FetchTask task;
 
-		    try {
+		try {
 
-			wait();  // just wait.
+		    task = _tasks.waitForTask();  // Wait for the next due task.
 
-		    } catch( InterruptedException ioe) {
+		} catch( InterruptedException ie) {
 
-			// Program exits?
-		    }
+		    return;  // Program exits.
 		}
 
-		// When there is a task to perform.
-		
-		FetchTask task = _tasks.popTask();  // Get the task.
+		if( task.getDataType() == FetchDataType.TRADES) {
 
-		// Check, if an exception was thrown, because 2 threads might get a notification?
+		    fetchTrades( task.getTradeSite(), task.getCurrencyPair());
 
-		// ... todo: write processing...
+		} else {
+
+		    LogUtils.getInstance().getLogger().error( "DataLogger cannot fetch " + task.getDataType() + " data yet");
+		}
+
+		if( task.isIntervalEvent()) {  // Reschedule the task.
+
+		    task.setScheduledTime( TimeUtils.getInstance().getCurrentGMTTimeMicros() + getUpdateInterval( task.getTradeSite()));
+
+		    _tasks.addTask( task);
+		}
 	    }
 	}
     }
@@ -169,21 +217,40 @@ class DataLogger {
 
     // Static variables
 
+    /**
+     * The update interval for trade sites, that can be queried at any time (in microseconds).
+     */
+    private static final long DEFAULT_UPDATE_INTERVAL = 60L * 1000000L;
+
 
     // Instance variables
 
+    /**
+     * The persistence, that stores the fetched trades.
+     */
+    private CachePersistence _persistence;
+
     /**
      * The queue with the waiting tasks.
      */
     private TaskPipeline _tasks;
 
+    /**
+     * The thread, that fetches the data.
+     */
+    private WorkerThread _workerThread = null;
+
 
     // Constructors
 
     /**
      * Create a new data logger to fetch trade data from exchanges.
+     *
+     * @param persistence The persistence, that stores the fetched trades.
      */
-    public DataLogger() {
+    public DataLogger( CachePersistence persistence) {
+
+	_persistence = persistence;
 
 	// Create a new queue for the tasks.
 	_tasks = new TaskPipeline();
@@ -192,6 +259,67 @@ class DataLogger {
 
     // Methods
 
+    /**
+     * Fetch the new trades of a trade site and currency pair and store them.
+     * Only the trades since the newest stored trade are requested from the trade site.
+     * Several trades can share a timestamp, so the trades with the timestamp of the
+     * newest stored trade are filtered by their id. Then the new trades are appended
+     * without another duplicate check.
+     *
+     * @param tradeSite The trade site to query.
+     * @param currencyPair The currency pair to query.
+     */
+    void fetchTrades( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	long newestTimestamp = _persistence.getNewestTimestamp( tradeSite, currencyPair);
+
+	List<Trade> trades;
+
+	try {
+
+	    trades = tradeSite.getTrades( Math.max( 0L, newestTimestamp), currencyPair);
+
+	} catch( TradeDataNotAvailableException tdnae) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot fetch the trades from " + tradeSite.getName() + ": " + tdnae);
+
+	    return;
+	}
+
+	// Get the ids of the stored trades with the newest timestamp.
+	Set<String> storedIds = new HashSet<String>();
+
+	if( newestTimestamp >= 0L) {
+
+	    for( Trade storedTrade : _persistence.getTrades( tradeSite, currencyPair, newestTimestamp - 1L, newestTimestamp)) {
+		storedIds.add( storedTrade.getId());
+	    }
+	}
+
+	// The trade site might return older trades again, so filter by the timestamp.
+	List<Trade> newTrades = new ArrayList<Trade>();
+
+	for( Trade currentTrade : trades) {
+
+	    long timestamp = currentTrade.getTimestamp();
+
+	    if( timestamp > newestTimestamp) {
+
+		newTrades.add( currentTrade);
+
+	    } else if( ( timestamp == newestTimestamp) && ( currentTrade.getId() != null) && ! storedIds.contains( currentTrade.getId())) {
+
+		// Without an id, a trade with the newest timestamp cannot be told apart from a stored one.
+		newTrades.add( currentTrade);
+	    }
+	}
+
+	if( ! newTrades.isEmpty() && ! _persistence.append( tradeSite, currencyPair, newTrades)) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot store the trades from " + tradeSite.getName());
+	}
+    }
+
     /**
      * Get a list of trade sites, that implement the fetching of trades.
      * 
@@ -214,4 +342,55 @@ class DataLogger {
 	// Return the result.
 	return resultBuffer;
     }
+
+    /**
+     * Get the interval between 2 requests to a trade site.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The interval between 2 requests in microseconds.
+     */
+    private long getUpdateInterval( TradeSite tradeSite) {
+
+	long updateInterval = tradeSite.getUpdateInterval();  // The update interval of the trade site is in seconds.
+
+	return updateInterval > 0L ? updateInterval * 1000000L : DEFAULT_UPDATE_INTERVAL;
+    }
+
+    /**
+     * Log the trades of a trade site and currency pair in the update interval of the trade site.
+     *
+     * @param tradeSite The trade site to query.
+     * @param currencyPair The currency pair to query.
+     */
+    public void logTrades( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	_tasks.addTask( new FetchTask( FetchDataType.TRADES, tradeSite, currencyPair, TimeUtils.getInstance().getCurrentGMTTimeMicros(), true));
+    }
+
+    /**
+     * Start fetching the data of the scheduled tasks.
+     */
+    public synchronized void start() {
+
+	if( _workerThread == null) {
+
+	    _workerThread = new WorkerThread();
+
+	    _workerThread.start();
+	}
+    }
+
+    /**
+     * Stop fetching data.
+     */
+    public synchronized void stop() {
+
+	if( _workerThread != null) {
+
+	    _workerThread.interrupt();
+
+	    _workerThread = null;
+	}
+    }
 }
\ No newline at end of file
@@ -8,6 +8,9 @@
 
 package de.andreas_rueckert.trade.chart.logger;
 
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.site.TradeSite;
+
 
 /**
  * This class holds the info on a fetch task of the data logger.
@@ -22,6 +25,11 @@ class FetchTask {
 
     // Instance variables
 
+    /**
+     * The currency pair to request the data for.
+     */
+    private CurrencyPair _currencyPair;
+
     /**
      * The type of data to request from the trade site.
      */
@@ -37,12 +45,55 @@ class FetchTask {
      */
     private long _scheduledTime;
 
+    /**
+     * The trade site to request the data from.
+     */
+    private TradeSite _tradeSite;
+
 
     // Constructors
 
+    /**
+     * Create a new fetch task.
+     *
+     * @param dataType The type of data to request from the trade site.
+     * @param tradeSite The trade site to request the data from.
+     * @param currencyPair The currency pair to request the data for.
+     * @param scheduledTime The time, when this task should be executed (in microseconds).
+     * @param intervalEvent If true, the task is rescheduled after the execution.
+     */
+    FetchTask( FetchDataType dataType, TradeSite tradeSite, CurrencyPair currencyPair, long scheduledTime, boolean intervalEvent) {
+
+	_dataType = dataType;
+	_tradeSite = tradeSite;
+	_currencyPair = currencyPair;
+	_scheduledTime = scheduledTime;
+	_intervalEvent = intervalEvent;
+    }
+
 
     // Methods
 
+    /**
+     * Get the currency pair of this task.
+     *
+     * @return The currency pair to request the data for.
+     */
+    public final CurrencyPair getCurrencyPair() {
+
+	return _currencyPair;
+    }
+
+    /**
+     * Get the type of data to request.
+     *
+     * @return The type of data to request from the trade site.
+     */
+    public final FetchDataType getDataType() {
+
+	return _dataType;
+    }
+
     /**
      * Get the scheduled time of this task.
      *
@@ -52,6 +103,26 @@ class FetchTask {
 
 	return _scheduledTime;
     }
+
+    /**
+     * Get the trade site of this task.
+     *
+     * @return The trade site to request the data from.
+     */
+    public final TradeSite getTradeSite() {
+
+	return _tradeSite;
+    }
+
+    /**
+     * Check, if this task should be rescheduled after the execution.
+     *
+     * @return true, if this task should be rescheduled after the execution.
+     */
+    public final boolean isIntervalEvent() {
+
+	return _intervalEvent;
+    }
     
     /**
      * Set a new schedule time.
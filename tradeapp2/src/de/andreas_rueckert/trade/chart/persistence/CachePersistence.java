@@ -12,6 +12,7 @@ import de.andreas_rueckert.persistence.PersistentProperties;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.Trade;
+import java.util.List;
 
 
 /**
@@ -41,8 +42,22 @@ public interface CachePersistence extends PersistentProperties {
      */
     public boolean add( Trade trade);
 
+    /**
+     * Append trades, that are newer than the newest stored trade, without checking for duplicates.
+     * Trades with the timestamp of the newest stored trade might be stored already, so the caller
+     * has to skip the stored ones by their id (see DataLogger.fetchTrades()).
+     *
+     * @param tradeSite The trade site of the trades.
+     * @param currencyPair The currency pair of the trades.
+     * @param trades The new trades.
+     *
+     * @return true, if the trades were successfully added. false otherwise.
+     */
+    public boolean append( TradeSite tradeSite, CurrencyPair currencyPair, List<Trade> trades);
+
     /**
      * Get the timestamp of the newest trade for a given trade site and currency pair.
+     * The implementations keep this mark in memory, so it is cheap to call before each fetch.
      *
      * @param tradeSite The trade site to query.
      * @param currencyPair The currency pair to use.
@@ -50,4 +65,35 @@ public interface CachePersistence extends PersistentProperties {
      * @return The gmt-relative timestamp of the newest trade, or -1 if no such trade is in the db.
      */
     public long getNewestTimestamp( TradeSite tradeSite, CurrencyPair currencyPair);
+
+    /**
+     * Get the stored trades for a given trade site and currency pair in a time range.
+     *
+     * @param tradeSite The trade site to query.
+     * @param currencyPair The currency pair to use.
+     * @param since Only trades newer than this timestamp (in microseconds) are returned.
+     * @param until Only trades not newer than this timestamp (in microseconds) are returned.
+     *
+     * @return The trades in the time range, sorted by timestamp.
+     */
+    public List<Trade> getTrades( TradeSite tradeSite, CurrencyPair currencyPair, long since, long until);
+
+    /**
+     * Merge a given list of trades into the database. Trades, that are already stored, are skipped.
+     *
+     * @param trades A list of trades to merge.
+     */
+    public void merge( Trade [] trades);
+
+    /**
+     * Merge trades of a trade site and currency pair into the database. Trades, that are already
+     * stored (same id and timestamp), are skipped.
+     *
+     * @param tradeSite The trade site of the trades.
+     * @param currencyPair The currency pair of the trades.
+     * @param trades The trades to merge.
+     *
+     * @return true, if the trades were merged. false otherwise.
+     */
+    public boolean merge( TradeSite tradeSite, CurrencyPair currencyPair, List<Trade> trades);
 }
@@ -0,0 +1,166 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.persistence;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeType;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * This class measures, how long it takes to merge trades into a mysql
+ * database. It compares the merge of single trades (1 transaction and
+ * 1 insert per trade, like the old merge without its extra lookup per trade)
+ * with the batched merge of all trades, and the merge of trades, that are
+ * already in the database. The trades are stored for a separate trade site
+ * and removed afterwards, so the benchmark does not touch other trades.
+ *
+ * Usage: CachePersistenceBenchmark [-trades <n>] <host> <database> <username> <password>
+ */
+public class CachePersistenceBenchmark {
+
+    // Static variables
+
+    /**
+     * The name of the currency pair of the benchmark trades.
+     */
+    private static final String CURRENCY_PAIR = "BTC<=>USD";
+
+    /**
+     * The name of the trade site of the benchmark trades.
+     */
+    private static final String TRADE_SITE = "Benchmark";
+
+
+    // Methods
+
+    /**
+     * Create trades with rising timestamps and distinct ids.
+     *
+     * @param count The number of trades.
+     *
+     * @return The list of trades.
+     */
+    private static List<Trade> createTrades( int count) {
+
+	List<Trade> result = new ArrayList<Trade>( count);
+
+	long timestamp = System.currentTimeMillis() * 1000L;
+
+	for( int currentTrade = 0; currentTrade < count; ++currentTrade) {
+
+	    result.add( new StoredTrade( null
+					 , String.valueOf( currentTrade)
+					 , timestamp + currentTrade * 1000000L
+					 , new Price( String.valueOf( 600.0 + ( currentTrade % 100) / 10.0))
+					 , new Amount( "0.25")
+					 , ( currentTrade % 2) == 0 ? TradeType.Buy : TradeType.Sell));
+	}
+
+	return result;
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The command line arguments.
+     */
+    public static void main( String [] args) {
+
+	int tradeCount = 10000;
+
+	int currentArg = 0;
+
+	if( ( args.length > 1) && args[ 0].equals( "-trades")) {
+
+	    tradeCount = Integer.parseInt( args[ 1]);
+
+	    currentArg = 2;
+	}
+
+	if( args.length - currentArg != 4) {
+
+	    System.err.println( "Usage: CachePersistenceBenchmark [-trades <n>] <host> <database> <username> <password>");
+
+	    System.exit( 1);
+	}
+
+	CachePersistenceMySQL persistence = new CachePersistenceMySQL( args[ currentArg]
+								       , args[ currentArg + 1]
+								       , args[ currentArg + 2]
+								       , args[ currentArg + 3]);
+	persistence.setActive( true);
+
+	List<Trade> trades = createTrades( tradeCount);
+
+	if( ! persistence.remove( TRADE_SITE)) {
+
+	    System.err.println( "Cannot connect to the database");
+
+	    System.exit( 1);
+	}
+
+	System.out.println( "Merging " + tradeCount + " trades:");
+
+	// Merge the trades one by one.
+	long startTime = System.nanoTime();
+
+	for( Trade currentTrade : trades) {
+
+	    List<Trade> singleTrade = new ArrayList<Trade>( 1);
+	    singleTrade.add( currentTrade);
+
+	    persistence.merge( TRADE_SITE, CURRENCY_PAIR, singleTrade);
+	}
+
+	long singleTime = System.nanoTime() - startTime;
+
+	printResult( "single", singleTime, tradeCount);
+
+	persistence.remove( TRADE_SITE);
+
+	// Merge all the trades in batches.
+	startTime = System.nanoTime();
+
+	persistence.merge( TRADE_SITE, CURRENCY_PAIR, trades);
+
+	long batchTime = System.nanoTime() - startTime;
+
+	printResult( "batched", batchTime, tradeCount);
+
+	// Merge the same trades again, so all of them are skipped.
+	startTime = System.nanoTime();
+
+	persistence.merge( TRADE_SITE, CURRENCY_PAIR, trades);
+
+	printResult( "stored", System.nanoTime() - startTime, tradeCount);
+
+	persistence.remove( TRADE_SITE);
+
+	System.out.println( String.format( "  speedup: %.1fx", (double)singleTime / batchTime));
+    }
+
+    /**
+     * Print the result of a benchmark.
+     *
+     * @param mode The name of the merge mode.
+     * @param time The time of the merge in nanoseconds.
+     * @param tradeCount The number of merged trades.
+     */
+    private static void printResult( String mode, long time, int tradeCount) {
+
+	System.out.println( String.format( "  %-8s total: %10.1f ms   per trade: %8.1f us"
+					   , mode
+					   , time / 1000000.0
+					   , time / 1000.0 / tradeCount));
+    }
+}
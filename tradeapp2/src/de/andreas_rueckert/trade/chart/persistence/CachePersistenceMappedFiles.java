@@ -0,0 +1,359 @@
+/**
+ * Java implementation of a memory mapped trade cache persistence.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.persistence;
+
+import de.andreas_rueckert.persistence.PersistentProperty;
+import de.andreas_rueckert.persistence.PersistentPropertyList;
+import de.andreas_rueckert.trade.app.TradeApp;
+import de.andreas_rueckert.trade.CryptoCoinTrade;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.util.LogUtils;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Class to store trades in memory mapped column files, without a database server.
+ * Each trade site and currency pair gets its own directory <directory>/<site>/<currency>_<payment currency>
+ * with append-only columns for the timestamps, prices, amounts, ids and types (see TradeColumns).
+ */
+public class CachePersistenceMappedFiles implements CachePersistence {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * Flag to indicate, if the caching is activated.
+     */
+    private boolean _activated = false;
+
+    /**
+     * The opened trade columns for each trade site and currency pair.
+     */
+    private final Map<String, TradeColumns> _columns = new HashMap<String, TradeColumns>();
+
+    /**
+     * The base directory of the column files.
+     */
+    private File _directory;
+
+
+    // Constructors
+
+    /**
+     * Create a new trade store in the user's tradeapp directory and register it as persistent.
+     */
+    public CachePersistenceMappedFiles() {
+
+	this( new File( System.getProperty( "user.home") + "/.tradeapp/trades"));
+
+	// Register this object as persistent.
+	TradeApp.getApp().getAppProperties().registerPersistentPropertyObject( this);
+    }
+
+    /**
+     * Create a new trade store in a given directory.
+     *
+     * @param directory The base directory of the column files.
+     */
+    public CachePersistenceMappedFiles( File directory) {
+
+	_directory = directory;
+    }
+
+
+    // Methods
+
+    /**
+     * Add a new trade to the store.
+     *
+     * @param trade The new trade to add.
+     *
+     * @return true, if the trade was successfully added. false otherwise.
+     */
+    public boolean add( Trade trade) {
+
+	if( _activated) {
+
+	    if( trade instanceof CryptoCoinTrade) {
+
+		CryptoCoinTrade ctr = (CryptoCoinTrade)trade;
+
+		List<Trade> trades = new ArrayList<Trade>();
+		trades.add( ctr);
+
+		return merge( ctr.getSite(), ctr.getCurrencyPair(), trades);
+
+	    } else {
+		LogUtils.getInstance().getLogger().error( "CachePersistenceMappedFiles.add() can only store CryptoCoinTrade objects for now!");
+	    }
+
+	    return false;  // An error occured.
+	}
+
+	return true;  // An de-activated cache works always...
+    }
+
+    /**
+     * Append trades, that are newer than the newest stored trade, without checking for duplicates.
+     *
+     * @param tradeSite The trade site of the trades.
+     * @param currencyPair The currency pair of the trades.
+     * @param trades The new trades.
+     *
+     * @return true, if the trades were successfully added. false otherwise.
+     */
+    public boolean append( TradeSite tradeSite, CurrencyPair currencyPair, List<Trade> trades) {
+
+	if( ! _activated || trades.isEmpty()) {
+	    return true;  // Nothing to do.
+	}
+
+	try {
+	    getColumns( tradeSite, currencyPair, true).append( trades);
+
+	    return true;
+
+	} catch( IOException ioe) {
+	    LogUtils.getInstance().getLogger().error( "Cannot store the trades of " + tradeSite.getName() + ": " + ioe);
+	}
+
+	return false;  // An error occured.
+    }
+
+    /**
+     * Write all the changes to the disk and close the column files.
+     */
+    public synchronized void close() {
+
+	for( TradeColumns currentColumns : _columns.values()) {
+	    currentColumns.close();
+	}
+
+	_columns.clear();
+    }
+
+    /**
+     * Get the trade columns for a trade site and currency pair.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param create If true, missing column files are created.
+     *
+     * @return The trade columns, or null if they do not exist and should not be created.
+     *
+     * @throws IOException if the column files cannot be opened.
+     */
+    private synchronized TradeColumns getColumns( TradeSite tradeSite, CurrencyPair currencyPair, boolean create) throws IOException {
+
+	String key = tradeSite.getName() + "/" + currencyPair.getCurrency().getCode() + "_" + currencyPair.getPaymentCurrency().getCode();
+
+	TradeColumns columns = _columns.get( key);
+
+	if( columns == null) {
+
+	    File columnDirectory = new File( _directory, key);
+
+	    if( ! create && ! columnDirectory.isDirectory()) {
+		return null;
+	    }
+
+	    columns = new TradeColumns( columnDirectory, currencyPair);
+
+	    _columns.put( key, columns);
+	}
+
+	return columns;
+    }
+
+    /**
+     * Get the timestamp of the newest trade for a given trade site and currency pair.
+     *
+     * @param tradeSite The trade site to query.
+     * @param currencyPair The currency pair to use.
+     *
+     * @return The gmt-relative timestamp of the newest trade, or -1 if no such trade is in the store.
+     */
+    public long getNewestTimestamp( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	if( ! _activated) {
+	    return -1L;  // A de-activated cache has no trades.
+	}
+
+	try {
+	    TradeColumns columns = getColumns( tradeSite, currencyPair, false);
+
+	    return columns == null ? -1L : columns.getNewestTimestamp();
+
+	} catch( IOException ioe) {
+	    LogUtils.getInstance().getLogger().error( "Cannot open the stored trades of " + tradeSite.getName() + ": " + ioe);
+	}
+
+	return -1L;
+    }
+
+    /**
+     * Get the section name in the global property file.
+     */
+    public String getPropertySectionName() {
+	return "CachePersistenceMappedFiles";
+    }
+
+    /**
+     * Get the settings of the memory mapped persistence for trades.
+     *
+     * @return The setting of the memory mapped persistence as a list of key<=>value pairs.
+     */
+    public PersistentPropertyList getSettings() {
+
+	// Create a new list.
+	PersistentPropertyList result = new PersistentPropertyList();
+
+	result.add( new PersistentProperty( "Directory", null, _directory.getPath(), 2));
+	result.add( new PersistentProperty( "Activated_boolean", null, _activated ? "true" : "false", 1));
+
+	return result;
+    }
+
+    /**
+     * Get the stored trades for a given trade site and currency pair in a time range.
+     *
+     * @param tradeSite The trade site to query.
+     * @param currencyPair The currency pair to use.
+     * @param since Only trades newer than this timestamp (in microseconds) are returned.
+     * @param until Only trades not newer than this timestamp (in microseconds) are returned.
+     *
+     * @return The trades in the time range, sorted by timestamp.
+     */
+    public List<Trade> getTrades( TradeSite tradeSite, CurrencyPair currencyPair, long since, long until) {
+
+	if( _activated) {
+
+	    try {
+		TradeColumns columns = getColumns( tradeSite, currencyPair, false);
+
+		if( columns != null) {
+		    return columns.getTrades( since, until);
+		}
+
+	    } catch( IOException ioe) {
+		LogUtils.getInstance().getLogger().error( "Cannot open the stored trades of " + tradeSite.getName() + ": " + ioe);
+	    }
+	}
+
+	return new ArrayList<Trade>();  // No trades stored.
+    }
+
+    /**
+     * Merge a given list of trades into the store.
+     *
+     * @param trades A list of trades to merge.
+     */
+    public void merge( Trade [] trades) {
+
+	if( ! _activated) {
+	    return;
+	}
+
+	// Group the trades by trade site and currency pair, so each group is merged at once.
+	Map<String, List<Trade>> groups = new LinkedHashMap<String, List<Trade>>();
+
+	for( Trade currentTrade : trades) {
+
+	    if( currentTrade instanceof CryptoCoinTrade) {
+
+		CryptoCoinTrade ctr = (CryptoCoinTrade)currentTrade;
+
+		String key = ctr.getSite().getName() + "/" + ctr.getCurrencyPair().getName();
+
+		List<Trade> group = groups.get( key);
+
+		if( group == null) {
+		    groups.put( key, group = new ArrayList<Trade>());
+		}
+
+		group.add( ctr);
+
+	    } else {
+		LogUtils.getInstance().getLogger().error( "CachePersistenceMappedFiles.merge() can only store CryptoCoinTrade objects for now!");
+	    }
+	}
+
+	for( List<Trade> currentGroup : groups.values()) {
+
+	    CryptoCoinTrade firstTrade = (CryptoCoinTrade)currentGroup.get( 0);
+
+	    merge( firstTrade.getSite(), firstTrade.getCurrencyPair(), currentGroup);
+	}
+    }
+
+    /**
+     * Merge trades of a trade site and currency pair into the store. Trades,
+     * that are already stored, are skipped.
+     *
+     * @param tradeSite The trade site of the trades.
+     * @param currencyPair The currency pair of the trades.
+     * @param trades The trades to merge.
+     *
+     * @return true, if the trades were merged. false otherwise.
+     */
+    public boolean merge( TradeSite tradeSite, CurrencyPair currencyPair, List<Trade> trades) {
+
+	if( ! _activated || trades.isEmpty()) {
+	    return true;  // Nothing to do.
+	}
+
+	try {
+	    getColumns( tradeSite, currencyPair, true).merge( trades);
+
+	    return true;
+
+	} catch( IOException ioe) {
+	    LogUtils.getInstance().getLogger().error( "Cannot store the trades of " + tradeSite.getName() + ": " + ioe);
+	}
+
+	return false;  // An error occured.
+    }
+
+    /**
+     * Activate or deactivate the persistence.
+     *
+     * @param activated If true, the persistence is activated. If false, it's deactivated.
+     */
+    public void setActive( boolean activated) {
+	_activated = activated;
+    }
+
+    /**
+     * Set new settings for the memory mapped cache persistence.
+     *
+     * @param settings The new settings for the memory mapped cache persistence.
+     */
+    public void setSettings( PersistentPropertyList settings) {
+
+	String currentSetting = settings.getStringProperty( "Directory");
+	if( ( currentSetting != null) && ! currentSetting.equals( _directory.getPath())) {
+	    close();  // Close the columns in the old directory.
+	    _directory = new File( currentSetting);  // Get the base directory from the settings.
+	}
+	currentSetting = settings.getStringProperty( "Activated");
+	if( currentSetting != null) {
+	    _activated = currentSetting.equals( "true");  // Get the activation flag from the settings.
+	}
+    }
+}
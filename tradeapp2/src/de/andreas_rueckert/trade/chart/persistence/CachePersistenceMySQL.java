@@ -8,7 +8,6 @@
 
 package de.andreas_rueckert.trade.chart.persistence;
 
-import de.andreas_rueckert.NotYetImplementedException;
 import de.andreas_rueckert.persistence.PersistentProperties;
 import de.andreas_rueckert.persistence.PersistentProperty;
 import de.andreas_rueckert.persistence.PersistentPropertyList;
@@ -16,17 +15,23 @@ import de.andreas_rueckert.trade.app.TradeApp;
 import de.andreas_rueckert.trade.CryptoCoinTrade;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
 import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.Trade;
 import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.trade.TradeType;
 import de.andreas_rueckert.util.LogUtils;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -38,6 +43,17 @@ public class CachePersistenceMySQL implements CachePersistence {
 
     // Static variables
 
+    /**
+     * The number of trades, that are sent to the database in one batch.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The statement to insert a trade. Trades, that are already in the database, are ignored.
+     */
+    private static final String INSERT_STATEMENT = "INSERT IGNORE INTO trades ( tradesite, currencypair, siteid, timestamp, price, amount)"
+	+ " VALUES ( ?, ?, ?, ?, ?, ?)";
+
 
     // Instance variables
 
@@ -66,6 +82,11 @@ public class CachePersistenceMySQL implements CachePersistence {
      */
     private String _host;
 
+    /**
+     * The timestamps of the newest stored trades for each trade site and currency pair.
+     */
+    private final Map<String, Long> _newestTimestamps = new HashMap<String, Long>();
+
     /**
      * The password for the database access.
      */
@@ -89,6 +110,27 @@ public class CachePersistenceMySQL implements CachePersistence {
      */
     public CachePersistenceMySQL() {
 
+	this( null, null, null, null);
+
+	// Register this object as persistent.
+	TradeApp.getApp().getAppProperties().registerPersistentPropertyObject( this);
+    }
+
+    /**
+     * Create a new mysql database connection with given settings.
+     *
+     * @param host The host, on which the database is running.
+     * @param databaseName The name of the database.
+     * @param username The user name for the database access.
+     * @param password The password for the database access.
+     */
+    public CachePersistenceMySQL( String host, String databaseName, String username, String password) {
+
+	_host = host;
+	_databaseName = databaseName;
+	_username = username;
+	_password = password;
+
 	// Set the list of required tables.
 	_tables = new String[1];
 	_tables[ 0] = "trades";
@@ -100,20 +142,31 @@ public class CachePersistenceMySQL implements CachePersistence {
 	// type (as of ver 5.1) can only store 30 decimal digits, I have to convert the BigDecimal to a String.
 	// The max length of this String should be -0.<34 digits>E-6144 ,which is 43 characters, if I didn't
 	// miss anything (a_rueckert).
+	// The primary key lets the database skip duplicate trades, so merging needs no lookups.
+	// The tradetime index serves the newest timestamp and time range queries of a trade site and currency pair.
 	_createStatements = new HashMap< String, String>();
 	_createStatements.put( "trades", 
-			       "tradesite VARCHAR(8) NOT NULL" 
-			       + ", currencypair VARCHAR(8) NOT NULL"
-			       + ", siteid VARCHAR(32)"
+			       "tradesite VARCHAR(16) NOT NULL" 
+			       + ", currencypair VARCHAR(16) NOT NULL"
+			       + ", siteid VARCHAR(32) NOT NULL"
 			       + ", timestamp BIGINT NOT NULL"
 			       + ", price VARCHAR(43) NOT NULL"
 			       + ", amount VARCHAR(43) NOT NULL"
-			       + ", index tradesite (tradesite)"
-			       + ", index currencypair (currencypair)"
-			       + ", index timestamp (timestamp)");
+			       + ", PRIMARY KEY (tradesite, currencypair, siteid)"
+			       + ", index tradetime (tradesite, currencypair, timestamp)");
+    }
 
-	// Register this object as persistent.
-	TradeApp.getApp().getAppProperties().registerPersistentPropertyObject( this);
+    /**
+     * Create a new persistence on an open database connection, that already has the tables.
+     * This is used by the tests, that run without a mysql server.
+     *
+     * @param connection The open connection to the database.
+     */
+    CachePersistenceMySQL( Connection connection) {
+
+	this( null, null, null, null);
+
+	_connection = connection;
     }
 
 
@@ -133,17 +186,12 @@ public class CachePersistenceMySQL implements CachePersistence {
 	    if( trade instanceof CryptoCoinTrade) {
 		
 		CryptoCoinTrade ctr = (CryptoCoinTrade)trade;
-	    
-		String addStatement = "INSERT INTO trades ( tradesite, currencypair, siteid, timestamp, price, amount) " 
-		    + "VALUES (" + ctr.getSite() 
-		    + "," + ctr.getCurrencyPair()
-		    + "," + ctr.getId()
-		    + "," + ctr.getTimestamp()
-		    + "," + ctr.getPrice()
-		    + "," + ctr.getAmount()
-		    + ");";
-	    
-		return executeStatement( addStatement);
+
+		List<Trade> trades = new ArrayList<Trade>();
+		trades.add( ctr);
+
+		return merge( ctr.getSite(), ctr.getCurrencyPair(), trades);
+
 	    } else {
 		LogUtils.getInstance().getLogger().error( "CachePersistenceMysql.add() can only store CryptoCoinTrade objects for now!");
 	    }
@@ -154,6 +202,21 @@ public class CachePersistenceMySQL implements CachePersistence {
 	return true;  // An de-activated cache works always...
     }
 
+    /**
+     * Append trades, that are newer than the newest stored trade. The database
+     * skips duplicates via the primary key anyway, so this is just a merge.
+     *
+     * @param tradeSite The trade site of the trades.
+     * @param currencyPair The currency pair of the trades.
+     * @param trades The new trades.
+     *
+     * @return true, if the trades were successfully added. false otherwise.
+     */
+    public boolean append( TradeSite tradeSite, CurrencyPair currencyPair, List<Trade> trades) {
+
+	return merge( tradeSite, currencyPair, trades);
+    }
+
     /**
      * Check, if the table(s) for this service are in the database.
      *
@@ -182,6 +245,22 @@ public class CachePersistenceMySQL implements CachePersistence {
 	return true;  // All the tables were found.
     }
 
+    /**
+     * Close a statement and log errors.
+     *
+     * @param statement The statement to close or null.
+     */
+    private void closeStatement( Statement statement) {
+
+	if( statement != null) {
+	    try {
+		statement.close();  // Close the statement and its result set.
+	    } catch( SQLException se) {
+		LogUtils.getInstance().getLogger().error( "Error closing the statement: " + se);
+	    }
+	}
+    }
+
     /**
      * Connect to the database.
      */
@@ -202,8 +281,8 @@ public class CachePersistenceMySQL implements CachePersistence {
 		LogUtils.getInstance().getLogger().error( "Cannot instantiate JDBC MySQL driver: " + ie);
 	    }
 
-	    // Create an url for the connection.
-	    String url = "jdbc:mysql://" + _host  + "/" + _databaseName;
+	    // Create an url for the connection. Let the driver send batches as multi row inserts.
+	    String url = "jdbc:mysql://" + _host  + "/" + _databaseName + "?rewriteBatchedStatements=true";
 	    
 	    // Create a connection to the database.
 	    try {
@@ -230,20 +309,27 @@ public class CachePersistenceMySQL implements CachePersistence {
 
 	    CryptoCoinTrade ctr = (CryptoCoinTrade)trade;
 
-	    // For now, the easiest way to find a trade is the trade site name and the site id...
-	    String queryStatement = "SELECT * from trades WHERE tradesite=" + ctr.getSite().getName() 
-		+ " and siteId=" + ctr.getId() + ";";
-	    
-	    ResultSet resultSet = executeQuery( queryStatement);
+	    if( ! openConnection()) {
+		throw new TradeDataNotAvailableException( "CachePersistenceMySQL.contains() has no database connection");
+	    }
+
+	    PreparedStatement statement = null;
 
 	    try {
+		// A trade is identified by the trade site, the currency pair and the site id.
+		statement = _connection.prepareStatement( "SELECT siteid FROM trades WHERE tradesite=? AND currencypair=? AND siteid=? LIMIT 1");
+
+		statement.setString( 1, ctr.getSite().getName());
+		statement.setString( 2, ctr.getCurrencyPair().getName());
+		statement.setString( 3, getSiteId( ctr));
+
 		// If the number of rows is > 0, the trade is in the database.
-		while( resultSet.next()) {
-		    contains = true;
-		    break;  // We only need 1 row. That's enough to know.
-		}
+		contains = statement.executeQuery().next();
+
 	    } catch( SQLException se) {
-		throw new TradeDataNotAvailableException( "Error while checking for required tables in database: " + se);
+		throw new TradeDataNotAvailableException( "Error while checking for a trade in the database: " + se);
+	    } finally {
+		closeStatement( statement);
 	    }
 	} else { 
 	    throw new TradeDataNotAvailableException( "CachePersistenceMysql.contains() can only check for CryptoCoinTrades for now!");
@@ -267,7 +353,7 @@ public class CachePersistenceMySQL implements CachePersistence {
 		+ tablename 
 		+ " ("
 		+ currentTable.getValue()
-		+ " ) TYPE = MyISAM AUTO_INCREMENT=1;";
+		+ " ) ENGINE = InnoDB;";
 
 	    System.out.println( createStatement);
 
@@ -277,29 +363,6 @@ public class CachePersistenceMySQL implements CachePersistence {
 	return true;  // No errors.
     }
 
-    /**
-     * Execute a query on the database and return the result set.
-     *
-     * @param queryStatement The query to execute.
-     *
-     * @return The result of the query as a ResultSet object.
-     */
-    private final ResultSet executeQuery( String queryStatement) {
-
-	try {
-	    Statement statement = _connection.createStatement();  // Create a new statement.
-
-	    ResultSet resultSet = statement.executeQuery( queryStatement);  // Execute the query and fetch the result.
-
-	    return resultSet;  // Return the result.
-
-	} catch (SQLException se) {
-	    LogUtils.getInstance().getLogger().error( "Cannot execute query on mysql database: " + se);
-	}
-
-	return null;  // An error occured...
-    }
-
     /**
      * Execute a statement on the mysql database.
      *
@@ -319,13 +382,7 @@ public class CachePersistenceMySQL implements CachePersistence {
 	} catch( SQLException se) {
 	    LogUtils.getInstance().getLogger().error( "Error executing a statement: " + se);
 	} finally {
-	    if( statement != null) {
-		try {
-		    statement.close();  // Close the operation.
-		} catch( SQLException se) {
-		    LogUtils.getInstance().getLogger().error( "Error closing the statement: " + se);
-		}
-	    }
+	    closeStatement( statement);  // Close the operation.
 	}
 
 	return false;  // An error occured.
@@ -340,7 +397,50 @@ public class CachePersistenceMySQL implements CachePersistence {
      * @return The gmt-relative timestamp of the newest trade, or -1 if no such trade is in the db.
      */
     public long getNewestTimestamp( TradeSite tradeSite, CurrencyPair currencyPair) {
-	throw new NotYetImplementedException( "Getting the newest timestamp is not yet implemented for the mysql backup");
+
+	String key = tradeSite.getName() + "/" + currencyPair.getName();
+
+	synchronized( _newestTimestamps) {
+
+	    Long newestTimestamp = _newestTimestamps.get( key);
+
+	    if( newestTimestamp != null) {
+		return newestTimestamp;
+	    }
+	}
+
+	if( ! _activated || ! openConnection()) {
+	    return -1L;
+	}
+
+	PreparedStatement statement = null;
+
+	try {
+	    // The tradetime index resolves this without scanning the trades.
+	    statement = _connection.prepareStatement( "SELECT MAX(timestamp) FROM trades WHERE tradesite=? AND currencypair=?");
+
+	    statement.setString( 1, tradeSite.getName());
+	    statement.setString( 2, currencyPair.getName());
+
+	    ResultSet resultSet = statement.executeQuery();
+
+	    long newestTimestamp = resultSet.next() ? resultSet.getLong( 1) : 0L;
+
+	    if( resultSet.wasNull() || ( newestTimestamp == 0L)) {
+		newestTimestamp = -1L;  // No trades stored yet.
+	    }
+
+	    updateNewestTimestamp( key, newestTimestamp);
+
+	    return newestTimestamp;
+
+	} catch( SQLException se) {
+	    LogUtils.getInstance().getLogger().error( "Error while reading the newest trade from the database: " + se);
+	} finally {
+	    closeStatement( statement);
+	}
+
+	return -1L;  // An error occured.
     }
 
     /**
@@ -369,6 +469,69 @@ public class CachePersistenceMySQL implements CachePersistence {
 	return result;
     }
 
+    /**
+     * Get the id of a trade, as it is stored in the database.
+     *
+     * @param trade The trade.
+     *
+     * @return The site id of the trade, or the timestamp for trades without an id.
+     */
+    private static String getSiteId( Trade trade) {
+
+	return trade.getId() != null ? trade.getId() : String.valueOf( trade.getTimestamp());
+    }
+
+    /**
+     * Get the stored trades for a given trade site and currency pair in a time range.
+     *
+     * @param tradeSite The trade site to query.
+     * @param currencyPair The currency pair to use.
+     * @param since Only trades newer than this timestamp (in microseconds) are returned.
+     * @param until Only trades not newer than this timestamp (in microseconds) are returned.
+     *
+     * @return The trades in the time range, sorted by timestamp.
+     */
+    public List<Trade> getTrades( TradeSite tradeSite, CurrencyPair currencyPair, long since, long until) {
+
+	List<Trade> result = new ArrayList<Trade>();
+
+	if( _activated && openConnection()) {
+
+	    PreparedStatement statement = null;
+
+	    try {
+		statement = _connection.prepareStatement( "SELECT siteid, timestamp, price, amount FROM trades"
+							  + " WHERE tradesite=? AND currencypair=? AND timestamp>? AND timestamp<=?"
+							  + " ORDER BY timestamp");
+
+		statement.setString( 1, tradeSite.getName());
+		statement.setString( 2, currencyPair.getName());
+		statement.setLong( 3, since);
+		statement.setLong( 4, until);
+
+		ResultSet resultSet = statement.executeQuery();
+
+		while( resultSet.next()) {
+
+		    // The type of the trades is not stored in the database.
+		    result.add( new StoredTrade( currencyPair
+						 , resultSet.getString( 1)
+						 , resultSet.getLong( 2)
+						 , new Price( resultSet.getString( 3))
+						 , new Amount( resultSet.getString( 4))
+						 , TradeType.Unknown));
+		}
+
+	    } catch( SQLException se) {
+		LogUtils.getInstance().getLogger().error( "Error while reading trades from the database: " + se);
+	    } finally {
+		closeStatement( statement);
+	    }
+	}
+
+	return result;
+    }
+
     /**
      * Merge a given list of trades into the database.
      *
@@ -376,14 +539,210 @@ public class CachePersistenceMySQL implements CachePersistence {
      */
     public void merge( Trade [] trades) {
 
-	// The following code is simple, but not very efficient, since it might be better if a whole set of
-	// trades is neer than the newest trade in the database and then insert all the trades at once.
-	for( int index=0; index < trades.length; ++index) {
+	if( ! _activated) {
+	    return;
+	}
+
+	// Group the trades by trade site and currency pair, so each group is merged in one transaction.
+	Map<String, List<Trade>> groups = new LinkedHashMap<String, List<Trade>>();
+
+	for( Trade currentTrade : trades) {
+
+	    if( currentTrade instanceof CryptoCoinTrade) {
 
-	    if( ! contains( trades[ index])) {  // If this trade is not in the database.
-		add( trades[ index]);           // add this trade to the database.
+		CryptoCoinTrade ctr = (CryptoCoinTrade)currentTrade;
+
+		String key = ctr.getSite().getName() + "/" + ctr.getCurrencyPair().getName();
+
+		List<Trade> group = groups.get( key);
+
+		if( group == null) {
+		    groups.put( key, group = new ArrayList<Trade>());
+		}
+
+		group.add( ctr);
+
+	    } else {
+		LogUtils.getInstance().getLogger().error( "CachePersistenceMysql.merge() can only store CryptoCoinTrade objects for now!");
 	    }
 	}
+
+	for( List<Trade> currentGroup : groups.values()) {
+
+	    CryptoCoinTrade firstTrade = (CryptoCoinTrade)currentGroup.get( 0);
+
+	    merge( firstTrade.getSite(), firstTrade.getCurrencyPair(), currentGroup);
+	}
+    }
+
+    /**
+     * Merge trades of a trade site and currency pair into the database. The trades are
+     * inserted in batches within a single transaction. Trades, that are already in the
+     * database, are skipped via the primary key, so no lookups are required.
+     *
+     * @param tradeSite The trade site of the trades.
+     * @param currencyPair The currency pair of the trades.
+     * @param trades The trades to merge.
+     *
+     * @return true, if the trades were merged. false otherwise.
+     */
+    public boolean merge( TradeSite tradeSite, CurrencyPair currencyPair, List<Trade> trades) {
+
+	return merge( tradeSite.getName(), currencyPair.getName(), trades);
+    }
+
+    /**
+     * Merge trades of a trade site and currency pair into the database.
+     *
+     * @param tradeSiteName The name of the trade site of the trades.
+     * @param currencyPairName The name of the currency pair of the trades.
+     * @param trades The trades to merge.
+     *
+     * @return true, if the trades were merged. false otherwise.
+     */
+    boolean merge( String tradeSiteName, String currencyPairName, List<Trade> trades) {
+
+	if( ! _activated || trades.isEmpty()) {
+	    return true;  // Nothing to do.
+	}
+
+	if( ! openConnection()) {
+	    return false;
+	}
+
+	PreparedStatement statement = null;
+
+	try {
+	    _connection.setAutoCommit( false);
+
+	    statement = _connection.prepareStatement( INSERT_STATEMENT);
+
+	    int batchSize = 0;
+
+	    for( Trade currentTrade : trades) {
+
+		statement.setString( 1, tradeSiteName);
+		statement.setString( 2, currencyPairName);
+		statement.setString( 3, getSiteId( currentTrade));
+		statement.setLong( 4, currentTrade.getTimestamp());
+		statement.setString( 5, currentTrade.getPrice().toString());
+		statement.setString( 6, currentTrade.getAmount().toString());
+
+		statement.addBatch();
+
+		if( ++batchSize == BATCH_SIZE) {  // Send full batches right away.
+
+		    statement.executeBatch();
+
+		    batchSize = 0;
+		}
+	    }
+
+	    if( batchSize > 0) {
+		statement.executeBatch();
+	    }
+
+	    _connection.commit();
+
+	    long newestTimestamp = -1L;
+
+	    for( Trade currentTrade : trades) {
+		newestTimestamp = Math.max( newestTimestamp, currentTrade.getTimestamp());
+	    }
+
+	    updateNewestTimestamp( tradeSiteName + "/" + currencyPairName, newestTimestamp);
+
+	    return true;  // Trades merged.
+
+	} catch( SQLException se) {
+
+	    LogUtils.getInstance().getLogger().error( "Error while merging trades into the database: " + se);
+
+	    try {
+		_connection.rollback();
+	    } catch( SQLException rse) {
+		LogUtils.getInstance().getLogger().error( "Error while rolling back the merged trades: " + rse);
+	    }
+
+	} finally {
+
+	    closeStatement( statement);
+
+	    try {
+		_connection.setAutoCommit( true);
+	    } catch( SQLException se) {
+		LogUtils.getInstance().getLogger().error( "Error while resetting the auto commit mode: " + se);
+	    }
+	}
+
+	return false;  // An error occured.
+    }
+
+    /**
+     * Connect to the database, if there is no connection yet, and create the missing tables.
+     *
+     * @return true, if there is a connection to the database. false otherwise.
+     */
+    private boolean openConnection() {
+
+	if( _connection == null) {
+
+	    connect();
+
+	    if( _connection == null) {
+		return false;
+	    }
+
+	    if( ! checkForTables()) {
+		createTables();
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * Remove all the trades of a trade site from the database.
+     *
+     * @param tradeSiteName The name of the trade site.
+     *
+     * @return true, if the trades were removed. false otherwise.
+     */
+    boolean remove( String tradeSiteName) {
+
+	if( ! openConnection()) {
+	    return false;
+	}
+
+	PreparedStatement statement = null;
+
+	try {
+	    statement = _connection.prepareStatement( "DELETE FROM trades WHERE tradesite=?");
+
+	    statement.setString( 1, tradeSiteName);
+
+	    statement.executeUpdate();
+
+	    synchronized( _newestTimestamps) {
+
+		// Forget the newest timestamps of the removed trades.
+		for( Iterator<String> keyIterator = _newestTimestamps.keySet().iterator(); keyIterator.hasNext(); ) {
+
+		    if( keyIterator.next().startsWith( tradeSiteName + "/")) {
+			keyIterator.remove();
+		    }
+		}
+	    }
+
+	    return true;  // Trades removed.
+
+	} catch( SQLException se) {
+	    LogUtils.getInstance().getLogger().error( "Error while removing trades from the database: " + se);
+	} finally {
+	    closeStatement( statement);
+	}
+
+	return false;  // An error occured.
     }
 
     /**
@@ -423,4 +782,22 @@ public class CachePersistenceMySQL implements CachePersistence {
 	    _activated = currentSetting.equals( "true");  // Get the hostname from the settings.
 	}       
     }
+
+    /**
+     * Raise the in-memory newest timestamp of a trade site and currency pair.
+     *
+     * @param key The trade site name and currency pair name, separated by a slash.
+     * @param timestamp The timestamp of a stored trade, or -1 if there are no trades.
+     */
+    private void updateNewestTimestamp( String key, long timestamp) {
+
+	synchronized( _newestTimestamps) {
+
+	    Long newestTimestamp = _newestTimestamps.get( key);
+
+	    if( ( newestTimestamp == null) || ( newestTimestamp < timestamp)) {
+		_newestTimestamps.put( key, timestamp);
+	    }
+	}
+    }
 }
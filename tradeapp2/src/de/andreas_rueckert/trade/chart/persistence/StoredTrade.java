@@ -0,0 +1,143 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.persistence;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeType;
+
+
+/**
+ * A trade, that was read back from a cache persistence.
+ */
+class StoredTrade implements Trade {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The traded amount.
+     */
+    private final Amount _amount;
+
+    /**
+     * The traded currency pair.
+     */
+    private final CurrencyPair _currencyPair;
+
+    /**
+     * The id of the trade on the trade site.
+     */
+    private final String _id;
+
+    /**
+     * The price of the trade.
+     */
+    private final Price _price;
+
+    /**
+     * The timestamp of the trade in microseconds.
+     */
+    private final long _timestamp;
+
+    /**
+     * The type of the trade.
+     */
+    private final TradeType _type;
+
+
+    // Constructors
+
+    /**
+     * Create a new stored trade.
+     *
+     * @param currencyPair The traded currency pair.
+     * @param id The id of the trade on the trade site.
+     * @param timestamp The timestamp of the trade in microseconds.
+     * @param price The price of the trade.
+     * @param amount The traded amount.
+     * @param type The type of the trade.
+     */
+    StoredTrade( CurrencyPair currencyPair, String id, long timestamp, Price price, Amount amount, TradeType type) {
+
+	_currencyPair = currencyPair;
+	_id = id;
+	_timestamp = timestamp;
+	_price = price;
+	_amount = amount;
+	_type = type;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the traded amount.
+     *
+     * @return The traded amount.
+     */
+    public Amount getAmount() {
+
+	return _amount;
+    }
+
+    /**
+     * Get the traded currency pair.
+     *
+     * @return The traded currency pair.
+     */
+    public CurrencyPair getCurrencyPair() {
+
+	return _currencyPair;
+    }
+
+    /**
+     * Get the id of the trade.
+     *
+     * @return The id of the trade on the trade site.
+     */
+    public String getId() {
+
+	return _id;
+    }
+
+    /**
+     * Get the price of the trade.
+     *
+     * @return The price of the trade.
+     */
+    public Price getPrice() {
+
+	return _price;
+    }
+
+    /**
+     * Get the timestamp of the trade.
+     *
+     * @return The timestamp of the trade in microseconds.
+     */
+    public long getTimestamp() {
+
+	return _timestamp;
+    }
+
+    /**
+     * Get the type of the trade.
+     *
+     * @return The type of the trade.
+     */
+    public TradeType getType() {
+
+	return _type;
+    }
+}
@@ -0,0 +1,816 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.persistence;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeType;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * The trades of one currency pair on one trade site, stored as memory mapped,
+ * append-only column files in a directory:
+ *
+ * timestamp.col : a row count header, then 1 long per trade (microseconds, ascending).
+ * price.col     : 1 long per trade (the price with SCALE decimal places).
+ * amount.col    : 1 long per trade (the amount with SCALE decimal places).
+ * id.col        : ID_WIDTH bytes per trade (the utf-8 site id, padded with 0 bytes).
+ * type.col      : 1 byte per trade (the ordinal of the trade type).
+ *
+ * The row count in the header is written after the rows, so a crash while
+ * appending never exposes half written trades. A merge, that has to rewrite
+ * stored rows, first writes the new rows to a journal file and commits it by
+ * renaming it to JOURNAL_NAME. Then the rows are rewritten in place and the
+ * journal is deleted. If the process dies during the rewrite, the committed
+ * journal is replayed, when the columns are opened again.
+ */
+class TradeColumns {
+
+    // Static variables
+
+    /**
+     * The size of the row count header in the timestamp column.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The maximum length of a trade id in bytes. Longer ids are truncated.
+     */
+    static final int ID_WIDTH = 32;
+
+    /**
+     * The name of the committed journal of a rewrite.
+     */
+    static final String JOURNAL_NAME = "rewrite.journal";
+
+    /**
+     * Every INDEX_INTERVAL-th timestamp is kept in the sparse index.
+     */
+    static final int INDEX_INTERVAL = 1024;
+
+    /**
+     * The number of rows, that are mapped for a new column file.
+     */
+    private static final int INITIAL_CAPACITY = 4096;
+
+    /**
+     * The maximum number of rows, so the id column still fits into a single mapping.
+     */
+    private static final int MAXIMUM_CAPACITY = Integer.MAX_VALUE / ID_WIDTH;
+
+    /**
+     * The number of decimal places of stored prices and amounts.
+     */
+    static final int SCALE = 8;
+
+    /**
+     * The charset of the trade ids.
+     */
+    private static final Charset UTF8 = Charset.forName( "UTF-8");
+
+
+    // Instance variables
+
+    /**
+     * The mapped amount column.
+     */
+    private MappedByteBuffer _amounts;
+
+    /**
+     * The number of rows, that fit into the current mappings.
+     */
+    private int _capacity;
+
+    /**
+     * The currency pair of the stored trades.
+     */
+    private final CurrencyPair _currencyPair;
+
+    /**
+     * The directory of the column files.
+     */
+    private final File _directory;
+
+    /**
+     * The column files (timestamp, price, amount, id, type).
+     */
+    private final RandomAccessFile [] _files = new RandomAccessFile[ 5];
+
+    /**
+     * The mapped id column.
+     */
+    private MappedByteBuffer _ids;
+
+    /**
+     * The sparse timestamp index with the timestamp of every INDEX_INTERVAL-th row.
+     */
+    private long [] _index = new long[ 16];
+
+    /**
+     * The number of used entries in the sparse index.
+     */
+    private int _indexSize = 0;
+
+    /**
+     * The mapped price column.
+     */
+    private MappedByteBuffer _prices;
+
+    /**
+     * The number of stored trades.
+     */
+    private int _rowCount = 0;
+
+    /**
+     * The mapped timestamp column (with the row count header).
+     */
+    private MappedByteBuffer _timestamps;
+
+    /**
+     * The mapped type column.
+     */
+    private MappedByteBuffer _types;
+
+
+    // Constructors
+
+    /**
+     * Open the column files in a directory and create them, if necessary.
+     *
+     * @param directory The directory of the column files.
+     * @param currencyPair The currency pair of the stored trades.
+     *
+     * @throws IOException if the files cannot be opened or are damaged.
+     */
+    TradeColumns( File directory, CurrencyPair currencyPair) throws IOException {
+
+	_currencyPair = currencyPair;
+	_directory = directory;
+
+	if( ! directory.isDirectory() && ! directory.mkdirs()) {
+	    throw new IOException( "Cannot create trade directory " + directory);
+	}
+
+	String [] columnNames = { "timestamp", "price", "amount", "id", "type" };
+
+	for( int currentColumn = 0; currentColumn < columnNames.length; ++currentColumn) {
+	    _files[ currentColumn] = new RandomAccessFile( new File( directory, columnNames[ currentColumn] + ".col"), "rw");
+	}
+
+	// Map at least the rows, that are already in the files.
+	long storedRows = Math.max( 0L, ( _files[ 0].length() - HEADER_SIZE) / 8);
+
+	map( (int)Math.min( MAXIMUM_CAPACITY, Math.max( INITIAL_CAPACITY, storedRows)));
+
+	long rowCount = _timestamps.getLong( 0);
+
+	if( ( rowCount < 0) || ( rowCount > _capacity)) {
+
+	    close();
+
+	    throw new IOException( "Damaged trade columns in " + directory + " (" + rowCount + " rows)");
+	}
+
+	_rowCount = (int)rowCount;
+
+	rebuildIndex();
+
+	replayJournal();  // Complete a rewrite, that was interrupted by a crash.
+    }
+
+
+    // Methods
+
+    /**
+     * Append new trades to the columns without checking for duplicates. If the trades
+     * are not sorted or older than the newest row, they are merged instead.
+     *
+     * @param trades The trades to append.
+     *
+     * @throws IOException if the columns cannot grow.
+     */
+    synchronized void append( List<Trade> trades) throws IOException {
+
+	long previousTimestamp = getNewestTimestamp();
+
+	for( Trade currentTrade : trades) {
+
+	    if( currentTrade.getTimestamp() < previousTimestamp) {  // Out of order, so merge the trades.
+
+		merge( trades);
+
+		return;
+	    }
+
+	    previousTimestamp = currentTrade.getTimestamp();
+	}
+
+	appendRows( trades);
+    }
+
+    /**
+     * Append trades to the columns.
+     *
+     * @param trades The trades to append. They must be sorted by timestamp and not older than the newest row.
+     *
+     * @throws IOException if the columns cannot grow.
+     */
+    private void appendRows( List<Trade> trades) throws IOException {
+
+	int newRowCount = _rowCount + trades.size();
+
+	ensureCapacity( newRowCount);
+
+	int currentRow = _rowCount;
+
+	for( Trade currentTrade : trades) {
+	    writeRow( currentRow++, currentTrade);
+	}
+
+	setRowCount( newRowCount);
+    }
+
+    /**
+     * Write all the changes to the disk and close the column files.
+     */
+    synchronized void close() {
+
+	for( MappedByteBuffer currentBuffer : new MappedByteBuffer [] { _timestamps, _prices, _amounts, _ids, _types }) {
+	    if( currentBuffer != null) {
+		currentBuffer.force();
+	    }
+	}
+
+	for( RandomAccessFile currentFile : _files) {
+	    if( currentFile != null) {
+		try {
+		    currentFile.close();
+		} catch( IOException ioe) {
+		    // The mappings are already written, so there is nothing left to lose.
+		}
+	    }
+	}
+    }
+
+    /**
+     * Check, if a trade with a given timestamp and id is already stored.
+     *
+     * @param timestamp The timestamp of the trade.
+     * @param id The normalized id of the trade.
+     *
+     * @return true, if the trade is already stored.
+     */
+    private boolean contains( long timestamp, String id) {
+
+	for( int currentRow = findFirstRow( timestamp); ( currentRow < _rowCount) && ( getTimestamp( currentRow) == timestamp); ++currentRow) {
+
+	    if( getId( currentRow).equals( id)) {
+		return true;
+	    }
+	}
+
+	return false;
+    }
+
+    /**
+     * Convert a price or an amount to a fixed point long.
+     *
+     * @param value The value to convert.
+     *
+     * @return The value with SCALE decimal places as a long.
+     *
+     * @throws IOException if the value does not fit into a long.
+     */
+    private static long encodeDecimal( BigDecimal value) throws IOException {
+
+	try {
+	    return value.setScale( SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+	} catch( ArithmeticException ae) {
+	    throw new IOException( "Value " + value + " is too large for a trade column");
+	}
+    }
+
+    /**
+     * Make sure, that a number of rows fit into the mapped columns.
+     *
+     * @param rows The required number of rows.
+     *
+     * @throws IOException if the columns cannot be remapped.
+     */
+    private void ensureCapacity( int rows) throws IOException {
+
+	if( rows > _capacity) {
+
+	    if( rows > MAXIMUM_CAPACITY) {
+		throw new IOException( "Too many trades for the trade columns of " + _currencyPair.getName());
+	    }
+
+	    long newCapacity = _capacity;
+
+	    while( newCapacity < rows) {
+		newCapacity *= 2;
+	    }
+
+	    map( (int)Math.min( MAXIMUM_CAPACITY, newCapacity));
+	}
+    }
+
+    /**
+     * Find the first row with a timestamp not older than a given timestamp.
+     * The sparse index narrows the search to a single block of INDEX_INTERVAL rows,
+     * so only a few pages of the timestamp column are touched.
+     *
+     * @param timestamp The timestamp to search for.
+     *
+     * @return The index of the first row with a timestamp >= the given timestamp, or the row count.
+     */
+    private int findFirstRow( long timestamp) {
+
+	// Count the blocks, that start with an older timestamp.
+	int low = 0;
+	int high = _indexSize;
+
+	while( low < high) {
+
+	    int middle = ( low + high) >>> 1;
+
+	    if( _index[ middle] < timestamp) {
+		low = middle + 1;
+	    } else {
+		high = middle;
+	    }
+	}
+
+	if( low == 0) {  // Even the first row is not older.
+	    return 0;
+	}
+
+	// Search within the last block, that starts with an older timestamp.
+	low = ( low - 1) * INDEX_INTERVAL;
+	high = Math.min( low + INDEX_INTERVAL, _rowCount);
+
+	while( low < high) {
+
+	    int middle = ( low + high) >>> 1;
+
+	    if( getTimestamp( middle) < timestamp) {
+		low = middle + 1;
+	    } else {
+		high = middle;
+	    }
+	}
+
+	return low;
+    }
+
+    /**
+     * Get the id of a row.
+     *
+     * @param row The index of the row.
+     *
+     * @return The id of the trade in this row.
+     */
+    private String getId( int row) {
+
+	byte [] idBytes = new byte[ ID_WIDTH];
+
+	ByteBuffer idBuffer = _ids.duplicate();
+	idBuffer.position( row * ID_WIDTH);
+	idBuffer.get( idBytes);
+
+	int length = 0;
+
+	while( ( length < ID_WIDTH) && ( idBytes[ length] != 0)) {
+	    ++length;
+	}
+
+	return new String( idBytes, 0, length, UTF8);
+    }
+
+    /**
+     * Get the timestamp of the newest stored trade.
+     *
+     * @return The timestamp of the newest trade in microseconds, or -1 if there are no trades.
+     */
+    synchronized long getNewestTimestamp() {
+
+	return _rowCount == 0 ? -1L : getTimestamp( _rowCount - 1);
+    }
+
+    /**
+     * Get the number of stored trades.
+     *
+     * @return The number of stored trades.
+     */
+    synchronized int getRowCount() {
+
+	return _rowCount;
+    }
+
+    /**
+     * Get the timestamp of a row.
+     *
+     * @param row The index of the row.
+     *
+     * @return The timestamp of the trade in this row.
+     */
+    private long getTimestamp( int row) {
+
+	return _timestamps.getLong( HEADER_SIZE + row * 8);
+    }
+
+    /**
+     * Get the stored trades in a time range.
+     *
+     * @param since Only trades newer than this timestamp are returned.
+     * @param until Only trades not newer than this timestamp are returned.
+     *
+     * @return The trades in the time range, sorted by timestamp.
+     */
+    synchronized List<Trade> getTrades( long since, long until) {
+
+	int firstRow = since == Long.MAX_VALUE ? _rowCount : findFirstRow( since + 1);
+	int lastRow = until == Long.MAX_VALUE ? _rowCount : findFirstRow( until + 1);
+
+	return readRows( firstRow, lastRow);
+    }
+
+    /**
+     * Map the column files with a given capacity.
+     *
+     * @param capacity The number of rows to map.
+     *
+     * @throws IOException if the files cannot be mapped.
+     */
+    private void map( int capacity) throws IOException {
+
+	_timestamps = _files[ 0].getChannel().map( FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)capacity * 8);
+	_prices = _files[ 1].getChannel().map( FileChannel.MapMode.READ_WRITE, 0, (long)capacity * 8);
+	_amounts = _files[ 2].getChannel().map( FileChannel.MapMode.READ_WRITE, 0, (long)capacity * 8);
+	_ids = _files[ 3].getChannel().map( FileChannel.MapMode.READ_WRITE, 0, (long)capacity * ID_WIDTH);
+	_types = _files[ 4].getChannel().map( FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+	_capacity = capacity;
+    }
+
+    /**
+     * Merge trades into the columns. Trades, that are already stored, are skipped.
+     * Trades without an id cannot be told apart from other trades of the same time,
+     * so they are always added. Trades, that are not older than the newest row, are
+     * just appended. Older trades force a rewrite of the rows from the oldest new trade on.
+     *
+     * @param trades The trades to merge.
+     *
+     * @return The number of added trades.
+     *
+     * @throws IOException if the trades cannot be written.
+     */
+    synchronized int merge( List<Trade> trades) throws IOException {
+
+	List<Trade> sortedTrades = new ArrayList<Trade>( trades);
+
+	Collections.sort( sortedTrades, new Comparator<Trade>() {
+
+		public int compare( Trade trade1, Trade trade2) {
+
+		    return Long.compare( trade1.getTimestamp(), trade2.getTimestamp());
+		}
+	    });
+
+	long newestTimestamp = getNewestTimestamp();
+
+	List<Trade> newerTrades = new ArrayList<Trade>();
+	List<Trade> olderTrades = new ArrayList<Trade>();
+	Set<String> mergedTrades = new HashSet<String>();
+
+	for( Trade currentTrade : sortedTrades) {
+
+	    long timestamp = currentTrade.getTimestamp();
+	    String id = normalizeId( currentTrade.getId());
+
+	    boolean hasId = id.length() > 0;
+
+	    if( hasId && ! mergedTrades.add( timestamp + ":" + id)) {  // Duplicate within the merged trades.
+		continue;
+	    }
+
+	    if( timestamp > newestTimestamp) {
+
+		newerTrades.add( currentTrade);
+
+	    } else if( ! hasId || ! contains( timestamp, id)) {
+
+		if( timestamp == newestTimestamp) {
+		    newerTrades.add( currentTrade);
+		} else {
+		    olderTrades.add( currentTrade);
+		}
+	    }
+	}
+
+	if( olderTrades.isEmpty()) {
+
+	    appendRows( newerTrades);
+
+	} else {
+
+	    // Rewrite the rows from the oldest new trade on.
+	    int firstRow = findFirstRow( olderTrades.get( 0).getTimestamp());
+
+	    List<Trade> rewrittenTrades = readRows( firstRow, _rowCount);
+
+	    rewrittenTrades.addAll( olderTrades);
+	    rewrittenTrades.addAll( newerTrades);
+
+	    Collections.sort( rewrittenTrades, new Comparator<Trade>() {
+
+		    public int compare( Trade trade1, Trade trade2) {
+
+			return Long.compare( trade1.getTimestamp(), trade2.getTimestamp());
+		    }
+		});
+
+	    // Commit the new rows to the journal, before the stored rows are overwritten.
+	    writeJournal( firstRow, rewrittenTrades);
+
+	    rewriteRows( firstRow, rewrittenTrades);
+	}
+
+	return newerTrades.size() + olderTrades.size();
+    }
+
+    /**
+     * Convert a trade id to the stored form.
+     *
+     * @param id The id of the trade or null.
+     *
+     * @return The id as it is stored in the id column.
+     */
+    private static String normalizeId( String id) {
+
+	if( id == null) {
+	    return "";
+	}
+
+	byte [] idBytes = id.getBytes( UTF8);
+
+	return idBytes.length <= ID_WIDTH ? id : new String( idBytes, 0, ID_WIDTH, UTF8);
+    }
+
+    /**
+     * Read a range of rows as trades.
+     *
+     * @param firstRow The first row to read.
+     * @param lastRow The row after the last row to read.
+     *
+     * @return The trades in the rows.
+     */
+    private List<Trade> readRows( int firstRow, int lastRow) {
+
+	List<Trade> result = new ArrayList<Trade>( Math.max( 0, lastRow - firstRow));
+
+	TradeType [] types = TradeType.values();
+
+	for( int currentRow = firstRow; currentRow < lastRow; ++currentRow) {
+
+	    int typeOrdinal = _types.get( currentRow);
+
+	    result.add( new StoredTrade( _currencyPair
+					 , getId( currentRow)
+					 , getTimestamp( currentRow)
+					 , new Price( BigDecimal.valueOf( _prices.getLong( currentRow * 8), SCALE))
+					 , new Amount( BigDecimal.valueOf( _amounts.getLong( currentRow * 8), SCALE))
+					 , typeOrdinal < types.length ? types[ typeOrdinal] : TradeType.Unknown));
+	}
+
+	return result;
+    }
+
+    /**
+     * Rebuild the sparse index from the timestamp column.
+     */
+    private void rebuildIndex() {
+
+	_indexSize = 0;
+
+	updateIndex();
+    }
+
+    /**
+     * Complete a rewrite from a committed journal, if there is one.
+     *
+     * @throws IOException if the journal cannot be read or the rows cannot be written.
+     */
+    private void replayJournal() throws IOException {
+
+	new File( _directory, JOURNAL_NAME + ".tmp").delete();  // An uncommitted journal was never applied.
+
+	File journal = new File( _directory, JOURNAL_NAME);
+
+	if( ! journal.isFile()) {
+	    return;
+	}
+
+	DataInputStream input = new DataInputStream( new BufferedInputStream( new FileInputStream( journal)));
+
+	try {
+	    int firstRow = input.readInt();
+	    int rowCount = input.readInt();
+
+	    if( ( firstRow < 0) || ( firstRow > _rowCount) || ( rowCount < 0) || ( rowCount > MAXIMUM_CAPACITY - firstRow)) {
+		throw new IOException( "Damaged journal in " + _directory);
+	    }
+
+	    TradeType [] types = TradeType.values();
+
+	    List<Trade> trades = new ArrayList<Trade>( rowCount);
+
+	    for( int currentRow = 0; currentRow < rowCount; ++currentRow) {
+
+		long timestamp = input.readLong();
+		long price = input.readLong();
+		long amount = input.readLong();
+		String id = input.readUTF();
+		int typeOrdinal = input.readByte();
+
+		trades.add( new StoredTrade( _currencyPair
+					     , id
+					     , timestamp
+					     , new Price( BigDecimal.valueOf( price, SCALE))
+					     , new Amount( BigDecimal.valueOf( amount, SCALE))
+					     , ( typeOrdinal >= 0) && ( typeOrdinal < types.length) ? types[ typeOrdinal] : TradeType.Unknown));
+	    }
+
+	    rewriteRows( firstRow, trades);
+
+	} finally {
+	    input.close();
+	}
+    }
+
+    /**
+     * Overwrite the rows from a given row on, write them to the disk and delete the journal.
+     *
+     * @param firstRow The first overwritten row.
+     * @param trades The new trades from this row on, sorted by timestamp.
+     *
+     * @throws IOException if the rows cannot be written.
+     */
+    private void rewriteRows( int firstRow, List<Trade> trades) throws IOException {
+
+	ensureCapacity( firstRow + trades.size());
+
+	int currentRow = firstRow;
+
+	for( Trade currentTrade : trades) {
+	    writeRow( currentRow++, currentTrade);
+	}
+
+	// Drop the index entries of the rewritten rows.
+	_indexSize = Math.min( _indexSize, ( firstRow + INDEX_INTERVAL - 1) / INDEX_INTERVAL);
+	_rowCount = firstRow;
+
+	setRowCount( currentRow);
+
+	for( MappedByteBuffer currentBuffer : new MappedByteBuffer [] { _timestamps, _prices, _amounts, _ids, _types }) {
+	    currentBuffer.force();
+	}
+
+	new File( _directory, JOURNAL_NAME).delete();  // The rows are on the disk now.
+    }
+
+    /**
+     * Set the number of rows and publish them in the header.
+     *
+     * @param rowCount The new number of rows.
+     */
+    private void setRowCount( int rowCount) {
+
+	_rowCount = rowCount;
+
+	_timestamps.putLong( 0, rowCount);
+
+	updateIndex();
+    }
+
+    /**
+     * Add the index entries for new blocks of rows.
+     */
+    private void updateIndex() {
+
+	int indexSize = ( _rowCount + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+
+	if( indexSize > _index.length) {
+
+	    long [] newIndex = new long[ Math.max( indexSize, _index.length * 2)];
+
+	    System.arraycopy( _index, 0, newIndex, 0, _indexSize);
+
+	    _index = newIndex;
+	}
+
+	for( ; _indexSize < indexSize; ++_indexSize) {
+	    _index[ _indexSize] = getTimestamp( _indexSize * INDEX_INTERVAL);
+	}
+    }
+
+    /**
+     * Write the new rows of a rewrite to the journal and commit it.
+     *
+     * @param firstRow The first overwritten row.
+     * @param trades The new trades from this row on, sorted by timestamp.
+     *
+     * @throws IOException if the journal cannot be written.
+     */
+    private void writeJournal( int firstRow, List<Trade> trades) throws IOException {
+
+	File temporaryJournal = new File( _directory, JOURNAL_NAME + ".tmp");
+
+	FileOutputStream fileOutput = new FileOutputStream( temporaryJournal);
+
+	try {
+	    DataOutputStream output = new DataOutputStream( new BufferedOutputStream( fileOutput));
+
+	    output.writeInt( firstRow);
+	    output.writeInt( trades.size());
+
+	    for( Trade currentTrade : trades) {
+
+		output.writeLong( currentTrade.getTimestamp());
+		output.writeLong( encodeDecimal( currentTrade.getPrice()));
+		output.writeLong( encodeDecimal( currentTrade.getAmount()));
+		output.writeUTF( normalizeId( currentTrade.getId()));
+		output.writeByte( ( currentTrade.getType() == null ? TradeType.Unknown : currentTrade.getType()).ordinal());
+	    }
+
+	    output.flush();
+
+	    fileOutput.getFD().sync();  // The journal must be on the disk, before it is committed.
+
+	} finally {
+	    fileOutput.close();
+	}
+
+	// Renaming the journal commits the rewrite.
+	if( ! temporaryJournal.renameTo( new File( _directory, JOURNAL_NAME))) {
+
+	    temporaryJournal.delete();
+
+	    throw new IOException( "Cannot commit the journal in " + _directory);
+	}
+    }
+
+    /**
+     * Write a trade into a row.
+     *
+     * @param row The index of the row.
+     * @param trade The trade to write.
+     *
+     * @throws IOException if the price or amount do not fit into a column.
+     */
+    private void writeRow( int row, Trade trade) throws IOException {
+
+	_prices.putLong( row * 8, encodeDecimal( trade.getPrice()));
+	_amounts.putLong( row * 8, encodeDecimal( trade.getAmount()));
+
+	byte [] idBytes = normalizeId( trade.getId()).getBytes( UTF8);
+
+	ByteBuffer idBuffer = _ids.duplicate();
+	idBuffer.position( row * ID_WIDTH);
+	idBuffer.put( idBytes, 0, Math.min( idBytes.length, ID_WIDTH));
+	idBuffer.put( new byte[ Math.max( 0, ID_WIDTH - idBytes.length)]);
+
+	_types.put( row, (byte)( trade.getType() == null ? TradeType.Unknown : trade.getType()).ordinal());
+
+	_timestamps.putLong( HEADER_SIZE + row * 8, trade.getTimestamp());
+    }
+}
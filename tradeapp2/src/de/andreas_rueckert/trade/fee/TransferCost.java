@@ -0,0 +1,147 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.fee;
+
+import java.math.BigDecimal;
+
+
+/**
+ * This class holds the costs to move a currency in or out of a trade site.
+ */
+public class TransferCost {
+
+    // Static variables
+
+    /**
+     * The weight of a new observation of the withdrawal or deposit time.
+     */
+    private static final double OBSERVATION_WEIGHT = 0.2;
+
+
+    // Instance variables
+
+    /**
+     * The fixed fee for a deposit, or null if the trade site should compute it.
+     */
+    private final BigDecimal _depositFee;
+
+    /**
+     * The time until a deposit is confirmed in microseconds.
+     */
+    private volatile long _depositTime;
+
+    /**
+     * The typical drift of the price in percent per square root of an hour.
+     */
+    private final double _priceDrift;
+
+    /**
+     * The fixed fee for a withdrawal, or null if the trade site should compute it.
+     */
+    private final BigDecimal _withdrawalFee;
+
+    /**
+     * The time until a withdrawal is sent by the trade site in microseconds.
+     */
+    private volatile long _withdrawalTime;
+
+
+    // Constructors
+
+    /**
+     * Create a new transfer cost.
+     *
+     * @param withdrawalFee The fixed fee for a withdrawal or null.
+     * @param withdrawalTime The time until a withdrawal is sent in microseconds.
+     * @param depositFee The fixed fee for a deposit or null.
+     * @param depositTime The time until a deposit is confirmed in microseconds.
+     * @param priceDrift The typical drift of the price in percent per square root of an hour.
+     */
+    public TransferCost( BigDecimal withdrawalFee, long withdrawalTime, BigDecimal depositFee, long depositTime, double priceDrift) {
+
+	_withdrawalFee = withdrawalFee;
+	_withdrawalTime = withdrawalTime;
+	_depositFee = depositFee;
+	_depositTime = depositTime;
+	_priceDrift = priceDrift;
+    }
+
+
+    // Methods
+
+    /**
+     * Add an observed deposit time.
+     *
+     * @param depositTime The observed time until a deposit was confirmed in microseconds.
+     */
+    synchronized void addObservedDepositTime( long depositTime) {
+
+	_depositTime = (long)( ( 1.0 - OBSERVATION_WEIGHT) * _depositTime + OBSERVATION_WEIGHT * depositTime);
+    }
+
+    /**
+     * Add an observed withdrawal time.
+     *
+     * @param withdrawalTime The observed time until a withdrawal was sent in microseconds.
+     */
+    synchronized void addObservedWithdrawalTime( long withdrawalTime) {
+
+	_withdrawalTime = (long)( ( 1.0 - OBSERVATION_WEIGHT) * _withdrawalTime + OBSERVATION_WEIGHT * withdrawalTime);
+    }
+
+    /**
+     * Get the fixed fee for a deposit.
+     *
+     * @return The fixed fee for a deposit, or null if the trade site should compute it.
+     */
+    public BigDecimal getDepositFee() {
+
+	return _depositFee;
+    }
+
+    /**
+     * Get the time until a deposit is confirmed.
+     *
+     * @return The time until a deposit is confirmed in microseconds.
+     */
+    public long getDepositTime() {
+
+	return _depositTime;
+    }
+
+    /**
+     * Get the typical drift of the price.
+     *
+     * @return The typical drift of the price in percent per square root of an hour.
+     */
+    public double getPriceDrift() {
+
+	return _priceDrift;
+    }
+
+    /**
+     * Get the fixed fee for a withdrawal.
+     *
+     * @return The fixed fee for a withdrawal, or null if the trade site should compute it.
+     */
+    public BigDecimal getWithdrawalFee() {
+
+	return _withdrawalFee;
+    }
+
+    /**
+     * Get the time until a withdrawal is sent by the trade site.
+     *
+     * @return The time until a withdrawal is sent in microseconds.
+     */
+    public long getWithdrawalTime() {
+
+	return _withdrawalTime;
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.fee;
+
+import de.andreas_rueckert.persistence.SortedProperties;
+import de.andreas_rueckert.trade.currency.Currency;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.util.LogUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * This class models the costs and the time to move coins between trade sites.
+ *
+ * The costs are read from the file ~/.tradeapp/transfercosts.properties with
+ * entries like
+ *
+ * BTCe.BTC.withdrawalFee=0.001
+ * BTCe.BTC.withdrawalTime=600
+ * Bitfinex.BTC.depositFee=0
+ * Bitfinex.BTC.depositTime=3600
+ * Bitfinex.BTC.priceDrift=1.5
+ *
+ * The times are given in seconds, the price drift in percent per square root of an hour.
+ * Missing fees are computed by the trade sites, missing times and drifts use defaults.
+ * The withdrawal and deposit times are updated from the observed transfers and written back to the file.
+ * Since no bot submits transfers yet, no times are observed, and only the file and the defaults are used.
+ */
+public class TransferCostModel {
+
+    // Static variables
+
+    /**
+     * The default time until a deposit is confirmed in microseconds (6 confirmations of a bitcoin block).
+     */
+    private static final long DEFAULT_DEPOSIT_TIME = 60L * 60L * 1000000L;
+
+    /**
+     * The default drift of the price in percent per square root of an hour.
+     */
+    private static final double DEFAULT_PRICE_DRIFT = 1.0;
+
+    /**
+     * The default time until a withdrawal is sent in microseconds.
+     */
+    private static final long DEFAULT_WITHDRAWAL_TIME = 10L * 60L * 1000000L;
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static TransferCostModel _instance = null;
+
+
+    // Instance variables
+
+    /**
+     * The cached transfer costs for each trade site and currency.
+     */
+    private final ConcurrentMap<String, TransferCost> _costs = new ConcurrentHashMap<String, TransferCost>();
+
+    /**
+     * The filename of the property file.
+     */
+    private final String _filename;
+
+    /**
+     * The properties from the file.
+     */
+    private final SortedProperties _properties = new SortedProperties();
+
+
+    // Constructors
+
+    /**
+     * Create a new transfer cost model and read the property file.
+     */
+    private TransferCostModel() {
+
+	_filename = System.getProperty( "user.home") + "/.tradeapp/" + "transfercosts.properties";
+
+	try {
+
+	    FileInputStream input = new FileInputStream( _filename);
+
+	    try {
+
+		_properties.load( input);
+
+	    } finally {
+
+		input.close();
+	    }
+
+	} catch( FileNotFoundException fnfe) {
+
+	    LogUtils.getInstance().getLogger().info( "No transfer costs in " + _filename + ". Using defaults.");
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot read transfer costs from " + _filename + ": " + ioe);
+	}
+    }
+
+
+    // Methods
+
+    /**
+     * Add an observed transfer between 2 trade sites. The withdrawal time updates the
+     * start site, and the rest of the transfer time the deposit time of the target site.
+     *
+     * @param startSite The trade site, that the coins were withdrawn from.
+     * @param targetSite The trade site, that the coins were deposited to.
+     * @param currency The transferred currency.
+     * @param withdrawalTime The time from the withdrawal request until the coins were sent in microseconds,
+     *                       or -1, if the end of the withdrawal was not observed.
+     * @param transferTime The time from the withdrawal request until the confirmed deposit in microseconds.
+     */
+    public void addObservedTransferTime( TradeSite startSite, TradeSite targetSite, Currency currency, long withdrawalTime, long transferTime) {
+
+	TransferCost startCost = getTransferCost( startSite, currency);
+	TransferCost targetCost = getTransferCost( targetSite, currency);
+
+	long depositTime = Math.max( 0L, transferTime - ( withdrawalTime < 0L ? startCost.getWithdrawalTime() : withdrawalTime));
+
+	if( withdrawalTime >= 0L) {
+
+	    startCost.addObservedWithdrawalTime( Math.min( withdrawalTime, transferTime));
+	}
+
+	targetCost.addObservedDepositTime( depositTime);
+
+	synchronized( _properties) {
+
+	    if( withdrawalTime >= 0L) {
+
+		_properties.setProperty( getKey( startSite, currency) + ".withdrawalTime", "" + ( startCost.getWithdrawalTime() / 1000000L));
+	    }
+
+	    _properties.setProperty( getKey( targetSite, currency) + ".depositTime", "" + ( targetCost.getDepositTime() / 1000000L));
+
+	    try {
+
+		new File( _filename).getParentFile().mkdirs();  // Make sure, that the directory exists.
+
+		FileOutputStream output = new FileOutputStream( _filename);
+
+		try {
+
+		    _properties.store( output, null);
+
+		} finally {
+
+		    output.close();
+		}
+
+	    } catch( IOException ioe) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot write transfer costs to " + _filename + ": " + ioe);
+	    }
+	}
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized TransferCostModel getInstance() {
+
+	if( _instance == null) {
+
+	    _instance = new TransferCostModel();
+	}
+
+	return _instance;
+    }
+
+    /**
+     * Get the key of a trade site and currency.
+     *
+     * @param tradeSite The trade site.
+     * @param currency The currency.
+     *
+     * @return The key for the cache and the property file.
+     */
+    private static String getKey( TradeSite tradeSite, Currency currency) {
+
+	return tradeSite.getName() + "." + currency.getCode();
+    }
+
+    /**
+     * Get a number from the property file.
+     *
+     * @param key The key of the property.
+     *
+     * @return The number, or null if there is no valid number for the key.
+     */
+    private BigDecimal getNumber( String key) {
+
+	String value;
+
+	synchronized( _properties) {
+
+	    value = _properties.getProperty( key);
+	}
+
+	if( ( value == null) || ( value.trim().length() == 0)) {
+
+	    return null;
+	}
+
+	try {
+
+	    return new BigDecimal( value.trim());
+
+	} catch( NumberFormatException nfe) {
+
+	    LogUtils.getInstance().getLogger().error( "Invalid transfer cost " + key + "=" + value + " in " + _filename);
+
+	    return null;
+	}
+    }
+
+    /**
+     * Get the expected relative drift of the price, while coins are moved between 2 trade sites.
+     * The drift of the start site covers the withdrawal, and the drift of the target site
+     * the deposit, so both ends of the transfer add to the risk.
+     *
+     * @param startSite The trade site, that the coins are withdrawn from.
+     * @param targetSite The trade site, that the coins are deposited to.
+     * @param currency The transferred currency.
+     *
+     * @return The expected drift of the price as a fraction between 0 and 1.
+     */
+    public double getPriceRisk( TradeSite startSite, TradeSite targetSite, Currency currency) {
+
+	TransferCost startCost = getTransferCost( startSite, currency);
+	TransferCost targetCost = getTransferCost( targetSite, currency);
+
+	// The drifts are given per square root of an hour, so the variances add up with the time.
+	double startDrift = startCost.getPriceDrift() / 100.0;
+	double targetDrift = targetCost.getPriceDrift() / 100.0;
+
+	double variance = startDrift * startDrift * startCost.getWithdrawalTime() / ( 3600.0 * 1000000.0)
+	    + targetDrift * targetDrift * targetCost.getDepositTime() / ( 3600.0 * 1000000.0);
+
+	return Math.min( 1.0, Math.sqrt( variance));
+    }
+
+    /**
+     * Get the transfer costs of a currency on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param currency The currency.
+     *
+     * @return The transfer costs.
+     */
+    public TransferCost getTransferCost( TradeSite tradeSite, Currency currency) {
+
+	String key = getKey( tradeSite, currency);
+
+	TransferCost cost = _costs.get( key);
+
+	if( cost == null) {
+
+	    BigDecimal withdrawalTime = getNumber( key + ".withdrawalTime");
+	    BigDecimal depositTime = getNumber( key + ".depositTime");
+	    BigDecimal priceDrift = getNumber( key + ".priceDrift");
+
+	    cost = new TransferCost( getNumber( key + ".withdrawalFee")
+				     , withdrawalTime == null ? DEFAULT_WITHDRAWAL_TIME : withdrawalTime.longValue() * 1000000L
+				     , getNumber( key + ".depositFee")
+				     , depositTime == null ? DEFAULT_DEPOSIT_TIME : depositTime.longValue() * 1000000L
+				     , priceDrift == null ? DEFAULT_PRICE_DRIFT : priceDrift.doubleValue());
+
+	    TransferCost existingCost = _costs.putIfAbsent( key, cost);
+
+	    if( existingCost != null) {  // Another thread was faster.
+
+		cost = existingCost;
+	    }
+	}
+
+	return cost;
+    }
+
+    /**
+     * Get the expected time to move coins between 2 trade sites.
+     *
+     * @param startSite The trade site, that the coins are withdrawn from.
+     * @param targetSite The trade site, that the coins are deposited to.
+     * @param currency The transferred currency.
+     *
+     * @return The withdrawal time of the start site plus the deposit time of the target site in microseconds.
+     */
+    public long getTransferTime( TradeSite startSite, TradeSite targetSite, Currency currency) {
+
+	return getTransferCost( startSite, currency).getWithdrawalTime() + getTransferCost( targetSite, currency).getDepositTime();
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.language;
+
+
+/**
+ * Throw an exception, if a cctl rule set could not be compiled.
+ */
+public class CompileException extends Exception {
+
+    // Static variables
+
+
+    // Instance variables
+
+
+    // Constructors
+
+    /**
+     * Create a new exception for an error in a given line of the source.
+     *
+     * @param line The line of the error (starting with 1).
+     * @param message The error message.
+     */
+    public CompileException( int line, String message) {
+	super( "Line " + line + ": " + message);
+    }
+
+    /**
+     * Create a new exception without a source position.
+     *
+     * @param message The error message.
+     */
+    public CompileException( String message) {
+	super( message);
+    }
+
+
+    // Methods
+}
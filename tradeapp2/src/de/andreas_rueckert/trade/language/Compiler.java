@@ -9,16 +9,219 @@
 package de.andreas_rueckert.trade.language;
 
 import de.andreas_rueckert.trade.language.codegenerator.CodeGenerator;
+import de.andreas_rueckert.trade.language.parser.Node;
+import de.andreas_rueckert.trade.language.parser.Parser;
+import de.andreas_rueckert.util.LogUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.eclipse.jdt.internal.compiler.tool.EclipseCompiler;
 
 
 /**
  * This class uses a compiler and a code generator to compile trade rules.
+ *
+ * A cctl rule set is compiled into a java class, that implements the
+ * TradeRuleSet interface. The class is compiled in memory with the java
+ * compiler of the JDK or, if the app runs on a JRE, with the eclipse
+ * compiler from the libs. The rule sets can also be converted to drools
+ * drl files.
  */
 public class Compiler {
 
+    // Inner classes
+
+    /**
+     * A class loader for the classes of one compiled rule set.
+     */
+    class MemoryClassLoader extends ClassLoader {
+
+	// Instance variables
+
+	/**
+	 * The bytecode of the classes, indexed by their binary name.
+	 */
+	private final Map< String, byte []> _bytecode;
+
+
+	// Constructors
+
+	/**
+	 * Create a new class loader for a compiled rule set.
+	 *
+	 * @param bytecode The bytecode of the classes, indexed by their binary name.
+	 */
+	MemoryClassLoader( Map< String, byte []> bytecode) {
+
+	    super( Compiler.class.getClassLoader());
+
+	    _bytecode = bytecode;
+	}
+
+
+	// Methods
+
+	/**
+	 * Find a compiled class.
+	 *
+	 * @param className The binary name of the class.
+	 *
+	 * @return The class.
+	 *
+	 * @throws ClassNotFoundException if there is no bytecode for this class.
+	 */
+	@Override protected Class<?> findClass( String className) throws ClassNotFoundException {
+
+	    byte [] bytecode = _bytecode.get( className);
+
+	    if( bytecode == null) {
+
+		throw new ClassNotFoundException( className);
+	    }
+
+	    return defineClass( className, bytecode, 0, bytecode.length);
+	}
+    }
+
+    /**
+     * A file manager, that writes the compiled classes to memory.
+     */
+    class MemoryFileManager extends ForwardingJavaFileManager< StandardJavaFileManager> {
+
+	// Instance variables
+
+	/**
+	 * The compiled classes, indexed by their binary name.
+	 */
+	private final Map< String, ByteArrayOutputStream> _compiledClasses = new HashMap< String, ByteArrayOutputStream>();
+
+
+	// Constructors
+
+	/**
+	 * Create a new memory file manager.
+	 *
+	 * @param fileManager The standard file manager to read the libraries.
+	 */
+	MemoryFileManager( StandardJavaFileManager fileManager) {
+
+	    super( fileManager);
+	}
+
+
+	// Methods
+
+	/**
+	 * Get the compiled classes.
+	 *
+	 * @return The bytecode of the compiled classes, indexed by their binary name.
+	 */
+	Map< String, byte []> getCompiledClasses() {
+
+	    Map< String, byte []> result = new HashMap< String, byte []>();
+
+	    for( Map.Entry< String, ByteArrayOutputStream> currentClass : _compiledClasses.entrySet()) {
+
+		result.put( currentClass.getKey(), currentClass.getValue().toByteArray());
+	    }
+
+	    return result;
+	}
+
+	/**
+	 * Get an output file for a compiled class.
+	 *
+	 * @param location The output location.
+	 * @param className The binary name of the class.
+	 * @param kind The kind of the output file.
+	 * @param sibling The source file of the class.
+	 *
+	 * @return The output file in memory.
+	 */
+	@Override public JavaFileObject getJavaFileForOutput( Location location
+							      , String className
+							      , JavaFileObject.Kind kind
+							      , FileObject sibling) {
+
+	    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+	    _compiledClasses.put( className, buffer);
+
+	    return new SimpleJavaFileObject( URI.create( "mem:///" + className.replace( '.', '/') + kind.extension), kind) {
+
+		@Override public OutputStream openOutputStream() {
+
+		    return buffer;
+		}
+	    };
+	}
+    }
+
+    /**
+     * A generated java source in memory.
+     */
+    class SourceFile extends SimpleJavaFileObject {
+
+	// Instance variables
+
+	/**
+	 * The java source code.
+	 */
+	private final String _source;
+
+
+	// Constructors
+
+	/**
+	 * Create a new source file.
+	 *
+	 * @param className The fully qualified name of the class.
+	 * @param source The java source code.
+	 */
+	SourceFile( String className, String source) {
+
+	    super( URI.create( "string:///" + className.replace( '.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+
+	    _source = source;
+	}
+
+
+	// Methods
+
+	/**
+	 * Get the source code.
+	 *
+	 * @param ignoreEncodingErrors Ignored, since the source is already a string.
+	 *
+	 * @return The java source code.
+	 */
+	@Override public CharSequence getCharContent( boolean ignoreEncodingErrors) {
+
+	    return _source;
+	}
+    }
+
+
     // Static variables
 
     /**
@@ -26,6 +229,11 @@ public class Compiler {
      */
     private static Compiler _instance = null;
 
+    /**
+     * The package of the generated rule set classes.
+     */
+    public static final String GENERATED_PACKAGE = "de.andreas_rueckert.trade.language.generated";
+
 
     // Instance variables
    
@@ -37,7 +245,12 @@ public class Compiler {
     /**
      * Store the global variables in the drools rule set as a hashmap.
      */
-    Map<String, String> _globalVariables = new HashMap< String, String>();
+    Map<String, String> _globalVariables = new LinkedHashMap< String, String>();
+
+    /**
+     * The imports of the drools rule sets.
+     */
+    List<String> _imports = new ArrayList<String>();
     
 
     // Constructors
@@ -46,6 +259,8 @@ public class Compiler {
      * Private constructor for singleton pattern.
      */
     private Compiler() {
+
+	initGlobalVariables();
     }
 
 
@@ -64,27 +279,195 @@ public class Compiler {
     }
 
     /**
-     * Compile rule sets from an input to an output file.
+     * Compile a rule set into a java class and create an instance of it.
+     *
+     * @param input The cctl file with the rule set.
+     *
+     * @return A new instance of the compiled rule set.
+     *
+     * @throws CompileException if the rule set cannot be compiled.
+     * @throws IOException if the file cannot be read.
+     */
+    public TradeRuleSet compile( File input) throws CompileException, IOException {
+
+	String className = GENERATED_PACKAGE + "." + getClassName( getRuleSetName( input));
+
+	Map< String, byte []> bytecode = compileJava( className, compileToJava( input));
+
+	try {
+
+	    // Use a new class loader for each compilation, so changed rule sets are actually reloaded.
+	    return (TradeRuleSet)( new MemoryClassLoader( bytecode).loadClass( className).getDeclaredConstructor().newInstance());
+
+	} catch( ClassNotFoundException cnfe) {
+
+	    throw new CompileException( "Compiled rule set class " + className + " not found: " + cnfe);
+
+	} catch( InstantiationException ie) {
+
+	    throw new CompileException( "Cannot create an instance of rule set class " + className + ": " + ie);
+
+	} catch( IllegalAccessException iae) {
+
+	    throw new CompileException( "Cannot access rule set class " + className + ": " + iae);
+
+	} catch( InvocationTargetException ite) {
+
+	    throw new CompileException( "The constructor of rule set class " + className + " has thrown an exception: " + ite.getCause());
+
+	} catch( NoSuchMethodException nsme) {
+
+	    throw new CompileException( "No default constructor in rule set class " + className + ": " + nsme);
+	}
+    }
+
+    /**
+     * Compile rule sets from an input to an output file in the drools drl format.
      *
      * @param input The input file.
      * @param output The output file.
+     *
+     * @return true, if the rule set was compiled.
      */
     public boolean compile( File input, File output) {
 
-	_codeGenerator.init();  // Init the code generator for the next compilation.
+	try {
+
+	    Files.write( output.toPath(), compileToDrl( input).getBytes( Charset.forName( "UTF-8")));
+
+	    return true;
 
-	// Add the global variables to the output.
-	_codeGenerator.put( "allGlobalVars", _globalVariables);
+	} catch( CompileException ce) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot compile rule set " + input.getPath() + ": " + ce.getMessage());
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot convert rule set " + input.getPath() + " to " + output.getPath() + ": " + ioe);
+	}
 
 	return false;  // Default is an error.
     }
 
+    /**
+     * Compile a generated java source in memory.
+     *
+     * @param className The fully qualified name of the class.
+     * @param source The java source.
+     *
+     * @return The bytecode of the compiled classes, indexed by their binary name.
+     *
+     * @throws CompileException if the source cannot be compiled.
+     */
+    private Map< String, byte []> compileJava( String className, String source) throws CompileException {
+
+	// Prefer the compiler of the JDK and fall back to the eclipse compiler on a JRE.
+	JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+	if( compiler == null) {
+
+	    compiler = new EclipseCompiler();
+	}
+
+	DiagnosticCollector< JavaFileObject> diagnostics = new DiagnosticCollector< JavaFileObject>();
+
+	MemoryFileManager fileManager = new MemoryFileManager( compiler.getStandardFileManager( diagnostics, null, Charset.forName( "UTF-8")));
+
+	try {
+
+	    List<String> options = Arrays.asList( "-classpath", System.getProperty( "java.class.path"));
+
+	    boolean compiled = compiler.getTask( null
+						 , fileManager
+						 , diagnostics
+						 , options
+						 , null
+						 , Arrays.asList( new SourceFile( className, source))).call();
+
+	    if( ! compiled) {
+
+		StringBuilder message = new StringBuilder( "Cannot compile the generated class " + className + ":");
+
+		for( Diagnostic< ? extends JavaFileObject> currentDiagnostic : diagnostics.getDiagnostics()) {
+
+		    message.append( "\n").append( currentDiagnostic.getMessage( null));
+		}
+
+		throw new CompileException( message.toString());
+	    }
+
+	    return fileManager.getCompiledClasses();
+
+	} finally {
+
+	    try {
+
+		fileManager.close();
+
+	    } catch( IOException ioe) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot close file manager of the rule set compiler: " + ioe);
+	    }
+	}
+    }
+
+    /**
+     * Convert a rule set to a drools drl rule set.
+     *
+     * @param input The cctl file with the rule set.
+     *
+     * @return The drl source of the rule set.
+     *
+     * @throws CompileException if the rule set cannot be compiled.
+     * @throws IOException if the file cannot be read.
+     */
+    public String compileToDrl( File input) throws CompileException, IOException {
+
+	return _codeGenerator.generateDrl( parse( input), GENERATED_PACKAGE + "." + getClassName( getRuleSetName( input)), _imports, _globalVariables);
+    }
+
+    /**
+     * Convert a rule set to the source of a java class.
+     *
+     * @param input The cctl file with the rule set.
+     *
+     * @return The java source of the rule set class.
+     *
+     * @throws CompileException if the rule set cannot be compiled.
+     * @throws IOException if the file cannot be read.
+     */
+    public String compileToJava( File input) throws CompileException, IOException {
+
+	String ruleSetName = getRuleSetName( input);
+
+	return _codeGenerator.generateJava( parse( input), ruleSetName, GENERATED_PACKAGE, getClassName( ruleSetName));
+    }
+
+    /**
+     * Get the name of the generated class for a rule set.
+     *
+     * @param ruleSetName The name of the rule set.
+     *
+     * @return The simple name of the class.
+     */
+    private String getClassName( String ruleSetName) {
+
+	StringBuilder result = new StringBuilder( "RuleSet_");
+
+	for( char currentChar : ruleSetName.toCharArray()) {
+
+	    result.append( Character.isJavaIdentifierPart( currentChar) ? currentChar : '_');
+	}
+
+	return result.toString();
+    }
+
     /**
      * Get the only instance of this compiler.
      *
      * @return The only instance of this compiler.
      */
-    public static Compiler getInstance() {
+    public static synchronized Compiler getInstance() {
 
 	if( _instance == null) {  // If there is no class instance yet,
 
@@ -95,16 +478,45 @@ public class Compiler {
     }
 
     /**
-     * Define the default variables for a trade rule set.
+     * Get the name of a rule set from its file name.
+     *
+     * @param input The file with the rule set.
+     *
+     * @return The name of the rule set (the file name without the suffix).
+     */
+    private String getRuleSetName( File input) {
+
+	String fileName = input.getName();
+
+	int suffixIndex = fileName.lastIndexOf( '.');
+
+	return suffixIndex > 0 ? fileName.substring( 0, suffixIndex) : fileName;
+    }
+
+    /**
+     * Define the default imports and variables for a drools trade rule set.
      */
     private void initGlobalVariables() {
 
-	// Set the variables, so rules can access the framework functionality.
+	// The execution counter triggers the evaluation of the rules.
+	_imports.add( "de.andreas_rueckert.trade.bot.rule.ExecutionCounter");
+
+	// The context to access the markets and place orders.
+	addGlobalVar( "de.andreas_rueckert.trade.language.RuleContext", "Context");
+    }
 
-	// ChartProviver to access prices etc.
-	addGlobalVar( "de.andreas_rueckert.chart.ChartProvider", "ChartProvider");
+    /**
+     * Parse a rule set file.
+     *
+     * @param input The cctl file with the rule set.
+     *
+     * @return The root node of the rule set.
+     *
+     * @throws CompileException if the rule set has a syntax error.
+     * @throws IOException if the file cannot be read.
+     */
+    private Node parse( File input) throws CompileException, IOException {
 
-	// OrderBook to place orders.
-       	addGlobalVar( "global de.andreas_rueckert.trade.order.OrderBook", "OrderBook");
+	return new Parser( new String( Files.readAllBytes( input.toPath()), Charset.forName( "UTF-8"))).parse();
     }
-}
\ No newline at end of file
+}
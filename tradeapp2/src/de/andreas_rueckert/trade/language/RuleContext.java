@@ -0,0 +1,100 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.language;
+
+
+/**
+ * This interface gives compiled cctl rule sets access to the markets and accounts.
+ * Trade sites are passed by their names, currency pairs as strings like 'btc<=>usd'.
+ * All values are doubles, so the generated code can use plain java arithmetic.
+ */
+public interface RuleContext {
+
+    // Methods
+
+    /**
+     * Buy the currency of a currency pair.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param amount The amount of the payment currency to spend.
+     */
+    public void buy( String tradeSite, String currencyPair, double amount);
+
+    /**
+     * Get the balance of a currency on a trade site.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currency The code of the currency (i.e. 'btc').
+     *
+     * @return The balance of the currency.
+     */
+    public double getBalance( String tradeSite, String currency);
+
+    /**
+     * Get the time weighted exponential moving average of a currency pair.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param period The period of the average in microseconds.
+     *
+     * @return The time weighted exponential moving average.
+     */
+    public double getTWEMA( String tradeSite, String currencyPair, long period);
+
+    /**
+     * Get the simple moving average of a currency pair.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param period The period of the average in microseconds.
+     *
+     * @return The simple moving average.
+     */
+    public double getSMA( String tradeSite, String currencyPair, long period);
+
+    /**
+     * Get a value of the current ticker of a currency pair.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param value The ticker value ('buy', 'sell' or 'last').
+     *
+     * @return The ticker value.
+     */
+    public double getTicker( String tradeSite, String currencyPair, String value);
+
+    /**
+     * Get the value of a state variable of a rule set. This is only used by
+     * rule sets, that were converted to drools, since they cannot keep the state
+     * in fields.
+     *
+     * @param name The name of the variable.
+     *
+     * @return The value of the variable (0.0, if it was not set yet).
+     */
+    public double getVariable( String name);
+
+    /**
+     * Sell the currency of a currency pair.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param amount The amount of the currency to sell.
+     */
+    public void sell( String tradeSite, String currencyPair, double amount);
+
+    /**
+     * Set the value of a state variable of a rule set.
+     *
+     * @param name The name of the variable.
+     * @param value The new value of the variable.
+     */
+    public void setVariable( String name, double value);
+}
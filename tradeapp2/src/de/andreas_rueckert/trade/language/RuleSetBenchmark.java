@@ -0,0 +1,370 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.language;
+
+import de.andreas_rueckert.trade.bot.rule.ExecutionCounter;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import org.drools.builder.KnowledgeBuilder;
+import org.drools.builder.KnowledgeBuilderFactory;
+import org.drools.builder.ResourceType;
+import org.drools.io.ResourceFactory;
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.runtime.rule.FactHandle;
+import org.drools.runtime.StatefulKnowledgeSession;
+
+
+/**
+ * This class compares the compiled java rule sets with the same rule sets
+ * converted to drools. It measures the latency of a rule evaluation and
+ * the heap, that is retained by the compiled rule set. The numbers of the
+ * first rule set also include the warmup of the compilers.
+ *
+ * Usage: RuleSetBenchmark [-iterations <n>] <cctl file>...
+ */
+public class RuleSetBenchmark {
+
+    // Inner classes
+
+    /**
+     * A context with fixed market data, that does not place any orders.
+     */
+    static class FixedRuleContext implements RuleContext {
+
+	// Instance variables
+
+	/**
+	 * The number of requested orders.
+	 */
+	int _orders = 0;
+
+	/**
+	 * The state variables of the drools rule sets.
+	 */
+	private final Map<String, Double> _variables = new HashMap<String, Double>();
+
+
+	// Methods
+
+	/**
+	 * Count a buy order.
+	 *
+	 * @param tradeSite The name of the trade site.
+	 * @param currencyPair The currency pair.
+	 * @param amount The amount of the payment currency to spend.
+	 */
+	public void buy( String tradeSite, String currencyPair, double amount) {
+
+	    ++_orders;
+	}
+
+	/**
+	 * Get a fixed balance.
+	 *
+	 * @param tradeSite The name of the trade site.
+	 * @param currency The code of the currency.
+	 *
+	 * @return The fixed balance.
+	 */
+	public double getBalance( String tradeSite, String currency) {
+
+	    return currency.equals( "btc") ? 2.5 : 500.0;
+	}
+
+	/**
+	 * Get a fixed exponential moving average, that depends on the period.
+	 *
+	 * @param tradeSite The name of the trade site.
+	 * @param currencyPair The currency pair.
+	 * @param period The period in microseconds.
+	 *
+	 * @return The average.
+	 */
+	public double getTWEMA( String tradeSite, String currencyPair, long period) {
+
+	    return 600.0 + (double)( period / 1000000000L);
+	}
+
+	/**
+	 * Get a fixed simple moving average.
+	 *
+	 * @param tradeSite The name of the trade site.
+	 * @param currencyPair The currency pair.
+	 * @param period The period in microseconds.
+	 *
+	 * @return The average.
+	 */
+	public double getSMA( String tradeSite, String currencyPair, long period) {
+
+	    return 640.0;
+	}
+
+	/**
+	 * Get a fixed ticker value.
+	 *
+	 * @param tradeSite The name of the trade site.
+	 * @param currencyPair The currency pair.
+	 * @param value The ticker value.
+	 *
+	 * @return The ticker value.
+	 */
+	public double getTicker( String tradeSite, String currencyPair, String value) {
+
+	    return value.equals( "buy") ? 599.0 : 601.0;
+	}
+
+	/**
+	 * Get the value of a state variable.
+	 *
+	 * @param name The name of the variable.
+	 *
+	 * @return The value of the variable.
+	 */
+	public double getVariable( String name) {
+
+	    Double value = _variables.get( name);
+
+	    return value == null ? 0.0 : value.doubleValue();
+	}
+
+	/**
+	 * Count a sell order.
+	 *
+	 * @param tradeSite The name of the trade site.
+	 * @param currencyPair The currency pair.
+	 * @param amount The amount of the currency to sell.
+	 */
+	public void sell( String tradeSite, String currencyPair, double amount) {
+
+	    ++_orders;
+	}
+
+	/**
+	 * Set the value of a state variable.
+	 *
+	 * @param name The name of the variable.
+	 * @param value The new value.
+	 */
+	public void setVariable( String name, double value) {
+
+	    _variables.put( name, value);
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The number of evaluations before the measurement starts.
+     */
+    private static final int WARMUP_ITERATIONS = 10000;
+
+
+    // Instance variables
+
+
+    // Constructors
+
+
+    // Methods
+
+    /**
+     * Benchmark the drools version of a rule set.
+     *
+     * @param ruleSetFile The cctl file.
+     * @param iterations The number of measured evaluations.
+     *
+     * @throws Exception if the rule set cannot be compiled.
+     */
+    private static void benchmarkDrools( File ruleSetFile, int iterations) throws Exception {
+
+	long usedHeap = getUsedHeap();
+
+	long startTime = System.nanoTime();
+
+	String drl = Compiler.getInstance().compileToDrl( ruleSetFile);
+
+	KnowledgeBuilder knowledgeBuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+
+	knowledgeBuilder.add( ResourceFactory.newByteArrayResource( drl.getBytes( Charset.forName( "UTF-8"))), ResourceType.DRL);
+
+	if( knowledgeBuilder.hasErrors()) {
+	    throw new CompileException( "Cannot compile the drools rule set: " + knowledgeBuilder.getErrors());
+	}
+
+	KnowledgeBase knowledgeBase = KnowledgeBaseFactory.newKnowledgeBase();
+
+	knowledgeBase.addKnowledgePackages( knowledgeBuilder.getKnowledgePackages());
+
+	// Use a long-lived session, like the rule bot does.
+	StatefulKnowledgeSession session = knowledgeBase.newStatefulKnowledgeSession();
+
+	FixedRuleContext context = new FixedRuleContext();
+
+	session.setGlobal( "Context", context);
+
+	ExecutionCounter counter = new ExecutionCounter();
+
+	FactHandle counterHandle = session.insert( counter);
+
+	long compileTime = System.nanoTime() - startTime;
+
+	for( int currentIteration = 0; currentIteration < WARMUP_ITERATIONS; ++currentIteration) {
+
+	    counter.increment();
+	    session.update( counterHandle, counter);
+	    session.fireAllRules();
+	}
+
+	startTime = System.nanoTime();
+
+	for( int currentIteration = 0; currentIteration < iterations; ++currentIteration) {
+
+	    counter.increment();
+	    session.update( counterHandle, counter);
+	    session.fireAllRules();
+	}
+
+	long executionTime = System.nanoTime() - startTime;
+
+	long retainedHeap = getUsedHeap() - usedHeap;
+
+	// Run one more cycle to check, that both versions fire the same rules.
+	counter.increment();
+	session.update( counterHandle, counter);
+
+	printResult( "drools", compileTime, executionTime, iterations, retainedHeap, session.fireAllRules());
+
+	session.dispose();
+    }
+
+    /**
+     * Benchmark the compiled java version of a rule set.
+     *
+     * @param ruleSetFile The cctl file.
+     * @param iterations The number of measured evaluations.
+     *
+     * @throws Exception if the rule set cannot be compiled.
+     */
+    private static void benchmarkJava( File ruleSetFile, int iterations) throws Exception {
+
+	long usedHeap = getUsedHeap();
+
+	long startTime = System.nanoTime();
+
+	TradeRuleSet ruleSet = Compiler.getInstance().compile( ruleSetFile);
+
+	FixedRuleContext context = new FixedRuleContext();
+
+	long compileTime = System.nanoTime() - startTime;
+
+	for( int currentIteration = 0; currentIteration < WARMUP_ITERATIONS; ++currentIteration) {
+
+	    ruleSet.execute( context);
+	}
+
+	startTime = System.nanoTime();
+
+	for( int currentIteration = 0; currentIteration < iterations; ++currentIteration) {
+
+	    ruleSet.execute( context);
+	}
+
+	long executionTime = System.nanoTime() - startTime;
+
+	long retainedHeap = getUsedHeap() - usedHeap;
+
+	// Run one more cycle to check, that both versions fire the same rules.
+	printResult( "java", compileTime, executionTime, iterations, retainedHeap, ruleSet.execute( context));
+    }
+
+    /**
+     * Get the used heap after a garbage collection.
+     *
+     * @return The used heap in bytes.
+     */
+    private static long getUsedHeap() {
+
+	Runtime runtime = Runtime.getRuntime();
+
+	for( int currentRun = 0; currentRun < 3; ++currentRun) {
+
+	    System.gc();
+	}
+
+	return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The command line arguments.
+     */
+    public static void main( String [] args) {
+
+	int iterations = 100000;
+
+	int currentArg = 0;
+
+	if( ( args.length > 1) && args[ 0].equals( "-iterations")) {
+
+	    iterations = Integer.parseInt( args[ 1]);
+
+	    currentArg = 2;
+	}
+
+	if( currentArg >= args.length) {
+
+	    System.err.println( "Usage: RuleSetBenchmark [-iterations <n>] <cctl file>...");
+
+	    System.exit( 1);
+	}
+
+	for( ; currentArg < args.length; ++currentArg) {
+
+	    File ruleSetFile = new File( args[ currentArg]);
+
+	    System.out.println( "Rule set " + ruleSetFile.getName() + " (" + iterations + " evaluations):");
+
+	    try {
+
+		benchmarkJava( ruleSetFile, iterations);
+
+		benchmarkDrools( ruleSetFile, iterations);
+
+	    } catch( Exception e) {
+
+		System.err.println( "Cannot benchmark rule set " + ruleSetFile.getPath() + ": " + e);
+	    }
+	}
+    }
+
+    /**
+     * Print the result of a benchmark.
+     *
+     * @param engine The name of the rule engine.
+     * @param compileTime The time to compile the rule set in nanoseconds.
+     * @param executionTime The time of all evaluations in nanoseconds.
+     * @param iterations The number of evaluations.
+     * @param retainedHeap The heap, that is used by the rule set, in bytes.
+     * @param firedRules The number of rules, that fired in the last evaluation.
+     */
+    private static void printResult( String engine, long compileTime, long executionTime, int iterations, long retainedHeap, int firedRules) {
+
+	System.out.println( String.format( "  %-7s compile: %8.1f ms   evaluation: %10.1f ns   heap: %8d kB   fired: %d"
+					   , engine
+					   , compileTime / 1000000.0
+					   , (double)executionTime / iterations
+					   , retainedHeap / 1024
+					   , firedRules));
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.language;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.app.TradeApp;
+import de.andreas_rueckert.trade.chart.ChartProvider;
+import de.andreas_rueckert.trade.chart.indicator.IndicatorFactProvider;
+import de.andreas_rueckert.trade.currency.Currency;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyProvider;
+import de.andreas_rueckert.trade.order.CryptoCoinOrderBook;
+import de.andreas_rueckert.trade.order.OrderFactory;
+import de.andreas_rueckert.trade.order.OrderType;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
+import de.andreas_rueckert.trade.Ticker;
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.ModuleLoader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * This class is the context of compiled rule sets in the running app. It fetches
+ * the market data from the chart provider and the indicator engine and places
+ * the orders in the order book.
+ */
+public class TradeRuleContext implements RuleContext {
+
+    // Instance variables
+
+    /**
+     * The resolved currency pairs, indexed by their string (i.e. 'btc<=>usd').
+     */
+    private final Map<String, CurrencyPair> _currencyPairs = new ConcurrentHashMap<String, CurrencyPair>();
+
+    /**
+     * The resolved trade sites, indexed by their name.
+     */
+    private final Map<String, TradeSite> _tradeSites = new ConcurrentHashMap<String, TradeSite>();
+
+    /**
+     * The user account for the orders (or null for the default account of the trade site).
+     */
+    private final TradeSiteUserAccount _userAccount;
+
+    /**
+     * The state variables of drools rule sets.
+     */
+    private final Map<String, Double> _variables = new HashMap<String, Double>();
+
+
+    // Constructors
+
+    /**
+     * Create a new context for rule sets.
+     *
+     * @param userAccount The user account for the orders (or null for the default account of the trade site).
+     */
+    public TradeRuleContext( TradeSiteUserAccount userAccount) {
+
+	_userAccount = userAccount;
+    }
+
+
+    // Methods
+
+    /**
+     * Buy the currency of a currency pair at the current sell price of the ticker.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param amount The amount of the payment currency to spend.
+     */
+    public void buy( String tradeSite, String currencyPair, double amount) {
+
+	Price price = getTickerObject( tradeSite, currencyPair).getSell();
+
+	// Convert the amount of the payment currency to an amount of the currency.
+	placeOrder( tradeSite
+		    , currencyPair
+		    , OrderType.BUY
+		    , price
+		    , new Amount( BigDecimal.valueOf( amount).divide( price, 8, RoundingMode.DOWN)));
+    }
+
+    /**
+     * Get the balance of a currency on a trade site.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currency The code of the currency (i.e. 'btc').
+     *
+     * @return The balance of the currency or 0.0, if there is no account for it.
+     */
+    public double getBalance( String tradeSite, String currency) {
+
+	Currency balanceCurrency = CurrencyProvider.getInstance().getCurrencyForCode( currency.toUpperCase());
+
+	BigDecimal balance = TradeApp.getApp().getAccountManager().getBalance( getTradeSite( tradeSite), balanceCurrency);
+
+	return balance == null ? 0.0 : balance.doubleValue();
+    }
+
+    /**
+     * Get a currency pair for its string.
+     *
+     * @param currencyPair The currency pair as a string (i.e. 'btc<=>usd').
+     *
+     * @return The currency pair object.
+     */
+    private CurrencyPair getCurrencyPair( String currencyPair) {
+
+	CurrencyPair result = _currencyPairs.get( currencyPair);
+
+	if( result == null) {
+
+	    String [] currencies = currencyPair.split( "<=>");
+
+	    result = new CurrencyPairImpl( currencies[ 0].toUpperCase(), currencies[ 1].toUpperCase());
+
+	    _currencyPairs.put( currencyPair, result);
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the time weighted exponential moving average of a currency pair.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param period The period of the average in microseconds.
+     *
+     * @return The time weighted exponential moving average.
+     */
+    public double getTWEMA( String tradeSite, String currencyPair, long period) {
+
+	return IndicatorFactProvider.getInstance().getTWEMA( getTradeSite( tradeSite), getCurrencyPair( currencyPair), period).doubleValue();
+    }
+
+    /**
+     * Get the simple moving average of a currency pair.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param period The period of the average in microseconds.
+     *
+     * @return The simple moving average.
+     */
+    public double getSMA( String tradeSite, String currencyPair, long period) {
+
+	return IndicatorFactProvider.getInstance().getSMA( getTradeSite( tradeSite), getCurrencyPair( currencyPair), period).doubleValue();
+    }
+
+    /**
+     * Get a value of the current ticker of a currency pair.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param value The ticker value ('buy', 'sell' or 'last').
+     *
+     * @return The ticker value.
+     */
+    public double getTicker( String tradeSite, String currencyPair, String value) {
+
+	Ticker ticker = getTickerObject( tradeSite, currencyPair);
+
+	if( "buy".equals( value)) {
+
+	    return ticker.getBuy().doubleValue();
+
+	} else if( "sell".equals( value)) {
+
+	    return ticker.getSell().doubleValue();
+	}
+
+	return ticker.getLast().doubleValue();
+    }
+
+    /**
+     * Get the current ticker of a currency pair.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     *
+     * @return The current ticker.
+     */
+    private Ticker getTickerObject( String tradeSite, String currencyPair) {
+
+	return ChartProvider.getInstance().getTicker( getTradeSite( tradeSite), getCurrencyPair( currencyPair));
+    }
+
+    /**
+     * Get a registered trade site for its name.
+     *
+     * @param name The name of the trade site.
+     *
+     * @return The trade site.
+     *
+     * @throws IllegalArgumentException if there is no trade site with this name.
+     */
+    private TradeSite getTradeSite( String name) {
+
+	TradeSite result = _tradeSites.get( name);
+
+	if( result == null) {
+
+	    result = ModuleLoader.getInstance().getRegisteredTradeSite( name);
+
+	    if( result == null) {
+		throw new IllegalArgumentException( "Trade site " + name + " is not registered");
+	    }
+
+	    _tradeSites.put( name, result);
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the value of a state variable of a rule set.
+     *
+     * @param name The name of the variable.
+     *
+     * @return The value of the variable (0.0, if it was not set yet).
+     */
+    public synchronized double getVariable( String name) {
+
+	Double value = _variables.get( name);
+
+	return value == null ? 0.0 : value.doubleValue();
+    }
+
+    /**
+     * Add an order to the order book and execute it.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param orderType The type of the order.
+     * @param price The price of the order.
+     * @param amount The amount of the currency to trade.
+     */
+    private void placeOrder( String tradeSite, String currencyPair, OrderType orderType, Price price, Amount amount) {
+
+	if( amount.signum() <= 0) {
+
+	    LogUtils.getInstance().getLogger().info( "Ignoring " + orderType + " order without amount for " + currencyPair + " on " + tradeSite);
+
+	    return;
+	}
+
+	String orderId = CryptoCoinOrderBook.getInstance().add( OrderFactory.createCryptoCoinTradeOrder( getTradeSite( tradeSite)
+												       , _userAccount
+												       , orderType
+												       , price
+												       , getCurrencyPair( currencyPair)
+												       , amount));
+
+	if( orderId != null) {  // Adding the order worked?
+
+	    CryptoCoinOrderBook.getInstance().executeOrder( orderId);
+	}
+    }
+
+    /**
+     * Sell the currency of a currency pair at the current buy price of the ticker.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currencyPair The currency pair (i.e. 'btc<=>usd').
+     * @param amount The amount of the currency to sell.
+     */
+    public void sell( String tradeSite, String currencyPair, double amount) {
+
+	placeOrder( tradeSite
+		    , currencyPair
+		    , OrderType.SELL
+		    , getTickerObject( tradeSite, currencyPair).getBuy()
+		    , new Amount( BigDecimal.valueOf( amount).setScale( 8, RoundingMode.DOWN)));
+    }
+
+    /**
+     * Set the value of a state variable of a rule set.
+     *
+     * @param name The name of the variable.
+     * @param value The new value of the variable.
+     */
+    public synchronized void setVariable( String name, double value) {
+
+	_variables.put( name, value);
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.language;
+
+
+/**
+ * This interface is implemented by the classes, that the compiler generates
+ * from cctl rule sets. They run without a rule engine.
+ */
+public interface TradeRuleSet {
+
+    // Methods
+
+    /**
+     * Evaluate all the rules of this set once and execute the consequences of
+     * the matching rules. The rules are evaluated in the order of the source.
+     *
+     * @param context The context to access the markets and accounts.
+     *
+     * @return The number of fired rules.
+     */
+    public int execute( RuleContext context);
+
+    /**
+     * Get the name of this rule set.
+     *
+     * @return The name of this rule set.
+     */
+    public String getName();
+}
@@ -8,15 +8,26 @@
 
 package de.andreas_rueckert.trade.language.codegenerator;
 
+import de.andreas_rueckert.trade.language.CompileException;
+import de.andreas_rueckert.trade.language.parser.Node;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.apache.velocity.app.Velocity;
 import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
 import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 
 
 /**
- * This class manages the generating of the drools drl files.
+ * This class manages the generating of the compiler output. A rule set is
+ * either generated as the source of a java class, that implements the
+ * TradeRuleSet interface, or as a drools drl file.
  */
 public class CodeGenerator {
 
@@ -28,6 +39,11 @@ public class CodeGenerator {
      */
     private static CodeGenerator _instance = null;
 
+    /**
+     * The path of the rule set template in the classpath.
+     */
+    private static final String RULESET_TEMPLATE = "de/andreas_rueckert/trade/language/codegenerator/ruleset.vm";
+
 
     // Instance variables
 
@@ -36,6 +52,11 @@ public class CodeGenerator {
      */
     VelocityContext _context;
 
+    /**
+     * The main template for a drools rule set.
+     */
+    private final Template _ruleSetTemplate;
+
 
     // Constructors
 
@@ -49,19 +70,327 @@ public class CodeGenerator {
 
 	Velocity.setProperty("runtime.log.logsystem.log4j.logger", "DrlCodeGenerator");
 
+	// Load the templates from the classpath, so they also work from the jar.
+	Velocity.setProperty( RuntimeConstants.RESOURCE_LOADER, "classpath");
+
+	Velocity.setProperty( "classpath.resource.loader.class", ClasspathResourceLoader.class.getName());
+
+	//  Initialize the template engine.
+	Velocity.init();
+
 	// Fetch the main template for a rule set.
-	Template ruleSetTemplate = Velocity.getTemplate( "ruleset.vm");
+	_ruleSetTemplate = Velocity.getTemplate( RULESET_TEMPLATE, "UTF-8");
     }
 
 
     // Methods
 
+    /**
+     * Append a condition to the generated code.
+     *
+     * @param node The node of the condition.
+     * @param output The buffer for the generated code.
+     * @param drl true, if drools code is generated.
+     *
+     * @throws CompileException if the node is not a condition.
+     */
+    private void appendCondition( Node node, StringBuilder output, boolean drl) throws CompileException {
+
+	String operator = node.getValue();
+
+	if( ( node.getType() == Node.Type.BINARY) && ( operator.equals( "&&") || operator.equals( "||"))) {
+
+	    output.append( "( ");
+	    appendCondition( node.getChild( 0), output, drl);
+	    output.append( " ").append( operator).append( " ");
+	    appendCondition( node.getChild( 1), output, drl);
+	    output.append( ")");
+
+	} else if( node.getType() == Node.Type.BINARY && isComparison( operator)) {
+
+	    output.append( "( ");
+	    appendNumber( node.getChild( 0), output, drl);
+	    output.append( " ").append( operator).append( " ");
+	    appendNumber( node.getChild( 1), output, drl);
+	    output.append( ")");
+
+	} else if( ( node.getType() == Node.Type.UNARY) && operator.equals( "!")) {
+
+	    output.append( "! ");
+	    appendCondition( node.getChild( 0), output, drl);
+
+	} else {
+
+	    throw new CompileException( node.getLine(), "Expected a condition instead of a value");
+	}
+    }
+
+    /**
+     * Append a numeric expression to the generated code.
+     *
+     * @param node The node of the expression.
+     * @param output The buffer for the generated code.
+     * @param drl true, if drools code is generated.
+     *
+     * @throws CompileException if the node is not a numeric expression.
+     */
+    private void appendNumber( Node node, StringBuilder output, boolean drl) throws CompileException {
+
+	String context = drl ? "Context" : "context";
+
+	switch( node.getType()) {
+
+	case BALANCE:
+	    output.append( context).append( ".getBalance( \"").append( node.getTradeSite()).append( "\", \"").append( node.getCurrency()).append( "\")");
+	    break;
+
+	case BINARY:
+	    if( isComparison( node.getValue()) || node.getValue().equals( "&&") || node.getValue().equals( "||")) {
+		throw new CompileException( node.getLine(), "Expected a value instead of a condition");
+	    }
+
+	    output.append( "( ");
+	    appendNumber( node.getChild( 0), output, drl);
+	    output.append( " ").append( node.getValue()).append( " ");
+	    appendNumber( node.getChild( 1), output, drl);
+	    output.append( ")");
+	    break;
+
+	case MOVING_AVERAGE:
+	    output.append( context).append( node.getValue().equals( "twema") ? ".getTWEMA( \"" : ".getSMA( \"")
+		.append( node.getTradeSite()).append( "\", \"").append( node.getCurrency()).append( "\", (long)");
+	    appendNumber( node.getChild( 0), output, drl);
+	    output.append( ")");
+	    break;
+
+	case NUMBER:
+	    output.append( getNumberLiteral( node));
+	    break;
+
+	case TICKER:
+	    output.append( context).append( ".getTicker( \"").append( node.getTradeSite()).append( "\", \"").append( node.getCurrency())
+		.append( "\", \"").append( node.getValue()).append( "\")");
+	    break;
+
+	case UNARY:
+	    if( node.getValue().equals( "!")) {
+		throw new CompileException( node.getLine(), "Expected a value instead of a condition");
+	    }
+
+	    output.append( "( - ");
+	    appendNumber( node.getChild( 0), output, drl);
+	    output.append( ")");
+	    break;
+
+	case VARIABLE:
+	    if( drl) {
+
+		output.append( "Context.getVariable( \"").append( node.getValue()).append( "\")");
+
+	    } else {
+
+		output.append( "_").append( node.getValue());
+	    }
+	    break;
+
+	default:
+	    throw new CompileException( node.getLine(), "Unexpected " + node.getType().toString().toLowerCase() + " in expression");
+	}
+    }
+
+    /**
+     * Append the statements of a rule consequence to the generated code.
+     *
+     * @param rule The node of the rule.
+     * @param output The buffer for the generated code.
+     * @param indent The indentation of the statements.
+     * @param drl true, if drools code is generated.
+     *
+     * @throws CompileException if a statement cannot be generated.
+     */
+    private void appendStatements( Node rule, StringBuilder output, String indent, boolean drl) throws CompileException {
+
+	for( int currentIndex = 1; currentIndex < rule.getChildren().size(); ++currentIndex) {
+
+	    Node statement = rule.getChild( currentIndex);
+
+	    output.append( indent);
+
+	    if( statement.getType() == Node.Type.ASSIGNMENT) {
+
+		if( drl) {
+
+		    output.append( "Context.setVariable( \"").append( statement.getValue()).append( "\", ");
+		    appendNumber( statement.getChild( 0), output, drl);
+		    output.append( ");\n");
+
+		} else {
+
+		    output.append( "_").append( statement.getValue()).append( " = ");
+		    appendNumber( statement.getChild( 0), output, drl);
+		    output.append( ";\n");
+		}
+
+	    } else {  // An order.
+
+		output.append( drl ? "Context." : "context.").append( statement.getValue())
+		    .append( "( \"").append( statement.getTradeSite()).append( "\", \"").append( statement.getCurrency()).append( "\", ");
+		appendNumber( statement.getChild( 0), output, drl);
+		output.append( ");\n");
+	    }
+	}
+    }
+
+    /**
+     * Collect the names of the state variables of a rule set.
+     *
+     * @param node The node to search for variables.
+     * @param variables The set to add the variable names to.
+     */
+    private void collectVariables( Node node, Set<String> variables) {
+
+	if( ( node.getType() == Node.Type.ASSIGNMENT) || ( node.getType() == Node.Type.VARIABLE)) {
+
+	    variables.add( node.getValue());
+	}
+
+	for( Node currentChild : node.getChildren()) {
+
+	    collectVariables( currentChild, variables);
+	}
+    }
+
+    /**
+     * Generate a drools rule set.
+     *
+     * @param ruleSet The root node of the rule set.
+     * @param packageName The package of the rule set.
+     * @param imports The classes to import.
+     * @param globalVariables The global variables of the rule set as a map from the alias to the class.
+     *
+     * @return The drl source of the rule set.
+     *
+     * @throws CompileException if the code cannot be generated.
+     */
+    public synchronized String generateDrl( Node ruleSet
+					    , String packageName
+					    , List<String> imports
+					    , Map<String, String> globalVariables) throws CompileException {
+
+	List<String> rules = new ArrayList<String>();
+
+	for( Node currentRule : ruleSet.getChildren()) {
+
+	    StringBuilder output = new StringBuilder();
+
+	    output.append( "rule \"").append( currentRule.getValue()).append( "\"\n");
+	    output.append( "     dialect \"java\"\n");
+	    output.append( "     when\n");
+
+	    // The counter fact is updated in every cycle, so the conditions are evaluated again.
+	    output.append( "\tExecutionCounter()\n");
+	    output.append( "\teval( ");
+	    appendCondition( currentRule.getChild( 0), output, true);
+	    output.append( ")\n");
+	    output.append( "     then\n");
+	    appendStatements( currentRule, output, "\t", true);
+	    output.append( "end\n");
+
+	    rules.add( output.toString());
+	}
+
+	init();  // Init the code generator for the next compilation output.
+
+	put( "ruleSetName", packageName);
+	put( "allImports", imports);
+	put( "allGlobalVars", globalVariables);
+	put( "allRules", rules);
+
+	StringWriter writer = new StringWriter();
+
+	_ruleSetTemplate.merge( _context, writer);
+
+	return writer.toString();
+    }
+
+    /**
+     * Generate the source of a java class, that implements the TradeRuleSet interface.
+     *
+     * @param ruleSet The root node of the rule set.
+     * @param ruleSetName The name of the rule set.
+     * @param packageName The package of the generated class.
+     * @param className The simple name of the generated class.
+     *
+     * @return The java source of the class.
+     *
+     * @throws CompileException if the code cannot be generated.
+     */
+    public String generateJava( Node ruleSet, String ruleSetName, String packageName, String className) throws CompileException {
+
+	StringBuilder output = new StringBuilder();
+
+	output.append( "package ").append( packageName).append( ";\n\n");
+	output.append( "import de.andreas_rueckert.trade.language.RuleContext;\n");
+	output.append( "import de.andreas_rueckert.trade.language.TradeRuleSet;\n\n\n");
+	output.append( "/**\n * Generated by the cctl compiler from the rule set ").append( getCommentText( ruleSetName)).append( ".\n */\n");
+	output.append( "public class ").append( className).append( " implements TradeRuleSet {\n\n");
+
+	// The state variables are kept as fields, so they survive between the executions.
+	Set<String> variables = new LinkedHashSet<String>();
+
+	collectVariables( ruleSet, variables);
+
+	for( String currentVariable : variables) {
+
+	    output.append( "    private double _").append( currentVariable).append( " = 0.0;\n");
+	}
+
+	output.append( "\n    public int execute( RuleContext context) {\n\n\tint fired = 0;\n\n");
+
+	for( int currentIndex = 0; currentIndex < ruleSet.getChildren().size(); ++currentIndex) {
+
+	    output.append( "\tif( rule").append( currentIndex).append( "( context)) {\n\t    ++fired;\n\t}\n");
+	}
+
+	output.append( "\n\treturn fired;\n    }\n\n");
+	output.append( "    public String getName() {\n\n\treturn \"").append( ruleSetName.replace( "\\", "\\\\").replace( "\"", "\\\"")).append( "\";\n    }\n");
+
+	for( int currentIndex = 0; currentIndex < ruleSet.getChildren().size(); ++currentIndex) {
+
+	    Node currentRule = ruleSet.getChild( currentIndex);
+
+	    output.append( "\n    /**\n     * Rule \"").append( getCommentText( currentRule.getValue())).append( "\"\n     */\n");
+	    output.append( "    private boolean rule").append( currentIndex).append( "( RuleContext context) {\n\n");
+	    output.append( "\tif( ! ");
+	    appendCondition( currentRule.getChild( 0), output, false);
+	    output.append( ") {\n\t    return false;\n\t}\n\n");
+	    appendStatements( currentRule, output, "\t", false);
+	    output.append( "\n\treturn true;\n    }\n");
+	}
+
+	output.append( "}\n");
+
+	return output.toString();
+    }
+
+    /**
+     * Make a text safe for a java comment.
+     *
+     * @param text The text.
+     *
+     * @return The text without comment delimiters.
+     */
+    private String getCommentText( String text) {
+
+	return text.replace( "*/", "* /").replace( "\n", " ");
+    }
+
     /**
      * Get the only instance of this class (singleton pattern).
      *
      * @return The only instance of this class.
      */
-    public static CodeGenerator getInstance() {
+    public static synchronized CodeGenerator getInstance() {
 
 	if( _instance == null) {              // If there is no instance yet,
   
@@ -71,18 +400,74 @@ public class CodeGenerator {
 	return _instance;  // Return the only instance of this class.
     }
 
+    /**
+     * Convert a number literal to a java double literal. Durations are converted
+     * to microseconds and percentages to fractions.
+     *
+     * @param node The number node.
+     *
+     * @return The java double literal.
+     */
+    private String getNumberLiteral( Node node) {
+
+	String text = node.getValue();
+
+	char suffix = text.charAt( text.length() - 1);
+
+	if( Character.isDigit( suffix)) {
+
+	    return text + "d";
+	}
+
+	BigDecimal value = new BigDecimal( text.substring( 0, text.length() - 1));
+
+	switch( suffix) {
+
+	case 'd': value = value.multiply( BigDecimal.valueOf( 24L * 60L * 60L * 1000000L)); break;
+	case 'h': value = value.multiply( BigDecimal.valueOf( 60L * 60L * 1000000L)); break;
+	case 'm': value = value.multiply( BigDecimal.valueOf( 60L * 1000000L)); break;
+	case 's': value = value.multiply( BigDecimal.valueOf( 1000000L)); break;
+	case '%': value = value.movePointLeft( 2); break;
+	}
+
+	return value.toPlainString() + "d";
+    }
+
     /**
      * Init the code generator for a new compilation output.
      */
     public void init() {
 
-	//  Initialize the template engine.
-	Velocity.init();
-
 	// Create a new context for the output.
 	_context = new VelocityContext();
     }
 
+    /**
+     * Check, if an operator is a comparison.
+     *
+     * @param operator The operator.
+     *
+     * @return true, if the operator is a comparison.
+     */
+    private boolean isComparison( String operator) {
+
+	return operator.equals( "==") || operator.equals( "!=")
+	    || operator.equals( "<") || operator.equals( "<=")
+	    || operator.equals( ">") || operator.equals( ">=");
+    }
+
+    /**
+     * Set a List variable value for the output.
+     *
+     * @param varname The name of the variable.
+     * @param value The List value of the variable.
+     */
+    public void put( String varname, List value) {
+
+	// Set a var in the context.
+	_context.put( varname, value);
+    }
+
     /**
      * Set a String variable value for the output.
      *
@@ -106,4 +491,4 @@ public class CodeGenerator {
 	// Set a var in the context.
 	_context.put( varname, value);
     }
-}
\ No newline at end of file
+}
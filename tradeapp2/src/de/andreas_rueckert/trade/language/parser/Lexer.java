@@ -0,0 +1,229 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.language.parser;
+
+import de.andreas_rueckert.trade.language.CompileException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * This class splits a cctl source into tokens (see the lexer rules in cctl.g).
+ */
+public class Lexer {
+
+    // Static variables
+
+    /**
+     * The operators of the language. Longer operators come first, so they are matched before their prefixes.
+     */
+    private static final String [] OPERATORS = { "<=>", "<=", ">=", "==", "!=", "&&", "||"
+						 , "<", ">", "=", "!", "+", "-", "*", "/", "(", ")", ".", ";" };
+
+
+    // Instance variables
+
+    /**
+     * The current line in the source.
+     */
+    private int _line = 1;
+
+    /**
+     * The current position in the source.
+     */
+    private int _position = 0;
+
+    /**
+     * The source to split.
+     */
+    private final String _source;
+
+
+    // Constructors
+
+    /**
+     * Create a new lexer for a source.
+     *
+     * @param source The cctl source.
+     */
+    public Lexer( String source) {
+
+	_source = source;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the current character or 0 at the end of the source.
+     *
+     * @param offset The offset from the current position.
+     *
+     * @return The character at the offset.
+     */
+    private char peek( int offset) {
+
+	int index = _position + offset;
+
+	return index < _source.length() ? _source.charAt( index) : (char)0;
+    }
+
+    /**
+     * Skip whitespaces and comments.
+     *
+     * @throws CompileException if a comment is not closed.
+     */
+    private void skipWhitespaces() throws CompileException {
+
+	while( _position < _source.length()) {
+
+	    char current = peek( 0);
+
+	    if( current == '\n') {
+
+		++_line;
+		++_position;
+
+	    } else if( Character.isWhitespace( current)) {
+
+		++_position;
+
+	    } else if( ( current == '/') && ( peek( 1) == '/')) {  // Line comment.
+
+		while( ( _position < _source.length()) && ( peek( 0) != '\n')) {
+		    ++_position;
+		}
+
+	    } else if( ( current == '/') && ( peek( 1) == '*')) {  // Block comment.
+
+		int startLine = _line;
+
+		_position += 2;
+
+		while( ! ( ( peek( 0) == '*') && ( peek( 1) == '/'))) {
+
+		    if( _position >= _source.length()) {
+			throw new CompileException( startLine, "Comment is not closed");
+		    }
+
+		    if( peek( 0) == '\n') {
+			++_line;
+		    }
+
+		    ++_position;
+		}
+
+		_position += 2;
+
+	    } else {
+
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Split the source into tokens.
+     *
+     * @return The tokens of the source, ending with an EOF token.
+     *
+     * @throws CompileException if the source contains an invalid character or an unterminated string.
+     */
+    public List<Token> tokenize() throws CompileException {
+
+	List<Token> result = new ArrayList<Token>();
+
+	skipWhitespaces();
+
+	while( _position < _source.length()) {
+
+	    char current = peek( 0);
+
+	    int start = _position;
+
+	    if( Character.isLetter( current) || ( current == '_')) {
+
+		while( Character.isLetterOrDigit( peek( 0)) || ( peek( 0) == '_')) {
+		    ++_position;
+		}
+
+		result.add( new Token( Token.Type.IDENTIFIER, _source.substring( start, _position), _line));
+
+	    } else if( Character.isDigit( current)) {
+
+		while( Character.isDigit( peek( 0))) {
+		    ++_position;
+		}
+
+		if( ( peek( 0) == '.') && Character.isDigit( peek( 1))) {  // Decimal places.
+
+		    ++_position;
+
+		    while( Character.isDigit( peek( 0))) {
+			++_position;
+		    }
+		}
+
+		if( "dhms%".indexOf( peek( 0)) >= 0) {  // Duration or percent suffix.
+		    ++_position;
+		}
+
+		result.add( new Token( Token.Type.NUMBER, _source.substring( start, _position), _line));
+
+	    } else if( current == '"') {
+
+		int end = _source.indexOf( '"', _position + 1);
+
+		if( end < 0) {
+		    throw new CompileException( _line, "String is not closed");
+		}
+
+		String text = _source.substring( _position + 1, end);
+
+		result.add( new Token( Token.Type.STRING, text, _line));
+
+		for( int currentIndex = 0; currentIndex < text.length(); ++currentIndex) {
+		    if( text.charAt( currentIndex) == '\n') {
+			++_line;
+		    }
+		}
+
+		_position = end + 1;
+
+	    } else {
+
+		String operator = null;
+
+		for( String currentOperator : OPERATORS) {
+
+		    if( _source.startsWith( currentOperator, _position)) {
+
+			operator = currentOperator;
+
+			break;
+		    }
+		}
+
+		if( operator == null) {
+		    throw new CompileException( _line, "Unexpected character '" + current + "'");
+		}
+
+		_position += operator.length();
+
+		result.add( new Token( Token.Type.OPERATOR, operator, _line));
+	    }
+
+	    skipWhitespaces();
+	}
+
+	result.add( new Token( Token.Type.EOF, "", _line));
+
+	return result;
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.language.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * This class is a node in the syntax tree of a cctl rule set.
+ */
+public class Node {
+
+    // Inner classes
+
+    /**
+     * The types of the nodes.
+     */
+    public enum Type {
+
+	/**
+	 * An assignment to a state variable. The value is the variable name, the child the new value.
+	 */
+	ASSIGNMENT,
+
+	/**
+	 * The balance of a currency on a trade site.
+	 */
+	BALANCE,
+
+	/**
+	 * A binary operation. The value is the operator, the children are the operands.
+	 */
+	BINARY,
+
+	/**
+	 * A moving average of a currency pair. The value is 'twema' or 'sma', the child is the period.
+	 */
+	MOVING_AVERAGE,
+
+	/**
+	 * A number. The value is the number in the source (i.e. '10d' or '110%').
+	 */
+	NUMBER,
+
+	/**
+	 * An order. The value is 'buy' or 'sell', the child is the amount.
+	 */
+	ORDER,
+
+	/**
+	 * A rule. The value is the name of the rule, the first child is the condition, the others are the statements.
+	 */
+	RULE,
+
+	/**
+	 * The root of a rule set. The children are the rules.
+	 */
+	RULESET,
+
+	/**
+	 * A ticker value of a currency pair. The value is 'buy', 'sell' or 'last'.
+	 */
+	TICKER,
+
+	/**
+	 * A unary operation. The value is the operator, the child the operand.
+	 */
+	UNARY,
+
+	/**
+	 * A state variable of the rule set. The value is the variable name.
+	 */
+	VARIABLE
+    }
+
+
+    // Instance variables
+
+    /**
+     * The child nodes.
+     */
+    private final List<Node> _children = new ArrayList<Node>();
+
+    /**
+     * The currency or currency pair (i.e. 'btc<=>usd') of a market node, or null.
+     */
+    private String _currency = null;
+
+    /**
+     * The line of this node in the source.
+     */
+    private final int _line;
+
+    /**
+     * The name of the trade site of a market node, or null.
+     */
+    private String _tradeSite = null;
+
+    /**
+     * The type of this node.
+     */
+    private final Type _type;
+
+    /**
+     * The value of this node (depends on the type).
+     */
+    private final String _value;
+
+
+    // Constructors
+
+    /**
+     * Create a new node.
+     *
+     * @param type The type of the node.
+     * @param value The value of the node.
+     * @param line The line of the node in the source.
+     */
+    public Node( Type type, String value, int line) {
+
+	_type = type;
+	_value = value;
+	_line = line;
+    }
+
+
+    // Methods
+
+    /**
+     * Add a child node.
+     *
+     * @param child The new child.
+     *
+     * @return This node.
+     */
+    public Node addChild( Node child) {
+
+	_children.add( child);
+
+	return this;
+    }
+
+    /**
+     * Get a child node.
+     *
+     * @param index The index of the child.
+     *
+     * @return The child node.
+     */
+    public Node getChild( int index) {
+
+	return _children.get( index);
+    }
+
+    /**
+     * Get the child nodes.
+     *
+     * @return The child nodes.
+     */
+    public List<Node> getChildren() {
+
+	return _children;
+    }
+
+    /**
+     * Get the currency or currency pair of a market node.
+     *
+     * @return The currency code or currency pair (i.e. 'btc<=>usd'), or null.
+     */
+    public String getCurrency() {
+
+	return _currency;
+    }
+
+    /**
+     * Get the line of this node in the source.
+     *
+     * @return The line of this node.
+     */
+    public int getLine() {
+
+	return _line;
+    }
+
+    /**
+     * Get the name of the trade site of a market node.
+     *
+     * @return The name of the trade site, or null.
+     */
+    public String getTradeSite() {
+
+	return _tradeSite;
+    }
+
+    /**
+     * Get the type of this node.
+     *
+     * @return The type of this node.
+     */
+    public Type getType() {
+
+	return _type;
+    }
+
+    /**
+     * Get the value of this node.
+     *
+     * @return The value of this node.
+     */
+    public String getValue() {
+
+	return _value;
+    }
+
+    /**
+     * Set the market of this node.
+     *
+     * @param tradeSite The name of the trade site.
+     * @param currency The currency code or currency pair (i.e. 'btc<=>usd').
+     *
+     * @return This node.
+     */
+    public Node setMarket( String tradeSite, String currency) {
+
+	_tradeSite = tradeSite;
+	_currency = currency;
+
+	return this;
+    }
+}
@@ -0,0 +1,541 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.language.parser;
+
+import de.andreas_rueckert.trade.language.CompileException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * This class is a recursive descent parser for cctl rule sets. Each parser rule
+ * of cctl.g is implemented by a method with the same name.
+ */
+public class Parser {
+
+    // Instance variables
+
+    /**
+     * The index of the current token.
+     */
+    private int _position = 0;
+
+    /**
+     * The tokens of the source.
+     */
+    private final List<Token> _tokens;
+
+    /**
+     * The names of the declared trade sites.
+     */
+    private final Set<String> _tradeSites = new HashSet<String>();
+
+
+    // Constructors
+
+    /**
+     * Create a new parser for a source.
+     *
+     * @param source The cctl source.
+     *
+     * @throws CompileException if the source cannot be split into tokens.
+     */
+    public Parser( String source) throws CompileException {
+
+	_tokens = new Lexer( source).tokenize();
+    }
+
+
+    // Methods
+
+    /**
+     * Parse an additive expression.
+     *
+     * @return The node of the expression.
+     *
+     * @throws CompileException if the expression has a syntax error.
+     */
+    private Node additiveExpression() throws CompileException {
+
+	Node result = multiplicativeExpression();
+
+	while( isOperator( "+") || isOperator( "-")) {
+
+	    Token operator = next();
+
+	    result = new Node( Node.Type.BINARY, operator.getText(), operator.getLine()).addChild( result).addChild( multiplicativeExpression());
+	}
+
+	return result;
+    }
+
+    /**
+     * Parse an and expression.
+     *
+     * @return The node of the expression.
+     *
+     * @throws CompileException if the expression has a syntax error.
+     */
+    private Node andExpression() throws CompileException {
+
+	Node result = notExpression();
+
+	while( isOperator( "&&")) {
+
+	    Token operator = next();
+
+	    result = new Node( Node.Type.BINARY, operator.getText(), operator.getLine()).addChild( result).addChild( notExpression());
+	}
+
+	return result;
+    }
+
+    /**
+     * Parse a comparison.
+     *
+     * @return The node of the comparison.
+     *
+     * @throws CompileException if the comparison has a syntax error.
+     */
+    private Node comparison() throws CompileException {
+
+	Node result = additiveExpression();
+
+	if( isOperator( "==") || isOperator( "!=") || isOperator( "<") || isOperator( "<=") || isOperator( ">") || isOperator( ">=")) {
+
+	    Token operator = next();
+
+	    result = new Node( Node.Type.BINARY, operator.getText(), operator.getLine()).addChild( result).addChild( additiveExpression());
+	}
+
+	return result;
+    }
+
+    /**
+     * Parse a currency pair.
+     *
+     * @return The currency pair (i.e. 'btc<=>usd').
+     *
+     * @throws CompileException if the currency pair has a syntax error.
+     */
+    private String currencyPair() throws CompileException {
+
+	String currency = expect( Token.Type.IDENTIFIER, null).getText();
+
+	expect( Token.Type.OPERATOR, "<=>");
+
+	return currency + "<=>" + expect( Token.Type.IDENTIFIER, null).getText();
+    }
+
+    /**
+     * Consume the current token, if it has the expected type and text.
+     *
+     * @param type The expected type.
+     * @param text The expected text, or null for any text.
+     *
+     * @return The consumed token.
+     *
+     * @throws CompileException if the current token does not match.
+     */
+    private Token expect( Token.Type type, String text) throws CompileException {
+
+	Token current = peek( 0);
+
+	if( ( current.getType() != type) || ( ( text != null) && ! current.getText().equals( text))) {
+
+	    throw new CompileException( current.getLine(), "Expected " + ( text != null ? "'" + text + "'" : type.toString().toLowerCase()) + " but found " + current);
+	}
+
+	return next();
+    }
+
+    /**
+     * Parse an expression.
+     *
+     * @return The node of the expression.
+     *
+     * @throws CompileException if the expression has a syntax error.
+     */
+    private Node expression() throws CompileException {
+
+	Node result = andExpression();
+
+	while( isOperator( "||")) {
+
+	    Token operator = next();
+
+	    result = new Node( Node.Type.BINARY, operator.getText(), operator.getLine()).addChild( result).addChild( andExpression());
+	}
+
+	return result;
+    }
+
+    /**
+     * Check, if the current token is a given keyword.
+     *
+     * @param keyword The keyword.
+     *
+     * @return true, if the current token is the keyword.
+     */
+    private boolean isKeyword( String keyword) {
+
+	return peek( 0).is( Token.Type.IDENTIFIER, keyword);
+    }
+
+    /**
+     * Check, if the current token is a given operator.
+     *
+     * @param operator The operator.
+     *
+     * @return true, if the current token is the operator.
+     */
+    private boolean isOperator( String operator) {
+
+	return peek( 0).is( Token.Type.OPERATOR, operator);
+    }
+
+    /**
+     * Parse a market value or an order, that starts with a trade site.
+     *
+     * @param allowOrder true, if an order is allowed here (in a consequence).
+     *
+     * @return The node of the market value or order.
+     *
+     * @throws CompileException if the market value has a syntax error.
+     */
+    private Node marketValue( boolean allowOrder) throws CompileException {
+
+	Token site = expect( Token.Type.IDENTIFIER, null);
+
+	expect( Token.Type.OPERATOR, ".");
+
+	// A currency is followed by the balance, a currency pair by a ticker, average or order.
+	if( peek( 1).is( Token.Type.OPERATOR, ".")) {
+
+	    String currency = expect( Token.Type.IDENTIFIER, null).getText();
+
+	    expect( Token.Type.OPERATOR, ".");
+	    expect( Token.Type.IDENTIFIER, "balance");
+
+	    if( isOperator( "(")) {  // The parentheses are optional.
+
+		next();
+
+		expect( Token.Type.OPERATOR, ")");
+	    }
+
+	    return new Node( Node.Type.BALANCE, "balance", site.getLine()).setMarket( site.getText(), currency);
+	}
+
+	String currencyPair = currencyPair();
+
+	expect( Token.Type.OPERATOR, ".");
+
+	Token member = expect( Token.Type.IDENTIFIER, null);
+
+	if( member.getText().equals( "ticker")) {
+
+	    expect( Token.Type.OPERATOR, ".");
+
+	    Token value = expect( Token.Type.IDENTIFIER, null);
+
+	    if( ! ( value.getText().equals( "buy") || value.getText().equals( "sell") || value.getText().equals( "last"))) {
+
+		throw new CompileException( value.getLine(), "Unknown ticker value " + value);
+	    }
+
+	    return new Node( Node.Type.TICKER, value.getText(), value.getLine()).setMarket( site.getText(), currencyPair);
+	}
+
+	Node.Type type;
+
+	if( member.getText().equals( "twema") || member.getText().equals( "sma")) {
+
+	    type = Node.Type.MOVING_AVERAGE;
+
+	} else if( member.getText().equals( "buy") || member.getText().equals( "sell")) {
+
+	    if( ! allowOrder) {
+		throw new CompileException( member.getLine(), "Orders are only allowed in the consequence of a rule");
+	    }
+
+	    type = Node.Type.ORDER;
+
+	} else {
+
+	    throw new CompileException( member.getLine(), "Unknown currency pair member " + member);
+	}
+
+	expect( Token.Type.OPERATOR, "(");
+
+	Node result = new Node( type, member.getText(), member.getLine()).setMarket( site.getText(), currencyPair).addChild( expression());
+
+	expect( Token.Type.OPERATOR, ")");
+
+	return result;
+    }
+
+    /**
+     * Parse a multiplicative expression.
+     *
+     * @return The node of the expression.
+     *
+     * @throws CompileException if the expression has a syntax error.
+     */
+    private Node multiplicativeExpression() throws CompileException {
+
+	Node result = unaryExpression();
+
+	while( isOperator( "*") || isOperator( "/")) {
+
+	    Token operator = next();
+
+	    result = new Node( Node.Type.BINARY, operator.getText(), operator.getLine()).addChild( result).addChild( unaryExpression());
+	}
+
+	return result;
+    }
+
+    /**
+     * Consume the current token.
+     *
+     * @return The consumed token.
+     */
+    private Token next() {
+
+	Token result = _tokens.get( _position);
+
+	if( result.getType() != Token.Type.EOF) {
+	    ++_position;
+	}
+
+	return result;
+    }
+
+    /**
+     * Parse a not expression.
+     *
+     * @return The node of the expression.
+     *
+     * @throws CompileException if the expression has a syntax error.
+     */
+    private Node notExpression() throws CompileException {
+
+	if( isOperator( "!")) {
+
+	    Token operator = next();
+
+	    return new Node( Node.Type.UNARY, operator.getText(), operator.getLine()).addChild( notExpression());
+	}
+
+	return comparison();
+    }
+
+    /**
+     * Parse the source.
+     *
+     * @return The root node of the rule set.
+     *
+     * @throws CompileException if the source has a syntax error.
+     */
+    public Node parse() throws CompileException {
+
+	return ruleset();
+    }
+
+    /**
+     * Get a token relative to the current position.
+     *
+     * @param offset The offset from the current position.
+     *
+     * @return The token or the EOF token, if the offset is beyond the end of the source.
+     */
+    private Token peek( int offset) {
+
+	return _tokens.get( Math.min( _position + offset, _tokens.size() - 1));
+    }
+
+    /**
+     * Parse a primary expression.
+     *
+     * @return The node of the expression.
+     *
+     * @throws CompileException if the expression has a syntax error.
+     */
+    private Node primary() throws CompileException {
+
+	Token current = peek( 0);
+
+	if( current.getType() == Token.Type.NUMBER) {
+
+	    next();
+
+	    return new Node( Node.Type.NUMBER, current.getText(), current.getLine());
+	}
+
+	if( isOperator( "(")) {
+
+	    next();
+
+	    Node result = expression();
+
+	    expect( Token.Type.OPERATOR, ")");
+
+	    return result;
+	}
+
+	if( current.getType() == Token.Type.IDENTIFIER) {
+
+	    if( peek( 1).is( Token.Type.OPERATOR, ".")) {  // A market value.
+
+		if( ! _tradeSites.contains( current.getText())) {
+		    throw new CompileException( current.getLine(), "Trade site " + current + " is not declared");
+		}
+
+		return marketValue( false);
+	    }
+
+	    next();
+
+	    return new Node( Node.Type.VARIABLE, current.getText(), current.getLine());
+	}
+
+	throw new CompileException( current.getLine(), "Unexpected " + current);
+    }
+
+    /**
+     * Parse a rule.
+     *
+     * @return The node of the rule.
+     *
+     * @throws CompileException if the rule has a syntax error.
+     */
+    private Node rule() throws CompileException {
+
+	Token ruleToken = expect( Token.Type.IDENTIFIER, "rule");
+
+	Node result = new Node( Node.Type.RULE, expect( Token.Type.STRING, null).getText(), ruleToken.getLine());
+
+	expect( Token.Type.IDENTIFIER, "when");
+
+	result.addChild( expression());  // The condition.
+
+	expect( Token.Type.IDENTIFIER, "then");
+
+	while( ! isKeyword( "end")) {  // The consequence.
+
+	    result.addChild( statement());
+
+	    if( isOperator( ";")) {  // The semicolon is optional.
+		next();
+	    }
+	}
+
+	expect( Token.Type.IDENTIFIER, "end");
+
+	return result;
+    }
+
+    /**
+     * Parse a rule set.
+     *
+     * @return The root node of the rule set.
+     *
+     * @throws CompileException if the rule set has a syntax error.
+     */
+    private Node ruleset() throws CompileException {
+
+	Node result = new Node( Node.Type.RULESET, null, 1);
+
+	while( peek( 0).getType() != Token.Type.EOF) {
+
+	    if( isKeyword( "tradesite")) {
+
+		tradesite();
+
+	    } else {
+
+		result.addChild( rule());
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Parse a statement of a consequence.
+     *
+     * @return The node of the statement.
+     *
+     * @throws CompileException if the statement has a syntax error.
+     */
+    private Node statement() throws CompileException {
+
+	Token current = expect( Token.Type.IDENTIFIER, null);
+
+	if( isOperator( "=")) {  // An assignment to a state variable.
+
+	    if( _tradeSites.contains( current.getText())) {
+		throw new CompileException( current.getLine(), "Cannot assign a value to the trade site " + current);
+	    }
+
+	    next();
+
+	    return new Node( Node.Type.ASSIGNMENT, current.getText(), current.getLine()).addChild( expression());
+	}
+
+	if( ! _tradeSites.contains( current.getText())) {
+	    throw new CompileException( current.getLine(), "Trade site " + current + " is not declared");
+	}
+
+	--_position;  // Let the market value parse the trade site again.
+
+	Node result = marketValue( true);
+
+	if( result.getType() != Node.Type.ORDER) {
+	    throw new CompileException( result.getLine(), "Only orders and assignments are allowed as statements");
+	}
+
+	return result;
+    }
+
+    /**
+     * Parse a trade site declaration.
+     *
+     * @throws CompileException if the declaration has a syntax error.
+     */
+    private void tradesite() throws CompileException {
+
+	expect( Token.Type.IDENTIFIER, "tradesite");
+
+	_tradeSites.add( expect( Token.Type.IDENTIFIER, null).getText());
+
+	expect( Token.Type.OPERATOR, ";");
+    }
+
+    /**
+     * Parse an unary expression.
+     *
+     * @return The node of the expression.
+     *
+     * @throws CompileException if the expression has a syntax error.
+     */
+    private Node unaryExpression() throws CompileException {
+
+	if( isOperator( "-")) {
+
+	    Token operator = next();
+
+	    return new Node( Node.Type.UNARY, operator.getText(), operator.getLine()).addChild( unaryExpression());
+	}
+
+	return primary();
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.language.parser;
+
+
+/**
+ * This class holds a token of a cctl source.
+ */
+public class Token {
+
+    // Inner classes
+
+    /**
+     * The types of the tokens.
+     */
+    public enum Type {
+
+	/**
+	 * The end of the source.
+	 */
+	EOF,
+
+	/**
+	 * An identifier or keyword.
+	 */
+	IDENTIFIER,
+
+	/**
+	 * A number with an optional duration or percent suffix.
+	 */
+	NUMBER,
+
+	/**
+	 * An operator or separator.
+	 */
+	OPERATOR,
+
+	/**
+	 * A string in double quotes (without the quotes).
+	 */
+	STRING
+    }
+
+
+    // Instance variables
+
+    /**
+     * The line of the token (starting with 1).
+     */
+    private final int _line;
+
+    /**
+     * The text of the token.
+     */
+    private final String _text;
+
+    /**
+     * The type of the token.
+     */
+    private final Type _type;
+
+
+    // Constructors
+
+    /**
+     * Create a new token.
+     *
+     * @param type The type of the token.
+     * @param text The text of the token.
+     * @param line The line of the token.
+     */
+    public Token( Type type, String text, int line) {
+
+	_type = type;
+	_text = text;
+	_line = line;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the line of this token.
+     *
+     * @return The line of this token (starting with 1).
+     */
+    public int getLine() {
+
+	return _line;
+    }
+
+    /**
+     * Get the text of this token.
+     *
+     * @return The text of this token.
+     */
+    public String getText() {
+
+	return _text;
+    }
+
+    /**
+     * Get the type of this token.
+     *
+     * @return The type of this token.
+     */
+    public Type getType() {
+
+	return _type;
+    }
+
+    /**
+     * Check, if this token has a given type and text.
+     *
+     * @param type The type to check for.
+     * @param text The text to check for.
+     *
+     * @return true, if this token has the given type and text.
+     */
+    public boolean is( Type type, String text) {
+
+	return ( _type == type) && _text.equals( text);
+    }
+
+    /**
+     * Convert this token to a string representation.
+     *
+     * @return A string representation of this token.
+     */
+    public String toString() {
+
+	return _type == Type.EOF ? "end of file" : "'" + _text + "'";
+    }
+}
@@ -1,6 +1,9 @@
 /**
  * Antlr grammar for a cryptocoin trading language (cctl)
  *
+ * The compiler uses the hand written recursive descent parser in Parser.java,
+ * which implements exactly this grammar, so no antlr tool is needed for the build.
+ *
  * (c) 2013 Andreas Rueckert <a_rueckert@gmx.net>
  */
 
@@ -14,26 +17,108 @@ package de.andreas_rueckert.trade.language.parser;
 tokens {
     END = 'end';
     RULE = 'rule';
-    RULESET = 'ruleset';
     THEN = 'then';
+    TRADESITE = 'tradesite';
     WHEN = 'when';
 }
 
-rule 
-    : RULE STRING WHEN CONDITION THEN CONSEQUENCE END
+ruleset
+    : ( tradesite | rule )* EOF
+    ;
+
+tradesite
+    : TRADESITE Identifier ';'
+    ;
+
+rule
+    : RULE StringLiteral WHEN condition THEN consequence END
     ;
 
+condition
+    : expression
+    ;
+
+consequence
+    : ( statement ';'? )*
+    ;
+
+statement
+    : Identifier '=' expression
+    | order
+    ;
+
+order
+    : Identifier '.' currencyPair '.' ( 'buy' | 'sell' ) '(' expression ')'
+    ;
+
+expression
+    : andExpression ( '||' andExpression )*
+    ;
+
+andExpression
+    : notExpression ( '&&' notExpression )*
+    ;
+
+notExpression
+    : '!' notExpression
+    | comparison
+    ;
+
+comparison
+    : additiveExpression ( ( '==' | '!=' | '<' | '<=' | '>' | '>=' ) additiveExpression )?
+    ;
+
+additiveExpression
+    : multiplicativeExpression ( ( '+' | '-' ) multiplicativeExpression )*
+    ;
+
+multiplicativeExpression
+    : unaryExpression ( ( '*' | '/' ) unaryExpression )*
+    ;
+
+unaryExpression
+    : '-' unaryExpression
+    | primary
+    ;
+
+primary
+    : NumberLiteral
+    | '(' expression ')'
+    | marketValue
+    | Identifier  // A state variable of the rule set.
+    ;
+
+marketValue
+    : Identifier '.' Identifier '.' 'balance' ( '(' ')' )?
+    | Identifier '.' currencyPair '.' 'ticker' '.' ( 'buy' | 'sell' | 'last' )
+    | Identifier '.' currencyPair '.' ( 'twema' | 'sma' ) '(' expression ')'
+    ;
+
+currencyPair
+    : Identifier '<=>' Identifier
+    ;
 
 
 // Lexer
 
-NumberLiteral // with day, hour, minute, second suffix...
-    :   ('0'..'9')+ '.' ('0'..'9')* ( 'd' | 'h' | 'm' | 's' )?
+NumberLiteral // with day, hour, minute, second or percent suffix...
+    :   ('0'..'9')+ ( '.' ('0'..'9')+ )? ( 'd' | 'h' | 'm' | 's' | '%' )?
     ;
 
 StringLiteral
     :  '"' ( ~( '"' ) )* '"'
     ;
 
-WS  : (' '|'\t')+ { skip(); } ;
+Identifier
+    :  ( 'a'..'z' | 'A'..'Z' | '_' ) ( 'a'..'z' | 'A'..'Z' | '_' | '0'..'9' )*
+    ;
+
+COMMENT
+    :   '/*' ( options {greedy=false;} : . )* '*/' { skip(); }
+    ;
+
+LINE_COMMENT
+    :   '//' ~( '\n' | '\r' )* { skip(); }
+    ;
 
+WS  : (' '|'\t'|'\r'|'\n')+ { skip(); } ;
@@ -0,0 +1,103 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.util;
+
+
+/**
+ * This class provides the current time to the bots.
+ *
+ * By default it just returns the system time via TimeUtils, but another
+ * time source can be injected, so strategies and rules can be driven by
+ * a simulated clock.
+ */
+public class Clock {
+
+    // Static variables
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static Clock _instance = null;
+
+    /**
+     * The time source of the system clock.
+     */
+    public static final TimeSource SYSTEM_TIME_SOURCE = new TimeSource() {
+
+	    public long getCurrentTimeMicros() {
+
+		return TimeUtils.getInstance().getCurrentGMTTimeMicros();
+	    }
+	};
+
+
+    // Instance variables
+
+    /**
+     * The current time source.
+     */
+    private volatile TimeSource _timeSource = SYSTEM_TIME_SOURCE;
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private Clock() {
+    }
+
+
+    // Methods
+
+    /**
+     * Get the current GMT time from the current time source.
+     *
+     * @return The current GMT time in microseconds.
+     */
+    public long getCurrentTimeMicros() {
+
+	return _timeSource.getCurrentTimeMicros();
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized Clock getInstance() {
+
+	if( _instance == null) {  // If there is no instance yet...
+
+	    _instance = new Clock();  // ...create one.
+	}
+
+	return _instance;  // Return the only instance of this class.
+    }
+
+    /**
+     * Get the current time source.
+     *
+     * @return The current time source.
+     */
+    public TimeSource getTimeSource() {
+
+	return _timeSource;
+    }
+
+    /**
+     * Set a new time source.
+     *
+     * @param timeSource The new time source or null to use the system clock again.
+     */
+    public void setTimeSource( TimeSource timeSource) {
+
+	_timeSource = ( timeSource == null) ? SYSTEM_TIME_SOURCE : timeSource;
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.util;
+
+
+/**
+ * This interface defines a source for the current time, so the bots can
+ * run on a simulated clock (i.e. in a backtest).
+ */
+public interface TimeSource {
+
+    // Methods
+
+    /**
+     * Get the current GMT time.
+     *
+     * @return The current GMT time in microseconds.
+     */
+    public long getCurrentTimeMicros();
+}
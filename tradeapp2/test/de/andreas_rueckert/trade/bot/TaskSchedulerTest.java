@@ -0,0 +1,420 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot;
+
+import de.andreas_rueckert.trade.backtest.BacktestTradeSite;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.util.TestUtils;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * This class checks, that the task scheduler executes the tasks in parallel,
+ * so the wall clock time of an evaluation round shrinks with the number of
+ * workers, that a hung execution does not block the other tasks, and that
+ * a triggered task is executed without waiting for its interval.
+ *
+ * The tasks fetch the trades of simulated trade sites with a network latency.
+ *
+ * Usage: TaskSchedulerTest
+ */
+public class TaskSchedulerTest {
+
+    // Inner classes
+
+    /**
+     * A scheduler, that fetches the trades of a trade site in each execution.
+     */
+    static class FetchScheduler extends TaskScheduler<LatencyTradeSite> {
+
+	// Instance variables
+
+	/**
+	 * The execution interval of the tasks in microseconds.
+	 */
+	private final long _interval;
+
+	/**
+	 * The execution timeout of the tasks in microseconds.
+	 */
+	private final long _timeout;
+
+
+	// Constructors
+
+	/**
+	 * Create a new fetch scheduler.
+	 *
+	 * @param workerPoolSize The number of worker threads.
+	 * @param interval The execution interval of the tasks in microseconds.
+	 * @param timeout The execution timeout of the tasks in microseconds.
+	 */
+	FetchScheduler( int workerPoolSize, long interval, long timeout) {
+
+	    super( "TaskSchedulerTest", workerPoolSize);
+
+	    _interval = interval;
+	    _timeout = timeout;
+	}
+
+
+	// Methods
+
+	/**
+	 * Fetch the trades of a trade site.
+	 *
+	 * @param tradeSite The trade site.
+	 */
+	protected void execute( LatencyTradeSite tradeSite) {
+
+	    tradeSite.getTrades( 0L, tradeSite.getSupportedCurrencyPairs()[ 0]);
+	}
+
+	/**
+	 * Get the execution interval of a task.
+	 *
+	 * @param tradeSite The trade site.
+	 *
+	 * @return The execution interval in microseconds.
+	 */
+	protected long getExecutionInterval( LatencyTradeSite tradeSite) {
+
+	    return _interval;
+	}
+
+	/**
+	 * Get the execution timeout of a task.
+	 *
+	 * @param tradeSite The trade site.
+	 *
+	 * @return The execution timeout in microseconds.
+	 */
+	protected long getExecutionTimeout( LatencyTradeSite tradeSite) {
+
+	    return _timeout;
+	}
+
+	/**
+	 * Get the name of a task for the log messages.
+	 *
+	 * @param tradeSite The trade site.
+	 *
+	 * @return The name of the task.
+	 */
+	protected String getTaskName( LatencyTradeSite tradeSite) {
+
+	    return "fetch " + tradeSite._name;
+	}
+    }
+
+    /**
+     * A simulated trade site, that answers the trade requests after a network latency.
+     */
+    static class LatencyTradeSite extends BacktestTradeSite {
+
+	// Instance variables
+
+	/**
+	 * Flag to block the requests, like a stuck http request, that ignores interrupts.
+	 */
+	volatile boolean _blocked = false;
+
+	/**
+	 * The number of answered trade requests.
+	 */
+	final AtomicInteger _fetchCount = new AtomicInteger( 0);
+
+	/**
+	 * The latency of a request in milliseconds.
+	 */
+	private final long _latency;
+
+	/**
+	 * The name of the site for the log messages.
+	 */
+	final String _name;
+
+
+	// Constructors
+
+	/**
+	 * Create a new simulated trade site with a latency.
+	 *
+	 * @param name The name of the site for the log messages.
+	 * @param currencyPair The simulated currency pair.
+	 * @param latency The latency of a request in milliseconds.
+	 */
+	LatencyTradeSite( String name, CurrencyPair currencyPair, long latency) {
+
+	    super( currencyPair, BigDecimal.ONE, BigDecimal.ONE);
+
+	    _name = name;
+	    _latency = latency;
+	}
+
+
+	// Methods
+
+	/**
+	 * Get the recorded trades after the latency of the site.
+	 * The latency ignores interrupts, like a blocking http request.
+	 *
+	 * @param since The start time in microseconds.
+	 * @param currencyPair The currency pair to query.
+	 *
+	 * @return The recorded trades.
+	 */
+	@Override public List<Trade> getTrades( long since, CurrencyPair currencyPair) {
+
+	    long endTime = System.currentTimeMillis() + _latency;
+
+	    while( _blocked || ( System.currentTimeMillis() < endTime)) {
+
+		try {
+
+		    Thread.sleep( 5L);
+
+		} catch( InterruptedException ie) {
+		    // A blocking request does not notice the interrupt.
+		}
+	    }
+
+	    List<Trade> result = super.getTrades( since, currencyPair);
+
+	    _fetchCount.incrementAndGet();
+
+	    return result;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The latency of the simulated trade sites in milliseconds.
+     */
+    private static final long LATENCY = 100L;
+
+    /**
+     * The maximum time to wait for the executions in milliseconds.
+     */
+    private static final long MAX_WAIT = 30L * 1000L;
+
+
+    // Methods
+
+    /**
+     * Create simulated trade sites with the default latency.
+     *
+     * @param count The number of sites.
+     *
+     * @return The new sites.
+     */
+    private static List<LatencyTradeSite> createTradeSites( int count) {
+
+	CurrencyPair currencyPair = TestUtils.createProxy( CurrencyPair.class, "isEqual", Boolean.TRUE);
+
+	List<LatencyTradeSite> result = new ArrayList<LatencyTradeSite>();
+
+	for( int currentSite = 0; currentSite < count; ++currentSite) {
+
+	    result.add( new LatencyTradeSite( "site " + currentSite, currencyPair, LATENCY));
+	}
+
+	return result;
+    }
+
+    /**
+     * Run the tests.
+     *
+     * @param args The command line arguments (not used).
+     */
+    public static void main( String [] args) {
+
+	testHungExecutionDoesNotBlockPool();
+	testTriggerExecutesImmediately();
+	testWallClockScalesWithWorkers();
+
+	System.out.println( "TaskSchedulerTest passed");
+    }
+
+    /**
+     * Measure the wall clock time, until each of a number of new sites was fetched once.
+     *
+     * @param workerPoolSize The number of worker threads.
+     * @param siteCount The number of fetched trade sites.
+     *
+     * @return The wall clock time in milliseconds.
+     */
+    private static long measureRound( int workerPoolSize, int siteCount) {
+
+	List<LatencyTradeSite> tradeSites = createTradeSites( siteCount);
+
+	// Use a long interval, so each site is only fetched once during the measurement.
+	FetchScheduler scheduler = new FetchScheduler( workerPoolSize, 60L * 1000000L, 60L * 1000000L);
+
+	for( LatencyTradeSite currentSite : tradeSites) {
+
+	    scheduler.schedule( currentSite);
+	}
+
+	long startTime = System.currentTimeMillis();
+
+	scheduler.start();
+
+	try {
+
+	    for( LatencyTradeSite currentSite : tradeSites) {
+
+		waitForFetches( currentSite, 1);
+	    }
+
+	    return System.currentTimeMillis() - startTime;
+
+	} finally {
+
+	    scheduler.stop();
+	}
+    }
+
+    /**
+     * Check, that a hung execution, that ignores the interrupt, is not dispatched
+     * again and does not block the other tasks, even with a single worker.
+     */
+    private static void testHungExecutionDoesNotBlockPool() {
+
+	List<LatencyTradeSite> tradeSites = createTradeSites( 4);
+
+	LatencyTradeSite hungSite = tradeSites.get( 0);
+
+	hungSite._blocked = true;
+
+	// Time out after 2 latencies and dispatch every 3 latencies, so a dispatch of the hung task would be an overrun.
+	FetchScheduler scheduler = new FetchScheduler( 1, 3L * LATENCY * 1000L, 2L * LATENCY * 1000L);
+
+	for( LatencyTradeSite currentSite : tradeSites) {
+
+	    scheduler.schedule( currentSite);
+	}
+
+	scheduler.start();
+
+	try {
+
+	    // The other sites are fetched, although the only worker hangs.
+	    for( LatencyTradeSite currentSite : tradeSites.subList( 1, tradeSites.size())) {
+
+		waitForFetches( currentSite, 2);
+	    }
+
+	    TestUtils.check( scheduler.getOverrunCount( hungSite) == 0L, "The hung task was dispatched again");
+
+	    // Once the request returns, the task is executed again.
+	    hungSite._blocked = false;
+
+	    waitForFetches( hungSite, 2);
+
+	} finally {
+
+	    scheduler.stop();
+	}
+    }
+
+    /**
+     * Check, that a triggered task is executed at once, and that a trigger
+     * during a running execution is dropped without counting an overrun.
+     */
+    private static void testTriggerExecutesImmediately() {
+
+	LatencyTradeSite tradeSite = createTradeSites( 1).get( 0);
+
+	// The interval is longer than the maximum wait, so only the triggers can execute the task again.
+	FetchScheduler scheduler = new FetchScheduler( 1, 10L * MAX_WAIT * 1000L, MAX_WAIT * 1000L);
+
+	scheduler.schedule( tradeSite);
+	scheduler.start();
+
+	try {
+
+	    waitForFetches( tradeSite, 1);
+
+	    scheduler.trigger( tradeSite);
+	    scheduler.trigger( tradeSite);  // The first triggered execution is still running.
+
+	    waitForFetches( tradeSite, 2);
+
+	    TestUtils.check( scheduler.getOverrunCount( tradeSite) == 0L, "A dropped trigger was counted as an overrun");
+
+	    scheduler.trigger( tradeSite);
+
+	    waitForFetches( tradeSite, 3);
+
+	} finally {
+
+	    scheduler.stop();
+	}
+    }
+
+    /**
+     * Check, that the wall clock time of a round over all sites shrinks with the number of workers.
+     */
+    private static void testWallClockScalesWithWorkers() {
+
+	int workerPoolSize = Math.min( 8, Math.max( 2, Runtime.getRuntime().availableProcessors()));
+
+	int siteCount = 2 * workerPoolSize;
+
+	long serialTime = measureRound( 1, siteCount);
+	long parallelTime = measureRound( workerPoolSize, siteCount);
+
+	System.out.println( siteCount
+			    + " sites with "
+			    + LATENCY
+			    + " ms latency: 1 worker "
+			    + serialTime
+			    + " ms, "
+			    + workerPoolSize
+			    + " workers "
+			    + parallelTime
+			    + " ms");
+
+	// The serial round takes the sum of the latencies, the parallel round only a fraction of it.
+	TestUtils.check( serialTime >= siteCount * LATENCY, "The serial round was too fast: " + serialTime + " ms");
+	TestUtils.check( parallelTime * 3L < serialTime * 2L, "The workers did not speed up the round: " + parallelTime + " ms");
+    }
+
+    /**
+     * Wait, until a trade site was fetched a given number of times.
+     *
+     * @param tradeSite The trade site.
+     * @param fetchCount The number of fetches.
+     */
+    private static void waitForFetches( LatencyTradeSite tradeSite, int fetchCount) {
+
+	long deadline = System.currentTimeMillis() + MAX_WAIT;
+
+	while( tradeSite._fetchCount.get() < fetchCount) {
+
+	    TestUtils.check( System.currentTimeMillis() < deadline, tradeSite._name + " was not fetched " + fetchCount + " times");
+
+	    try {
+
+		Thread.sleep( 5L);
+
+	    } catch( InterruptedException ie) {
+
+		throw new AssertionError( "Wait for the fetches was interrupted");
+	    }
+	}
+    }
+}
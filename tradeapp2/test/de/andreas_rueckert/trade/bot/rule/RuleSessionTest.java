@@ -0,0 +1,123 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.rule;
+
+import de.andreas_rueckert.trade.currency.Currency;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.Ticker;
+import de.andreas_rueckert.util.TestUtils;
+import java.util.List;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.rule.FactHandle;
+
+
+/**
+ * This class checks, that the market facts of a rule session are updated
+ * in place, instead of being inserted again in each cycle.
+ *
+ * Usage: RuleSessionTest
+ */
+public class RuleSessionTest {
+
+    // Static variables
+
+    /**
+     * The ticker, that the test session returns for its market in the next cycle.
+     */
+    private static Ticker _currentTicker;
+
+
+    // Methods
+
+    /**
+     * Run the tests.
+     *
+     * @param args The command line arguments (not used).
+     */
+    public static void main( String [] args) {
+
+	testMarketFactIsUpdatedInPlace();
+	testParseMetaData();
+
+	System.out.println( "RuleSessionTest passed");
+    }
+
+    /**
+     * Check, that a changed ticker replaces the fact of the market, and that
+     * a market is kept only once.
+     */
+    private static void testMarketFactIsUpdatedInPlace() {
+
+	StatefulKnowledgeSession session = KnowledgeBaseFactory.newKnowledgeBase().newStatefulKnowledgeSession();
+
+	RuleSession ruleSession = new RuleSession( session) {
+
+		Depth getDepth( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+		    return null;  // Keep only the ticker in the session.
+		}
+
+		Ticker getTicker( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+		    return _currentTicker;
+		}
+	    };
+
+	TradeSite tradeSite = TestUtils.createProxy( TradeSite.class, "getName", "BTCe");
+	CurrencyPair currencyPair = TestUtils.createProxy( CurrencyPair.class
+							   , "getCurrency", TestUtils.createProxy( Currency.class, "getCode", "BTC")
+							   , "getPaymentCurrency", TestUtils.createProxy( Currency.class, "getCode", "USD"));
+
+	ruleSession.addMarket( tradeSite, currencyPair);
+	ruleSession.addMarket( tradeSite, currencyPair);
+
+	TestUtils.check( ruleSession.getMarketCount() == 1, "The market was added twice");
+
+	Ticker firstTicker = TestUtils.createProxy( Ticker.class, "getTimestamp", 1L);
+
+	_currentTicker = firstTicker;
+	ruleSession.execute();
+
+	TestUtils.check( session.getFactCount() == 1, "The ticker was not inserted");
+
+	FactHandle handle = (FactHandle)session.getFactHandles().iterator().next();
+
+	Ticker secondTicker = TestUtils.createProxy( Ticker.class, "getTimestamp", 2L);
+
+	_currentTicker = secondTicker;
+	ruleSession.execute();
+
+	TestUtils.check( session.getFactCount() == 1, "The ticker was inserted again");
+	TestUtils.check( session.getFactHandles().iterator().next() == handle, "The ticker got a new fact handle");
+	TestUtils.check( session.getObject( handle) == secondTicker, "The ticker was not updated");
+
+	ruleSession.dispose();
+    }
+
+    /**
+     * Check the parsing of the markets and indicators, that a rule declares in its metadata.
+     */
+    private static void testParseMetaData() {
+
+	List<String []> markets = RuleSession.parseMetaData( "\"BTCe btc<=>usd\", \"BTCe  ltc<=>btc\"");
+
+	TestUtils.check( markets.size() == 2, "Wrong number of markets");
+	TestUtils.check( markets.get( 0)[ 0].equals( "BTCe") && markets.get( 0)[ 1].equals( "btc<=>usd"), "Wrong first market");
+	TestUtils.check( markets.get( 1).length == 2 && markets.get( 1)[ 1].equals( "ltc<=>btc"), "Wrong second market");
+
+	List<String []> indicators = RuleSession.parseMetaData( "\"BTCe btc<=>usd sma 6h\"");
+
+	TestUtils.check( ( indicators.size() == 1) && ( indicators.get( 0).length == 4) && indicators.get( 0)[ 2].equals( "sma"), "Wrong indicator");
+
+	TestUtils.check( RuleSession.parseMetaData( null).isEmpty(), "A missing attribute has markets");
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.spread;
+
+import de.andreas_rueckert.util.TestUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+
+/**
+ * This class checks, that the java strategy loader compiles a strategy again,
+ * if only a class, that the strategy depends on, was changed, and that the
+ * spread bot swaps a changed strategy in.
+ *
+ * Usage: JavaStrategyLoaderTest
+ */
+public class JavaStrategyLoaderTest {
+
+    // Methods
+
+    /**
+     * Delete a directory with all its content.
+     *
+     * @param directory The directory to delete.
+     */
+    private static void deleteDirectory( File directory) {
+
+	File [] files = directory.listFiles();
+
+	if( files != null) {
+
+	    for( File currentFile : files) {
+
+		deleteDirectory( currentFile);
+	    }
+	}
+
+	directory.delete();
+    }
+
+    /**
+     * Run the tests.
+     *
+     * @param args The command line arguments (not used).
+     *
+     * @throws IOException if the test sources cannot be written.
+     */
+    public static void main( String [] args) throws IOException {
+
+	File pluginDirectory = Files.createTempDirectory( "strategies").toFile();
+
+	try {
+
+	    testChangedDependencyIsCompiled( pluginDirectory);
+	    testChangedStrategyIsReloaded( pluginDirectory);
+
+	} finally {
+
+	    deleteDirectory( pluginDirectory);
+	}
+
+	System.out.println( "JavaStrategyLoaderTest passed");
+    }
+
+    /**
+     * Check, that a changed constant in a dependency of a strategy changes the
+     * reloaded strategy, although the source of the strategy itself is unchanged.
+     *
+     * @param pluginDirectory The directory for the strategy sources.
+     *
+     * @throws IOException if the test sources cannot be written.
+     */
+    private static void testChangedDependencyIsCompiled( File pluginDirectory) throws IOException {
+
+	File packageDirectory = new File( pluginDirectory, "test");
+
+	packageDirectory.mkdirs();
+
+	File constantsFile = new File( packageDirectory, "Constants.java");
+
+	writeSource( new File( packageDirectory, "TestStrategy.java")
+		     , "package test;\n"
+		     + "public class TestStrategy extends de.andreas_rueckert.trade.bot.spread.StrategyImpl {\n"
+		     + "    public TestStrategy( de.andreas_rueckert.trade.bot.spread.SpreadBot bot"
+		     + ", de.andreas_rueckert.trade.site.TradeSiteUserAccount userAccount) {\n"
+		     + "        super( Constants.NAME, \"1m\");\n"
+		     + "    }\n"
+		     + "}\n");
+
+	writeSource( constantsFile, "package test;\npublic class Constants { public static final String NAME = \"first\"; }\n");
+
+	JavaStrategyLoader loader = new JavaStrategyLoader( null, null, pluginDirectory, "test.TestStrategy");
+
+	TestUtils.check( loader.load(), "The strategy was not loaded");
+	TestUtils.check( loader.getStrategyInstance().getName().equals( "first"), "Wrong name of the loaded strategy");
+
+	// The constant is inlined into the strategy class, so only recompiling the dependency is not enough.
+	writeSource( constantsFile, "package test;\npublic class Constants { public static final String NAME = \"second\"; }\n");
+
+	constantsFile.setLastModified( constantsFile.lastModified() + 2000L);
+
+	TestUtils.check( loader.load(), "The strategy was not reloaded");
+	TestUtils.check( loader.getStrategyInstance().getName().equals( "second")
+			 , "The strategy was not compiled again: " + loader.getStrategyInstance().getName());
+    }
+
+    /**
+     * Check, that the spread bot loads a strategy from its source file and
+     * replaces it, once the source changed.
+     *
+     * @param pluginDirectory The directory for the strategy sources.
+     *
+     * @throws IOException if the test sources cannot be written.
+     */
+    private static void testChangedStrategyIsReloaded( File pluginDirectory) throws IOException {
+
+	File packageDirectory = new File( pluginDirectory, "reload");
+
+	packageDirectory.mkdirs();
+
+	File strategyFile = new File( packageDirectory, "ReloadStrategy.java");
+
+	writeSource( strategyFile, getReloadStrategySource( "1.0"));
+
+	SpreadBot bot = SpreadBot.getInstance();
+
+	Strategy loadedStrategy = bot.addStrategyFromFile( strategyFile.getPath(), null);
+
+	TestUtils.check( ( loadedStrategy != null) && bot.getStrategies().contains( loadedStrategy), "The strategy file was not loaded");
+
+	bot.reloadChangedStrategies();
+
+	TestUtils.check( bot.getStrategyForName( "reloaded") == loadedStrategy, "An unchanged strategy was reloaded");
+
+	writeSource( strategyFile, getReloadStrategySource( "2.0"));
+
+	strategyFile.setLastModified( strategyFile.lastModified() + 2000L);
+
+	bot.reloadChangedStrategies();
+
+	Strategy reloadedStrategy = bot.getStrategyForName( "reloaded");
+
+	TestUtils.check( ( reloadedStrategy != loadedStrategy) && ( reloadedStrategy.getLeverage() == 2.0)
+			 , "The changed strategy was not swapped into the bot");
+	TestUtils.check( ! bot.getStrategies().contains( loadedStrategy), "The old version of the strategy was kept");
+    }
+
+    /**
+     * Get the source of a strategy for the reload test.
+     *
+     * @param leverage The leverage of the strategy, to tell the versions apart.
+     *
+     * @return The java source of the strategy.
+     */
+    private static String getReloadStrategySource( String leverage) {
+
+	return "package reload;\n"
+	    + "public class ReloadStrategy extends de.andreas_rueckert.trade.bot.spread.StrategyImpl {\n"
+	    + "    public ReloadStrategy( de.andreas_rueckert.trade.bot.spread.SpreadBot bot"
+	    + ", de.andreas_rueckert.trade.site.TradeSiteUserAccount userAccount) {\n"
+	    + "        super( \"reloaded\", \"1m\", " + leverage + ");\n"
+	    + "    }\n"
+	    + "}\n";
+    }
+
+    /**
+     * Write a java source file.
+     *
+     * @param file The source file.
+     * @param source The java source.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    private static void writeSource( File file, String source) throws IOException {
+
+	Files.write( file.toPath(), source.getBytes( Charset.forName( "UTF-8")));
+    }
+}
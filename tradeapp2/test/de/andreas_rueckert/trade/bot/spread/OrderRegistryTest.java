@@ -0,0 +1,128 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.spread;
+
+import de.andreas_rueckert.trade.backtest.SimulatedTimeSource;
+import de.andreas_rueckert.trade.order.OrderStatus;
+import de.andreas_rueckert.trade.order.SiteOrder;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.util.Clock;
+import de.andreas_rueckert.util.TestUtils;
+import de.andreas_rueckert.util.TimeSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * This class checks, that the order registry counts only the filled orders
+ * as filled, and not the cancelled ones.
+ *
+ * Usage: OrderRegistryTest
+ */
+public class OrderRegistryTest {
+
+    // Static variables
+
+    /**
+     * The open orders of the test trade site.
+     */
+    private static final List<SiteOrder> _openOrders = new ArrayList<SiteOrder>();
+
+
+    // Methods
+
+    /**
+     * Create an order, that was submitted to a trade site.
+     *
+     * @param tradeSite The trade site of the order.
+     * @param id The id and site id of the order.
+     *
+     * @return The order.
+     */
+    private static SiteOrder createOrder( TradeSite tradeSite, String id) {
+
+	return TestUtils.createProxy( SiteOrder.class
+				      , "getId", id
+				      , "getSiteId", "site" + id
+				      , "getTimestamp", 1000L
+				      , "getTradeSite", tradeSite);
+    }
+
+    /**
+     * Run the tests.
+     *
+     * @param args The command line arguments (not used).
+     */
+    public static void main( String [] args) {
+
+	TimeSource previousTimeSource = Clock.getInstance().getTimeSource();
+
+	Clock.getInstance().setTimeSource( new SimulatedTimeSource( 2000L));
+
+	try {
+
+	    testCancelledOrderIsNotFilled();
+
+	} finally {
+
+	    Clock.getInstance().setTimeSource( previousTimeSource);
+	}
+
+	System.out.println( "OrderRegistryTest passed");
+    }
+
+    /**
+     * Check, that only the filled order of the orders, that vanished from the
+     * open orders, is returned, and that the cancelled order is removed.
+     */
+    private static void testCancelledOrderIsNotFilled() {
+
+	TradeSite tradeSite = TestUtils.createProxy( TradeSite.class
+						     , "getName", "Test"
+						     , "getOpenOrders", _openOrders);
+
+	SiteOrder openOrder = createOrder( tradeSite, "1");
+	SiteOrder filledOrder = createOrder( tradeSite, "2");
+	SiteOrder cancelledOrder = createOrder( tradeSite, "3");
+	SiteOrder pendingOrder = createOrder( tradeSite, "4");
+
+	final Map<String, OrderStatus> statuses = new HashMap<String, OrderStatus>();
+
+	statuses.put( "2", OrderStatus.FILLED);
+	statuses.put( "3", OrderStatus.CANCELED);
+	statuses.put( "4", OrderStatus.UNKNOWN);
+
+	OrderRegistry registry = new OrderRegistry() {
+
+		OrderStatus checkClosedOrder( SiteOrder order) {
+
+		    return statuses.get( order.getId());
+		}
+	    };
+
+	registry.add( openOrder);
+	registry.add( filledOrder);
+	registry.add( cancelledOrder);
+	registry.add( pendingOrder);
+
+	_openOrders.add( openOrder);
+
+	List<SiteOrder> filledOrders = registry.removeFilledOrders( null);
+
+	TestUtils.check( filledOrders.size() == 1, "Wrong number of filled orders: " + filledOrders.size());
+	TestUtils.check( filledOrders.get( 0) == filledOrder, "The wrong order was filled");
+
+	TestUtils.check( registry.getOrder( "1") != null, "The open order was removed");
+	TestUtils.check( registry.getOrder( "3") == null, "The cancelled order was not removed");
+	TestUtils.check( registry.getOrder( "4") != null, "The order with an unknown status was removed");
+	TestUtils.check( registry.size() == 2, "Wrong number of remaining orders: " + registry.size());
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.bot.spread;
+
+import de.andreas_rueckert.trade.backtest.BacktestTradeSite;
+import de.andreas_rueckert.trade.currency.Currency;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.order.OrderType;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
+import de.andreas_rueckert.util.TestUtils;
+import java.math.BigDecimal;
+
+
+/**
+ * This class checks, that the spread bot keeps a balance strategy for each
+ * account, that trades a currency pair on a simulated trade site, and that
+ * each strategy keeps its own margins.
+ *
+ * Usage: SpreadBotTest
+ */
+public class SpreadBotTest {
+
+    // Methods
+
+    /**
+     * Create a currency pair.
+     *
+     * @param currencyCode The code of the currency.
+     * @param paymentCurrencyCode The code of the payment currency.
+     *
+     * @return The currency pair.
+     */
+    private static CurrencyPair createCurrencyPair( String currencyCode, String paymentCurrencyCode) {
+
+	return TestUtils.createProxy( CurrencyPair.class
+				      , "getCurrency", TestUtils.createProxy( Currency.class, "getCode", currencyCode)
+				      , "getPaymentCurrency", TestUtils.createProxy( Currency.class, "getCode", paymentCurrencyCode));
+    }
+
+    /**
+     * Create a user account with a given name.
+     *
+     * @param accountName The name of the account.
+     *
+     * @return The user account.
+     */
+    private static TradeSiteUserAccount createUserAccount( String accountName) {
+
+	TradeSiteUserAccount userAccount = new TradeSiteUserAccount();
+
+	userAccount.setParameter( "accountName", accountName);
+
+	return userAccount;
+    }
+
+    /**
+     * Get the configured margin of the balance rule of a strategy for an order type.
+     *
+     * @param strategy The balance strategy.
+     * @param orderType The type of the order (buy or sell).
+     *
+     * @return The configured margin of the rule.
+     */
+    private static float getRuleMargin( Strategy strategy, OrderType orderType) {
+
+	for( Rule currentRule : strategy.getRules()) {
+
+	    if( ( orderType == OrderType.BUY) ? ( currentRule instanceof BalanceBuyRule) : ( currentRule instanceof BalanceSellRule)) {
+
+		return ( (MarginTradeRule)currentRule)._margin;
+	    }
+	}
+
+	throw new AssertionError( "No balance rule in strategy " + strategy.getName());
+    }
+
+    /**
+     * Run the tests.
+     *
+     * @param args The command line arguments (not used).
+     */
+    public static void main( String [] args) {
+
+	testBalanceStrategiesPerAccount();
+
+	System.out.println( "SpreadBotTest passed");
+    }
+
+    /**
+     * Check, that 2 accounts balancing the same pairs on the same sites get
+     * their own strategies with their own margins, while they share the book
+     * of each site and pair.
+     */
+    private static void testBalanceStrategiesPerAccount() {
+
+	CurrencyPair ppcUsd = createCurrencyPair( "PPC", "USD");
+	CurrencyPair ltcBtc = createCurrencyPair( "LTC", "BTC");
+
+	BacktestTradeSite ppcSite = new BacktestTradeSite( ppcUsd, new BigDecimal( "100"), new BigDecimal( "100"));
+	BacktestTradeSite ltcSite = new BacktestTradeSite( ltcBtc, new BigDecimal( "10"), new BigDecimal( "1"));
+
+	TradeSiteUserAccount trading1 = createUserAccount( "trading1");
+	TradeSiteUserAccount trading2 = createUserAccount( "trading2");
+
+	SpreadBot bot = SpreadBot.getInstance();
+
+	Strategy ppcStrategy1 = bot.addBalanceStrategy( ppcSite, ppcUsd, trading1, 0.05f, 0.1f, new Price( "0.2"));
+	Strategy ltcStrategy1 = bot.addBalanceStrategy( ltcSite, ltcBtc, trading1, 0.5f, 1.0f, new Price( "0.004"));
+	Strategy ltcStrategy2 = bot.addBalanceStrategy( ltcSite, ltcBtc, trading2, 0.5f, 1.0f, new Price( "0.004"));
+	Strategy ppcStrategy2 = bot.addBalanceStrategy( ppcSite, ppcUsd, trading2, 0.5f, 1.0f, new Price( "0.2"));
+
+	TestUtils.check( ! ppcStrategy1.getName().equals( ppcStrategy2.getName()), "The accounts share a strategy name: " + ppcStrategy1.getName());
+
+	for( Strategy currentStrategy : new Strategy [] { ppcStrategy1, ltcStrategy1, ltcStrategy2, ppcStrategy2 }) {
+
+	    TestUtils.check( bot.getStrategies().contains( currentStrategy), "The strategy " + currentStrategy.getName() + " was replaced");
+	}
+
+	// The margins of the second account must not overwrite the margins of the first one.
+	TestUtils.check( getRuleMargin( ppcStrategy1, OrderType.BUY) == 0.05f, "Wrong buy margin of the first account");
+	TestUtils.check( getRuleMargin( ppcStrategy1, OrderType.SELL) == 0.1f, "Wrong sell margin of the first account");
+	TestUtils.check( getRuleMargin( ppcStrategy2, OrderType.BUY) == 0.5f, "Wrong buy margin of the second account");
+	TestUtils.check( getRuleMargin( ppcStrategy2, OrderType.SELL) == 1.0f, "Wrong sell margin of the second account");
+
+	// Each site and pair has one book, that all its strategies share.
+	TestUtils.check( bot.getBook( ppcSite, ppcUsd) != bot.getBook( ltcSite, ltcBtc), "The pairs share a book");
+	TestUtils.check( bot.getBook( ppcSite, ppcUsd) == bot.getBook( ppcSite, ppcUsd), "The book of a pair was created twice");
+	TestUtils.check( bot.getBook( ppcSite, ppcUsd).getMargin( OrderType.BUY) == MarketMakingBook.DEFAULT_BUY_MARGIN
+			 , "A strategy changed the margin of the book");
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.trade.chart.persistence;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.trade.TradeType;
+import de.andreas_rueckert.util.TestUtils;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * This class checks the batched merge of the mysql persistence. There is no
+ * mysql server in the test environment, so the persistence writes to a fake
+ * jdbc connection, that keeps the rows in memory and skips duplicate keys
+ * like the INSERT IGNORE statement.
+ *
+ * Usage: CachePersistenceMySQLTest
+ */
+public class CachePersistenceMySQLTest {
+
+    // Inner classes
+
+    /**
+     * An in-memory database with a trades table, that is accessed via a fake jdbc connection.
+     */
+    static class FakeDatabase {
+
+	// Instance variables
+
+	/**
+	 * The auto commit mode of the connection.
+	 */
+	boolean _autoCommit = true;
+
+	/**
+	 * The number of executed batches.
+	 */
+	int _batchCount = 0;
+
+	/**
+	 * The sizes of the executed batches.
+	 */
+	final List<Integer> _batchSizes = new ArrayList<Integer>();
+
+	/**
+	 * The number of commits.
+	 */
+	int _commitCount = 0;
+
+	/**
+	 * The number of the batch, that fails, or 0 if all batches succeed.
+	 */
+	int _failingBatch = 0;
+
+	/**
+	 * The inserted rows of the running transaction.
+	 */
+	final Map<String, Object []> _pendingRows = new HashMap<String, Object []>();
+
+	/**
+	 * The number of rollbacks.
+	 */
+	int _rollbackCount = 0;
+
+	/**
+	 * The committed rows, stored by their primary key.
+	 */
+	final Map<String, Object []> _rows = new HashMap<String, Object []>();
+
+
+	// Methods
+
+	/**
+	 * Create a fake connection to this database.
+	 *
+	 * @return The connection.
+	 */
+	Connection createConnection() {
+
+	    return (Connection)Proxy.newProxyInstance( Connection.class.getClassLoader()
+						       , new Class [] { Connection.class }
+						       , new InvocationHandler() {
+
+							   public Object invoke( Object proxy, Method method, Object [] args) {
+
+							       String methodName = method.getName();
+
+							       if( methodName.equals( "prepareStatement")) {
+								   return createStatement();
+							       }
+
+							       if( methodName.equals( "setAutoCommit")) {
+								   _autoCommit = (Boolean)args[ 0];
+							       } else if( methodName.equals( "commit")) {
+								   ++_commitCount;
+								   _rows.putAll( _pendingRows);
+								   _pendingRows.clear();
+							       } else if( methodName.equals( "rollback")) {
+								   ++_rollbackCount;
+								   _pendingRows.clear();
+							       }
+
+							       return null;
+							   }
+						       });
+	}
+
+	/**
+	 * Create a fake insert statement, that collects the rows in batches.
+	 *
+	 * @return The statement.
+	 */
+	private PreparedStatement createStatement() {
+
+	    final List<Object []> batch = new ArrayList<Object []>();
+
+	    final Object [] parameters = new Object[ 7];
+
+	    return (PreparedStatement)Proxy.newProxyInstance( PreparedStatement.class.getClassLoader()
+							      , new Class [] { PreparedStatement.class }
+							      , new InvocationHandler() {
+
+								  public Object invoke( Object proxy, Method method, Object [] args) throws SQLException {
+
+								      String methodName = method.getName();
+
+								      if( methodName.equals( "setString") || methodName.equals( "setLong")) {
+
+									  parameters[ (Integer)args[ 0]] = args[ 1];
+
+								      } else if( methodName.equals( "addBatch")) {
+
+									  batch.add( parameters.clone());
+
+								      } else if( methodName.equals( "executeBatch")) {
+
+									  if( ++_batchCount == _failingBatch) {
+									      throw new SQLException( "Simulated database error");
+									  }
+
+									  _batchSizes.add( batch.size());
+
+									  int [] result = new int[ batch.size()];
+
+									  for( int currentRow = 0; currentRow < batch.size(); ++currentRow) {
+
+									      Object [] row = batch.get( currentRow);
+
+									      String key = row[ 1] + "/" + row[ 2] + "/" + row[ 3];
+
+									      // Skip duplicate keys like INSERT IGNORE.
+									      if( ! _rows.containsKey( key) && ! _pendingRows.containsKey( key)) {
+
+										  _pendingRows.put( key, row);
+
+										  result[ currentRow] = 1;
+									      }
+									  }
+
+									  batch.clear();
+
+									  return result;
+								      }
+
+								      return null;
+								  }
+							      });
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The name of the currency pair of the test trades.
+     */
+    private static final String CURRENCY_PAIR = "BTC<=>USD";
+
+    /**
+     * The name of the trade site of the test trades.
+     */
+    private static final String TRADE_SITE = "Test";
+
+
+    // Methods
+
+    /**
+     * Create a persistence, that writes to a fake database.
+     *
+     * @param database The fake database.
+     *
+     * @return The activated persistence.
+     */
+    private static CachePersistenceMySQL createPersistence( FakeDatabase database) {
+
+	CachePersistenceMySQL persistence = new CachePersistenceMySQL( database.createConnection());
+
+	persistence.setActive( true);
+
+	return persistence;
+    }
+
+    /**
+     * Create trades with rising timestamps and distinct ids.
+     *
+     * @param firstId The id of the first trade.
+     * @param count The number of trades.
+     *
+     * @return The list of trades.
+     */
+    private static List<Trade> createTrades( int firstId, int count) {
+
+	List<Trade> result = new ArrayList<Trade>( count);
+
+	for( int currentTrade = firstId; currentTrade < firstId + count; ++currentTrade) {
+
+	    result.add( new StoredTrade( null
+					 , String.valueOf( currentTrade)
+					 , 1000000L + currentTrade * 1000000L
+					 , new Price( "600")
+					 , new Amount( "0.25")
+					 , TradeType.Buy));
+	}
+
+	return result;
+    }
+
+    /**
+     * Run the tests.
+     *
+     * @param args The command line arguments (not used).
+     */
+    public static void main( String [] args) {
+
+	testBatchedMergeSkipsStoredTrades();
+	testFailedMergeIsRolledBack();
+
+	System.out.println( "CachePersistenceMySQLTest passed");
+    }
+
+    /**
+     * Check, that a merge sends the trades in full batches within a single
+     * transaction, and that merging stored trades again adds no rows.
+     */
+    private static void testBatchedMergeSkipsStoredTrades() {
+
+	FakeDatabase database = new FakeDatabase();
+
+	CachePersistenceMySQL persistence = createPersistence( database);
+
+	TestUtils.check( persistence.merge( TRADE_SITE, CURRENCY_PAIR, createTrades( 0, 2500)), "The merge failed");
+
+	TestUtils.check( database._batchSizes.toString().equals( "[1000, 1000, 500]"), "Wrong batches: " + database._batchSizes);
+	TestUtils.check( database._commitCount == 1, "The batches were committed " + database._commitCount + " times");
+	TestUtils.check( database._rows.size() == 2500, "Wrong number of stored trades: " + database._rows.size());
+	TestUtils.check( database._autoCommit, "The auto commit mode was not restored");
+
+	// Merge the stored trades again, together with some new ones.
+	TestUtils.check( persistence.merge( TRADE_SITE, CURRENCY_PAIR, createTrades( 2490, 20)), "The second merge failed");
+
+	TestUtils.check( database._rows.size() == 2510, "Stored trades were added again: " + database._rows.size());
+	TestUtils.check( database._commitCount == 2, "The second merge was not committed");
+    }
+
+    /**
+     * Check, that a merge, that fails in a later batch, rolls back the earlier batches.
+     */
+    private static void testFailedMergeIsRolledBack() {
+
+	FakeDatabase database = new FakeDatabase();
+
+	database._failingBatch = 2;
+
+	CachePersistenceMySQL persistence = createPersistence( database);
+
+	TestUtils.check( ! persistence.merge( TRADE_SITE, CURRENCY_PAIR, createTrades( 0, 2500)), "The failed merge was reported as a success");
+
+	TestUtils.check( database._rollbackCount == 1, "The failed merge was not rolled back");
+	TestUtils.check( database._commitCount == 0, "The failed merge was committed");
+	TestUtils.check( database._rows.isEmpty(), "The first batch was stored: " + database._rows.size());
+	TestUtils.check( database._autoCommit, "The auto commit mode was not restored");
+    }
+}
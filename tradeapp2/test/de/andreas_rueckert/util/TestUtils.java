@@ -0,0 +1,71 @@
+/**
+ * Java implementation of bitcoin trading.
+ *
+ * @author Andreas Rueckert <a_rueckert@gmx.net>
+ *
+ * (c) 2014 Andreas Rueckert
+ */
+
+package de.andreas_rueckert.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+
+/**
+ * This class holds the checks and fixtures, that the tests share.
+ */
+public class TestUtils {
+
+    // Methods
+
+    /**
+     * Throw an error, if a condition is not met.
+     *
+     * @param condition The checked condition.
+     * @param message The error message.
+     */
+    public static void check( boolean condition, String message) {
+
+	if( ! condition) {
+	    throw new AssertionError( message);
+	}
+    }
+
+    /**
+     * Create a proxy, that answers the given method names with the given values.
+     *
+     * @param type The interface of the proxy.
+     * @param answers Pairs of method names and their return values.
+     *
+     * @return The proxy.
+     */
+    public static <T> T createProxy( Class<T> type, final Object ... answers) {
+
+	return type.cast( Proxy.newProxyInstance( type.getClassLoader()
+						  , new Class [] { type }
+						  , new InvocationHandler() {
+
+						      public Object invoke( Object proxy, Method method, Object [] args) {
+
+							  for( int currentAnswer = 0; currentAnswer < answers.length; currentAnswer += 2) {
+
+							      if( answers[ currentAnswer].equals( method.getName())) {
+								  return answers[ currentAnswer + 1];
+							      }
+							  }
+
+							  if( method.getName().equals( "equals")) {
+							      return proxy == args[ 0];
+							  }
+
+							  if( method.getName().equals( "hashCode")) {
+							      return System.identityHashCode( proxy);
+							  }
+
+							  return null;
+						      }
+						  }));
+    }
+}